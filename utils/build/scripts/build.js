@@ -26,6 +26,16 @@ var buildProcess = function() {
 	// Identify profiles
 	var profiles = config.getFinalProfiles();
 	
+	if (config.hasOption("OPTION_SHARED_CHUNKS")) {
+		buildChunksProcess(profiles, targets);
+		
+		if (config.hasOption("OPTION_CLEAN_TEMPORARY")) {
+			_u.deleteTemporaryDirectory();
+		}
+		print("build JS Process finished");
+		return;
+	}
+	
 	var i, l = profiles.length;
 	for (i = 0; i < l; i++) {
 		var profile = profiles[i];
@@ -44,7 +54,15 @@ var buildProcess = function() {
 			var dependenciesFiles = config.getJsDependenciesFiles(profile, target);
 			
 			// Build File
-			jsbuilder.buildFile(profile, target, sourceFiles, dependenciesFiles);
+			var builtFiles = jsbuilder.buildFile(profile, target, sourceFiles, dependenciesFiles);
+			
+			if (config.hasOption("OPTION_LOADER_MANIFEST")) {
+				jsbuilder._writeLoaderManifest(profile, target, builtFiles);
+			}
+			
+			if (config.hasOption("OPTION_SPLIT_LOCALES")) {
+				jsbuilder._writeLocaleBundles(profile, target);
+			}
 		}
 	}
 	
@@ -55,21 +73,114 @@ var buildProcess = function() {
 	print("build JS Process finished");
 };
 
+/**
+ * builds, for each target, a common chunk with the first modules shared by
+ * all the profiles, a delta chunk per profile and the manifest of the chunks
+ * to load for each profile
+ * 
+ * @param profiles
+ * @param targets
+ */
+var buildChunksProcess = function(profiles, targets) {
+	if (_u.contains(profiles, config.commonKey)) {
+		error("bad profiles conf : profile name '" + config.commonKey + "' is reserved for the shared chunk");
+	}
+	
+	var j, jl = targets.length;
+	for (j = 0; j < jl; j++) {
+		var target = targets[j];
+		
+		var commonFiles = [];
+		if (profiles.length > 1) {
+			commonFiles = config.getCommonJsSourcesFiles(profiles, target);
+		}
+		
+		var dependenciesFiles = [];
+		var i, l = profiles.length;
+		for (i = 0; i < l; i++) {
+			var profileDependencies = config.getJsDependenciesFiles(profiles[i], target);
+			var k, kl = profileDependencies.length;
+			for (k = 0; k < kl; k++) {
+				if (!_u.contains(dependenciesFiles, profileDependencies[k])) {
+					dependenciesFiles.push(profileDependencies[k]);
+				}
+			}
+		}
+		
+		var commonFileName = null;
+		if (commonFiles.length > 0) {
+			commonFileName = _u.buildJsFileName(config.commonKey, target);
+			var commonFeatures = jsbuilder._getCommonFeatures(profiles, target);
+			commonFiles = jsbuilder.buildFile(config.commonKey, target, commonFiles, dependenciesFiles, commonFeatures);
+		}
+		
+		var chunks = {};
+		for (i = 0; i < l; i++) {
+			var profile = profiles[i];
+			var profileChunks = [];
+			if (commonFileName != null) {
+				profileChunks.push(commonFileName);
+			}
+			
+			var sourceFiles = config.getJsSourcesFiles(profile, target);
+			var deltaFiles = [];
+			var k, kl = sourceFiles.length;
+			for (k = 0; k < kl; k++) {
+				if (!_u.contains(commonFiles, sourceFiles[k])) {
+					deltaFiles.push(sourceFiles[k]);
+				}
+			}
+			
+			if (deltaFiles.length > 0) {
+				// the common chunk is loaded after the external dependencies
+				var profileDependencies = config.getJsDependenciesFiles(profile, target).concat(commonFiles);
+				deltaFiles = jsbuilder.buildFile(profile, target, deltaFiles, profileDependencies);
+				profileChunks.push(_u.buildJsFileName(profile, target));
+			} else if (sourceFiles.length == 0) {
+				print("WARN - no JS sources files included in this build context [" + profile + ", " + target + "]");
+			}
+			chunks[profile] = profileChunks;
+			
+			if (config.hasOption("OPTION_LOADER_MANIFEST") && sourceFiles.length > 0) {
+				jsbuilder._writeLoaderManifest(profile, target, commonFiles.concat(deltaFiles));
+			}
+			
+			if (config.hasOption("OPTION_SPLIT_LOCALES") && sourceFiles.length > 0) {
+				jsbuilder._writeLocaleBundles(profile, target);
+			}
+		}
+		
+		jsbuilder._writeChunksManifest(profiles, target, commonFileName, chunks);
+	}
+};
+
 /**
  * JS BUILD MANAGER
  */
 var jsbuilder = {
+	/**
+	 * the private members renamed by the previous builds, so that the chunks
+	 * loaded together use the same names
+	 */
+	mangledNames: {},
 	/** 
 	 * @param profile
 	 * @param target
 	 * @param sourceFiles
 	 * @param dependenciesFiles
-	 * @return
+	 * @param features
+	 *            the features to resolve (optional, the profile ones by default)
+	 * @return the source files, in the builded order
 	 */
-	buildFile: function(profile, target, sourceFiles, dependenciesFiles) {
+	buildFile: function(profile, target, sourceFiles, dependenciesFiles, features) {
 		print("buildFile[profile="+ profile +", target="+ target +"]");
+		_u.reportSection(profile + "/" + target);
 		// print("files for("+ profile +", "+ target +"): ", sourceFiles);
 		
+		if (config.hasOption("OPTION_SORT_DEPENDENCIES")) {
+			sourceFiles = jsbuilder._sortFiles(sourceFiles);
+		}
+		
 		var sfiles = [];
 		var i, l = sourceFiles.length;
 		for (i = 0; i < l; i++) {
@@ -89,7 +200,11 @@ var jsbuilder = {
 		var destDependenciesFiles = _u.copyFilesInTemporary(efiles, tmpDir);
 		
 		if (config.hasOption("OPTION_FILTER_FEATURE")) {
-			jsbuilder._filterFeature(profile, target, destFiles);
+			if (_u.isUndefined(features)) {
+				jsbuilder._filterFeature(profile, target, destFiles);
+			} else {
+				applyFilterFeature(features, destFiles);
+			}
 		}
 		
 		if (config.hasOption("OPTION_DELETE_VALIDATE_PROPERTIES")) {
@@ -100,13 +215,36 @@ var jsbuilder = {
 			_u.deleteLogs(destFiles);
 		}
 		
-		jsbuilder._cleanDuplicates(destFiles, destDependenciesFiles);
+		var jsModel = jsbuilder._cleanDuplicates(destFiles, destDependenciesFiles);
+		
+		if (config.hasOption("OPTION_TREE_SHAKING")) {
+			jsbuilder._shakeTree(profile, target, jsModel, sourceFiles, destFiles);
+		}
+		
+		var aliasBodies = config.hasOption("OPTION_ALIAS_DUPLICATE_BODIES");
+		if (aliasBodies || config.hasOption("OPTION_REPORT_DUPLICATE_BODIES")) {
+			print(jsModel.findDuplicateBodies(aliasBodies));
+		}
+		
+		if (config.hasOption("OPTION_MANGLE_PRIVATE_MEMBERS")) {
+			var mapName = _u.buildJsFileName(profile, target).replace(/\.js$/, "") + ".mangle.json";
+			print(jsModel.manglePrivateMembers(jsbuilder.mangledNames, profile, target, _u.getBuildedDirectory() + mapName));
+		}
 		
 		_u.applyBadSyntaxFilter(destFiles);
 		
 		var destfilename = _u.buildJsFileName(profile, target);
 		var destdir = _u.getBuildedDirectory();
-		_u.concatenateFiles(destFiles, (destdir + destfilename));
+		if (config.hasOption("OPTION_SOURCE_MAP")) {
+			_u.concatenateFiles(destFiles, (destdir + destfilename), sourceFiles);
+		} else {
+			_u.concatenateFiles(destFiles, (destdir + destfilename));
+		}
+		
+		if (config.hasOption("OPTION_SPLIT_BUILD_FILE")) {
+			print(_u.splitBuildFile(profile, target, destFiles, sourceFiles, (destdir + destfilename)));
+		}
+		return sourceFiles;
 	},
 	/**
 	 * @param files
@@ -151,6 +289,60 @@ var jsbuilder = {
 			print("-----------------------");
 			print(" ");
 		}
+		return jsModel;
+	},
+	/**
+	 * @param profile
+	 * @param target
+	 * @param jsModel
+	 * @param sourceFiles
+	 * @param destFiles
+	 * @return
+	 */
+	_shakeTree: function(profile, target, jsModel, sourceFiles, destFiles) {
+		var treeShaking = config.getTreeShakingConf(profile);
+		if (_u.isUndefined(treeShaking)) {
+			return;
+		}
+		
+		var entryFiles = config.getJsEntriesFiles(profile, target);
+		var entries = [];
+		var i, l = sourceFiles.length;
+		for (i = 0; i < l; i++) {
+			if (_u.contains(entryFiles, sourceFiles[i])) {
+				entries.push(destFiles[i]);
+			}
+		}
+		
+		var keep = treeShaking.keep;
+		if (_u.isUndefined(keep)) {
+			keep = [];
+		}
+		print(jsModel.removeUnreferenced(entries, keep));
+	},
+	/**
+	 * @param sourceFiles
+	 * @return the source files ordered by their dependencies
+	 */
+	_sortFiles: function(sourceFiles) {
+		var files = [];
+		var sourceFilesByPath = {};
+		var i, l = sourceFiles.length;
+		for (i = 0; i < l; i++) {
+			var path = winkPath + sourceFiles[i];
+			files.push(path);
+			sourceFilesByPath[path] = sourceFiles[i];
+		}
+		
+		var sorted = _u.sortFiles(files);
+		print(sorted.report);
+		
+		var result = [];
+		l = sorted.files.length;
+		for (i = 0; i < l; i++) {
+			result.push(sourceFilesByPath[sorted.files[i]]);
+		}
+		return result;
 	},
 	/**
 	 * @param profile
@@ -161,13 +353,104 @@ var jsbuilder = {
 	_filterFeature: function(profile, target, files) {
 		// print("filterFeature[profile="+ profile +", target="+ target +"]");
 		
-		var features = config.getProfileConf().features;
-		if (_u.isUndefined(features)) {
-			return;
+		applyFilterFeature(jsbuilder._getFeatures(profile, target), files);
+	},
+	/**
+	 * @param profiles
+	 * @param target
+	 * @return the features resolved with the same value for all the profiles
+	 */
+	_getCommonFeatures: function(profiles, target) {
+		var commonFeatures = jsbuilder._getFeatures(profiles[0], target);
+		
+		var i, l = profiles.length;
+		for (i = 1; i < l; i++) {
+			var features = jsbuilder._getFeatures(profiles[i], target);
+			for (var name in commonFeatures) {
+				if (features[name] !== commonFeatures[name]) {
+					delete commonFeatures[name];
+				}
+			}
 		}
+		return commonFeatures;
+	},
+	/**
+	 * @param profiles
+	 * @param target
+	 * @param commonFileName
+	 * @param chunks
+	 * @return
+	 */
+	_writeChunksManifest: function(profiles, target, commonFileName, chunks) {
+		var build = config.getProfileConf().build;
+		var manifestName = _u._buildFileName("chunks", target, build.jsFile).replace(/\.js$/, "") + ".json";
+		
+		var content = "{\n";
+		content += "\t\"target\": \"" + target + "\",\n";
+		content += "\t\"common\": " + ((commonFileName == null) ? "null" : "\"" + commonFileName + "\"") + ",\n";
+		content += "\t\"profiles\": {\n";
+		var i, l = profiles.length;
+		for (i = 0; i < l; i++) {
+			var profileChunks = chunks[profiles[i]];
+			content += "\t\t\"" + profiles[i] + "\": [";
+			var j, jl = profileChunks.length;
+			for (j = 0; j < jl; j++) {
+				content += ((j > 0) ? ", " : " ") + "\"" + profileChunks[j] + "\"";
+			}
+			content += ((jl > 0) ? " ]" : "]") + ((i < l - 1) ? "," : "") + "\n";
+		}
+		content += "\t}\n";
+		content += "}\n";
 		
+		_u.writeFile(content, _u.getBuildedDirectory() + manifestName);
+		print("chunks manifest: " + manifestName);
+	},
+	/**
+	 * writes the manifest of the module files loaded by the development
+	 * loader, with their content hash and size
+	 * 
+	 * @param profile
+	 * @param target
+	 * @param sourceFiles
+	 *            the source files, in the builded order
+	 */
+	_writeLoaderManifest: function(profile, target, sourceFiles) {
+		var manifestName = _u.buildJsFileName(profile, target).replace(/\.js$/, "") + ".loader.json";
+		print(_u.writeLoaderManifest(profile, target, sourceFiles, _u.getBuildedDirectory() + manifestName));
+	},
+	/**
+	 * writes the i18n resources of the profile as one bundle per locale, the
+	 * builded files being locale-neutral, and the manifest of the bundles
+	 * 
+	 * @param profile
+	 * @param target
+	 */
+	_writeLocaleBundles: function(profile, target) {
+		var locales = config.getLocales(profile);
+		var files = [];
+		var i, l = locales.length;
+		for (i = 0; i < l; i++) {
+			files.push(config.getJsLocaleFiles(profile, target, locales[i]));
+		}
+		var build = config.getProfileConf().build;
+		var bundleName = _u._buildFileName(config.i18nKey, "LOCALE", build.jsFile);
+		var manifestName = _u.buildJsFileName(profile, target).replace(/\.js$/, "") + ".locales.json";
+		var destdir = _u.getBuildedDirectory();
+		print(_u.writeLocaleBundles(profile, target, locales, files, destdir + bundleName, destdir + manifestName));
+	},
+	/**
+	 * @param profile
+	 * @param target
+	 * @return the features to resolve in the given context
+	 */
+	_getFeatures: function(profile, target) {
 		var toResolve = {};
 		
+		var features = config.getProfileConf().features;
+		if (_u.isUndefined(features)) {
+			return toResolve;
+		}
+		
 		var i, l = features.length;
 		for (i = 0; i < l; i++) {
 			var feature = features[i];
@@ -208,9 +491,11 @@ var jsbuilder = {
 				toResolve[feature.name] = feature.value;
 			}
 		}
-		
-		applyFilterFeature(toResolve, files);
+		return toResolve;
 	}
 };
 
-buildProcess();
\ No newline at end of file
+// the combo script loads this one for its builder only
+if (typeof comboMode == "undefined") {
+	buildProcess();
+}
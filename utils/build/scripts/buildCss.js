@@ -65,6 +65,7 @@ var cssbuilder = {
 	 */
 	buildFile: function(profile, target, sourceFiles) {
 		print("buildFile[profile="+ profile +", target="+ target +"]");
+		_u.reportSection(profile + "/" + target);
 		// print("files for("+ profile +", "+ target +"): ", sourceFiles);
 		
 		var files = [];
@@ -77,13 +78,30 @@ var cssbuilder = {
 		var tmpDir = _u.getTemporaryDirectory(profile, target);
 		var destFiles = _u.copyFilesInTemporary(files, tmpDir);
 		
+		var destfilename = _u.buildCssFileName(profile, target);
+		var destdir = _u.getBuildedDirectory();
+		
+		if (config.hasOption("OPTION_INLINE_IMAGES")) {
+			print(_u.inlineImages(files, destFiles));
+		}
+		
+		if (config.hasOption("OPTION_SPRITE_IMAGES")) {
+			print(_u.spriteImages(files, destFiles, (destdir + destfilename)));
+		}
+		
+		if (config.hasOption("OPTION_OPTIMIZE_IMAGES")) {
+			print(_u.optimizeImages(files, destFiles, (destdir + destfilename)));
+		}
+		
 		if (config.hasOption("OPTION_REWRITE_IMAGE_URL")) {
 			_u.rewriteImageURL(files, destFiles, winkPath);
 		}
 		
-		var destfilename = _u.buildCssFileName(profile, target);
-		var destdir = _u.getBuildedDirectory();
 		_u.concatenateFiles(destFiles, (destdir + destfilename));
+		
+		if (config.hasOption("OPTION_OPTIMIZE_CSS")) {
+			print(_u.optimizeCss(destdir + destfilename));
+		}
 	}
 };
 
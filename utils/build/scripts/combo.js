@@ -0,0 +1,45 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * builds the modules requested to the combo server: conf.COMBO_MODULES in the
+ * first profile and target, written into conf.COMBO_FILE
+ */
+var comboMode = true;
+var conf = conf || {};
+load(conf.JS_PATH + FILE_SEPARATOR + "build.js");
+
+/**
+ * 
+ */
+var comboProcess = function() {
+	var profile = conf.PROFILES[0];
+	var target = conf.TARGETS[0];
+	var modules = conf.COMBO_MODULES.split(",");
+	
+	var profileObj = config._getProfileByName(config.getProfileConf().profiles, profile);
+	if (profileObj == null) {
+		error("unknown profile: " + profile);
+	}
+	
+	var sourceFiles = config._getModulesJsFiles(profileObj, modules, target);
+	if (sourceFiles.length == 0) {
+		error("no JS sources files for the modules: " + modules);
+	}
+	var dependenciesFiles = config.getJsDependenciesFiles(profile, target);
+	
+	jsbuilder.buildFile(profile, target, sourceFiles, dependenciesFiles);
+	
+	var destfile = _u.getBuildedDirectory() + _u.buildJsFileName(profile, target);
+	writeFile(readFile(destfile), conf.COMBO_FILE);
+	
+	if (config.hasOption("OPTION_CLEAN_TEMPORARY")) {
+		_u.deleteTemporaryDirectory();
+	}
+};
+
+comboProcess();
@@ -0,0 +1,35 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+var conf = conf || {};
+var jsPath = conf.JS_PATH + FILE_SEPARATOR;
+load(jsPath + "wink_build_utils.js");
+
+/**
+ * writes a ".gz" file next to each JS and CSS file of the builded directory,
+ * the compressed contents are cached in the temporary directory
+ */
+var precompressProcess = function() {
+	print("precompress Process ...");
+	
+	var buildedPath = conf.BUILD_DEST_PATH;
+	if (_u.isUndefined(buildedPath) || !isDirectory(buildedPath)) {
+		error("bad builded directory: " + buildedPath);
+	}
+	var cachePath = conf.TEMPORARY_PATH;
+	if (_u.isUndefined(cachePath)) {
+		cachePath = "";
+	}
+	print(_u.precompressFiles(buildedPath, cachePath));
+	
+	print("precompress Process finished");
+};
+
+precompressProcess();
@@ -0,0 +1,31 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+var conf = conf || {};
+var jsPath = conf.JS_PATH + FILE_SEPARATOR;
+load(jsPath + "wink_build_utils.js");
+
+/**
+ * composes the source maps written by the minimizer in the builded directory
+ * with the maps of the builded files, so that they point to the modules
+ */
+var sourceMapProcess = function() {
+	print("source map Process ...");
+	
+	var buildedPath = conf.BUILD_DEST_PATH;
+	if (_u.isUndefined(buildedPath) || !isDirectory(buildedPath)) {
+		error("bad builded directory: " + buildedPath);
+	}
+	print(_u.composeSourceMaps(buildedPath));
+	
+	print("source map Process finished");
+};
+
+sourceMapProcess();
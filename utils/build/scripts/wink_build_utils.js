@@ -13,6 +13,14 @@ var config = {
 	 * 
 	 */
 	defaultKey: "default",
+	/**
+	 * 
+	 */
+	commonKey: "common",
+	/**
+	 * 
+	 */
+	i18nKey: "i18n",
 	/**
 	 * 
 	 */
@@ -21,6 +29,10 @@ var config = {
 	 * 
 	 */
 	profileConf: null,
+	/**
+	 * 
+	 */
+	resolver: null,
 	/**
 	 * 
 	 */
@@ -61,6 +73,15 @@ var config = {
 		}
 		return config.profileConf;
 	},
+	/**
+	 * @return the resolver of the modules and profiles configurations
+	 */
+	getResolver: function() {
+		if (config.resolver == null) {
+			config.resolver = _u.createConfResolver(config.getModuleConf(), config.getProfileConf(), config.hasOption("OPTION_SPLIT_LOCALES"));
+		}
+		return config.resolver;
+	},
 	/**
 	 * @param profile
 	 * @param target
@@ -75,6 +96,125 @@ var config = {
 	getJsDependenciesFiles: function(profile, target) {
 		return config._getJsFiles(profile, target, "dependencies");
 	},
+	/**
+	 * @param profile
+	 * @return the locales of the profile, the default locale first
+	 */
+	getLocales: function(profile) {
+		return config.getResolver().getLocales(profile);
+	},
+	/**
+	 * @param profile
+	 * @param target
+	 * @param locale
+	 * @return the i18n files of the profile modules for the locale
+	 */
+	getJsLocaleFiles: function(profile, target, locale) {
+		var profileObj = config._getProfileByName(config.getProfileConf().profiles, profile);
+		var currentModules = profileObj.modules;
+		if (_u.isUndefined(currentModules)) {
+			currentModules = [];
+		}
+		return config.getResolver().getLocaleJsFiles(profile, currentModules, target, locale);
+	},
+	/**
+	 * @param profile
+	 * @param target
+	 */
+	getJsEntriesFiles: function(profile, target) {
+		var treeShaking = config.getTreeShakingConf(profile);
+		if (_u.isUndefined(treeShaking)) {
+			return [];
+		}
+		var profileObj = config._getProfileByName(config.getProfileConf().profiles, profile);
+		return config._getModulesJsFiles(profileObj, treeShaking.entries, target);
+	},
+	/**
+	 * @param profile
+	 * @return
+	 */
+	getTreeShakingConf: function(profile) {
+		var profileObj = config._getProfileByName(config.getProfileConf().profiles, profile);
+		if (profileObj == null) {
+			return undefined;
+		}
+		return profileObj.treeShaking;
+	},
+	/**
+	 * @param profiles
+	 * @param target
+	 * @return the first modules shared by all the given profiles
+	 */
+	getCommonJsModules: function(profiles, target) {
+		var profileConf = config.getProfileConf();
+		var profileObjs = [];
+		var modulesLists = [];
+		
+		var i, l = profiles.length;
+		for (i = 0; i < l; i++) {
+			var profileObj = config._getProfileByName(profileConf.profiles, profiles[i]);
+			var currentModules = profileObj.modules;
+			if (_u.isUndefined(currentModules)) {
+				currentModules = [];
+			}
+			var modulesPf = config._getProfiledModules(currentModules, target);
+			profileObjs.push(profileObj);
+			modulesLists.push(config._resolveSubModules(modulesPf));
+		}
+		
+		// only a common prefix keeps the load order of each profile
+		var common = [];
+		if (l == 0) {
+			return common;
+		}
+		var j, jl = modulesLists[0].length;
+		for (j = 0; j < jl; j++) {
+			var module = modulesLists[0][j];
+			var moduleFiles = config._getTargetedJsFiles([ module ], profileObjs[0], target).join(",");
+			
+			var shared = true;
+			for (i = 1; i < l; i++) {
+				if (modulesLists[i].length <= j || modulesLists[i][j] != module) {
+					shared = false;
+					break;
+				}
+				// i18n resources depend on the locales of the profile
+				if (config._getTargetedJsFiles([ module ], profileObjs[i], target).join(",") != moduleFiles) {
+					shared = false;
+					break;
+				}
+			}
+			if (!shared) {
+				break;
+			}
+			common.push(module);
+		}
+		return common;
+	},
+	/**
+	 * @param profiles
+	 * @param target
+	 * @return the files of the modules shared by all the given profiles
+	 */
+	getCommonJsSourcesFiles: function(profiles, target) {
+		var commonModules = config.getCommonJsModules(profiles, target);
+		if (commonModules.length == 0) {
+			return [];
+		}
+		var profileObj = config._getProfileByName(config.getProfileConf().profiles, profiles[0]);
+		var sourceFiles = config._getTargetedJsFiles(commonModules, profileObj, target);
+		
+		// duplicates management
+		var result = [];
+		var i, l = sourceFiles.length;
+		for (i = 0; i < l; i++) {
+			var sourceFilesI = sourceFiles[i];
+			if (!_u.contains(result, sourceFilesI)) {
+				result.push(sourceFilesI);
+			}
+		}
+		return result;
+	},
 	/**
 	 * @param profile
 	 * @param target
@@ -262,29 +402,18 @@ var config = {
 	_getJsFiles: function(profile, target, category) {
 		var profileConf = config.getProfileConf();
 		var profileObj = config._getProfileByName(profileConf.profiles, profile);
-		var currentModules = profileObj[category];
+		return config._getModulesJsFiles(profileObj, profileObj[category], target);
+	},
+	/**
+	 * @param profileObj
+	 * @param currentModules
+	 * @param target
+	 */
+	_getModulesJsFiles: function(profileObj, currentModules, target) {
 		if (_u.isUndefined(currentModules) || currentModules.length == 0) {
 			return [];
 		}
-		
-		var modulesPf = config._getProfiledModules(currentModules, target);
-		var modulesResolved = config._resolveSubModules(modulesPf);
-		if (modulesResolved.length == 0) {
-			return [];
-		}
-		var sourceFiles = config._getTargetedJsFiles(modulesResolved, profileObj, target);
-		
-		// duplicates management
-		var result = [];
-		var i, l = sourceFiles.length;
-		for (i = 0; i < l; i++) {
-			var sourceFilesI = sourceFiles[i];
-			if (!_u.contains(result, sourceFilesI)) {
-				result.push(sourceFilesI);
-			}
-		}
-		
-		return result;
+		return config.getResolver().getModulesJsFiles(profileObj.name, currentModules, target);
 	},
 	/**
 	 * @param modules
@@ -292,128 +421,32 @@ var config = {
 	 * @return
 	 */
 	_getProfiledModules: function(modules, target) {
-		var profiledModules = [];
-		var profileConf = config.getProfileConf();
-		var impls = profileConf.implementations;
-		
-		var i, l = modules.length;
-		for (i = 0; i < l; i++) {
-			var module = modules[i];
-			
-			var currentImpl = module;
-			
-			if (!_u.isUndefined(impls)) {
-				var j, jl = impls.length;
-				for (j = 0; j < jl; j++) {
-					var impl = impls[j];
-					if (impl.module == module) {
-						currentImpl = impl.defaultImpl;
-						
-						if (_u.isUndefined(currentImpl)) {
-							error("bad profiles conf : expected defaultImpl for implementations.subImpls item");
-						}
-						
-						var subImpls = impl.subImpls;
-						var k, kl = subImpls.length;
-						for (k = 0; k < kl; k++) {
-							var subImpl = subImpls[k];
-							var tg = subImpl.target;
-							if (tg == target) {
-								currentImpl = subImpl.impl;
-							}
-						}
-						break;
-					}
-				}
-			}
-			
-			profiledModules.push(currentImpl);
-		}
-		return profiledModules;
-	},
-	/**
-	 * @param allmodules
-	 * @param moduleName
-	 * @param result
-	 * @return
-	 */
-	_resolveSubModule: function(allmodules, moduleName, result) {
-		var module = config._getModuleByName(allmodules, moduleName);
-		if (module == null) {
-			error("bad modules conf : cannot find module named: " + moduleName);
-		}
-		
-		var submodules = module.modules;
-		if (!_u.isUndefined(submodules)) {
-			var i, l = submodules.length;
-			for (i = 0; i < l; i++) {
-				var submodule = submodules[i];
-				this._resolveSubModule(allmodules, submodule, result);
-			}
-		} else {
-			result.push(moduleName);
-		}
+		return config.getResolver().getProfiledModules(modules, target);
 	},
 	/**
 	 * @param modulesPf
 	 * @return
 	 */
 	_resolveSubModules: function(modulesPf) {
-		var modulesResolved = [];
-		var moduleList = config.getModuleConf().modules;
-		
-		var i, l = modulesPf.length;
-		for (i = 0; i < l; i++) {
-			var moduleName = modulesPf[i];
-
-			var sublist = [];
-			this._resolveSubModule(moduleList, moduleName, sublist);
-			
-			var j, jl = sublist.length;
-			for (j = 0; j < jl; j++) {
-				subj = sublist[j];
-				
-				// duplicates management
-				if (!_u.contains(modulesResolved, subj)) {
-					modulesResolved.push(subj);
-				}
-			}
-		}
-		return modulesResolved;
+		return config.getResolver().resolveSubModules(modulesPf);
 	},
 	/**
 	 * @param moduleList
+	 *            the modules of the configuration, indexed by the resolver
 	 * @param name
 	 * @return
 	 */
 	_getModuleByName: function(moduleList, name) {
-		var i, l = moduleList.length;
-		for (i = 0; i < l; i++) {
-			var module = moduleList[i];
-			var moduleName = module.name;
-			
-			if (moduleName == name) {
-				return module;
-			}
-		}
-		return null;
+		return config.getResolver().getModule(name);
 	},
 	/**
 	 * @param profileList
+	 *            the profiles of the configuration, indexed by the resolver
 	 * @param name
 	 * @return
 	 */
 	_getProfileByName: function(profileList, name) {
-		var i, l = profileList.length;
-		for (i = 0; i < l; i++) {
-			var profile = profileList[i];
-			var profileName = profile.name;
-			
-			if (profileName == name) {
-				return profile;
-			}
-		}
-		return null;
+		return config.getResolver().getProfile(name);
 	},
 	/**
 	 * @param modulesResolved
@@ -422,101 +455,7 @@ var config = {
 	 * @return
 	 */
 	_getTargetedJsFiles: function(modulesResolved, profileObj, target) {
-		var targetedFiles = [];
-		var moduleList = config.getModuleConf().modules;
-		var locales = config._getDetectedLocales(profileObj);
-		
-		var i, l = modulesResolved.length;
-		for (i = 0; i < l; i++) {
-			var moduleResolved = modulesResolved[i];
-			
-			var module = config._getModuleByName(moduleList, moduleResolved);
-			if (module == null) {
-				error("bad modules conf : cannot find module named: " + moduleResolved);
-			}
-			
-			var defaultImpl = module.defaultImpl;
-			if (_u.isUndefined(defaultImpl)) {
-				error("bad modules conf : expected defaultImpl for modules item");
-			}
-			targetedFiles.push(defaultImpl);
-			
-			var i18nResources = config._getMatchedLocales(module, locales);
-			
-			var subImpls = module.subImpls;
-			
-			if (!_u.isUndefined(subImpls)) {
-				var k, kl = subImpls.length;
-				for (k = 0; k < kl; k++) {
-					var subImpl = subImpls[k];
-					var tg = subImpl.target;
-					if (tg == target) {
-						var subI18nResources = config._getMatchedLocales(subImpl, locales);
-						if (subImpl.excludeDefault == true) {
-							var poped = targetedFiles.pop();
-							if (poped != defaultImpl) {
-								error("getTargetedFiles : expected pop of defaultImpl " + defaultImpl + ", got : " + poped);
-							}
-							i18nResources = [];
-						}
-						targetedFiles.push(subImpl.impl);
-						i18nResources = i18nResources.concat(subI18nResources);
-						break;
-					}
-				}
-			}
-			targetedFiles = targetedFiles.concat(i18nResources);
-		}
-		return targetedFiles;
-	},
-	/**
-	 * @param profileObj
-	 * @return
-	 */
-	_getDetectedLocales: function(profileObj) {
-		var detectedLocales = [];
-		var defaultLocaleList = config.getProfileConf().build.defaultLocaleList;
-		var localeList = profileObj.localeList;
-		
-		if (_u.isUndefined(defaultLocaleList) || defaultLocaleList.length == 0) {
-			error("bad profiles conf : expected defaultLocaleList in build configuration");
-		}
-		
-		if (!_u.isUndefined(localeList)) {
-			if (localeList.length == 0) {
-				error("bad profiles conf : profile localeList size must be > 0");
-			}
-			detectedLocales = localeList;
-		} else {
-			detectedLocales = defaultLocaleList;
-		}
-		return detectedLocales;
-	},
-	/**
-	 * @param module
-	 * @param locales
-	 * @return
-	 */
-	_getMatchedLocales: function(module, locales) {
-		var matchedLocales = [];
-		
-		if (!_u.isUndefined(module.i18n) && module.i18n.length > 0) {
-			var j, jl = module.i18n.length;
-			for (j = 0; j < jl; j++) {
-				var currentI18n = module.i18n[j];
-				
-				var m, ml = locales.length;
-				for (m = 0; m < ml; m++) {
-					var currentLocale = locales[m];
-					var i18nResource = currentI18n[currentLocale];
-					if (!_u.isUndefined(i18nResource)) {
-						matchedLocales.push(i18nResource);
-					}
-				}
-			}
-		}
-		
-		return matchedLocales;
+		return config.getResolver().getTargetedJsFiles(modulesResolved, profileObj.name, target);
 	},
 	/**
 	 * @param modulesResolved
@@ -524,55 +463,7 @@ var config = {
 	 * @return
 	 */
 	_getTargetedCssFiles: function(modulesResolved, target) {
-		var targetedFiles = [];
-		var moduleList = config.getModuleConf().modules;
-		
-		var i, l = modulesResolved.length;
-		for (i = 0; i < l; i++) {
-			var moduleResolved = modulesResolved[i];
-			
-			var module = config._getModuleByName(moduleList, moduleResolved);
-			if (module == null) {
-				error("bad modules conf : cannot find module named: " + moduleResolved);
-			}
-			
-			var cssFiles = [];
-			var subCss = [];
-			var includeDefault = true;
-			
-			var subImpls = module.subImpls;
-			if (!_u.isUndefined(subImpls)) {
-				var k, kl = subImpls.length;
-				for (k = 0; k < kl; k++) {
-					var subImpl = subImpls[k];
-					var tg = subImpl.target;
-					if (tg == target) {
-						if (subImpl.excludeDefault == true) {
-							includeDefault = false;
-						}
-						
-						var subImplCss = subImpl.css;
-						if (!_u.isUndefined(subImplCss)) {
-							subCss = subCss.concat(subImplCss);
-						}
-						break;
-					}
-				}
-			}
-			
-			if (includeDefault) {
-				var defaultCss = module.css;
-				if (!_u.isUndefined(defaultCss)) {
-					cssFiles = cssFiles.concat(defaultCss);
-				}
-			}
-			cssFiles = cssFiles.concat(subCss);
-			
-			if (!_u.isUndefined(cssFiles) && cssFiles.length > 0) {
-				targetedFiles = targetedFiles.concat(cssFiles);
-			}
-		}
-		return targetedFiles;
+		return config.getResolver().getTargetedCssFiles(modulesResolved, target);
 	}
 };
 
@@ -687,6 +578,14 @@ var _u = {
 		
 		return buildedPath + FILE_SEPARATOR;
 	},
+	/**
+	 * @param content
+	 * @param filename
+	 * @return
+	 */
+	writeFile: function(content, filename) {
+		writeFile(content, filename);
+	},
 	/**
 	 * @param files
 	 * @param temporaryDirectory
@@ -694,14 +593,8 @@ var _u = {
 	 */
 	copyFilesInTemporary: function(files, temporaryDirectory) {
 		//print("copyFileInTemporary: ", files);
-		var destFiles = [];
-
-		var i, l = files.length;
-		for (i = 0; i < l; i++) {
-			var f = files[i];
-			var destFile = copyFile(f, ("" + config.fileIdSequence++), temporaryDirectory);
-			destFiles.push(destFile);
-		}
+		var destFiles = copyFiles(files, config.fileIdSequence, temporaryDirectory);
+		config.fileIdSequence += files.length;
 		return destFiles;
 	},
 	/**
@@ -712,13 +605,29 @@ var _u = {
 	parseSourceFiles: function(files, dependencies) {
 		return parseFiles(files, dependencies);
 	},
+	/**
+	 * @param moduleConf
+	 * @param profileConf
+	 * @param splitLocales
+	 *            true to leave the i18n files out of the modules files
+	 * @return
+	 */
+	createConfResolver: function(moduleConf, profileConf, splitLocales) {
+		return createConfResolver(moduleConf, profileConf, splitLocales === true);
+	},
 	/**
 	 * @param files
 	 * @param destFile
+	 * @param sourceFiles
+	 *            the module of each file, to write the source map (optional)
 	 * @return
 	 */
-	concatenateFiles: function(files, destFile) {
-		concatenateFiles(files, destFile);
+	concatenateFiles: function(files, destFile, sourceFiles) {
+		if (_u.isUndefined(sourceFiles)) {
+			concatenateFiles(files, destFile);
+		} else {
+			concatenateFiles(files, destFile, sourceFiles);
+		}
 	},
 	/**
 	 * @param destFiles
@@ -750,6 +659,107 @@ var _u = {
 	rewriteImageURL: function(sourceFiles, destFiles, winkPath) {
 		rewriteImageURL(sourceFiles, destFiles, winkPath);
 	},
+	/**
+	 * @param sourceFiles
+	 * @param destFiles
+	 * @return the inlining report
+	 */
+	inlineImages: function(sourceFiles, destFiles) {
+		return inlineImages(sourceFiles, destFiles);
+	},
+	/**
+	 * @param sourceFiles
+	 * @param destFiles
+	 * @param cssFile
+	 * @return the sprite report
+	 */
+	spriteImages: function(sourceFiles, destFiles, cssFile) {
+		return spriteImages(sourceFiles, destFiles, cssFile);
+	},
+	/**
+	 * @param sourceFiles
+	 * @param destFiles
+	 * @param cssFile
+	 * @return the image optimization report
+	 */
+	optimizeImages: function(sourceFiles, destFiles, cssFile) {
+		return optimizeImages(sourceFiles, destFiles, cssFile);
+	},
+	/**
+	 * @param file
+	 * @return the optimization report
+	 */
+	optimizeCss: function(file) {
+		return optimizeCss(file);
+	},
+	/**
+	 * @param directory
+	 * @param cacheDirectory
+	 * @return the compression report
+	 */
+	precompressFiles: function(directory, cacheDirectory) {
+		return precompressFiles(directory, cacheDirectory);
+	},
+	/**
+	 * @param directory
+	 * @return the composition report
+	 */
+	composeSourceMaps: function(directory) {
+		return composeSourceMaps(directory);
+	},
+	/**
+	 * @param files
+	 * @return the sorted files, the independent groups of files and the report
+	 */
+	sortFiles: function(files) {
+		return sortFiles(files);
+	},
+	/**
+	 * @param name
+	 *            the build report section of the next stages
+	 */
+	reportSection: function(name) {
+		reportSection(name);
+	},
+	/**
+	 * @param profile
+	 * @param target
+	 * @param files
+	 *            the module files, relative to the wink path
+	 * @param manifestFile
+	 * @return the manifest report
+	 */
+	writeLoaderManifest: function(profile, target, files, manifestFile) {
+		return writeLoaderManifest(profile, target, conf.WINK_PATH, files, manifestFile);
+	},
+	/**
+	 * @param profile
+	 * @param target
+	 * @param files
+	 *            the concatenated working files
+	 * @param sourceFiles
+	 *            the module of each working file
+	 * @param destFile
+	 *            the builded file
+	 * @return the split report
+	 */
+	splitBuildFile: function(profile, target, files, sourceFiles, destFile) {
+		return splitBuildFile(profile, target, files, sourceFiles, destFile, config.hasOption("OPTION_SOURCE_MAP"));
+	},
+	/**
+	 * @param profile
+	 * @param target
+	 * @param locales
+	 * @param files
+	 *            the i18n files of each locale, relative to the wink path
+	 * @param bundleFile
+	 *            the name of the bundles, with the LOCALE placeholder
+	 * @param manifestFile
+	 * @return the locale bundles report
+	 */
+	writeLocaleBundles: function(profile, target, locales, files, bundleFile, manifestFile) {
+		return writeLocaleBundles(profile, target, conf.WINK_PATH, locales, files, bundleFile, manifestFile);
+	},
 	/**
 	 * @param profile
 	 * @param target
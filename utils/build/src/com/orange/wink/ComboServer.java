@@ -0,0 +1,387 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+package com.orange.wink;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+import com.orange.wink.exception.WinkBuildException;
+import com.orange.wink.util.Common;
+import com.orange.wink.util.ConfResolver;
+import com.orange.wink.util.FileManager;
+import com.orange.wink.util.FileUtil;
+import com.orange.wink.util.LruCache;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves, for the local development, the build of the modules given by a
+ * combo URL: /combo?profile=default&target=ie&modules=module1,module2
+ * 
+ * The modules are resolved by the modules and profiles configurations, then
+ * built by the combo.js script with the options of the server. A build is
+ * cached, keyed by the hash of its parameters and of the content of its
+ * files, and the key is the ETag of the response: an unchanged build is
+ * answered by a 304 without building.
+ * 
+ * The builds share the static state of the builder, so the requests are
+ * handled one at a time.
+ * 
+ * @author Sylvain Lalande
+ * 
+ */
+public class ComboServer implements HttpHandler {
+	/**
+	 * 
+	 */
+	public static final String COMBO_PATH = "/combo";
+	public static final String COMBO_SCRIPT = "combo.js";
+	/**
+	 * 
+	 */
+	private static final int DEFAULT_PORT = 8181;
+	private static final long DEFAULT_CACHE_SIZE = 16 * 1024 * 1024;
+	private static final String DEFAULT_TARGET = "default";
+	private static final String CONTENT_TYPE = "application/javascript; charset=UTF-8";
+
+	/**
+	 * the builder arguments shared by all the builds
+	 */
+	private final Map<String, String> arguments;
+	private final LruCache<String, byte[]> cache;
+	/**
+	 * 
+	 */
+	private long builds;
+	private long notModified;
+
+	/**
+	 * @param arguments
+	 *            the builder arguments
+	 * @throws WinkBuildException
+	 */
+	public ComboServer(final Map<String, String> arguments) throws WinkBuildException {
+		this.arguments = arguments;
+		cache = new LruCache<String, byte[]>(getLong(arguments, Constants.COMBO_CACHE_SIZE, DEFAULT_CACHE_SIZE));
+	}
+
+	/**
+	 * @return the cached builds
+	 */
+	public LruCache<String, byte[]> getCache() {
+		return cache;
+	}
+
+	/**
+	 * @param args
+	 *            the builder arguments, with the port of the server
+	 * @throws WinkBuildException
+	 * @throws IOException
+	 */
+	public static void main(final String[] args) throws WinkBuildException, IOException {
+		final Map<String, String> arguments = WinkBuilder.getArguments(args);
+		final int port = (int) getLong(arguments, Constants.COMBO_PORT, DEFAULT_PORT);
+
+		final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+		server.createContext(COMBO_PATH, new ComboServer(arguments));
+		// no executor: the requests are handled one at a time
+		server.setExecutor(null);
+		server.start();
+		System.out.println("combo server: http://localhost:" + port + COMBO_PATH + "?profile=...&target=...&modules=...");
+	}
+
+	/**
+	 * @see com.sun.net.httpserver.HttpHandler#handle(com.sun.net.httpserver.HttpExchange)
+	 */
+	@Override
+	public void handle(final HttpExchange exchange) throws IOException {
+		try {
+			final String method = exchange.getRequestMethod();
+			if (!method.equals("GET") && !method.equals("HEAD")) {
+				send(exchange, 405, "combo error: method not allowed: " + method);
+				return;
+			}
+			final Map<String, String> params = getParameters(exchange.getRequestURI().getRawQuery());
+			final String profile = params.get("profile");
+			final String target = params.containsKey("target") ? params.get("target") : DEFAULT_TARGET;
+			final List<String> modules = split(params.get("modules"));
+			if (profile == null || profile.equals("") || modules.size() == 0) {
+				send(exchange, 400, "combo error: expected profile and modules parameters");
+				return;
+			}
+
+			final String key;
+			try {
+				key = getKey(profile, target, modules);
+			} catch (final WinkBuildException e) {
+				send(exchange, 400, "combo error: " + e.getMessage());
+				return;
+			} catch (final RuntimeException e) {
+				// the errors of the configurations
+				send(exchange, 500, "combo error: " + e.getMessage());
+				return;
+			}
+			final String etag = "\"" + key + "\"";
+			exchange.getResponseHeaders().set("ETag", etag);
+			exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+			if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				notModified++;
+				exchange.sendResponseHeaders(304, -1);
+				log(profile, target, modules, "not modified");
+				return;
+			}
+
+			byte[] content = cache.get(key);
+			if (content == null) {
+				final long start = System.currentTimeMillis();
+				try {
+					content = build(profile, target, modules);
+				} catch (final WinkBuildException e) {
+					send(exchange, 500, "combo error: " + e.getMessage());
+					return;
+				}
+				cache.put(key, content, content.length);
+				builds++;
+				log(profile, target, modules, "built in " + (System.currentTimeMillis() - start) + " ms");
+			} else {
+				log(profile, target, modules, "cached");
+			}
+
+			exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+			if (method.equals("HEAD")) {
+				exchange.sendResponseHeaders(200, -1);
+				return;
+			}
+			exchange.sendResponseHeaders(200, content.length);
+			final OutputStream out = exchange.getResponseBody();
+			out.write(content);
+			out.close();
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * @param profile
+	 * @param target
+	 * @param modules
+	 * @return the hash of the parameters, of the configurations and of the
+	 *         content of the resolved files and of the profile dependencies
+	 * @throws WinkBuildException
+	 */
+	private String getKey(final String profile, final String target, final List<String> modules) throws WinkBuildException {
+		final StringBuffer sb = new StringBuffer();
+		sb.append(arguments).append('|').append(profile).append('|').append(target).append('|').append(modules);
+
+		final String confPath = arguments.get(Constants.CONF_PATH);
+		final String moduleConf = readString(new File(confPath, arguments.get(Constants.MODULE_CONF_FILE)));
+		final String profileConf = readString(new File(confPath, arguments.get(Constants.PROFILES_CONF_FILE)));
+		sb.append('|').append(moduleConf).append('|').append(profileConf);
+
+		final List<String> files;
+		final Context cx = Context.enter();
+		try {
+			final ScriptableObject scope = cx.initStandardObjects();
+			final ConfResolver resolver = new ConfResolver(evalJson(cx, scope, moduleConf), evalJson(cx, scope, profileConf));
+			if (resolver.getProfile(profile) == null) {
+				throw new WinkBuildException("unknown profile: " + profile);
+			}
+			files = resolver.getDependenciesJsFiles(profile, target);
+			files.addAll(resolver.getModulesJsFiles(profile, modules, target));
+		} finally {
+			Context.exit();
+		}
+		for (final String f : files) {
+			try {
+				sb.append('|').append(f).append('=').append(FileUtil.getContentHash(FileUtil.readBytes(new File(arguments.get(Constants.WINK_PATH), f))));
+			} catch (final IOException e) {
+				throw new WinkBuildException("cannot read module file: " + f);
+			}
+		}
+		try {
+			return FileUtil.getContentHash(sb.toString().getBytes("UTF-8"));
+		} catch (final UnsupportedEncodingException e) {
+			throw new WinkBuildException(e);
+		}
+	}
+
+	/**
+	 * @param profile
+	 * @param target
+	 * @param modules
+	 * @return the content of the build
+	 * @throws WinkBuildException
+	 */
+	private byte[] build(final String profile, final String target, final List<String> modules) throws WinkBuildException {
+		final File workDir = new File(arguments.get(Constants.TEMPORARY_PATH), "combo");
+		FileUtil.deleteFile(workDir.getPath());
+		if (!workDir.mkdirs()) {
+			throw new WinkBuildException("cannot create combo directory: " + workDir.getPath());
+		}
+		final File comboFile = new File(workDir, "combo.js");
+
+		final Map<String, String> buildArguments = new HashMap<String, String>(arguments);
+		buildArguments.put(Constants.JS_MAIN_FILE, COMBO_SCRIPT);
+		buildArguments.put(Constants.PROFILES, profile);
+		buildArguments.put(Constants.TARGETS, target);
+		buildArguments.put(Constants.COMBO_MODULES, join(modules));
+		buildArguments.put(Constants.COMBO_FILE, comboFile.getPath());
+		buildArguments.put(Constants.TEMPORARY_PATH, new File(workDir, "tmp").getPath());
+		buildArguments.put(Constants.BUILD_DEST_PATH, new File(workDir, "builded").getPath());
+
+		try {
+			final WinkBuilder wb = new WinkBuilder();
+			wb.initialize(buildArguments);
+			wb.execute();
+			return FileUtil.readBytes(comboFile);
+		} catch (final IOException e) {
+			throw new WinkBuildException(e);
+		} catch (final RuntimeException e) {
+			// the errors of the build script
+			throw new WinkBuildException(e.getMessage());
+		} finally {
+			FileManager.clear();
+		}
+	}
+
+	/**
+	 * @param profile
+	 * @param target
+	 * @param modules
+	 * @param status
+	 */
+	private void log(final String profile, final String target, final List<String> modules, final String status) {
+		System.out.println("combo " + profile + "/" + target + " " + modules + ": " + status + " (" + builds + " builds, " + notModified + " not modified, cache: " + cache.getReport() + ")");
+	}
+
+	/**
+	 * @param exchange
+	 * @param status
+	 * @param message
+	 * @throws IOException
+	 */
+	private static void send(final HttpExchange exchange, final int status, final String message) throws IOException {
+		System.err.println(message);
+		final byte[] content = message.getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+		exchange.sendResponseHeaders(status, content.length);
+		final OutputStream out = exchange.getResponseBody();
+		out.write(content);
+		out.close();
+	}
+
+	/**
+	 * @param query
+	 * @return
+	 * @throws UnsupportedEncodingException
+	 */
+	private static Map<String, String> getParameters(final String query) throws UnsupportedEncodingException {
+		final Map<String, String> params = new HashMap<String, String>();
+		if (query == null) {
+			return params;
+		}
+		final StringTokenizer st = new StringTokenizer(query, "&");
+		while (st.hasMoreTokens()) {
+			final String param = st.nextToken();
+			final int idx = param.indexOf('=');
+			if (idx > 0) {
+				params.put(URLDecoder.decode(param.substring(0, idx), "UTF-8"), URLDecoder.decode(param.substring(idx + 1), "UTF-8"));
+			}
+		}
+		return params;
+	}
+
+	/**
+	 * @param value
+	 * @return
+	 */
+	private static List<String> split(final String value) {
+		final List<String> result = Common.newArrayList(1);
+		if (value == null) {
+			return result;
+		}
+		final StringTokenizer st = new StringTokenizer(value, ",");
+		while (st.hasMoreTokens()) {
+			final String token = st.nextToken().trim();
+			if (!token.equals("") && !result.contains(token)) {
+				result.add(token);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param values
+	 * @return
+	 */
+	private static String join(final List<String> values) {
+		final StringBuffer sb = new StringBuffer();
+		for (final String v : values) {
+			sb.append((sb.length() == 0) ? "" : ",").append(v);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @param cx
+	 * @param scope
+	 * @param json
+	 * @return
+	 */
+	private static Scriptable evalJson(final Context cx, final Scriptable scope, final String json) {
+		return (Scriptable) cx.evaluateString(scope, "(" + json + ")", "conf", 1, null);
+	}
+
+	/**
+	 * @param f
+	 * @return
+	 * @throws WinkBuildException
+	 */
+	private static String readString(final File f) throws WinkBuildException {
+		try {
+			return new String(FileUtil.readBytes(f), "UTF-8");
+		} catch (final IOException e) {
+			throw new WinkBuildException("cannot read configuration: " + f.getPath());
+		}
+	}
+
+	/**
+	 * @param arguments
+	 * @param name
+	 * @param defaultValue
+	 * @return
+	 * @throws WinkBuildException
+	 */
+	private static long getLong(final Map<String, String> arguments, final String name, final long defaultValue) throws WinkBuildException {
+		final String value = arguments.get(name);
+		if (value == null || value.trim().equals("")) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (final NumberFormatException e) {
+			throw new WinkBuildException("Bad Option [" + name + "], integer expected: " + value);
+		}
+	}
+}
@@ -36,11 +36,19 @@ public final class Constants {
 	public static final String WINK_PATH = "WINK_PATH";
 	public static final String TEMPORARY_PATH = "TEMPORARY_PATH";
 	public static final String BUILD_DEST_PATH = "BUILD_DEST_PATH";
+	public static final String SCRIPT_CACHE_PATH = "SCRIPT_CACHE_PATH";
 	/**
 	 * 
 	 */
 	public static final String TARGETS = "TARGETS";
 	public static final String PROFILES = "PROFILES";
+	/**
+	 * combo server
+	 */
+	public static final String COMBO_PORT = "COMBO_PORT";
+	public static final String COMBO_CACHE_SIZE = "COMBO_CACHE_SIZE";
+	public static final String COMBO_MODULES = "COMBO_MODULES";
+	public static final String COMBO_FILE = "COMBO_FILE";
 	/**
 	 * 
 	 */
@@ -59,12 +67,36 @@ public final class Constants {
 	public static final String OPTION_FROM_WINK_PATH = OPTION_PREFIX + "FROM_WINK_PATH";
 	public static final String OPTION_RELATIVE_PATH = OPTION_PREFIX + "RELATIVE_PATH";
 	public static final String OPTION_FILE_IN_MEMORY = OPTION_PREFIX + "FILE_IN_MEMORY";
+	public static final String OPTION_FILE_CACHE_SIZE = OPTION_PREFIX + "FILE_CACHE_SIZE";
+	public static final String OPTION_THREAD_COUNT = OPTION_PREFIX + "THREAD_COUNT";
+	public static final String OPTION_INLINE_IMAGES = OPTION_PREFIX + "INLINE_IMAGES";
+	public static final String OPTION_INLINE_IMAGE_MAX_SIZE = OPTION_PREFIX + "INLINE_IMAGE_MAX_SIZE";
+	public static final String OPTION_SPRITE_IMAGES = OPTION_PREFIX + "SPRITE_IMAGES";
+	public static final String OPTION_SPRITE_IMAGE_MAX_SIZE = OPTION_PREFIX + "SPRITE_IMAGE_MAX_SIZE";
+	public static final String OPTION_OPTIMIZE_IMAGES = OPTION_PREFIX + "OPTIMIZE_IMAGES";
+	public static final String OPTION_OPTIMIZE_CSS = OPTION_PREFIX + "OPTIMIZE_CSS";
+	public static final String OPTION_TREE_SHAKING = OPTION_PREFIX + "TREE_SHAKING";
+	public static final String OPTION_REPORT_DUPLICATE_BODIES = OPTION_PREFIX + "REPORT_DUPLICATE_BODIES";
+	public static final String OPTION_ALIAS_DUPLICATE_BODIES = OPTION_PREFIX + "ALIAS_DUPLICATE_BODIES";
+	public static final String OPTION_MANGLE_PRIVATE_MEMBERS = OPTION_PREFIX + "MANGLE_PRIVATE_MEMBERS";
+	public static final String OPTION_SPLIT_BUILD_FILE = OPTION_PREFIX + "SPLIT_BUILD_FILE";
+	public static final String OPTION_SPLIT_MAX_SIZE = OPTION_PREFIX + "SPLIT_MAX_SIZE";
+	public static final String OPTION_SPLIT_LOCALES = OPTION_PREFIX + "SPLIT_LOCALES";
+	public static final String OPTION_SHARED_CHUNKS = OPTION_PREFIX + "SHARED_CHUNKS";
+	public static final String OPTION_SOURCE_MAP = OPTION_PREFIX + "SOURCE_MAP";
+	public static final String OPTION_SORT_DEPENDENCIES = OPTION_PREFIX + "SORT_DEPENDENCIES";
+	public static final String OPTION_BUILD_REPORT = OPTION_PREFIX + "BUILD_REPORT";
+	public static final String OPTION_LOADER_MANIFEST = OPTION_PREFIX + "LOADER_MANIFEST";
+	public static final String OPTION_OPTIMIZATION_LEVEL = OPTION_PREFIX + "OPTIMIZATION_LEVEL";
 
 	/**
 	 * 
 	 */
-	public static final String[] NAMED_PROPERTIES = new String[] { JS_PATH, JS_MAIN_FILE, CONF_PATH, MODULE_CONF_FILE, PROFILES_CONF_FILE, WINK_PATH, TEMPORARY_PATH, BUILD_DEST_PATH, TARGETS, PROFILES, OPTION_CLEAN_TEMPORARY, OPTION_DELETE_DUPLICATES, OPTION_FILTER_FEATURE, OPTION_PRINT_EXTENSIONS,
-			OPTION_PRINT_MODEL, OPTION_FAIL_ON_UNMANAGED_SYNTAX, OPTION_WARN_ON_UNMANAGED_SYNTAX, OPTION_FAIL_ON_UNRESOLVED_NAMESPACE, OPTION_DELETE_VALIDATE_PROPERTIES, OPTION_DELETE_LOGS, OPTION_REWRITE_IMAGE_URL, OPTION_FROM_WINK_PATH, OPTION_RELATIVE_PATH, OPTION_FILE_IN_MEMORY };
+	public static final String[] NAMED_PROPERTIES = new String[] { JS_PATH, JS_MAIN_FILE, CONF_PATH, MODULE_CONF_FILE, PROFILES_CONF_FILE, WINK_PATH, TEMPORARY_PATH, BUILD_DEST_PATH, SCRIPT_CACHE_PATH, TARGETS, PROFILES, COMBO_MODULES, COMBO_FILE, OPTION_CLEAN_TEMPORARY, OPTION_DELETE_DUPLICATES, OPTION_FILTER_FEATURE, OPTION_PRINT_EXTENSIONS,
+			OPTION_PRINT_MODEL, OPTION_FAIL_ON_UNMANAGED_SYNTAX, OPTION_WARN_ON_UNMANAGED_SYNTAX, OPTION_FAIL_ON_UNRESOLVED_NAMESPACE, OPTION_DELETE_VALIDATE_PROPERTIES, OPTION_DELETE_LOGS, OPTION_REWRITE_IMAGE_URL, OPTION_FROM_WINK_PATH, OPTION_RELATIVE_PATH, OPTION_FILE_IN_MEMORY, OPTION_FILE_CACHE_SIZE,
+			OPTION_THREAD_COUNT, OPTION_INLINE_IMAGES, OPTION_INLINE_IMAGE_MAX_SIZE, OPTION_SPRITE_IMAGES, OPTION_SPRITE_IMAGE_MAX_SIZE, OPTION_OPTIMIZE_IMAGES, OPTION_OPTIMIZE_CSS, OPTION_TREE_SHAKING, OPTION_REPORT_DUPLICATE_BODIES, OPTION_ALIAS_DUPLICATE_BODIES, OPTION_MANGLE_PRIVATE_MEMBERS,
+			OPTION_SPLIT_BUILD_FILE, OPTION_SPLIT_MAX_SIZE, OPTION_SPLIT_LOCALES,
+			OPTION_SHARED_CHUNKS, OPTION_SOURCE_MAP, OPTION_SORT_DEPENDENCIES, OPTION_BUILD_REPORT, OPTION_LOADER_MANIFEST, OPTION_OPTIMIZATION_LEVEL };
 
 	/**
 	 * 
@@ -87,9 +119,39 @@ public final class Constants {
 	 */
 	public static String relativePath = "";
 	/**
-	 * 
+	 * keeps all the file contents in memory, whatever the file cache size
 	 */
 	public static boolean fileInMemory = false;
+	/**
+	 * size in bytes of the cache of the file contents, 0 (default) to read the
+	 * files at each access
+	 */
+	public static int fileCacheSize = 0;
+	/**
+	 * number of threads used by parallel build stages, 0 means one per
+	 * available processor
+	 */
+	public static int threadCount = 0;
+	/**
+	 * size in bytes under which a CSS image is inlined as a data URI
+	 */
+	public static int inlineImageMaxSize = 4096;
+	/**
+	 * size in bytes under which a CSS image is packed into a sprite sheet
+	 */
+	public static int spriteImageMaxSize = 8192;
+	/**
+	 * size in bytes of the parts of a split builded file
+	 */
+	public static int splitMaxSize = 65536;
+	/**
+	 * Rhino optimization level of the build scripts, -1 to interpret them
+	 */
+	public static int optimizationLevel = -1;
+	/**
+	 * directory of the compiled build scripts, none if empty
+	 */
+	public static String scriptCachePath = "";
 	/**
 	 * 
 	 */
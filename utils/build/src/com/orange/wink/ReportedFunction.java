@@ -0,0 +1,127 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+package com.orange.wink;
+
+import java.io.File;
+import java.util.List;
+
+import org.mozilla.javascript.BaseFunction;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.NativeArray;
+import org.mozilla.javascript.Scriptable;
+
+import com.orange.wink.util.BuildReport;
+import com.orange.wink.util.Common;
+
+/**
+ * Measures the calls of a builder function in the build report. The files
+ * given as arguments, or returned, are the files processed by the stage; a
+ * returned file is a copy of the first file argument, and the returned files
+ * are the copies of the file arguments, one each.
+ * 
+ * @author Sylvain Lalande
+ * 
+ */
+class ReportedFunction extends BaseFunction {
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * 
+	 */
+	private final String name;
+	private final Function function;
+
+	/**
+	 * @param name
+	 * @param function
+	 */
+	ReportedFunction(final String name, final Function function) {
+		this.name = name;
+		this.function = function;
+	}
+
+	/**
+	 * @see org.mozilla.javascript.BaseFunction#call(org.mozilla.javascript.Context,
+	 *      org.mozilla.javascript.Scriptable,
+	 *      org.mozilla.javascript.Scriptable, java.lang.Object[])
+	 */
+	@Override
+	public Object call(final Context cx, final Scriptable scope, final Scriptable thisObj, final Object[] args) {
+		final List<String> files = getFiles(args);
+		final BuildReport.Measure measure = BuildReport.begin(name, files);
+		Object result = null;
+		try {
+			result = function.call(cx, scope, thisObj, args);
+			return result;
+		} finally {
+			if (result instanceof String && isFile(result)) {
+				files.add((String) result);
+				final BuildReport report = BuildReport.getCurrent();
+				if (report != null && files.size() > 1) {
+					report.addCopy((String) result, files.get(0));
+				}
+			} else if (result instanceof NativeArray) {
+				final List<String> copies = getFiles(new Object[] { result });
+				final BuildReport report = BuildReport.getCurrent();
+				if (report != null && copies.size() == files.size()) {
+					for (int i = 0; i < copies.size(); i++) {
+						report.addCopy(copies.get(i), files.get(i));
+					}
+				}
+				files.addAll(copies);
+			}
+			BuildReport.end(measure, files);
+		}
+	}
+
+	/**
+	 * @param args
+	 * @return the files given as arguments
+	 */
+	private static List<String> getFiles(final Object[] args) {
+		final List<String> files = Common.newArrayList(1);
+		for (final Object arg : args) {
+			if (arg instanceof String && isFile(arg)) {
+				files.add((String) arg);
+			} else if (arg instanceof NativeArray) {
+				final NativeArray array = (NativeArray) arg;
+				for (int i = 0; i < array.getLength(); i++) {
+					final Object o = array.get(i, array);
+					if (o instanceof String && isFile(o)) {
+						files.add((String) o);
+					}
+				}
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * @param o
+	 * @return
+	 */
+	private static boolean isFile(final Object o) {
+		final String path = (String) o;
+		return path.length() > 0 && new File(path).isFile();
+	}
+
+	/**
+	 * @see org.mozilla.javascript.BaseFunction#getFunctionName()
+	 */
+	@Override
+	public String getFunctionName() {
+		return name;
+	}
+}
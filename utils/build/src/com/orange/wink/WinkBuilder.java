@@ -11,6 +11,7 @@
 package com.orange.wink;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -21,11 +22,18 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
 import org.mozilla.javascript.Scriptable;
 import org.mozilla.javascript.ScriptableObject;
 
+import com.orange.wink.css.CssImageInliner;
+import com.orange.wink.css.CssImageOptimizer;
+import com.orange.wink.css.CssSpriteBuilder;
+import com.orange.wink.css.CssUrlRewriter;
 import com.orange.wink.exception.WinkBuildException;
+import com.orange.wink.util.BuildReport;
 import com.orange.wink.util.Common;
+import com.orange.wink.util.FileObject;
 
 /**
  * @author Sylvain LALANDE
@@ -54,23 +62,88 @@ public class WinkBuilder {
 		if (getProperty(Constants.OPTION_FILE_IN_MEMORY) != "") {
 			Constants.fileInMemory = Boolean.valueOf(getProperty(Constants.OPTION_FILE_IN_MEMORY));
 		}
+		Constants.fileCacheSize = getIntProperty(Constants.OPTION_FILE_CACHE_SIZE, Constants.fileCacheSize);
+		if (Constants.fileCacheSize < 0) {
+			throw new WinkBuildException("Bad Option [" + Constants.OPTION_FILE_CACHE_SIZE + "], positive size expected: " + Constants.fileCacheSize);
+		}
+		FileObject.setCacheSize(Constants.fileInMemory ? Long.MAX_VALUE : Constants.fileCacheSize);
+		Constants.threadCount = getIntProperty(Constants.OPTION_THREAD_COUNT, Constants.threadCount);
+		Constants.inlineImageMaxSize = getIntProperty(Constants.OPTION_INLINE_IMAGE_MAX_SIZE, Constants.inlineImageMaxSize);
+		Constants.spriteImageMaxSize = getIntProperty(Constants.OPTION_SPRITE_IMAGE_MAX_SIZE, Constants.spriteImageMaxSize);
+		Constants.splitMaxSize = getIntProperty(Constants.OPTION_SPLIT_MAX_SIZE, Constants.splitMaxSize);
+		if (Constants.splitMaxSize <= 0) {
+			throw new WinkBuildException("Bad Option [" + Constants.OPTION_SPLIT_MAX_SIZE + "], positive size expected: " + Constants.splitMaxSize);
+		}
+		Constants.optimizationLevel = getIntProperty(Constants.OPTION_OPTIMIZATION_LEVEL, Constants.optimizationLevel);
+		if (!Context.isValidOptimizationLevel(Constants.optimizationLevel)) {
+			throw new WinkBuildException("Bad Option [" + Constants.OPTION_OPTIMIZATION_LEVEL + "], level between -1 and 9 expected: " + Constants.optimizationLevel);
+		}
+		Constants.scriptCachePath = getProperty(Constants.SCRIPT_CACHE_PATH);
+		// the canonical paths and the images read are kept during one build only
+		CssUrlRewriter.clear();
+		CssImageInliner.clear();
+		CssImageOptimizer.clear();
+		CssSpriteBuilder.clear();
 
 		final Context cx = Context.enter();
-		cx.setOptimizationLevel(-1);
+		cx.setOptimizationLevel(Constants.optimizationLevel);
 		final ScriptableObject scope = cx.initStandardObjects();
 
+		BuildReport report = null;
+		if (Boolean.valueOf(getProperty(Constants.OPTION_BUILD_REPORT)).booleanValue()) {
+			report = new BuildReport(getProperty(Constants.JS_MAIN_FILE), getProperty(Constants.WINK_PATH));
+		}
+		BuildReport.setCurrent(report);
+
 		putFunctions(cx, scope);
 		putConf(cx, scope);
 
 		final String mainFile = getProperty(Constants.JS_PATH) + File.separator + getProperty(Constants.JS_MAIN_FILE);
-		WinkBuilderHelper.executeJsFile(cx, scope, mainFile);
+		try {
+			WinkBuilderHelper.executeJsFile(cx, scope, mainFile);
+			if (report != null) {
+				System.out.println("file cache: " + FileObject.getCacheReport());
+				writeReport(report);
+			}
+		} finally {
+			BuildReport.setCurrent(null);
+		}
 	}
 
 	/**
-	 * @param propValues
+	 * @param report
+	 * @throws WinkBuildException
+	 */
+	private void writeReport(final BuildReport report) throws WinkBuildException {
+		report.close();
+		String name = new File(getProperty(Constants.JS_MAIN_FILE)).getName();
+		if (name.endsWith(".js")) {
+			name = name.substring(0, name.length() - 3);
+		}
+		final File destDir = new File(getProperty(Constants.BUILD_DEST_PATH));
+		if (!destDir.isDirectory() && !destDir.mkdirs()) {
+			throw new WinkBuildException("cannot create build directory: " + destDir.getPath());
+		}
+		final File reportFile = new File(destDir, name + BuildReport.REPORT_SUFFIX);
+		try {
+			report.write(reportFile);
+		} catch (final IOException e) {
+			throw new WinkBuildException(e);
+		}
+		System.out.println("build report: " + reportFile.getPath());
+	}
+
+	/**
+	 * @param args
 	 */
 	public void initialize(final String[] args) throws WinkBuildException {
-		final Map<String, String> propValues = getArguments(args);
+		initialize(getArguments(args));
+	}
+
+	/**
+	 * @param propValues
+	 */
+	void initialize(final Map<String, String> propValues) {
 		properties = new HashMap<String, String>();
 		for (final String key : Constants.NAMED_PROPERTIES) {
 			String value = "";
@@ -86,7 +159,7 @@ public class WinkBuilder {
 	 * @return
 	 * @throws WinkBuildException
 	 */
-	private Map<String, String> getArguments(final String[] args) throws WinkBuildException {
+	static Map<String, String> getArguments(final String[] args) throws WinkBuildException {
 		final String optionExpr = "(-)(.*)(=)(.*)";
 		final Pattern optionPattern = Pattern.compile(optionExpr);
 
@@ -109,13 +182,41 @@ public class WinkBuilder {
 		return properties.get(name);
 	}
 
+	/**
+	 * @param name
+	 * @param defaultValue
+	 * @return
+	 * @throws WinkBuildException
+	 */
+	private int getIntProperty(final String name, final int defaultValue) throws WinkBuildException {
+		final String value = getProperty(name);
+		if (value == null || value.trim().equals("")) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (final NumberFormatException e) {
+			throw new WinkBuildException("Bad Option [" + name + "], integer expected: " + value);
+		}
+	}
+
 	/**
 	 * @param cx
 	 * @param scope
 	 */
 	private void putFunctions(final Context cx, final ScriptableObject scope) {
-		final String[] functions = { "print", "error", "load", "isReadableFile", "isDirectory", "createDirectory", "deleteFile", "readFile", "copyFile", "concatenateFiles", "parseFiles", "applyFilterFeature", "deleteValidateProperties", "deleteLogs", "applyBadSyntaxFilter", "rewriteImageURL" };
+		final String[] functions = { "print", "error", "load", "isReadableFile", "isDirectory", "createDirectory", "deleteFile", "readFile", "writeFile", "copyFile", "copyFiles", "concatenateFiles", "parseFiles", "applyFilterFeature", "deleteValidateProperties", "deleteLogs", "applyBadSyntaxFilter", "rewriteImageURL", "inlineImages", "spriteImages", "optimizeImages", "optimizeCss", "precompressFiles", "composeSourceMaps", "sortFiles", "reportSection", "writeLoaderManifest", "createConfResolver", "splitBuildFile", "writeLocaleBundles" };
 		scope.defineFunctionProperties(functions, WinkBuilderHelper.class, ScriptableObject.DONTENUM);
+
+		if (BuildReport.getCurrent() != null) {
+			for (final String name : functions) {
+				if (name.equals("print") || name.equals("error") || name.equals("load") || name.equals("reportSection")) {
+					continue;
+				}
+				final Function function = (Function) ScriptableObject.getProperty(scope, name);
+				scope.defineProperty(name, new ReportedFunction(name, function), ScriptableObject.DONTENUM);
+			}
+		}
 	}
 
 	/**
@@ -12,10 +12,8 @@ package com.orange.wink;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.io.Reader;
 import java.io.StringReader;
 import java.lang.reflect.InvocationTargetException;
 import java.util.HashMap;
@@ -33,14 +31,29 @@ import org.mozilla.javascript.Script;
 import org.mozilla.javascript.Scriptable;
 import org.mozilla.javascript.ScriptableObject;
 
+import com.orange.wink.css.CssImageInliner;
+import com.orange.wink.css.CssImageOptimizer;
+import com.orange.wink.css.CssOptimizer;
+import com.orange.wink.css.CssSpriteBuilder;
+import com.orange.wink.css.CssUrlRewriter;
 import com.orange.wink.exception.WinkBuildException;
+import com.orange.wink.parse.DependencyGraph;
 import com.orange.wink.parse.ParserUtils;
 import com.orange.wink.parse.WinkJsModel;
 import com.orange.wink.parse.WinkParser;
+import com.orange.wink.util.BuildReport;
+import com.orange.wink.util.BundleSplitter;
 import com.orange.wink.util.Common;
+import com.orange.wink.util.ConfResolver;
 import com.orange.wink.util.FileManager;
 import com.orange.wink.util.FileObject;
 import com.orange.wink.util.FileUtil;
+import com.orange.wink.util.GzipCompressor;
+import com.orange.wink.util.LoaderManifest;
+import com.orange.wink.util.LocaleBundler;
+import com.orange.wink.util.ScriptCache;
+import com.orange.wink.util.SourceMap;
+import com.orange.wink.util.WinkJsConf;
 
 /**
  * @author Sylvain Lalande
@@ -54,16 +67,8 @@ public class WinkBuilderHelper {
 	 * @throws WinkBuildException
 	 */
 	public static void executeJsFile(final Context cx, final Scriptable thisObj, final String filename) throws WinkBuildException {
-		try {
-			final Reader buildFile = new FileReader(new File(filename));
-			final Script sc = cx.compileReader(buildFile, filename, 1, null);
-			sc.exec(cx, thisObj);
-			buildFile.close();
-		} catch (final FileNotFoundException e) {
-			throw new WinkBuildException(e);
-		} catch (final IOException e) {
-			throw new WinkBuildException(e);
-		}
+		final Script sc = ScriptCache.getScript(cx, filename);
+		sc.exec(cx, thisObj);
 	}
 
 	/**
@@ -191,6 +196,24 @@ public class WinkBuilderHelper {
 		}
 	}
 
+	/**
+	 * @param cx
+	 * @param thisObj
+	 * @param args
+	 * @param funObj
+	 * @throws WinkBuildException
+	 */
+	public static void writeFile(final Context cx, final Scriptable thisObj, final Object[] args, final Function funObj) throws WinkBuildException {
+		if (args.length != 2 || args[0] == null || args[1] == null || !(args[0] instanceof String) || !(args[1] instanceof String)) {
+			throw new WinkBuildException("writeFile() error: bad arguments");
+		}
+		try {
+			FileManager.writeIntoFile((String) args[0], (String) args[1]);
+		} catch (final IOException e) {
+			throw new WinkBuildException(e);
+		}
+	}
+
 	/**
 	 * @param cx
 	 * @param thisObj
@@ -216,11 +239,7 @@ public class WinkBuilderHelper {
 			throw new WinkBuildException("bad output directory: " + diroutS);
 		}
 
-		final String finName = fin.getName();
-		final int dotPos = finName.lastIndexOf(".");
-		final String ext = finName.substring(dotPos);
-		final String fdestName = finName.substring(0, dotPos) + destIdentifier + ext;
-		final File fout = new File(dirOut, fdestName);
+		final File fout = getCopyFile(fin, destIdentifier, dirOut);
 
 		try {
 			FileManager.copyFile(fin, fout);
@@ -236,6 +255,60 @@ public class WinkBuilderHelper {
 		}
 	}
 
+	/**
+	 * Copies the files concurrently, the identifier of each copy following
+	 * the identifier of the previous one
+	 * 
+	 * @param cx
+	 * @param thisObj
+	 * @param args
+	 * @param funObj
+	 * @return the copies, in the order of the files
+	 * @throws WinkBuildException
+	 */
+	public static Scriptable copyFiles(final Context cx, final Scriptable thisObj, final Object[] args, final Function funObj) throws WinkBuildException {
+		if (args.length != 3 || args[0] == null || args[1] == null || args[2] == null || !(args[0] instanceof NativeArray) || !(args[1] instanceof Number) || !(args[2] instanceof String)) {
+			throw new WinkBuildException("copyFiles() error: bad arguments");
+		}
+		final List<String> files = convertNativeArrayIntoList((NativeArray) args[0]);
+		final int firstIdentifier = ((Number) args[1]).intValue();
+		final String diroutS = (String) args[2];
+		final File dirOut = new File(diroutS);
+
+		if (!dirOut.exists() || !dirOut.isDirectory() || !dirOut.canWrite()) {
+			throw new WinkBuildException("bad output directory: " + diroutS);
+		}
+
+		final List<File> fins = Common.newArrayList(files.size());
+		final List<File> fouts = Common.newArrayList(files.size());
+		for (int i = 0; i < files.size(); i++) {
+			final File fin = new File(files.get(i));
+			if (!fin.exists() || !fin.isFile() || !fin.canRead()) {
+				throw new WinkBuildException("bad input file: " + files.get(i));
+			}
+			fins.add(fin);
+			fouts.add(getCopyFile(fin, String.valueOf(firstIdentifier + i), dirOut));
+		}
+
+		final List<String> copies = FileManager.copyFiles(fins, fouts);
+		return cx.newArray(ScriptableObject.getTopLevelScope(thisObj), copies.toArray());
+	}
+
+	/**
+	 * @param fin
+	 * @param destIdentifier
+	 * @param dirOut
+	 * @return the copy of the file in the directory, named after the file and
+	 *         the identifier
+	 */
+	private static File getCopyFile(final File fin, final String destIdentifier, final File dirOut) {
+		final String finName = fin.getName();
+		final int dotPos = finName.lastIndexOf(".");
+		final String ext = finName.substring(dotPos);
+		final String fdestName = finName.substring(0, dotPos) + destIdentifier + ext;
+		return new File(dirOut, fdestName);
+	}
+
 	/**
 	 * @param cx
 	 * @param thisObj
@@ -244,7 +317,7 @@ public class WinkBuilderHelper {
 	 * @throws WinkBuildException
 	 */
 	public static void concatenateFiles(final Context cx, final Scriptable thisObj, final Object[] args, final Function funObj) throws WinkBuildException {
-		if (args.length != 2 || args[0] == null || args[1] == null || !(args[0] instanceof NativeArray) || !(args[1] instanceof String)) {
+		if (args.length < 2 || args.length > 3 || args[0] == null || args[1] == null || !(args[0] instanceof NativeArray) || !(args[1] instanceof String)) {
 			throw new WinkBuildException("concatenateFiles() error: bad arguments");
 		}
 		final List<String> files = convertNativeArrayIntoList((NativeArray) args[0]);
@@ -252,8 +325,23 @@ public class WinkBuilderHelper {
 		// System.out.println("concatenateFiles:" + destFile);
 		// System.out.println("files:" + files);
 
+		List<String> sources = null;
+		if (args.length == 3 && args[2] instanceof NativeArray) {
+			sources = convertNativeArrayIntoList((NativeArray) args[2]);
+			if (sources.size() != files.size()) {
+				throw new WinkBuildException("concatenateFiles() error: files and sources count differ");
+			}
+		}
+
 		try {
-			FileManager.concatenateFiles(files, destFile);
+			if (sources == null) {
+				FileManager.concatenateFiles(files, destFile);
+			} else {
+				final File dest = new File(destFile);
+				final String mapName = dest.getName() + SourceMap.MAP_EXTENSION;
+				FileManager.concatenateFiles(files, destFile, SourceMap.MAPPING_URL_COMMENT + mapName);
+				SourceMap.writeIndexMap(files, sources, new File(dest.getParentFile(), mapName), dest.getName());
+			}
 		} catch (final FileNotFoundException e) {
 			throw new WinkBuildException(e);
 		} catch (final IOException e) {
@@ -291,6 +379,8 @@ public class WinkBuilderHelper {
 			final WinkJsModel winkJsModel = (WinkJsModel) cx.newObject(thisObj, "WinkJsModel");
 			winkJsModel.setCx(cx);
 			winkJsModel.setGlobalScope(wp.getGlobalScope());
+			winkJsModel.setFileScopes(wp.getFileScopes());
+			winkJsModel.setSourceFiles(filesToParse);
 			// ScriptableObject.putProperty(thisObj, "jsModel",
 			// Context.javaToJS(winkJsModel, thisObj));
 			return winkJsModel;
@@ -343,7 +433,7 @@ public class WinkBuilderHelper {
 					String featureValue = "";
 					if (featureMap.containsKey(feature)) {
 						featureValue = featureMap.get(feature).toString();
-						m.appendReplacement(contentReplaced, featureValue);
+						m.appendReplacement(contentReplaced, keepLines(m.group(0), featureValue));
 					}
 				}
 				m.appendTail(contentReplaced);
@@ -373,6 +463,7 @@ public class WinkBuilderHelper {
 		// System.out.println("deleteValidateProperties: " + files);
 		final String validateIdentifier = "_validateProperties";
 		final String replacement = "{\nreturn true;\n}";
+		final String shortReplacement = "{ return true; }";
 
 		for (final String filename : files) {
 			try {
@@ -432,7 +523,11 @@ public class WinkBuilderHelper {
 
 					contentReplaced.append(fo.getLinesAsString(ptrline, (s - 1)));
 					contentReplaced.append(lines.substring(0, charStart));
-					contentReplaced.append(replacement);
+					if (countLineFeeds(block) < countLineFeeds(replacement)) {
+						contentReplaced.append(keepLines(block, shortReplacement));
+					} else {
+						contentReplaced.append(keepLines(block, replacement));
+					}
 					contentReplaced.append(lines.substring(charEnd));
 					ptrline = e + 1;
 				}
@@ -470,7 +565,7 @@ public class WinkBuilderHelper {
 				while (m.find()) {
 					// System.out.println("delete log: " + m.group(0) + " in " +
 					// file);
-					m.appendReplacement(contentReplaced, "");
+					m.appendReplacement(contentReplaced, keepLines(m.group(0), ""));
 				}
 				m.appendTail(contentReplaced);
 
@@ -536,83 +631,323 @@ public class WinkBuilderHelper {
 		final List<String> tmpfiles = convertNativeArrayIntoList((NativeArray) args[1]);
 		final String basePath = (String) args[2];
 
-		final String winkUrlExpr = "(url[\n\r ]*\\([\n\r ]*)([\"']?)([^)\"']+)([\"']?)([)])";
-		final Pattern winkUrlPattern = Pattern.compile(winkUrlExpr, Pattern.MULTILINE);
-		final int leftGroup = 1;
-		final int urlGroup = 3;
-		final int rightGroup = 5;
+		if (files.size() != tmpfiles.size()) {
+			throw new WinkBuildException("rewriteImageURL() error: files and temporary files count differ");
+		}
+		CssUrlRewriter.getInstance(basePath).rewrite(files, tmpfiles);
+	}
+
+	/**
+	 * @param cx
+	 * @param thisObj
+	 * @param args
+	 * @param funObj
+	 * @return the inlining report
+	 * @throws WinkBuildException
+	 */
+	public static String inlineImages(final Context cx, final Scriptable thisObj, final Object[] args, final Function funObj) throws WinkBuildException {
+		if (args.length != 2 || args[0] == null || args[1] == null || !(args[0] instanceof NativeArray) || !(args[1] instanceof NativeArray)) {
+			throw new WinkBuildException("inlineImages() error: bad arguments");
+		}
+
+		final List<String> files = convertNativeArrayIntoList((NativeArray) args[0]);
+		final List<String> tmpfiles = convertNativeArrayIntoList((NativeArray) args[1]);
+
+		if (files.size() != tmpfiles.size()) {
+			throw new WinkBuildException("inlineImages() error: files and temporary files count differ");
+		}
+		final CssImageInliner inliner = new CssImageInliner(Constants.inlineImageMaxSize);
+		inliner.inline(files, tmpfiles);
+		return inliner.getReport();
+	}
+
+	/**
+	 * @param cx
+	 * @param thisObj
+	 * @param args
+	 * @param funObj
+	 * @return the sprite report
+	 * @throws WinkBuildException
+	 */
+	public static String spriteImages(final Context cx, final Scriptable thisObj, final Object[] args, final Function funObj) throws WinkBuildException {
+		if (args.length != 3 || args[0] == null || args[1] == null || args[2] == null || !(args[0] instanceof NativeArray) || !(args[1] instanceof NativeArray) || !(args[2] instanceof String)) {
+			throw new WinkBuildException("spriteImages() error: bad arguments");
+		}
+
+		final List<String> files = convertNativeArrayIntoList((NativeArray) args[0]);
+		final List<String> tmpfiles = convertNativeArrayIntoList((NativeArray) args[1]);
+
+		if (files.size() != tmpfiles.size()) {
+			throw new WinkBuildException("spriteImages() error: files and temporary files count differ");
+		}
+		final CssSpriteBuilder builder = new CssSpriteBuilder(Constants.spriteImageMaxSize, (String) args[2]);
+		builder.build(files, tmpfiles);
+		return builder.getReport();
+	}
+
+	/**
+	 * @param cx
+	 * @param thisObj
+	 * @param args
+	 * @param funObj
+	 * @return the image optimization report
+	 * @throws WinkBuildException
+	 */
+	public static String optimizeImages(final Context cx, final Scriptable thisObj, final Object[] args, final Function funObj) throws WinkBuildException {
+		if (args.length != 3 || args[0] == null || args[1] == null || args[2] == null || !(args[0] instanceof NativeArray) || !(args[1] instanceof NativeArray) || !(args[2] instanceof String)) {
+			throw new WinkBuildException("optimizeImages() error: bad arguments");
+		}
+
+		final List<String> files = convertNativeArrayIntoList((NativeArray) args[0]);
+		final List<String> tmpfiles = convertNativeArrayIntoList((NativeArray) args[1]);
+
+		if (files.size() != tmpfiles.size()) {
+			throw new WinkBuildException("optimizeImages() error: files and temporary files count differ");
+		}
+		final CssImageOptimizer optimizer = new CssImageOptimizer((String) args[2]);
+		optimizer.optimize(files, tmpfiles);
+		return optimizer.getReport();
+	}
+
+	/**
+	 * @param cx
+	 * @param thisObj
+	 * @param args
+	 * @param funObj
+	 * @return the optimization report
+	 * @throws WinkBuildException
+	 */
+	public static String optimizeCss(final Context cx, final Scriptable thisObj, final Object[] args, final Function funObj) throws WinkBuildException {
+		if (args.length != 1 || args[0] == null || !(args[0] instanceof String)) {
+			throw new WinkBuildException("optimizeCss() error: bad arguments");
+		}
+		final CssOptimizer optimizer = new CssOptimizer();
+		optimizer.optimizeFile((String) args[0]);
+		return optimizer.getReport();
+	}
+
+	/**
+	 * @param cx
+	 * @param thisObj
+	 * @param args
+	 * @param funObj
+	 * @return the compression report
+	 * @throws WinkBuildException
+	 */
+	public static String precompressFiles(final Context cx, final Scriptable thisObj, final Object[] args, final Function funObj) throws WinkBuildException {
+		if (args.length != 2 || args[0] == null || args[1] == null || !(args[0] instanceof String) || !(args[1] instanceof String)) {
+			throw new WinkBuildException("precompressFiles() error: bad arguments");
+		}
+		final String directory = (String) args[0];
+		final String cacheDirectory = (String) args[1];
+
+		final GzipCompressor compressor = new GzipCompressor(cacheDirectory.equals("") ? null : new File(cacheDirectory));
+		return compressor.compressDirectory(new File(directory));
+	}
 
-		File baseFile;
-		String baseCanonical;
+	/**
+	 * @param cx
+	 * @param thisObj
+	 * @param args
+	 * @param funObj
+	 * @return the composition report
+	 * @throws WinkBuildException
+	 */
+	public static String composeSourceMaps(final Context cx, final Scriptable thisObj, final Object[] args, final Function funObj) throws WinkBuildException {
+		if (args.length != 1 || args[0] == null || !(args[0] instanceof String)) {
+			throw new WinkBuildException("composeSourceMaps() error: bad arguments");
+		}
+		final File directory = new File((String) args[0]);
+		if (!directory.isDirectory()) {
+			throw new WinkBuildException("bad builded directory: " + directory.getPath());
+		}
 		try {
-			baseFile = new File(basePath);
-			baseCanonical = baseFile.getCanonicalPath();
+			return SourceMap.composeDirectory(directory);
 		} catch (final IOException e) {
 			throw new WinkBuildException(e);
 		}
+	}
 
-		for (int i = 0; i < files.size(); i++) {
-			final String filename = files.get(i);
-			final String tmpfilename = tmpfiles.get(i);
+	/**
+	 * @param cx
+	 * @param thisObj
+	 * @param args
+	 * @param funObj
+	 * @return the sorted files, the independent groups of files and the
+	 *         report
+	 * @throws WinkBuildException
+	 */
+	public static Scriptable sortFiles(final Context cx, final Scriptable thisObj, final Object[] args, final Function funObj) throws WinkBuildException {
+		if (args.length != 1 || args[0] == null || !(args[0] instanceof NativeArray)) {
+			throw new WinkBuildException("sortFiles() error: bad arguments");
+		}
+		final List<String> files = convertNativeArrayIntoList((NativeArray) args[0]);
 
-			try {
-				final StringBuffer fileContent = new StringBuffer().append(FileManager.getFileContent(tmpfilename));
-				final File file = new File(filename);
-				final File parent = file.getParentFile();
+		final DependencyGraph graph = new DependencyGraph(files);
+		graph.build();
+		final List<String> sorted = graph.sort();
+
+		final Scriptable scope = ScriptableObject.getTopLevelScope(thisObj);
+		final List<List<String>> groups = graph.getGroups();
+		final Object[] sctGroups = new Object[groups.size()];
+		for (int i = 0; i < groups.size(); i++) {
+			sctGroups[i] = cx.newArray(scope, groups.get(i).toArray());
+		}
+		final Scriptable result = cx.newObject(scope);
+		ScriptableObject.putProperty(result, "files", cx.newArray(scope, sorted.toArray()));
+		ScriptableObject.putProperty(result, "groups", cx.newArray(scope, sctGroups));
+		ScriptableObject.putProperty(result, "report", graph.getReport());
+		return result;
+	}
 
-				final Matcher m = winkUrlPattern.matcher(fileContent);
-				final StringBuffer contentReplaced = new StringBuffer();
-				while (m.find()) {
-					final String url = m.group(urlGroup);
-					if (url.equals("")) {
-						continue;
-					}
-					if (url.contains("data:")) {
-						continue;
-					}
-					if (url.contains("http:")) {
-						continue;
-					}
+	/**
+	 * @param cx
+	 * @param thisObj
+	 * @param args
+	 * @param funObj
+	 * @return the manifest report
+	 * @throws WinkBuildException
+	 */
+	public static String writeLoaderManifest(final Context cx, final Scriptable thisObj, final Object[] args, final Function funObj) throws WinkBuildException {
+		if (args.length != 5 || args[0] == null || args[1] == null || args[2] == null || args[3] == null || args[4] == null || !(args[0] instanceof String) || !(args[1] instanceof String)
+				|| !(args[2] instanceof String) || !(args[3] instanceof NativeArray) || !(args[4] instanceof String)) {
+			throw new WinkBuildException("writeLoaderManifest() error: bad arguments");
+		}
+		final List<String> files = convertNativeArrayIntoList((NativeArray) args[3]);
+		final File manifestFile = new File((String) args[4]);
 
-					// System.out.println("find ------------------ : \n" + url +
-					// " in " + file.getAbsolutePath());
+		final LoaderManifest manifest = new LoaderManifest((String) args[0], (String) args[1]);
+		final long size = manifest.write((String) args[2], files, manifestFile);
+		return "loader manifest: " + manifestFile.getName() + " (" + files.size() + " files, " + size + " bytes)";
+	}
 
-					final File cssLink = new File(parent, url);
-					final String cssLinkCanonical = cssLink.getCanonicalPath();
-					File ptr = new File(cssLinkCanonical);
+	/**
+	 * @param cx
+	 * @param thisObj
+	 * @param args
+	 * @param funObj
+	 * @return the split report
+	 * @throws WinkBuildException
+	 */
+	public static String splitBuildFile(final Context cx, final Scriptable thisObj, final Object[] args, final Function funObj) throws WinkBuildException {
+		if (args.length != 6 || args[0] == null || args[1] == null || args[2] == null || args[3] == null || args[4] == null || !(args[0] instanceof String) || !(args[1] instanceof String)
+				|| !(args[2] instanceof NativeArray) || !(args[3] instanceof NativeArray) || !(args[4] instanceof String) || !(args[5] instanceof Boolean)) {
+			throw new WinkBuildException("splitBuildFile() error: bad arguments");
+		}
+		final List<String> files = convertNativeArrayIntoList((NativeArray) args[2]);
+		final List<String> sources = convertNativeArrayIntoList((NativeArray) args[3]);
+		final File destFile = new File((String) args[4]);
+
+		final BundleSplitter splitter = new BundleSplitter((String) args[0], (String) args[1], Constants.splitMaxSize);
+		final List<String> parts = splitter.split(files, sources, destFile, ((Boolean) args[5]).booleanValue());
+		return splitter.getReport(parts) + ": " + destFile.getName();
+	}
 
-					final StringBuffer relativePath = new StringBuffer();
-					relativePath.insert(0, ptr.getName());
+	/**
+	 * @param cx
+	 * @param thisObj
+	 * @param args
+	 * @param funObj
+	 * @return the locale bundles report
+	 * @throws WinkBuildException
+	 */
+	public static String writeLocaleBundles(final Context cx, final Scriptable thisObj, final Object[] args, final Function funObj) throws WinkBuildException {
+		if (args.length != 7 || args[0] == null || args[1] == null || args[2] == null || args[3] == null || args[4] == null || args[5] == null || args[6] == null || !(args[0] instanceof String)
+				|| !(args[1] instanceof String) || !(args[2] instanceof String) || !(args[3] instanceof NativeArray) || !(args[4] instanceof NativeArray) || !(args[5] instanceof String)
+				|| !(args[6] instanceof String)) {
+			throw new WinkBuildException("writeLocaleBundles() error: bad arguments");
+		}
+		final List<String> locales = convertNativeArrayIntoList((NativeArray) args[3]);
+		final NativeArray sctFiles = (NativeArray) args[4];
+		final List<List<String>> files = Common.newArrayList((int) sctFiles.getLength());
+		for (int i = 0; i < sctFiles.getLength(); i++) {
+			final Object localeFiles = sctFiles.get(i, sctFiles);
+			if (!(localeFiles instanceof NativeArray)) {
+				throw new WinkBuildException("writeLocaleBundles() error: bad arguments");
+			}
+			files.add(convertNativeArrayIntoList((NativeArray) localeFiles));
+		}
+		final File manifestFile = new File((String) args[6]);
 
-					if (Constants.fromWinkPath) {
-						while (true) {
-							ptr = ptr.getParentFile();
-							if (ptr == null) {
-								throw new IllegalStateException("cannot rewrite Image URL: bad css url: must be in: " + baseCanonical);
-							}
-							if (ptr.getCanonicalPath().equals(baseFile.getCanonicalPath())) {
-								break;
-							}
-							relativePath.insert(0, "/");
-							relativePath.insert(0, ptr.getName());
-						}
-					}
-					if (!Constants.relativePath.equals("")) {
-						if (!Constants.relativePath.endsWith("/")) {
-							relativePath.insert(0, "/");
-						}
-						relativePath.insert(0, Constants.relativePath);
-					}
+		final LocaleBundler bundler = new LocaleBundler((String) args[0], (String) args[1]);
+		bundler.write((String) args[2], locales, files, new File((String) args[5]), manifestFile);
+		return bundler.getReport(manifestFile);
+	}
 
-					m.appendReplacement(contentReplaced, m.group(leftGroup) + relativePath + m.group(rightGroup));
-				}
-				m.appendTail(contentReplaced);
+	/**
+	 * @param cx
+	 * @param thisObj
+	 * @param args
+	 * @param funObj
+	 * @throws WinkBuildException
+	 */
+	public static void reportSection(final Context cx, final Scriptable thisObj, final Object[] args, final Function funObj) throws WinkBuildException {
+		if (args.length != 1 || args[0] == null || !(args[0] instanceof String)) {
+			throw new WinkBuildException("reportSection() error: bad arguments");
+		}
+		final BuildReport report = BuildReport.getCurrent();
+		if (report != null) {
+			report.setSection((String) args[0]);
+		}
+	}
 
-				FileManager.writeIntoFile(contentReplaced.toString(), tmpfilename);
-			} catch (final IOException e) {
-				throw new WinkBuildException(e);
+	/**
+	 * @param cx
+	 * @param thisObj
+	 * @param args
+	 * @param funObj
+	 * @return the resolver of the modules and profiles configurations
+	 * @throws WinkBuildException
+	 */
+	public static WinkJsConf createConfResolver(final Context cx, final Scriptable thisObj, final Object[] args, final Function funObj) throws WinkBuildException {
+		if (args.length < 2 || args.length > 3 || args[0] == null || !(args[0] instanceof Scriptable) || args[1] == null || !(args[1] instanceof Scriptable)) {
+			throw new WinkBuildException("createConfResolver() error: bad arguments");
+		}
+		final boolean splitLocales = (args.length == 3 && args[2] instanceof Boolean) ? ((Boolean) args[2]).booleanValue() : false;
+
+		try {
+			ScriptableObject.defineClass(thisObj, WinkJsConf.class);
+			final WinkJsConf winkJsConf = (WinkJsConf) cx.newObject(thisObj, "WinkJsConf");
+			winkJsConf.setCx(cx);
+			winkJsConf.setResolver(new ConfResolver((Scriptable) args[0], (Scriptable) args[1], splitLocales));
+			return winkJsConf;
+		} catch (final IllegalAccessException e) {
+			throw new WinkBuildException(e);
+		} catch (final InstantiationException e) {
+			throw new WinkBuildException(e);
+		} catch (final InvocationTargetException e) {
+			throw new WinkBuildException(e);
+		}
+	}
+
+	/**
+	 * Keeps the line structure of the files, so that the builded lines can be
+	 * mapped to the lines of the modules
+	 * 
+	 * @param removed
+	 * @param replacement
+	 * @return the replacement followed by the line feeds it removes
+	 */
+	private static String keepLines(final String removed, final String replacement) {
+		final StringBuffer sb = new StringBuffer(replacement);
+		for (int i = countLineFeeds(replacement); i < countLineFeeds(removed); i++) {
+			sb.append(FileManager.DEFAULT_LF);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @param s
+	 * @return
+	 */
+	private static int countLineFeeds(final String s) {
+		int count = 0;
+		for (int i = 0; i < s.length(); i++) {
+			if (s.charAt(i) == '\n') {
+				count++;
 			}
 		}
+		return count;
 	}
 
 	/**
@@ -0,0 +1,214 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+package com.orange.wink.css;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+
+import com.orange.wink.exception.WinkBuildException;
+import com.orange.wink.util.Common;
+import com.orange.wink.util.FileManager;
+import com.orange.wink.util.FileUtil;
+import com.orange.wink.util.TaskExecutor;
+
+/**
+ * Replaces the URLs of the small images referenced in CSS files by base64
+ * data URIs. Each image is read once per build and each distinct content is
+ * encoded once, whatever the number of files or paths referencing it.
+ * 
+ * @author Sylvain Lalande
+ * 
+ */
+public class CssImageInliner {
+	/**
+	 * 
+	 */
+	private static final Map<String, String> MIME_TYPES = new HashMap<String, String>();
+	static {
+		MIME_TYPES.put("png", "image/png");
+		MIME_TYPES.put("gif", "image/gif");
+		MIME_TYPES.put("jpg", "image/jpeg");
+		MIME_TYPES.put("jpeg", "image/jpeg");
+		MIME_TYPES.put("svg", "image/svg+xml");
+	}
+	/**
+	 * canonical image path to its content hash
+	 */
+	private static final Map<String, String> imageHashes = new ConcurrentHashMap<String, String>();
+	/**
+	 * canonical image path to its size, -1 if it cannot be inlined
+	 */
+	private static final Map<String, Long> imageSizes = new ConcurrentHashMap<String, Long>();
+	/**
+	 * content hash to data URI
+	 */
+	private static final Map<String, String> dataUris = new ConcurrentHashMap<String, String>();
+	/**
+	 * 
+	 */
+	private final int maxSize;
+	/**
+	 * 
+	 */
+	private final AtomicLong inlinedCount = new AtomicLong();
+	private final AtomicLong inlinedBytes = new AtomicLong();
+	private final AtomicLong externalCount = new AtomicLong();
+	private final AtomicLong externalBytes = new AtomicLong();
+
+	/**
+	 * @param maxSize
+	 *            the size in bytes under which an image is inlined
+	 */
+	public CssImageInliner(final int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Forgets the images read, so that an image edited between two builds of a
+	 * same process is read again
+	 */
+	public static void clear() {
+		imageHashes.clear();
+		imageSizes.clear();
+		dataUris.clear();
+	}
+
+	/**
+	 * @param files
+	 *            the source files, used to resolve the URLs
+	 * @param tmpfiles
+	 *            the temporary copies to rewrite
+	 * @throws WinkBuildException
+	 */
+	public void inline(final List<String> files, final List<String> tmpfiles) throws WinkBuildException {
+		final List<Callable<Object>> tasks = Common.newArrayList(files.size());
+		for (int i = 0; i < files.size(); i++) {
+			final String filename = files.get(i);
+			final String tmpfilename = tmpfiles.get(i);
+			tasks.add(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					inlineFile(filename, tmpfilename);
+					return null;
+				}
+			});
+		}
+		TaskExecutor.execute(tasks);
+	}
+
+	/**
+	 * @param filename
+	 * @param tmpfilename
+	 * @throws WinkBuildException
+	 */
+	private void inlineFile(final String filename, final String tmpfilename) throws WinkBuildException {
+		try {
+			final StringBuffer fileContent = new StringBuffer().append(FileManager.getFileContent(tmpfilename));
+			final String parent = new File(filename).getParent();
+
+			final Matcher m = CssUrlRewriter.URL_PATTERN.matcher(fileContent);
+			final StringBuffer contentReplaced = new StringBuffer();
+			boolean modified = false;
+			while (m.find()) {
+				final String url = m.group(CssUrlRewriter.URL_GROUP);
+				if (CssUrlRewriter.isExternalUrl(url) || url.indexOf('#') != -1) {
+					continue;
+				}
+				final String dataUri = getDataUri(parent, url);
+				if (dataUri == null) {
+					continue;
+				}
+				m.appendReplacement(contentReplaced, Matcher.quoteReplacement(m.group(CssUrlRewriter.LEFT_GROUP) + dataUri + m.group(CssUrlRewriter.RIGHT_GROUP)));
+				modified = true;
+			}
+			if (!modified) {
+				return;
+			}
+			m.appendTail(contentReplaced);
+
+			FileManager.writeIntoFile(contentReplaced.toString(), tmpfilename);
+		} catch (final IOException e) {
+			throw new WinkBuildException(e);
+		}
+	}
+
+	/**
+	 * @param parent
+	 * @param url
+	 * @return the data URI of the image, null if it must be kept external
+	 * @throws IOException
+	 */
+	private String getDataUri(final String parent, final String url) throws IOException {
+		String path = url.trim();
+		final int queryIndex = path.indexOf('?');
+		if (queryIndex != -1) {
+			path = path.substring(0, queryIndex);
+		}
+		final File image = new File(new File(parent, path).getCanonicalPath());
+		final String imagePath = image.getPath();
+		final String mimeType = getMimeType(image.getName());
+
+		Long size = imageSizes.get(imagePath);
+		if (size == null) {
+			size = Long.valueOf((mimeType != null && image.isFile()) ? image.length() : -1);
+			imageSizes.put(imagePath, size);
+		}
+		if (size.longValue() < 0 || size.longValue() > maxSize) {
+			externalCount.incrementAndGet();
+			externalBytes.addAndGet(Math.max(0, size.longValue()));
+			return null;
+		}
+
+		String hash = imageHashes.get(imagePath);
+		if (hash == null) {
+			final byte[] content = FileUtil.readBytes(image);
+			hash = FileUtil.getContentHash(content);
+			if (!dataUris.containsKey(hash)) {
+				dataUris.put(hash, "data:" + mimeType + ";base64," + Base64.getEncoder().encodeToString(content));
+			}
+			imageHashes.put(imagePath, hash);
+		}
+		inlinedCount.incrementAndGet();
+		inlinedBytes.addAndGet(size.longValue());
+		return dataUris.get(hash);
+	}
+
+	/**
+	 * @param name
+	 * @return
+	 */
+	private static String getMimeType(final String name) {
+		final int dotPos = name.lastIndexOf('.');
+		if (dotPos == -1) {
+			return null;
+		}
+		return MIME_TYPES.get(name.substring(dotPos + 1).toLowerCase());
+	}
+
+	/**
+	 * @return a summary of the bytes inlined and kept external
+	 */
+	public String getReport() {
+		final StringBuffer sb = new StringBuffer();
+		sb.append("inline images: ");
+		sb.append(inlinedCount.get()).append(" inlined (").append(inlinedBytes.get()).append(" bytes), ");
+		sb.append(externalCount.get()).append(" kept external (").append(externalBytes.get()).append(" bytes)");
+		return sb.toString();
+	}
+}
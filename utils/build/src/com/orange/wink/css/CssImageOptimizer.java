@@ -0,0 +1,330 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+package com.orange.wink.css;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+
+import org.w3c.dom.Node;
+
+import com.orange.wink.exception.WinkBuildException;
+import com.orange.wink.util.Common;
+import com.orange.wink.util.FileManager;
+import com.orange.wink.util.FileUtil;
+import com.orange.wink.util.PngOptimizer;
+import com.orange.wink.util.TaskExecutor;
+
+/**
+ * Recompresses losslessly the PNG and GIF images referenced in CSS files
+ * (see PngOptimizer), a GIF image being converted into an indexed PNG image
+ * if it is smaller (not an animation). The smaller copies are written in the
+ * "images" directory next to the CSS build file, named by the content of the
+ * source image, and the URLs are rewritten to them; the other URLs are kept.
+ * 
+ * The images are processed in parallel, each distinct content once per
+ * build; a copy already written is not processed again.
+ * 
+ * @author Sylvain Lalande
+ * 
+ */
+public class CssImageOptimizer {
+	/**
+	 * directory of the copies, next to the CSS build file
+	 */
+	public static final String IMAGE_DIRECTORY = "images";
+	/**
+	 * canonical image path to its content hash
+	 */
+	private static final Map<String, String> imageHashes = new ConcurrentHashMap<String, String>();
+	/**
+	 * directory and content hash to the name of the copy, "" if the image is
+	 * kept
+	 */
+	private static final Map<String, String> optimizedNames = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * 
+	 */
+	private final File imageDirectory;
+	/**
+	 * 
+	 */
+	private final AtomicInteger optimizedCount = new AtomicInteger();
+	private final AtomicInteger keptCount = new AtomicInteger();
+	private final AtomicInteger cachedCount = new AtomicInteger();
+	private final AtomicLong sizeBefore = new AtomicLong();
+	private final AtomicLong sizeAfter = new AtomicLong();
+
+	/**
+	 * @param cssFile
+	 *            the CSS build file
+	 */
+	public CssImageOptimizer(final String cssFile) {
+		this.imageDirectory = new File(new File(cssFile).getAbsoluteFile().getParentFile(), IMAGE_DIRECTORY);
+	}
+
+	/**
+	 * Forgets the images processed, so that the next build of a same process
+	 * checks the copies again
+	 */
+	public static void clear() {
+		imageHashes.clear();
+		optimizedNames.clear();
+	}
+
+	/**
+	 * @param files
+	 *            the source files, used to resolve the URLs
+	 * @param tmpfiles
+	 *            the temporary copies to rewrite
+	 * @throws WinkBuildException
+	 */
+	public void optimize(final List<String> files, final List<String> tmpfiles) throws WinkBuildException {
+		final Map<String, File> images = new TreeMap<String, File>();
+		for (int i = 0; i < files.size(); i++) {
+			try {
+				final String parent = new File(files.get(i)).getParent();
+				final Matcher m = CssUrlRewriter.URL_PATTERN.matcher(FileManager.getFileContent(tmpfiles.get(i)));
+				while (m.find()) {
+					final File image = getImage(parent, m.group(CssUrlRewriter.URL_GROUP));
+					if (image != null) {
+						images.put(image.getPath(), image);
+					}
+				}
+			} catch (final IOException e) {
+				throw new WinkBuildException(e);
+			}
+		}
+
+		final List<Callable<Object>> tasks = Common.newArrayList(images.size());
+		for (final File image : images.values()) {
+			tasks.add(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					optimizeImage(image);
+					return null;
+				}
+			});
+		}
+		TaskExecutor.execute(tasks);
+
+		final List<Callable<Object>> rewrites = Common.newArrayList(files.size());
+		for (int i = 0; i < files.size(); i++) {
+			final String filename = files.get(i);
+			final String tmpfilename = tmpfiles.get(i);
+			rewrites.add(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					rewriteFile(filename, tmpfilename);
+					return null;
+				}
+			});
+		}
+		TaskExecutor.execute(rewrites);
+	}
+
+	/**
+	 * @param parent
+	 * @param url
+	 * @return the referenced PNG or GIF image, null if none
+	 * @throws IOException
+	 */
+	private static File getImage(final String parent, final String url) throws IOException {
+		final String path = url.trim();
+		if (CssUrlRewriter.isExternalUrl(path) || CssUrlRewriter.isBuildedUrl(path) || path.indexOf('#') != -1 || path.indexOf('?') != -1) {
+			return null;
+		}
+		final String lowerPath = path.toLowerCase(Locale.ENGLISH);
+		if (!lowerPath.endsWith(".png") && !lowerPath.endsWith(".gif")) {
+			return null;
+		}
+		final File image = new File(new File(parent, path).getCanonicalPath());
+		return image.isFile() ? image : null;
+	}
+
+	/**
+	 * @param image
+	 * @throws IOException
+	 */
+	private void optimizeImage(final File image) throws IOException {
+		final byte[] content = FileUtil.readBytes(image);
+		final String hash = FileUtil.getContentHash(content);
+		imageHashes.put(image.getPath(), hash);
+		sizeBefore.addAndGet(content.length);
+
+		final String key = getKey(hash);
+		String name = optimizedNames.get(key);
+		if (name != null && name.length() > 0 && !new File(imageDirectory, name).isFile()) {
+			// the copy was deleted since, written again
+			name = null;
+		}
+		if (name == null) {
+			final String baseName = image.getName().substring(0, image.getName().lastIndexOf('.'));
+			final boolean gif = image.getName().toLowerCase(Locale.ENGLISH).endsWith(".gif");
+			name = baseName + "-" + hash.substring(0, 12) + ".png";
+			final File copy = new File(imageDirectory, name);
+			if (copy.isFile()) {
+				cachedCount.incrementAndGet();
+			} else {
+				byte[] optimized = null;
+				try {
+					optimized = gif ? encodeGif(content) : PngOptimizer.optimize(content);
+				} catch (final IOException e) {
+					// a bad image is kept as is
+				}
+				if (optimized == null || optimized.length >= content.length) {
+					name = "";
+				} else {
+					if (!imageDirectory.isDirectory()) {
+						imageDirectory.mkdirs();
+					}
+					FileUtil.writeBytes(optimized, copy);
+				}
+			}
+			optimizedNames.put(key, name);
+		} else if (name.length() > 0) {
+			cachedCount.incrementAndGet();
+		}
+
+		if (name.length() == 0) {
+			keptCount.incrementAndGet();
+			sizeAfter.addAndGet(content.length);
+		} else {
+			optimizedCount.incrementAndGet();
+			sizeAfter.addAndGet(new File(imageDirectory, name).length());
+			CssUrlRewriter.addBuildedUrl(IMAGE_DIRECTORY + "/" + name);
+		}
+	}
+
+	/**
+	 * @param hash
+	 * @return the key of the copy in the image directory
+	 */
+	private String getKey(final String hash) {
+		return imageDirectory.getPath() + File.separator + hash;
+	}
+
+	/**
+	 * @param content
+	 * @return the GIF image as an indexed PNG image, null if it is an
+	 *         animation or if its frame does not fill the screen
+	 * @throws IOException
+	 */
+	private static byte[] encodeGif(final byte[] content) throws IOException {
+		final Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("gif");
+		if (!readers.hasNext()) {
+			return null;
+		}
+		final ImageReader reader = readers.next();
+		final ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(content));
+		try {
+			reader.setInput(in);
+			if (reader.getNumImages(true) != 1) {
+				return null;
+			}
+			final BufferedImage image = reader.read(0);
+			if (!(image.getColorModel() instanceof IndexColorModel)) {
+				return null;
+			}
+			final IIOMetadataNode screen = getNode((IIOMetadataNode) reader.getStreamMetadata().getAsTree("javax_imageio_gif_stream_1.0"), "LogicalScreenDescriptor");
+			final IIOMetadataNode frame = getNode((IIOMetadataNode) reader.getImageMetadata(0).getAsTree("javax_imageio_gif_image_1.0"), "ImageDescriptor");
+			if (screen == null || frame == null || !frame.getAttribute("imageLeftPosition").equals("0") || !frame.getAttribute("imageTopPosition").equals("0")
+					|| !screen.getAttribute("logicalScreenWidth").equals(String.valueOf(image.getWidth())) || !screen.getAttribute("logicalScreenHeight").equals(String.valueOf(image.getHeight()))) {
+				return null;
+			}
+			return PngOptimizer.encode(image);
+		} finally {
+			reader.dispose();
+			in.close();
+		}
+	}
+
+	/**
+	 * @param root
+	 * @param name
+	 * @return the first child node of the given name
+	 */
+	private static IIOMetadataNode getNode(final IIOMetadataNode root, final String name) {
+		for (Node node = root.getFirstChild(); node != null; node = node.getNextSibling()) {
+			if (node.getNodeName().equals(name)) {
+				return (IIOMetadataNode) node;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param filename
+	 * @param tmpfilename
+	 * @throws WinkBuildException
+	 */
+	private void rewriteFile(final String filename, final String tmpfilename) throws WinkBuildException {
+		try {
+			final StringBuffer fileContent = new StringBuffer().append(FileManager.getFileContent(tmpfilename));
+			final String parent = new File(filename).getParent();
+
+			final Matcher m = CssUrlRewriter.URL_PATTERN.matcher(fileContent);
+			final StringBuffer contentReplaced = new StringBuffer();
+			boolean modified = false;
+			while (m.find()) {
+				final File image = getImage(parent, m.group(CssUrlRewriter.URL_GROUP));
+				if (image == null) {
+					continue;
+				}
+				final String hash = imageHashes.get(image.getPath());
+				final String name = (hash == null) ? null : optimizedNames.get(getKey(hash));
+				if (name == null || name.length() == 0) {
+					continue;
+				}
+				m.appendReplacement(contentReplaced, Matcher.quoteReplacement(m.group(CssUrlRewriter.LEFT_GROUP) + IMAGE_DIRECTORY + "/" + name + m.group(CssUrlRewriter.RIGHT_GROUP)));
+				modified = true;
+			}
+			if (!modified) {
+				return;
+			}
+			m.appendTail(contentReplaced);
+
+			FileManager.writeIntoFile(contentReplaced.toString(), tmpfilename);
+		} catch (final IOException e) {
+			throw new WinkBuildException(e);
+		}
+	}
+
+	/**
+	 * @return a summary of the images recompressed
+	 */
+	public String getReport() {
+		final StringBuffer sb = new StringBuffer();
+		sb.append("optimize images: ");
+		sb.append(optimizedCount.get()).append(" optimized (").append(cachedCount.get()).append(" cached), ");
+		sb.append(keptCount.get()).append(" kept, ");
+		sb.append(sizeBefore.get()).append(" -> ").append(sizeAfter.get()).append(" bytes");
+		return sb.toString();
+	}
+}
@@ -0,0 +1,626 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+package com.orange.wink.css;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.orange.wink.exception.WinkBuildException;
+import com.orange.wink.util.Common;
+import com.orange.wink.util.FileManager;
+
+/**
+ * Optimizes a CSS build file at the rule level: the stylesheet is parsed once
+ * into rules and media blocks, then
+ * 
+ * - a rule or a media block followed by an identical one in the same block is
+ * deleted
+ * 
+ * - the adjacent rules of the same selector, or of the same declarations, are
+ * merged, as are the adjacent media blocks of the same query
+ * 
+ * - a declaration overridden by a later declaration of the same property in
+ * the same rule is deleted
+ * 
+ * Only what keeps the cascade identical is changed: the rules are never
+ * moved across other rules, the selectors merged are of CSS 2.1 (a browser
+ * ignores a whole selector list if it does not know one of them), and a
+ * declaration overridden in its rule is deleted only if both values are
+ * equal or known by all the browsers: a vendor, function, hack, newer unit or
+ * newer keyword value may be a fallback, as a weaker priority. The other
+ * at-rules, the rules holding comments and the "/*!" comments are kept as
+ * is.
+ * 
+ * @author Sylvain Lalande
+ * 
+ */
+public class CssOptimizer {
+	/**
+	 * the pseudo-classes and pseudo-elements known by all the browsers
+	 */
+	private static final Set<String> MERGEABLE_PSEUDOS = new HashSet<String>(Arrays.asList("link", "visited", "hover", "active", "focus", "first-child", "first-line", "first-letter", "before", "after", "lang"));
+	/**
+	 * 
+	 */
+	private static final Pattern UNMERGEABLE_SELECTOR = Pattern.compile("[\\\\~]|[$^*|]=");
+	private static final Pattern PSEUDO = Pattern.compile("::?([-\\w]+)");
+	private static final Pattern IMPORTANT = Pattern.compile("\\s*!\\s*important\\s*$", Pattern.CASE_INSENSITIVE);
+	private static final Pattern PLAIN_VALUE = Pattern.compile("[#%.,/\\w\\s+\"'-]*");
+	private static final Pattern VENDOR_VALUE = Pattern.compile("(^|[\\s,])-[a-zA-Z]");
+	/**
+	 * the units, keywords and colors unknown to the older browsers
+	 */
+	private static final Pattern NEWER_VALUE = Pattern.compile("(\\d(vw|vh|vmin|vmax|vi|vb|[dls]v[hwib]|rem|ch|fr|q)|(^|[\\s,/])(flex|inline-flex|grid|inline-grid|sticky|contents|flow-root|initial|unset|revert|min-content|max-content|fit-content)|#([0-9a-f]{4}|[0-9a-f]{8}))($|[\\s,/])", Pattern.CASE_INSENSITIVE);
+	/**
+	 * 
+	 */
+	private int rulesMerged;
+	private int mediaMerged;
+	private int duplicatesDeleted;
+	private int declarationsDeleted;
+	private long sizeBefore;
+	private long sizeAfter;
+
+	/**
+	 * Optimizes the file in place
+	 * 
+	 * @param filename
+	 * @throws WinkBuildException
+	 */
+	public void optimizeFile(final String filename) throws WinkBuildException {
+		try {
+			final String css = FileManager.getFileContent(filename);
+			FileManager.writeIntoFile(optimize(css), filename);
+		} catch (final IOException e) {
+			throw new WinkBuildException(e);
+		}
+	}
+
+	/**
+	 * @param css
+	 * @return the optimized stylesheet
+	 */
+	public String optimize(final String css) {
+		final int[] pos = new int[] { 0 };
+		final List<Statement> statements = parseStatements(css, pos, false);
+		optimizeStatements(statements);
+
+		final StringBuffer sb = new StringBuffer(css.length());
+		for (final Statement s : statements) {
+			s.write(sb, "");
+		}
+		sizeBefore += css.length();
+		sizeAfter += sb.length();
+		return sb.toString();
+	}
+
+	/**
+	 * @param statements
+	 *            the statements of a block, optimized in place
+	 */
+	private void optimizeStatements(final List<Statement> statements) {
+		for (final Statement s : statements) {
+			if (s instanceof Media) {
+				optimizeStatements(((Media) s).statements);
+			}
+		}
+		deleteDuplicates(statements);
+
+		int i = 1;
+		while (i < statements.size()) {
+			if (merge(statements.get(i - 1), statements.get(i))) {
+				statements.remove(i);
+			} else {
+				i++;
+			}
+		}
+
+		for (final Statement s : statements) {
+			if (s instanceof Rule && ((Rule) s).declarations != null) {
+				deleteOverridden(((Rule) s).declarations);
+			}
+		}
+	}
+
+	/**
+	 * @param previous
+	 * @param current
+	 * @return true if "current" has been merged into "previous"
+	 */
+	private boolean merge(final Statement previous, final Statement current) {
+		if (previous instanceof Media && current instanceof Media) {
+			final Media p = (Media) previous;
+			final Media c = (Media) current;
+			if (p.query.equals(c.query)) {
+				p.statements.addAll(c.statements);
+				optimizeStatements(p.statements);
+				mediaMerged++;
+				return true;
+			}
+		} else if (previous instanceof Rule && current instanceof Rule) {
+			final Rule p = (Rule) previous;
+			final Rule c = (Rule) current;
+			if (p.declarations == null || c.declarations == null) {
+				return false;
+			}
+			if (p.selector.equals(c.selector)) {
+				p.declarations.addAll(c.declarations);
+				rulesMerged++;
+				return true;
+			}
+			if (p.getBody().equals(c.getBody()) && isMergeable(p.selector) && isMergeable(c.selector)) {
+				p.selector = p.selector + ", " + c.selector;
+				rulesMerged++;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Deletes the rules and media blocks followed by an identical one: the
+	 * later one wins the cascade for each of their declarations
+	 * 
+	 * @param statements
+	 */
+	private void deleteDuplicates(final List<Statement> statements) {
+		final Set<String> later = new HashSet<String>();
+		for (int i = statements.size() - 1; i >= 0; i--) {
+			final Statement s = statements.get(i);
+			if (s instanceof Raw) {
+				continue;
+			}
+			final StringBuffer sb = new StringBuffer();
+			s.write(sb, "");
+			if (!later.add(sb.toString())) {
+				statements.remove(i);
+				duplicatesDeleted++;
+			}
+		}
+	}
+
+	/**
+	 * @param declarations
+	 *            the declarations of a rule
+	 */
+	private void deleteOverridden(final List<Declaration> declarations) {
+		final Map<String, Declaration> later = new HashMap<String, Declaration>();
+		for (int i = declarations.size() - 1; i >= 0; i--) {
+			final Declaration d = declarations.get(i);
+			final String property = d.property.toLowerCase(Locale.ENGLISH);
+			final Declaration overriding = later.get(property);
+			if (overriding != null && isOverriddenBy(d, overriding)) {
+				declarations.remove(i);
+				declarationsDeleted++;
+			} else if (overriding == null || (d.important && !overriding.important)) {
+				later.put(property, d);
+			}
+		}
+	}
+
+	/**
+	 * @param d
+	 * @param overriding
+	 *            a later declaration of the same property
+	 * @return true if "overriding" applies wherever "d" does
+	 */
+	private boolean isOverriddenBy(final Declaration d, final Declaration overriding) {
+		if (d.important && !overriding.important) {
+			return false;
+		}
+		if (d.value.equals(overriding.value)) {
+			return true;
+		}
+		final char c = d.property.charAt(0);
+		if (c == '*' || c == '_') {
+			return false;
+		}
+		return isKnownValue(d.value) && isKnownValue(overriding.value);
+	}
+
+	/**
+	 * @param value
+	 * @return true if the value is a keyword, a number or a color known by all
+	 *         the browsers
+	 */
+	private static boolean isKnownValue(final String value) {
+		return PLAIN_VALUE.matcher(value).matches() && !VENDOR_VALUE.matcher(value).find() && !NEWER_VALUE.matcher(value).find();
+	}
+
+	/**
+	 * @param selector
+	 * @return true if the selector can be grouped with another one
+	 */
+	private boolean isMergeable(final String selector) {
+		if (UNMERGEABLE_SELECTOR.matcher(selector).find()) {
+			return false;
+		}
+		final Matcher m = PSEUDO.matcher(selector);
+		while (m.find()) {
+			if (m.group().startsWith("::") || !MERGEABLE_PSEUDOS.contains(m.group(1).toLowerCase(Locale.ENGLISH))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param css
+	 * @param pos
+	 *            the position to parse from, updated
+	 * @param nested
+	 *            true if the statements end with the closing brace of a block
+	 * @return
+	 */
+	private List<Statement> parseStatements(final String css, final int[] pos, final boolean nested) {
+		final List<Statement> statements = Common.newArrayList(16);
+		final int length = css.length();
+		while (pos[0] < length) {
+			final int start = pos[0];
+			final char c = css.charAt(start);
+			if (Character.isWhitespace(c)) {
+				pos[0]++;
+				continue;
+			}
+			if (c == '}') {
+				pos[0]++;
+				if (nested) {
+					return statements;
+				}
+				statements.add(new Raw("}"));
+				continue;
+			}
+			if (css.startsWith("/*", start)) {
+				final int end = css.indexOf("*/", start + 2);
+				pos[0] = (end == -1) ? length : end + 2;
+				if (css.startsWith("/*!", start)) {
+					statements.add(new Raw(css.substring(start, pos[0])));
+				}
+				continue;
+			}
+			if (css.startsWith("<!--", start) || css.startsWith("-->", start)) {
+				pos[0] += (c == '<') ? 4 : 3;
+				continue;
+			}
+
+			final int end = find(css, start, "{;}");
+			if (end == -1) {
+				statements.add(new Raw(css.substring(start).trim()));
+				pos[0] = length;
+				break;
+			}
+			final char stop = css.charAt(end);
+			if (stop == '{' && c == '@' && css.regionMatches(true, start, "@media", 0, 6)) {
+				pos[0] = end + 1;
+				final Media media = new Media(normalize(css.substring(start + 6, end)));
+				media.statements.addAll(parseStatements(css, pos, true));
+				statements.add(media);
+			} else if (stop == '{' && c == '@') {
+				pos[0] = findBlockEnd(css, end) + 1;
+				statements.add(new Raw(css.substring(start, pos[0])));
+			} else if (stop == '{') {
+				int close = find(css, end + 1, "}");
+				close = (close == -1) ? length : close;
+				pos[0] = Math.min(close + 1, length);
+				statements.add(new Rule(css.substring(start, end), css.substring(end + 1, close)));
+			} else if (stop == ';') {
+				pos[0] = end + 1;
+				statements.add(new Raw(css.substring(start, pos[0])));
+			} else {
+				pos[0] = end;
+				statements.add(new Raw(css.substring(start, end).trim()));
+			}
+		}
+		return statements;
+	}
+
+	/**
+	 * @param css
+	 * @param from
+	 * @param stops
+	 * @return the index of the first stop char out of the strings, comments
+	 *         and parentheses, or -1
+	 */
+	private static int find(final String css, final int from, final String stops) {
+		final int length = css.length();
+		int depth = 0;
+		for (int i = from; i < length; i++) {
+			final char c = css.charAt(i);
+			if (c == '\\') {
+				i++;
+			} else if (c == '"' || c == '\'') {
+				i = skipString(css, i);
+			} else if (c == '/' && i + 1 < length && css.charAt(i + 1) == '*') {
+				final int end = css.indexOf("*/", i + 2);
+				i = (end == -1) ? length : end + 1;
+			} else if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth = Math.max(0, depth - 1);
+			} else if (depth == 0 && stops.indexOf(c) != -1) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param css
+	 * @param open
+	 *            the index of an opening brace
+	 * @return the index of the matching closing brace, or the last index
+	 */
+	private static int findBlockEnd(final String css, final int open) {
+		int depth = 0;
+		int i = open;
+		while (i != -1) {
+			if (css.charAt(i) == '{') {
+				depth++;
+			} else if (--depth == 0) {
+				return i;
+			}
+			i = find(css, i + 1, "{}");
+		}
+		return css.length() - 1;
+	}
+
+	/**
+	 * @param css
+	 * @param quote
+	 *            the index of the opening quote
+	 * @return the index of the closing quote, or the last index
+	 */
+	private static int skipString(final String css, final int quote) {
+		final char q = css.charAt(quote);
+		for (int i = quote + 1; i < css.length(); i++) {
+			final char c = css.charAt(i);
+			if (c == '\\') {
+				i++;
+			} else if (c == q || c == '\n') {
+				return i;
+			}
+		}
+		return css.length() - 1;
+	}
+
+	/**
+	 * @param text
+	 * @return the text trimmed, with collapsed white spaces if it holds no
+	 *         string
+	 */
+	private static String normalize(final String text) {
+		final String trimmed = text.trim();
+		if (trimmed.indexOf('"') != -1 || trimmed.indexOf('\'') != -1) {
+			return trimmed;
+		}
+		return trimmed.replaceAll("\\s+", " ");
+	}
+
+	/**
+	 * @return the optimization report
+	 */
+	public String getReport() {
+		final StringBuffer sb = new StringBuffer();
+		sb.append("optimize css: ");
+		sb.append(rulesMerged).append(" rules merged, ");
+		sb.append(mediaMerged).append(" media blocks merged, ");
+		sb.append(duplicatesDeleted).append(" duplicates deleted, ");
+		sb.append(declarationsDeleted).append(" overridden declarations deleted, ");
+		sb.append(sizeBefore).append(" -> ").append(sizeAfter).append(" chars");
+		if (sizeBefore > 0) {
+			sb.append(" (-").append((sizeBefore - sizeAfter) * 100 / sizeBefore).append("%)");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * A statement of a stylesheet
+	 */
+	private abstract static class Statement {
+		/**
+		 * @param sb
+		 * @param indent
+		 */
+		abstract void write(StringBuffer sb, String indent);
+	}
+
+	/**
+	 * A statement kept as is
+	 */
+	private static class Raw extends Statement {
+		/**
+		 * 
+		 */
+		private final String text;
+
+		/**
+		 * @param text
+		 */
+		Raw(final String text) {
+			this.text = text;
+		}
+
+		/**
+		 * @see com.orange.wink.css.CssOptimizer.Statement#write(java.lang.StringBuffer,
+		 *      java.lang.String)
+		 */
+		@Override
+		void write(final StringBuffer sb, final String indent) {
+			sb.append(indent).append(text).append("\n");
+		}
+	}
+
+	/**
+	 * A media block
+	 */
+	private static class Media extends Statement {
+		/**
+		 * 
+		 */
+		private final String query;
+		private final List<Statement> statements = Common.newArrayList(4);
+
+		/**
+		 * @param query
+		 */
+		Media(final String query) {
+			this.query = query;
+		}
+
+		/**
+		 * @see com.orange.wink.css.CssOptimizer.Statement#write(java.lang.StringBuffer,
+		 *      java.lang.String)
+		 */
+		@Override
+		void write(final StringBuffer sb, final String indent) {
+			sb.append(indent).append("@media ").append(query).append(" {\n");
+			for (final Statement s : statements) {
+				s.write(sb, indent + "\t");
+			}
+			sb.append(indent).append("}\n");
+		}
+	}
+
+	/**
+	 * A rule
+	 */
+	private static class Rule extends Statement {
+		/**
+		 * 
+		 */
+		private String selector;
+		/**
+		 * null if the body is kept as is
+		 */
+		private List<Declaration> declarations;
+		private final String body;
+
+		/**
+		 * @param selector
+		 * @param body
+		 */
+		Rule(final String selector, final String body) {
+			this.selector = normalize(selector);
+			this.body = body.trim();
+			this.declarations = parseDeclarations(this.body);
+		}
+
+		/**
+		 * @param body
+		 * @return the declarations, or null if the body holds comments or
+		 *         something else
+		 */
+		private static List<Declaration> parseDeclarations(final String body) {
+			if (body.indexOf("/*") != -1 || body.indexOf('{') != -1) {
+				return null;
+			}
+			final List<Declaration> declarations = Common.newArrayList(8);
+			int start = 0;
+			while (start < body.length()) {
+				int end = find(body, start, ";");
+				end = (end == -1) ? body.length() : end;
+				final String declaration = body.substring(start, end).trim();
+				start = end + 1;
+				if (declaration.length() == 0) {
+					continue;
+				}
+				final int colon = declaration.indexOf(':');
+				if (colon <= 0) {
+					return null;
+				}
+				final String property = declaration.substring(0, colon).trim();
+				String value = declaration.substring(colon + 1).trim();
+				final Matcher m = IMPORTANT.matcher(value);
+				final boolean important = m.find();
+				if (important) {
+					value = value.substring(0, m.start());
+				}
+				if (property.length() == 0 || value.length() == 0 || property.indexOf(' ') != -1) {
+					return null;
+				}
+				declarations.add(new Declaration(property, value, important, declaration));
+			}
+			return declarations;
+		}
+
+		/**
+		 * @return the declarations as written
+		 */
+		String getBody() {
+			final StringBuffer sb = new StringBuffer();
+			for (final Declaration d : declarations) {
+				sb.append(d).append(";");
+			}
+			return sb.toString();
+		}
+
+		/**
+		 * @see com.orange.wink.css.CssOptimizer.Statement#write(java.lang.StringBuffer,
+		 *      java.lang.String)
+		 */
+		@Override
+		void write(final StringBuffer sb, final String indent) {
+			sb.append(indent).append(selector).append(" {");
+			if (declarations == null) {
+				sb.append(body).append("}\n");
+				return;
+			}
+			sb.append("\n");
+			for (final Declaration d : declarations) {
+				sb.append(indent).append("\t").append(d).append(";\n");
+			}
+			sb.append(indent).append("}\n");
+		}
+	}
+
+	/**
+	 * A declaration of a rule
+	 */
+	private static class Declaration {
+		/**
+		 * 
+		 */
+		private final String property;
+		private final String value;
+		private final boolean important;
+		private final String text;
+
+		/**
+		 * @param property
+		 * @param value
+		 * @param important
+		 * @param text
+		 *            the declaration as written in the source
+		 */
+		Declaration(final String property, final String value, final boolean important, final String text) {
+			this.property = property;
+			this.value = value;
+			this.important = important;
+			this.text = text;
+		}
+
+		/**
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return text;
+		}
+	}
+}
@@ -0,0 +1,733 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+package com.orange.wink.css;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.imageio.ImageIO;
+
+import com.orange.wink.exception.WinkBuildException;
+import com.orange.wink.util.Common;
+import com.orange.wink.util.FileManager;
+import com.orange.wink.util.FileUtil;
+import com.orange.wink.util.PngOptimizer;
+import com.orange.wink.util.TaskExecutor;
+
+/**
+ * Packs the small PNG and GIF images referenced in CSS files into a sprite
+ * sheet per theme (the "_themes" directory of the image, "common" otherwise),
+ * and rewrites the rules to the sheet and a "background-position" offset.
+ * 
+ * A rule is rewritten only if the sheet shows the same pixels: the image is
+ * not repeated nor positioned, the rule gives the size of the box in pixels,
+ * not larger than the image, and no other rule sharing a class or an id with
+ * its selector sets a background, a size or a padding. A rule setting one of
+ * them with a selector of no class nor id may match any element: no rule of
+ * the build is rewritten then. The layouts are cached
+ * by the content hashes of the images, and a sheet is written once, named by
+ * its content.
+ * 
+ * @author Sylvain Lalande
+ * 
+ */
+public class CssSpriteBuilder {
+	/**
+	 * directory of the sheets, next to the CSS build file
+	 */
+	public static final String SPRITE_DIRECTORY = "sprites";
+	/**
+	 * pixels between two images of a sheet
+	 */
+	private static final int SPACING = 1;
+	/**
+	 * 
+	 */
+	private static final Pattern BLOCK_PATTERN = Pattern.compile("([^{};]*)\\{([^{}]*)\\}");
+	private static final Pattern TOKEN_PATTERN = Pattern.compile("[.#][-\\w]+");
+	private static final Pattern PIXELS_PATTERN = Pattern.compile("(\\d+)px");
+	private static final Pattern COMMENT_PATTERN = Pattern.compile("/\\*.*?\\*/", Pattern.DOTALL);
+	private static final Pattern HEX_COLOR_PATTERN = Pattern.compile("#[0-9a-fA-F]{3,6}");
+	/**
+	 * canonical image path to its content hash
+	 */
+	private static final Map<String, String> imageHashes = new ConcurrentHashMap<String, String>();
+	/**
+	 * content hash to the image width and height
+	 */
+	private static final Map<String, int[]> imageDimensions = new ConcurrentHashMap<String, int[]>();
+	/**
+	 * theme and content hashes of the images to the sheet
+	 */
+	private static final Map<String, Sprite> sprites = new ConcurrentHashMap<String, Sprite>();
+
+	/**
+	 * 
+	 */
+	private final int maxSize;
+	private final File spriteDirectory;
+	/**
+	 * 
+	 */
+	private int imageCount;
+	private int spriteCount;
+	private int ruleCount;
+	private int skippedCount;
+
+	/**
+	 * @param maxSize
+	 *            the size in bytes under which an image is packed
+	 * @param cssFile
+	 *            the CSS build file
+	 */
+	public CssSpriteBuilder(final int maxSize, final String cssFile) {
+		this.maxSize = maxSize;
+		this.spriteDirectory = new File(new File(cssFile).getAbsoluteFile().getParentFile(), SPRITE_DIRECTORY);
+	}
+
+	/**
+	 * Forgets the content hashes of the images, so that an image edited
+	 * between two builds of a same process is read again; the dimensions and
+	 * the layouts, keyed by content, are kept
+	 */
+	public static void clear() {
+		imageHashes.clear();
+	}
+
+	/**
+	 * @param files
+	 *            the source files, used to resolve the URLs
+	 * @param tmpfiles
+	 *            the temporary copies to rewrite
+	 * @throws WinkBuildException
+	 */
+	public void build(final List<String> files, final List<String> tmpfiles) throws WinkBuildException {
+		final List<Callable<ScannedFile>> scans = Common.newArrayList(files.size());
+		for (int i = 0; i < files.size(); i++) {
+			final String filename = files.get(i);
+			final String tmpfilename = tmpfiles.get(i);
+			scans.add(new Callable<ScannedFile>() {
+				@Override
+				public ScannedFile call() throws Exception {
+					return scanFile(filename, tmpfilename);
+				}
+			});
+		}
+		final List<ScannedFile> scannedFiles = TaskExecutor.execute(scans);
+
+		final Set<String> conflicts = new HashSet<String>();
+		final List<Candidate> candidates = Common.newArrayList(16);
+		boolean unscoped = false;
+		for (final ScannedFile sf : scannedFiles) {
+			conflicts.addAll(sf.conflicts);
+			candidates.addAll(sf.candidates);
+			unscoped |= sf.unscoped;
+		}
+		final Map<String, List<Candidate>> themes = unscoped ? new TreeMap<String, List<Candidate>>() : selectCandidates(candidates, conflicts);
+
+		final List<Callable<Object>> packs = Common.newArrayList(themes.size());
+		for (final Map.Entry<String, List<Candidate>> e : themes.entrySet()) {
+			packs.add(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					final Sprite sprite = getSprite(e.getKey(), e.getValue());
+					for (final Candidate c : e.getValue()) {
+						c.sprite = sprite;
+					}
+					return null;
+				}
+			});
+		}
+		TaskExecutor.execute(packs);
+
+		final List<Callable<Object>> rewrites = Common.newArrayList(scannedFiles.size());
+		for (final ScannedFile sf : scannedFiles) {
+			rewrites.add(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					rewriteFile(sf);
+					return null;
+				}
+			});
+		}
+		TaskExecutor.execute(rewrites);
+
+		for (final List<Candidate> themeCandidates : themes.values()) {
+			final Set<String> hashes = new HashSet<String>();
+			for (final Candidate c : themeCandidates) {
+				hashes.add(c.hash);
+			}
+			imageCount += hashes.size();
+			ruleCount += themeCandidates.size();
+		}
+		spriteCount += themes.size();
+		skippedCount += candidates.size() - countCandidates(themes);
+	}
+
+	/**
+	 * Keeps the candidates sharing no class or id with a rule left
+	 * untouched, in the themes of two images at least
+	 * 
+	 * @param candidates
+	 * @param conflicts
+	 *            the classes and ids of the rules left untouched
+	 * @return the candidates by theme
+	 */
+	private Map<String, List<Candidate>> selectCandidates(final List<Candidate> candidates, final Set<String> conflicts) {
+		final Map<String, List<Candidate>> themes = new TreeMap<String, List<Candidate>>();
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			themes.clear();
+			for (final Candidate c : candidates) {
+				if (c.rejected) {
+					continue;
+				}
+				if (!Collections.disjoint(c.tokens, conflicts)) {
+					c.rejected = true;
+					conflicts.addAll(c.tokens);
+					changed = true;
+					continue;
+				}
+				List<Candidate> themeCandidates = themes.get(c.theme);
+				if (themeCandidates == null) {
+					themeCandidates = Common.newArrayList(8);
+					themes.put(c.theme, themeCandidates);
+				}
+				themeCandidates.add(c);
+			}
+			for (final List<Candidate> themeCandidates : themes.values()) {
+				final Set<String> hashes = new HashSet<String>();
+				for (final Candidate c : themeCandidates) {
+					hashes.add(c.hash);
+				}
+				if (hashes.size() < 2) {
+					for (final Candidate c : themeCandidates) {
+						c.rejected = true;
+						conflicts.addAll(c.tokens);
+					}
+					changed = true;
+				}
+			}
+		}
+		return themes;
+	}
+
+	/**
+	 * @param themes
+	 * @return
+	 */
+	private static int countCandidates(final Map<String, List<Candidate>> themes) {
+		int count = 0;
+		for (final List<Candidate> themeCandidates : themes.values()) {
+			count += themeCandidates.size();
+		}
+		return count;
+	}
+
+	/**
+	 * @param filename
+	 * @param tmpfilename
+	 * @return the candidate rules of the file, and the classes and ids of the
+	 *         rules setting a background, a size or a padding, or if one of
+	 *         these rules has none
+	 * @throws WinkBuildException
+	 */
+	private ScannedFile scanFile(final String filename, final String tmpfilename) throws WinkBuildException {
+		try {
+			final ScannedFile sf = new ScannedFile(tmpfilename, FileManager.getFileContent(tmpfilename));
+			final String parent = new File(filename).getParent();
+			final Matcher m = BLOCK_PATTERN.matcher(sf.content);
+			while (m.find()) {
+				final String selector = COMMENT_PATTERN.matcher(m.group(1)).replaceAll("").trim();
+				if (selector.startsWith("@")) {
+					continue;
+				}
+				final Map<String, String> declarations = parseDeclarations(m.group(2));
+				if (declarations == null) {
+					continue;
+				}
+				final Candidate c = getCandidate(parent, selector, declarations);
+				if (c != null) {
+					c.start = m.start(2);
+					c.end = m.end(2);
+					sf.candidates.add(c);
+				} else if (isBoxStyle(declarations)) {
+					final Set<String> tokens = getTokens(selector);
+					if (tokens == null) {
+						sf.unscoped = true;
+					} else {
+						sf.conflicts.addAll(tokens);
+					}
+				}
+			}
+			return sf;
+		} catch (final IOException e) {
+			throw new WinkBuildException(e);
+		}
+	}
+
+	/**
+	 * @param body
+	 * @return the declarations by lower case property, null if a property is
+	 *         declared twice
+	 */
+	private static Map<String, String> parseDeclarations(final String body) {
+		final String text = COMMENT_PATTERN.matcher(body).replaceAll("");
+		final Map<String, String> declarations = new LinkedHashMap<String, String>();
+		int depth = 0;
+		int start = 0;
+		for (int i = 0; i <= text.length(); i++) {
+			final char c = (i == text.length()) ? ';' : text.charAt(i);
+			if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+			} else if (c == ';' && depth <= 0) {
+				final String declaration = text.substring(start, i).trim();
+				start = i + 1;
+				final int colon = declaration.indexOf(':');
+				if (colon <= 0) {
+					continue;
+				}
+				final String property = declaration.substring(0, colon).trim().toLowerCase(Locale.ENGLISH);
+				if (declarations.put(property, declaration.substring(colon + 1).trim()) != null) {
+					return null;
+				}
+			}
+		}
+		return declarations;
+	}
+
+	/**
+	 * @param declarations
+	 * @return true if the declarations set a background image or position, a
+	 *         size or a padding
+	 */
+	private static boolean isBoxStyle(final Map<String, String> declarations) {
+		for (final String property : declarations.keySet()) {
+			if ((property.startsWith("background") && !property.equals("background-color")) || property.startsWith("padding") || property.equals("width") || property.equals("height")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param parent
+	 * @param selector
+	 * @param declarations
+	 * @return the candidate, null if the rule cannot use a sheet
+	 * @throws IOException
+	 */
+	private Candidate getCandidate(final String parent, final String selector, final Map<String, String> declarations) throws IOException {
+		String imageProperty = null;
+		for (final Map.Entry<String, String> e : declarations.entrySet()) {
+			final String property = e.getKey();
+			final String value = e.getValue();
+			if (value.indexOf("url(") != -1) {
+				if (imageProperty != null) {
+					return null;
+				}
+				imageProperty = property;
+			}
+			if (value.indexOf('!') != -1 || property.startsWith("padding")) {
+				return null;
+			}
+			if (property.startsWith("background") && !property.equals("background-color") && !property.equals("background-image") && !property.equals("background-repeat") && !property.equals("background")) {
+				return null;
+			}
+		}
+		if (imageProperty == null || !isNotRepeated(imageProperty, declarations)) {
+			return null;
+		}
+
+		final String value = declarations.get(imageProperty);
+		final Matcher m = CssUrlRewriter.URL_PATTERN.matcher(value);
+		if (!m.find() || (imageProperty.equals("background-image") && !m.group().equals(value))) {
+			return null;
+		}
+		final String url = m.group(CssUrlRewriter.URL_GROUP).trim();
+		if (CssUrlRewriter.isExternalUrl(url) || url.indexOf('#') != -1 || url.indexOf('?') != -1) {
+			return null;
+		}
+		final String lowerUrl = url.toLowerCase(Locale.ENGLISH);
+		if (!lowerUrl.endsWith(".png") && !lowerUrl.endsWith(".gif")) {
+			return null;
+		}
+
+		final Set<String> tokens = getTokens(selector);
+		final int width = getPixels(declarations.get("width"));
+		final int height = getPixels(declarations.get("height"));
+		if (tokens == null || width < 0 || height < 0) {
+			return null;
+		}
+		final File image = new File(new File(parent, url).getCanonicalPath());
+		if (!image.isFile() || image.length() > maxSize) {
+			return null;
+		}
+		final String hash = getImageHash(image);
+		final int[] dimensions = imageDimensions.get(hash);
+		if (dimensions == null || width > dimensions[0] || height > dimensions[1]) {
+			return null;
+		}
+		return new Candidate(image, hash, getTheme(image), tokens, url);
+	}
+
+	/**
+	 * @param imageProperty
+	 * @param declarations
+	 * @return true if the image is not repeated nor positioned by the rule
+	 */
+	private static boolean isNotRepeated(final String imageProperty, final Map<String, String> declarations) {
+		final String repeat = declarations.get("background-repeat");
+		if (imageProperty.equals("background-image")) {
+			return !declarations.containsKey("background") && "no-repeat".equals(repeat);
+		}
+		if (!imageProperty.equals("background") || repeat != null) {
+			return false;
+		}
+		final String shorthand = CssUrlRewriter.URL_PATTERN.matcher(declarations.get("background")).replaceAll(" ");
+		boolean noRepeat = false;
+		for (final String token : shorthand.trim().split("\\s+")) {
+			if (token.equals("no-repeat")) {
+				noRepeat = true;
+			} else if (!token.equals("transparent") && !token.equals("scroll") && !HEX_COLOR_PATTERN.matcher(token).matches()) {
+				return false;
+			}
+		}
+		return noRepeat;
+	}
+
+	/**
+	 * @param selector
+	 * @return the classes and ids of the selector, null if a selector of the
+	 *         group has none
+	 */
+	private static Set<String> getTokens(final String selector) {
+		final Set<String> tokens = new HashSet<String>();
+		for (final String part : selector.split(",")) {
+			final Matcher m = TOKEN_PATTERN.matcher(part);
+			boolean found = false;
+			while (m.find()) {
+				tokens.add(m.group());
+				found = true;
+			}
+			if (!found) {
+				return null;
+			}
+		}
+		return tokens;
+	}
+
+	/**
+	 * @param value
+	 * @return the pixels of the value, -1 if it is not a pixel length
+	 */
+	private static int getPixels(final String value) {
+		if (value == null) {
+			return -1;
+		}
+		final Matcher m = PIXELS_PATTERN.matcher(value);
+		return m.matches() ? Integer.parseInt(m.group(1)) : -1;
+	}
+
+	/**
+	 * @param image
+	 * @return the theme of the image
+	 */
+	private static String getTheme(final File image) {
+		final String path = image.getPath().replace(File.separatorChar, '/');
+		final int idx = path.indexOf("/_themes/");
+		if (idx == -1) {
+			return "common";
+		}
+		final int start = idx + "/_themes/".length();
+		final int end = path.indexOf('/', start);
+		return (end == -1) ? "common" : path.substring(start, end);
+	}
+
+	/**
+	 * @param image
+	 * @return the content hash of the image, whose dimensions are known if it
+	 *         can be read
+	 * @throws IOException
+	 */
+	private static String getImageHash(final File image) throws IOException {
+		final String imagePath = image.getPath();
+		String hash = imageHashes.get(imagePath);
+		if (hash == null) {
+			hash = FileUtil.getContentHash(FileUtil.readBytes(image));
+			if (!imageDimensions.containsKey(hash)) {
+				final BufferedImage bi = ImageIO.read(image);
+				if (bi != null) {
+					imageDimensions.put(hash, new int[] { bi.getWidth(), bi.getHeight() });
+				}
+			}
+			imageHashes.put(imagePath, hash);
+		}
+		return hash;
+	}
+
+	/**
+	 * @param theme
+	 * @param candidates
+	 * @return the sheet of the images of the candidates, packed once
+	 * @throws IOException
+	 */
+	private Sprite getSprite(final String theme, final List<Candidate> candidates) throws IOException {
+		final Map<String, File> images = new TreeMap<String, File>();
+		for (final Candidate c : candidates) {
+			images.put(c.hash, c.image);
+		}
+		final StringBuffer key = new StringBuffer(theme);
+		for (final String hash : images.keySet()) {
+			key.append(':').append(hash);
+		}
+		Sprite sprite = sprites.get(key.toString());
+		if (sprite == null) {
+			sprite = pack(theme, key.toString(), images);
+			sprites.put(key.toString(), sprite);
+		}
+		final File spriteFile = new File(spriteDirectory, sprite.name);
+		if (!spriteFile.isFile()) {
+			synchronized (sprite) {
+				if (!spriteFile.isFile()) {
+					writeSprite(sprite, images, spriteFile);
+				}
+			}
+		}
+		CssUrlRewriter.addBuildedUrl(SPRITE_DIRECTORY + "/" + sprite.name);
+		return sprite;
+	}
+
+	/**
+	 * Shelf packing: the images by decreasing height, in rows of the width of
+	 * a square of their total area
+	 * 
+	 * @param theme
+	 * @param key
+	 * @param images
+	 *            the images by content hash
+	 * @return the layout of the sheet
+	 */
+	private static Sprite pack(final String theme, final String key, final Map<String, File> images) {
+		final List<String> hashes = new ArrayList<String>(images.keySet());
+		Collections.sort(hashes, new Comparator<String>() {
+			@Override
+			public int compare(final String h1, final String h2) {
+				final int cmp = imageDimensions.get(h2)[1] - imageDimensions.get(h1)[1];
+				return (cmp != 0) ? cmp : h1.compareTo(h2);
+			}
+		});
+		long area = 0;
+		int maxWidth = 0;
+		for (final String hash : hashes) {
+			final int[] d = imageDimensions.get(hash);
+			area += (long) (d[0] + SPACING) * (d[1] + SPACING);
+			maxWidth = Math.max(maxWidth, d[0]);
+		}
+		final int rowWidth = Math.max(maxWidth, (int) Math.ceil(Math.sqrt(area)));
+
+		final Sprite sprite = new Sprite(theme + "-" + FileUtil.getContentHash(key.getBytes()).substring(0, 12) + ".png");
+		int x = 0;
+		int y = 0;
+		int rowHeight = 0;
+		for (final String hash : hashes) {
+			final int[] d = imageDimensions.get(hash);
+			if (x > 0 && x + d[0] > rowWidth) {
+				x = 0;
+				y += rowHeight + SPACING;
+				rowHeight = 0;
+			}
+			sprite.offsets.put(hash, new int[] { x, y });
+			sprite.width = Math.max(sprite.width, x + d[0]);
+			sprite.height = Math.max(sprite.height, y + d[1]);
+			x += d[0] + SPACING;
+			rowHeight = Math.max(rowHeight, d[1]);
+		}
+		return sprite;
+	}
+
+	/**
+	 * @param sprite
+	 * @param images
+	 * @param spriteFile
+	 * @throws IOException
+	 */
+	private static void writeSprite(final Sprite sprite, final Map<String, File> images, final File spriteFile) throws IOException {
+		final BufferedImage sheet = new BufferedImage(sprite.width, sprite.height, BufferedImage.TYPE_INT_ARGB);
+		final Graphics2D g = sheet.createGraphics();
+		try {
+			for (final Map.Entry<String, int[]> e : sprite.offsets.entrySet()) {
+				final BufferedImage image = ImageIO.read(images.get(e.getKey()));
+				g.drawImage(image, e.getValue()[0], e.getValue()[1], null);
+			}
+		} finally {
+			g.dispose();
+		}
+		final byte[] png = PngOptimizer.encode(sheet);
+		if (!spriteFile.getParentFile().isDirectory() && !spriteFile.getParentFile().mkdirs()) {
+			throw new IOException("cannot create directory: " + spriteFile.getParent());
+		}
+		FileUtil.writeBytes(png, spriteFile);
+	}
+
+	/**
+	 * @param sf
+	 * @throws WinkBuildException
+	 */
+	private void rewriteFile(final ScannedFile sf) throws WinkBuildException {
+		final StringBuffer content = new StringBuffer(sf.content);
+		boolean modified = false;
+		for (int i = sf.candidates.size() - 1; i >= 0; i--) {
+			final Candidate c = sf.candidates.get(i);
+			if (c.sprite == null) {
+				continue;
+			}
+			final int[] offset = c.sprite.offsets.get(c.hash);
+			String body = content.substring(c.start, c.end);
+			final int bodyEnd = body.replaceAll("\\s+$", "").length();
+			final String position = "background-position: " + toOffset(offset[0]) + " " + toOffset(offset[1]) + ";";
+			final String separator = (bodyEnd > 0 && body.charAt(bodyEnd - 1) != ';') ? ";" : "";
+			body = body.substring(0, bodyEnd) + separator + "\n\t" + position + body.substring(bodyEnd);
+			body = body.replace(c.url, SPRITE_DIRECTORY + "/" + c.sprite.name);
+			content.replace(c.start, c.end, body);
+			modified = true;
+		}
+		if (!modified) {
+			return;
+		}
+		try {
+			FileManager.writeIntoFile(content.toString(), sf.tmpfilename);
+		} catch (final IOException e) {
+			throw new WinkBuildException(e);
+		}
+	}
+
+	/**
+	 * @param pixels
+	 * @return
+	 */
+	private static String toOffset(final int pixels) {
+		return (pixels == 0) ? "0" : "-" + pixels + "px";
+	}
+
+	/**
+	 * @return a summary of the images packed
+	 */
+	public String getReport() {
+		final StringBuffer sb = new StringBuffer();
+		sb.append("sprite images: ");
+		sb.append(imageCount).append(" images in ").append(spriteCount).append(" sprites, ");
+		sb.append(ruleCount).append(" rules rewritten, ").append(skippedCount).append(" rules skipped");
+		return sb.toString();
+	}
+
+	/**
+	 * A temporary file and its candidate rules
+	 */
+	private static class ScannedFile {
+		/**
+		 * 
+		 */
+		private final String tmpfilename;
+		private final String content;
+		private final List<Candidate> candidates = Common.newArrayList(8);
+		private final Set<String> conflicts = new HashSet<String>();
+		/**
+		 * a rule of no class nor id sets a background, a size or a padding
+		 */
+		private boolean unscoped;
+
+		/**
+		 * @param tmpfilename
+		 * @param content
+		 */
+		ScannedFile(final String tmpfilename, final String content) {
+			this.tmpfilename = tmpfilename;
+			this.content = content;
+		}
+	}
+
+	/**
+	 * A rule which can use a sheet
+	 */
+	private static class Candidate {
+		/**
+		 * 
+		 */
+		private final File image;
+		private final String hash;
+		private final String theme;
+		private final Set<String> tokens;
+		private final String url;
+		/**
+		 * the body of the rule in the file
+		 */
+		private int start;
+		private int end;
+		private boolean rejected;
+		private volatile Sprite sprite;
+
+		/**
+		 * @param image
+		 * @param hash
+		 * @param theme
+		 * @param tokens
+		 * @param url
+		 */
+		Candidate(final File image, final String hash, final String theme, final Set<String> tokens, final String url) {
+			this.image = image;
+			this.hash = hash;
+			this.theme = theme;
+			this.tokens = tokens;
+			this.url = url;
+		}
+	}
+
+	/**
+	 * A sheet: the offsets of its images by content hash
+	 */
+	private static class Sprite {
+		/**
+		 * 
+		 */
+		private final String name;
+		private final Map<String, int[]> offsets = new HashMap<String, int[]>();
+		private int width;
+		private int height;
+
+		/**
+		 * @param name
+		 */
+		Sprite(final String name) {
+			this.name = name;
+		}
+	}
+}
@@ -0,0 +1,256 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+package com.orange.wink.css;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.orange.wink.Constants;
+import com.orange.wink.exception.WinkBuildException;
+import com.orange.wink.util.Common;
+import com.orange.wink.util.FileManager;
+import com.orange.wink.util.TaskExecutor;
+
+/**
+ * Rewrites the image URLs of CSS files relatively to the wink path.
+ * Canonical paths and directory relative paths are memoized so that each
+ * directory is resolved once per build, whatever the number of URLs.
+ * 
+ * @author Sylvain Lalande
+ * 
+ */
+public class CssUrlRewriter {
+	/**
+	 * 
+	 */
+	public static final String URL_EXPR = "(url[\n\r ]*\\([\n\r ]*)([\"']?)([^)\"']+)([\"']?)([)])";
+	/**
+	 * 
+	 */
+	public static final Pattern URL_PATTERN = Pattern.compile(URL_EXPR, Pattern.MULTILINE);
+	/**
+	 * 
+	 */
+	public static final int LEFT_GROUP = 1;
+	public static final int URL_GROUP = 3;
+	public static final int RIGHT_GROUP = 5;
+	/**
+	 * 
+	 */
+	private static final Map<String, CssUrlRewriter> instances = new ConcurrentHashMap<String, CssUrlRewriter>();
+	/**
+	 * URLs of the images written next to the CSS build files (sprite sheets,
+	 * optimized copies), relative to them
+	 */
+	private static final Set<String> buildedUrls = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/**
+	 * 
+	 */
+	private final String baseCanonical;
+	/**
+	 * path as written (css directory + url) to canonical path
+	 */
+	private final Map<String, String> canonicalPaths;
+	/**
+	 * canonical directory to its path relative to the base directory
+	 */
+	private final Map<String, String> relativeDirectories;
+
+	/**
+	 * @param basePath
+	 * @throws WinkBuildException
+	 */
+	private CssUrlRewriter(final String basePath) throws WinkBuildException {
+		try {
+			baseCanonical = new File(basePath).getCanonicalPath();
+		} catch (final IOException e) {
+			throw new WinkBuildException(e);
+		}
+		canonicalPaths = new ConcurrentHashMap<String, String>();
+		relativeDirectories = new ConcurrentHashMap<String, String>();
+	}
+
+	/**
+	 * @param basePath
+	 * @return the rewriter of the given base path, shared between the
+	 *         profiles and targets of the build
+	 * @throws WinkBuildException
+	 */
+	public static synchronized CssUrlRewriter getInstance(final String basePath) throws WinkBuildException {
+		CssUrlRewriter rewriter = instances.get(basePath);
+		if (rewriter == null) {
+			rewriter = new CssUrlRewriter(basePath);
+			instances.put(basePath, rewriter);
+		}
+		return rewriter;
+	}
+
+	/**
+	 * Forgets the rewriters and the builded URLs, so that the canonical paths
+	 * are resolved again by the next build of a same process
+	 */
+	public static synchronized void clear() {
+		instances.clear();
+		buildedUrls.clear();
+	}
+
+	/**
+	 * @param url
+	 * @return true if the given URL must be left untouched
+	 */
+	public static boolean isExternalUrl(final String url) {
+		return url.equals("") || url.contains("data:") || url.contains("http:");
+	}
+
+	/**
+	 * @param url
+	 *            the URL of an image written next to the CSS build file
+	 */
+	public static void addBuildedUrl(final String url) {
+		buildedUrls.add(url);
+	}
+
+	/**
+	 * @param url
+	 * @return true if the URL is the one of an image written next to the CSS
+	 *         build file, left untouched
+	 */
+	public static boolean isBuildedUrl(final String url) {
+		return buildedUrls.contains(url);
+	}
+
+	/**
+	 * Rewrites the given temporary files, each one in its own task
+	 * 
+	 * @param files
+	 *            the source files, used to resolve the URLs
+	 * @param tmpfiles
+	 *            the temporary copies to rewrite
+	 * @throws WinkBuildException
+	 */
+	public void rewrite(final List<String> files, final List<String> tmpfiles) throws WinkBuildException {
+		final List<Callable<Object>> tasks = Common.newArrayList(files.size());
+		for (int i = 0; i < files.size(); i++) {
+			final String filename = files.get(i);
+			final String tmpfilename = tmpfiles.get(i);
+			tasks.add(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					rewriteFile(filename, tmpfilename);
+					return null;
+				}
+			});
+		}
+		TaskExecutor.execute(tasks);
+	}
+
+	/**
+	 * @param filename
+	 * @param tmpfilename
+	 * @throws WinkBuildException
+	 */
+	public void rewriteFile(final String filename, final String tmpfilename) throws WinkBuildException {
+		try {
+			final StringBuffer fileContent = new StringBuffer().append(FileManager.getFileContent(tmpfilename));
+			final String parent = new File(filename).getParent();
+
+			final Matcher m = URL_PATTERN.matcher(fileContent);
+			final StringBuffer contentReplaced = new StringBuffer();
+			while (m.find()) {
+				final String url = m.group(URL_GROUP);
+				if (isExternalUrl(url) || isBuildedUrl(url)) {
+					continue;
+				}
+				final String relativePath = getRewrittenUrl(parent, url);
+				m.appendReplacement(contentReplaced, Matcher.quoteReplacement(m.group(LEFT_GROUP) + relativePath + m.group(RIGHT_GROUP)));
+			}
+			m.appendTail(contentReplaced);
+
+			FileManager.writeIntoFile(contentReplaced.toString(), tmpfilename);
+		} catch (final IOException e) {
+			throw new WinkBuildException(e);
+		}
+	}
+
+	/**
+	 * @param parent
+	 *            the directory of the css file
+	 * @param url
+	 * @return the url to write in the builded css
+	 * @throws IOException
+	 */
+	public String getRewrittenUrl(final String parent, final String url) throws IOException {
+		final String cssLinkCanonical = getCanonicalPath(parent, url);
+		final File ptr = new File(cssLinkCanonical);
+
+		final StringBuffer relativePath = new StringBuffer();
+		relativePath.append(ptr.getName());
+
+		if (Constants.fromWinkPath) {
+			relativePath.insert(0, getRelativeDirectory(ptr.getParent()));
+		}
+		if (!Constants.relativePath.equals("")) {
+			if (!Constants.relativePath.endsWith("/")) {
+				relativePath.insert(0, "/");
+			}
+			relativePath.insert(0, Constants.relativePath);
+		}
+		return relativePath.toString();
+	}
+
+	/**
+	 * @param parent
+	 * @param url
+	 * @return the canonical path of the url referenced in the parent directory
+	 * @throws IOException
+	 */
+	public String getCanonicalPath(final String parent, final String url) throws IOException {
+		final String key = parent + File.separator + url;
+		String canonical = canonicalPaths.get(key);
+		if (canonical == null) {
+			canonical = new File(parent, url).getCanonicalPath();
+			canonicalPaths.put(key, canonical);
+		}
+		return canonical;
+	}
+
+	/**
+	 * @param directory
+	 *            a canonical directory
+	 * @return the path of the directory relative to the base directory,
+	 *         ending with '/' when not empty
+	 */
+	private String getRelativeDirectory(final String directory) {
+		if (directory == null) {
+			throw new IllegalStateException("cannot rewrite Image URL: bad css url: must be in: " + baseCanonical);
+		}
+		String relative = relativeDirectories.get(directory);
+		if (relative == null) {
+			if (directory.equals(baseCanonical)) {
+				relative = "";
+			} else {
+				final File dir = new File(directory);
+				relative = getRelativeDirectory(dir.getParent()) + dir.getName() + "/";
+			}
+			relativeDirectories.put(directory, relative);
+		}
+		return relative;
+	}
+}
@@ -0,0 +1,390 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+package com.orange.wink.model;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The literals, functions and properties of a script object, by name.
+ * 
+ * Most objects have no or a few children: they are kept in arrays sorted by
+ * name and kind, searched by dichotomy, and the table upgrades to a hash map
+ * per kind past THRESHOLD children. The names are interned, so that the model
+ * shares them. The table is created with the first child (see
+ * ScriptObject#getChildTable).
+ * 
+ * @author Sylvain Lalande
+ * 
+ */
+final class ChildTable {
+	/**
+	 * the kinds of children
+	 */
+	static final int LITERAL = 0;
+	static final int FUNCTION = 1;
+	static final int PROPERTY = 2;
+	private static final int KINDS = 3;
+	/**
+	 * count of children over which the table upgrades to hash maps
+	 */
+	private static final int THRESHOLD = 8;
+
+	/**
+	 * sorted by name then kind, until the upgrade
+	 */
+	private String[] names;
+	private byte[] kinds;
+	private ScriptObject[] values;
+	private int size;
+	/**
+	 * per kind, after the upgrade
+	 */
+	private Map<String, ScriptObject>[] maps;
+
+	/**
+	 * 
+	 */
+	ChildTable() {
+		names = new String[2];
+		kinds = new byte[2];
+		values = new ScriptObject[2];
+	}
+
+	/**
+	 * @param kind
+	 * @param name
+	 * @return the index of the child, or (-(insertion point) - 1)
+	 */
+	private int indexOf(final int kind, final String name) {
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			int cmp = names[mid].compareTo(name);
+			if (cmp == 0) {
+				cmp = kinds[mid] - kind;
+			}
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * @param kind
+	 * @param name
+	 * @return
+	 */
+	ScriptObject get(final int kind, final String name) {
+		if (maps != null) {
+			return (maps[kind] == null) ? null : maps[kind].get(name);
+		}
+		final int idx = indexOf(kind, name);
+		return (idx < 0) ? null : values[idx];
+	}
+
+	/**
+	 * @param kind
+	 * @param name
+	 * @param value
+	 * @return the previous child
+	 */
+	ScriptObject put(final int kind, final String name, final ScriptObject value) {
+		final String interned = name.intern();
+		if (maps != null) {
+			if (maps[kind] == null) {
+				maps[kind] = new HashMap<String, ScriptObject>();
+			}
+			return maps[kind].put(interned, value);
+		}
+		int idx = indexOf(kind, interned);
+		if (idx >= 0) {
+			final ScriptObject previous = values[idx];
+			values[idx] = value;
+			return previous;
+		}
+		if (size == THRESHOLD) {
+			upgrade();
+			return put(kind, interned, value);
+		}
+		idx = -(idx + 1);
+		if (size == names.length) {
+			final int capacity = Math.min(THRESHOLD, size * 2);
+			final String[] n = new String[capacity];
+			final byte[] k = new byte[capacity];
+			final ScriptObject[] v = new ScriptObject[capacity];
+			System.arraycopy(names, 0, n, 0, size);
+			System.arraycopy(kinds, 0, k, 0, size);
+			System.arraycopy(values, 0, v, 0, size);
+			names = n;
+			kinds = k;
+			values = v;
+		}
+		System.arraycopy(names, idx, names, idx + 1, size - idx);
+		System.arraycopy(kinds, idx, kinds, idx + 1, size - idx);
+		System.arraycopy(values, idx, values, idx + 1, size - idx);
+		names[idx] = interned;
+		kinds[idx] = (byte) kind;
+		values[idx] = value;
+		size++;
+		return null;
+	}
+
+	/**
+	 * @param kind
+	 * @param name
+	 * @return the removed child
+	 */
+	ScriptObject remove(final int kind, final String name) {
+		if (maps != null) {
+			return (maps[kind] == null) ? null : maps[kind].remove(name);
+		}
+		final int idx = indexOf(kind, name);
+		if (idx < 0) {
+			return null;
+		}
+		final ScriptObject previous = values[idx];
+		removeAt(idx);
+		return previous;
+	}
+
+	/**
+	 * @param idx
+	 */
+	private void removeAt(final int idx) {
+		final int moved = size - idx - 1;
+		System.arraycopy(names, idx + 1, names, idx, moved);
+		System.arraycopy(kinds, idx + 1, kinds, idx, moved);
+		System.arraycopy(values, idx + 1, values, idx, moved);
+		size--;
+		names[size] = null;
+		values[size] = null;
+	}
+
+	/**
+	 * @param kind
+	 * @return
+	 */
+	int size(final int kind) {
+		if (maps != null) {
+			return (maps[kind] == null) ? 0 : maps[kind].size();
+		}
+		int count = 0;
+		for (int i = 0; i < size; i++) {
+			if (kinds[i] == kind) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * 
+	 */
+	@SuppressWarnings("unchecked")
+	private void upgrade() {
+		maps = (Map<String, ScriptObject>[]) new Map<?, ?>[KINDS];
+		for (int i = 0; i < size; i++) {
+			if (maps[kinds[i]] == null) {
+				maps[kinds[i]] = new HashMap<String, ScriptObject>();
+			}
+			maps[kinds[i]].put(names[i], values[i]);
+		}
+		names = null;
+		kinds = null;
+		values = null;
+		size = 0;
+	}
+
+	/**
+	 * The children of a kind, as a map: a view of the table of the owner,
+	 * created with the first child put
+	 * 
+	 * @param <V>
+	 */
+	static final class View<V extends ScriptObject> extends AbstractMap<String, V> {
+		/**
+		 * 
+		 */
+		private final ScriptObject owner;
+		private final int kind;
+
+		/**
+		 * @param owner
+		 * @param kind
+		 */
+		View(final ScriptObject owner, final int kind) {
+			this.owner = owner;
+			this.kind = kind;
+		}
+
+		/**
+		 * @see java.util.AbstractMap#get(java.lang.Object)
+		 */
+		@Override
+		@SuppressWarnings("unchecked")
+		public V get(final Object key) {
+			final ChildTable table = owner.getChildTable(false);
+			if (table == null || !(key instanceof String)) {
+				return null;
+			}
+			return (V) table.get(kind, (String) key);
+		}
+
+		/**
+		 * @see java.util.AbstractMap#containsKey(java.lang.Object)
+		 */
+		@Override
+		public boolean containsKey(final Object key) {
+			return get(key) != null;
+		}
+
+		/**
+		 * @see java.util.AbstractMap#put(java.lang.Object, java.lang.Object)
+		 */
+		@Override
+		@SuppressWarnings("unchecked")
+		public V put(final String key, final V value) {
+			if (value == null) {
+				throw new NullPointerException("null child: " + key);
+			}
+			return (V) owner.getChildTable(true).put(kind, key, value);
+		}
+
+		/**
+		 * @see java.util.AbstractMap#remove(java.lang.Object)
+		 */
+		@Override
+		@SuppressWarnings("unchecked")
+		public V remove(final Object key) {
+			final ChildTable table = owner.getChildTable(false);
+			if (table == null || !(key instanceof String)) {
+				return null;
+			}
+			return (V) table.remove(kind, (String) key);
+		}
+
+		/**
+		 * @see java.util.AbstractMap#size()
+		 */
+		@Override
+		public int size() {
+			final ChildTable table = owner.getChildTable(false);
+			return (table == null) ? 0 : table.size(kind);
+		}
+
+		/**
+		 * @see java.util.AbstractMap#entrySet()
+		 */
+		@Override
+		public Set<Map.Entry<String, V>> entrySet() {
+			return new AbstractSet<Map.Entry<String, V>>() {
+				@Override
+				public Iterator<Map.Entry<String, V>> iterator() {
+					final ChildTable table = owner.getChildTable(false);
+					if (table != null && table.maps != null) {
+						return mapIterator(table);
+					}
+					return arrayIterator(table);
+				}
+
+				@Override
+				public int size() {
+					return View.this.size();
+				}
+			};
+		}
+
+		/**
+		 * @param table
+		 * @return
+		 */
+		private Iterator<Map.Entry<String, V>> mapIterator(final ChildTable table) {
+			if (table.maps[kind] == null) {
+				return Collections.<Map.Entry<String, V>> emptyList().iterator();
+			}
+			final Iterator<Map.Entry<String, ScriptObject>> it = table.maps[kind].entrySet().iterator();
+			return new Iterator<Map.Entry<String, V>>() {
+				public boolean hasNext() {
+					return it.hasNext();
+				}
+
+				@SuppressWarnings("unchecked")
+				public Map.Entry<String, V> next() {
+					final Map.Entry<String, ScriptObject> e = it.next();
+					return new AbstractMap.SimpleImmutableEntry<String, V>(e.getKey(), (V) e.getValue());
+				}
+
+				public void remove() {
+					it.remove();
+				}
+			};
+		}
+
+		/**
+		 * @param table
+		 * @return
+		 */
+		private Iterator<Map.Entry<String, V>> arrayIterator(final ChildTable table) {
+			return new Iterator<Map.Entry<String, V>>() {
+				private int next = find(0);
+				private int last = -1;
+
+				private int find(final int from) {
+					if (table == null || table.maps != null) {
+						return -1;
+					}
+					for (int i = from; i < table.size; i++) {
+						if (table.kinds[i] == kind) {
+							return i;
+						}
+					}
+					return -1;
+				}
+
+				public boolean hasNext() {
+					return next != -1;
+				}
+
+				@SuppressWarnings("unchecked")
+				public Map.Entry<String, V> next() {
+					if (next == -1) {
+						throw new NoSuchElementException();
+					}
+					last = next;
+					next = find(next + 1);
+					return new AbstractMap.SimpleImmutableEntry<String, V>(table.names[last], (V) table.values[last]);
+				}
+
+				public void remove() {
+					if (last == -1) {
+						throw new IllegalStateException();
+					}
+					table.removeAt(last);
+					next = find(last);
+					last = -1;
+				}
+			};
+		}
+	}
+}
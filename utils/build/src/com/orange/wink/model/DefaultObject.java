@@ -25,6 +25,13 @@ public class DefaultObject extends ScriptObject {
 		super(n);
 	}
 
+	/**
+	 * A property without AST, loaded by the ModelSerializer
+	 */
+	DefaultObject() {
+		super();
+	}
+
 	/**
 	 * @see com.orange.wink.model.ScriptObject#getNamedType()
 	 */
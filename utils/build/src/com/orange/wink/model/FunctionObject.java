@@ -47,6 +47,15 @@ public class FunctionObject extends ScriptObject {
 		localVarNames = Common.newArrayList(0);
 	}
 
+	/**
+	 * A function without AST, loaded by the ModelSerializer
+	 */
+	FunctionObject() {
+		super();
+		parameters = Common.newArrayList(0);
+		localVarNames = Common.newArrayList(0);
+	}
+
 	/**
 	 * @see com.orange.wink.model.ScriptObject#getNamedType()
 	 */
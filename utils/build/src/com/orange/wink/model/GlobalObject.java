@@ -10,9 +10,12 @@
  */
 package com.orange.wink.model;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import com.orange.wink.Constants;
 import com.orange.wink.ast.Ast;
@@ -41,6 +44,11 @@ public class GlobalObject extends LiteralObject {
 	 * 
 	 */
 	private final Map<String, ScriptObject> globalNamespaces;
+	/**
+	 * the namespaces resolved while interpreting the file, and their parent
+	 * namespaces
+	 */
+	private Set<String> resolvedNamespaces;
 	/**
 	 * 
 	 */
@@ -69,11 +77,30 @@ public class GlobalObject extends LiteralObject {
 		setLineStart(node.getLineStart());
 		setLineEnd(node.getLineEnd());
 
-		globalNamespaces = new HashMap<String, ScriptObject>();
-		globalNamespaces.put(WINDOW, null);
-		globalNamespaces.put(WINDOW + "." + WINDOW_LOCATION, null);
-		globalNamespaces.put(HTML_ELEMENT, null);
-		globalNamespaces.put(HTML_ELEMENT + "." + HTML_ELEMENT_PROTOTYPE, null);
+		globalNamespaces = newGlobalNamespaces();
+	}
+
+	/**
+	 * A global object without AST, loaded by the ModelSerializer
+	 */
+	GlobalObject() {
+		super();
+		this.ast = null;
+
+		namespace.setGlobalScope(true);
+		globalNamespaces = newGlobalNamespaces();
+	}
+
+	/**
+	 * @return the global namespaces, none resolved
+	 */
+	private Map<String, ScriptObject> newGlobalNamespaces() {
+		final Map<String, ScriptObject> result = new HashMap<String, ScriptObject>();
+		result.put(WINDOW, null);
+		result.put(WINDOW + "." + WINDOW_LOCATION, null);
+		result.put(HTML_ELEMENT, null);
+		result.put(HTML_ELEMENT + "." + HTML_ELEMENT_PROTOTYPE, null);
+		return result;
 	}
 
 	/**
@@ -301,6 +328,17 @@ public class GlobalObject extends LiteralObject {
 		return false;
 	}
 
+	/**
+	 * @param so
+	 *            a virtual object loaded by the ModelSerializer
+	 */
+	void restoreGlobalNamespace(final ScriptObject so) {
+		final String gns = so.getNamespace().toString();
+		if (globalNamespaces.containsKey(gns)) {
+			globalNamespaces.put(gns, so);
+		}
+	}
+
 	/**
 	 * @throws WinkParseException
 	 */
@@ -417,6 +455,36 @@ public class GlobalObject extends LiteralObject {
 		}
 	}
 
+	/**
+	 * @param ns
+	 *            a namespace resolved in the file
+	 */
+	void addResolvedNamespace(final Namespace ns) {
+		if (resolvedNamespaces == null) {
+			resolvedNamespaces = new HashSet<String>();
+		}
+		final StringBuffer sb = new StringBuffer();
+		for (final String name : ns.getNames()) {
+			if (sb.length() > 0) {
+				sb.append(".");
+			}
+			sb.append(name);
+			resolvedNamespaces.add(sb.toString());
+		}
+	}
+
+	/**
+	 * @return the namespaces resolved while interpreting the file, with their
+	 *         parent namespaces: the file depends on the objects of these
+	 *         namespaces
+	 */
+	public Set<String> getResolvedNamespaces() {
+		if (resolvedNamespaces == null) {
+			return Collections.emptySet();
+		}
+		return resolvedNamespaces;
+	}
+
 	/**
 	 * @return the ast
 	 */
@@ -0,0 +1,656 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+package com.orange.wink.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.orange.wink.util.Common;
+import com.orange.wink.util.FileUtil;
+
+/**
+ * A versioned binary format of the model of the parsed files (see
+ * WinkParser#getFileScopes).
+ * 
+ * The objects are stored in one section per file: the objects whose global
+ * scope is the global object of the file, with their namespace, lines and
+ * chars, parameters and local vars, and their links to the parent and the
+ * extended objects, which may be in an other section. A section is written
+ * with its own table of names, right after its file is walked, along with the
+ * hash of the content of the file.
+ * 
+ * The sections are read as they come but decoded when their file scope is
+ * asked for, with the sections they depend on. The loaded model has no AST:
+ * it can be walked, resolved and printed, not interpreted again.
+ * 
+ * @author Sylvain Lalande
+ * 
+ */
+public class ModelSerializer {
+	/**
+	 * 
+	 */
+	public static final int FORMAT_VERSION = 1;
+	/**
+	 * "WINK"
+	 */
+	private static final int MAGIC = 0x57494e4b;
+	/**
+	 * the kinds of objects
+	 */
+	private static final int LITERAL = 0;
+	private static final int FUNCTION = 1;
+	private static final int PROPERTY = 2;
+	private static final int GLOBAL = 3;
+	/**
+	 * the flags of an object
+	 */
+	private static final int VIRTUAL = 1;
+	private static final int INACTIVE = 2;
+	private static final int GLOBAL_NAMESPACE = 4;
+
+	/**
+	 * 
+	 */
+	private final String[] sourceNames;
+	private final String[] hashes;
+	/**
+	 * the sections not decoded yet
+	 */
+	private final byte[][] sections;
+	/**
+	 * the objects of the decoded sections
+	 */
+	private final ScriptObject[][] objects;
+	private final boolean[] decoding;
+	/**
+	 * the index of the decoded extensions in the extensions of the extended
+	 * object
+	 */
+	private final Map<ScriptObject, Integer> extensionIndexes;
+	private int decoded;
+
+	/**
+	 * @param count
+	 */
+	private ModelSerializer(final int count) {
+		sourceNames = new String[count];
+		hashes = new String[count];
+		sections = new byte[count][];
+		objects = new ScriptObject[count][];
+		decoding = new boolean[count];
+		extensionIndexes = new IdentityHashMap<ScriptObject, Integer>();
+	}
+
+	/**
+	 * Writes the model of the files
+	 * 
+	 * @param fileScopes
+	 *            the global object of each file, in the parsing order
+	 * @param os
+	 * @throws IOException
+	 */
+	public static void write(final List<GlobalObject> fileScopes, final OutputStream os) throws IOException {
+		final Map<ScriptObject, int[]> refs = new IdentityHashMap<ScriptObject, int[]>();
+		final Map<ScriptObject, String> keys = new IdentityHashMap<ScriptObject, String>();
+		final List<List<ScriptObject>> fileObjects = Common.newArrayList(fileScopes.size());
+		for (int i = 0; i < fileScopes.size(); i++) {
+			final List<ScriptObject> l = Common.newArrayList(16);
+			l.add(fileScopes.get(i));
+			fileObjects.add(l);
+			refs.put(fileScopes.get(i), new int[] { i, 0 });
+		}
+		if (fileScopes.size() > 0) {
+			// the global objects share the children of the first one
+			index(fileScopes.get(0), refs, keys, fileObjects);
+		}
+
+		final DataOutputStream out = new DataOutputStream(os);
+		out.writeInt(MAGIC);
+		out.writeInt(FORMAT_VERSION);
+		out.writeInt(fileScopes.size());
+		for (int i = 0; i < fileScopes.size(); i++) {
+			final String sourceName = fileScopes.get(i).getSourceName();
+			out.writeUTF((sourceName == null) ? "" : sourceName);
+			out.writeUTF(getHash(sourceName));
+			final byte[] section = writeSection(fileObjects.get(i), refs, keys);
+			out.writeInt(section.length);
+			out.write(section);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Gives its section and its index to each child of the object, parents
+	 * first
+	 * 
+	 * @param so
+	 * @param refs
+	 * @param keys
+	 * @param fileObjects
+	 * @throws IOException
+	 */
+	private static void index(final ScriptObject so, final Map<ScriptObject, int[]> refs, final Map<ScriptObject, String> keys, final List<List<ScriptObject>> fileObjects) throws IOException {
+		final List<ScriptObject> children = Common.newArrayList(8);
+		for (final Map<String, ? extends ScriptObject> m : getTables(so)) {
+			for (final Map.Entry<String, ? extends ScriptObject> e : m.entrySet()) {
+				final ScriptObject child = e.getValue();
+				if (refs.containsKey(child)) {
+					continue;
+				}
+				final int[] fileRef = refs.get(child.getGlobalScope());
+				if (fileRef == null) {
+					throw new IOException("no file scope for " + child.getNamespace());
+				}
+				final List<ScriptObject> l = fileObjects.get(fileRef[0]);
+				refs.put(child, new int[] { fileRef[0], l.size() });
+				keys.put(child, e.getKey());
+				l.add(child);
+				children.add(child);
+			}
+		}
+		for (final ScriptObject child : children) {
+			index(child, refs, keys, fileObjects);
+		}
+	}
+
+	/**
+	 * @param so
+	 * @return the literals, the functions and the properties of the object
+	 */
+	@SuppressWarnings("unchecked")
+	private static Map<String, ? extends ScriptObject>[] getTables(final ScriptObject so) {
+		return (Map<String, ? extends ScriptObject>[]) new Map<?, ?>[] { so.getLiterals(), so.getFunctions(), so.getProperties() };
+	}
+
+	/**
+	 * @param sourceName
+	 * @return the hash of the content of the file, empty if not readable
+	 */
+	private static String getHash(final String sourceName) {
+		if (sourceName == null || !FileUtil.isReadableFile(sourceName)) {
+			return "";
+		}
+		try {
+			return FileUtil.getContentHash(FileUtil.readBytes(new File(sourceName)));
+		} catch (final IOException e) {
+			return "";
+		}
+	}
+
+	/**
+	 * @param l
+	 *            the objects of the section
+	 * @param refs
+	 * @param keys
+	 * @return
+	 * @throws IOException
+	 */
+	private static byte[] writeSection(final List<ScriptObject> l, final Map<ScriptObject, int[]> refs, final Map<ScriptObject, String> keys) throws IOException {
+		final Map<String, Integer> strings = new HashMap<String, Integer>();
+		final List<String> stringList = Common.newArrayList(64);
+		final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+		final DataOutputStream records = new DataOutputStream(recordBytes);
+
+		writeVarInt(records, l.size());
+		for (final ScriptObject so : l) {
+			final int kind = getKind(so);
+			int flags = 0;
+			flags |= so.isVirtual() ? VIRTUAL : 0;
+			flags |= so.isSourceActiveInFile() ? 0 : INACTIVE;
+			flags |= so.getNamespace().isGlobalScope() ? GLOBAL_NAMESPACE : 0;
+			records.writeByte(kind);
+			records.writeByte(flags);
+
+			writeRef(records, refs, so.getParent());
+			writeString(records, strings, stringList, keys.get(so));
+			writeRef(records, refs, so.getLinkedParent());
+			final ScriptObject parentImpl = so.getParentImpl();
+			writeRef(records, refs, parentImpl);
+			if (parentImpl != null) {
+				writeVarInt(records, parentImpl.getExtensions().indexOf(so));
+			}
+
+			writeStrings(records, strings, stringList, so.getNamespace().getNames());
+			writeVarInt(records, so.getLineStart() + 1);
+			writeVarInt(records, so.getLineEnd() + 1);
+			writeVarInt(records, so.getCharStart() + 1);
+			writeVarInt(records, so.getCharEnd() + 1);
+			writeString(records, strings, stringList, so.getSourceName());
+
+			if (kind == FUNCTION) {
+				writeStrings(records, strings, stringList, ((FunctionObject) so).getParameters());
+				writeStrings(records, strings, stringList, ((FunctionObject) so).getLocalVarNames());
+			}
+		}
+		records.flush();
+
+		final ByteArrayOutputStream sectionBytes = new ByteArrayOutputStream(recordBytes.size() + stringList.size() * 8);
+		final DataOutputStream section = new DataOutputStream(sectionBytes);
+		writeVarInt(section, stringList.size());
+		for (final String s : stringList) {
+			section.writeUTF(s);
+		}
+		recordBytes.writeTo(section);
+		section.flush();
+		return sectionBytes.toByteArray();
+	}
+
+	/**
+	 * @param so
+	 * @return
+	 * @throws IOException
+	 */
+	private static int getKind(final ScriptObject so) throws IOException {
+		if (so instanceof GlobalObject) {
+			return GLOBAL;
+		} else if (so instanceof FunctionObject) {
+			return FUNCTION;
+		} else if (so instanceof LiteralObject) {
+			return LITERAL;
+		} else if (so instanceof DefaultObject) {
+			return PROPERTY;
+		}
+		throw new IOException("object type not managed: " + so.getClass().getName());
+	}
+
+	/**
+	 * @param out
+	 * @param refs
+	 * @param so
+	 * @throws IOException
+	 */
+	private static void writeRef(final DataOutputStream out, final Map<ScriptObject, int[]> refs, final ScriptObject so) throws IOException {
+		if (so == null) {
+			writeVarInt(out, 0);
+			return;
+		}
+		final int[] ref = refs.get(so);
+		if (ref == null) {
+			throw new IOException("object out of the model: " + so.getNamespace());
+		}
+		writeVarInt(out, ref[0] + 1);
+		writeVarInt(out, ref[1]);
+	}
+
+	/**
+	 * @param out
+	 * @param strings
+	 * @param stringList
+	 * @param s
+	 * @throws IOException
+	 */
+	private static void writeString(final DataOutputStream out, final Map<String, Integer> strings, final List<String> stringList, final String s) throws IOException {
+		if (s == null) {
+			writeVarInt(out, 0);
+			return;
+		}
+		Integer idx = strings.get(s);
+		if (idx == null) {
+			idx = Integer.valueOf(stringList.size());
+			strings.put(s, idx);
+			stringList.add(s);
+		}
+		writeVarInt(out, idx.intValue() + 1);
+	}
+
+	/**
+	 * @param out
+	 * @param strings
+	 * @param stringList
+	 * @param l
+	 * @throws IOException
+	 */
+	private static void writeStrings(final DataOutputStream out, final Map<String, Integer> strings, final List<String> stringList, final List<String> l) throws IOException {
+		writeVarInt(out, l.size());
+		for (final String s : l) {
+			writeString(out, strings, stringList, s);
+		}
+	}
+
+	/**
+	 * @param out
+	 * @param value
+	 *            positive
+	 * @throws IOException
+	 */
+	private static void writeVarInt(final DataOutputStream out, final int value) throws IOException {
+		int v = value;
+		while ((v & ~0x7f) != 0) {
+			out.writeByte((v & 0x7f) | 0x80);
+			v >>>= 7;
+		}
+		out.writeByte(v);
+	}
+
+	/**
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	private static int readVarInt(final DataInputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			final int b = in.readUnsignedByte();
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("bad model content: malformed number");
+	}
+
+	/**
+	 * Reads the sections of the model, without decoding them
+	 * 
+	 * @param is
+	 * @return
+	 * @throws IOException
+	 *             if the format is not the format of this version
+	 */
+	public static ModelSerializer read(final InputStream is) throws IOException {
+		final DataInputStream in = new DataInputStream(is);
+		if (in.readInt() != MAGIC) {
+			throw new IOException("bad model format: not a wink model");
+		}
+		final int version = in.readInt();
+		if (version != FORMAT_VERSION) {
+			throw new IOException("bad model format: version " + version + " instead of " + FORMAT_VERSION);
+		}
+		final int count = in.readInt();
+		if (count < 0) {
+			throw new IOException("bad model content: " + count + " files");
+		}
+		final ModelSerializer model = new ModelSerializer(count);
+		for (int i = 0; i < count; i++) {
+			model.sourceNames[i] = in.readUTF();
+			model.hashes[i] = in.readUTF();
+			final int length = in.readInt();
+			if (length < 0) {
+				throw new IOException("bad model content: section of " + model.sourceNames[i]);
+			}
+			model.sections[i] = new byte[length];
+			in.readFully(model.sections[i]);
+		}
+		return model;
+	}
+
+	/**
+	 * @return
+	 */
+	public int getFileCount() {
+		return sourceNames.length;
+	}
+
+	/**
+	 * @param file
+	 * @return
+	 */
+	public String getSourceName(final int file) {
+		return sourceNames[file];
+	}
+
+	/**
+	 * @param file
+	 * @return true if the content of the file is the content it had when the
+	 *         model was written
+	 */
+	public boolean isUnchanged(final int file) {
+		return hashes[file].length() > 0 && hashes[file].equals(getHash(sourceNames[file]));
+	}
+
+	/**
+	 * @return the count of decoded sections
+	 */
+	public int getDecodedCount() {
+		return decoded;
+	}
+
+	/**
+	 * @param file
+	 * @return the global object of the file
+	 * @throws IOException
+	 */
+	public GlobalObject getFileScope(final int file) throws IOException {
+		if (objects[file] == null) {
+			decode(file);
+		}
+		return (GlobalObject) objects[file][0];
+	}
+
+	/**
+	 * @return the global object of each file, in the parsing order: all the
+	 *         sections are decoded
+	 * @throws IOException
+	 */
+	public List<GlobalObject> getFileScopes() throws IOException {
+		final List<GlobalObject> result = Common.newArrayList(sourceNames.length);
+		for (int i = 0; i < sourceNames.length; i++) {
+			result.add(getFileScope(i));
+		}
+		return result;
+	}
+
+	/**
+	 * @param file
+	 * @throws IOException
+	 */
+	private void decode(final int file) throws IOException {
+		if (decoding[file]) {
+			throw new IOException("bad model content: circular sections in " + sourceNames[file]);
+		}
+		decoding[file] = true;
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(sections[file]));
+
+		final String[] strings = new String[readVarInt(in)];
+		for (int i = 0; i < strings.length; i++) {
+			strings[i] = in.readUTF().intern();
+		}
+
+		final int count = readVarInt(in);
+		final ScriptObject[] l = new ScriptObject[count];
+		objects[file] = l;
+		final int[] linkedParents = new int[count * 2];
+		final int[] parentImpls = new int[count * 3];
+
+		for (int i = 0; i < count; i++) {
+			final int kind = in.readByte();
+			final int flags = in.readByte();
+
+			final ScriptObject so;
+			if (kind == GLOBAL) {
+				so = new GlobalObject();
+			} else if (kind == FUNCTION) {
+				so = new FunctionObject();
+			} else if (kind == LITERAL) {
+				so = new LiteralObject();
+			} else if (kind == PROPERTY) {
+				so = new DefaultObject();
+			} else {
+				throw new IOException("bad model content: object kind " + kind + " in " + sourceNames[file]);
+			}
+
+			final ScriptObject parent = readRef(in);
+			final String key = readString(in, strings);
+			readRef(in, linkedParents, i * 2);
+			readRef(in, parentImpls, i * 3);
+			if (parentImpls[i * 3] != 0) {
+				parentImpls[i * 3 + 2] = readVarInt(in);
+			}
+
+			final Namespace ns = new Namespace();
+			for (final String name : readStrings(in, strings)) {
+				ns.addName(name);
+			}
+			ns.setGlobalScope((flags & GLOBAL_NAMESPACE) != 0);
+			so.setNamespace(ns);
+			so.setVirtual((flags & VIRTUAL) != 0);
+			so.setSourceActiveInFile((flags & INACTIVE) == 0);
+			so.setLineStart(readVarInt(in) - 1);
+			so.setLineEnd(readVarInt(in) - 1);
+			so.setCharStart(readVarInt(in) - 1);
+			so.setCharEnd(readVarInt(in) - 1);
+			so.setSourceName(readString(in, strings));
+
+			if (kind == FUNCTION) {
+				final FunctionObject fo = (FunctionObject) so;
+				fo.getParameters().addAll(readStrings(in, strings));
+				fo.getLocalVarNames().addAll(readStrings(in, strings));
+			}
+
+			so.setParent(parent);
+			if (parent != null && kind != GLOBAL) {
+				if (key == null) {
+					throw new IOException("bad model content: no key for " + ns + " in " + sourceNames[file]);
+				}
+				if (kind == FUNCTION) {
+					parent.getFunctions().put(key, (FunctionObject) so);
+				} else if (kind == LITERAL) {
+					parent.getLiterals().put(key, (LiteralObject) so);
+				} else if (kind == PROPERTY) {
+					parent.getProperties().put(key, (DefaultObject) so);
+				}
+			}
+			l[i] = so;
+		}
+
+		for (int i = 0; i < count; i++) {
+			final ScriptObject so = l[i];
+			final ScriptObject linkedParent = resolve(linkedParents[i * 2], linkedParents[i * 2 + 1]);
+			so.setLinkedParent(linkedParent);
+			if (so.isVirtual() && linkedParent instanceof GlobalObject) {
+				((GlobalObject) linkedParent).restoreGlobalNamespace(so);
+			}
+			final ScriptObject parentImpl = resolve(parentImpls[i * 3], parentImpls[i * 3 + 1]);
+			if (parentImpl != null) {
+				addExtension(parentImpl, so, parentImpls[i * 3 + 2]);
+			}
+		}
+
+		sections[file] = null;
+		decoding[file] = false;
+		decoded++;
+	}
+
+	/**
+	 * Adds the extension at its place among the decoded extensions
+	 * 
+	 * @param parentImpl
+	 * @param so
+	 * @param index
+	 */
+	private void addExtension(final ScriptObject parentImpl, final ScriptObject so, final int index) {
+		if (parentImpl.extensions == null) {
+			parentImpl.extensions = Common.newArrayList(1);
+		}
+		final List<ScriptObject> exts = parentImpl.extensions;
+		int at = exts.size();
+		for (int i = 0; i < exts.size(); i++) {
+			if (extensionIndexes.get(exts.get(i)).intValue() > index) {
+				at = i;
+				break;
+			}
+		}
+		exts.add(at, so);
+		extensionIndexes.put(so, Integer.valueOf(index));
+		so.setParentImpl(parentImpl);
+	}
+
+	/**
+	 * @param in
+	 * @return the object, its section decoded first if needed
+	 * @throws IOException
+	 */
+	private ScriptObject readRef(final DataInputStream in) throws IOException {
+		final int[] ref = new int[2];
+		readRef(in, ref, 0);
+		return resolve(ref[0], ref[1]);
+	}
+
+	/**
+	 * @param in
+	 * @param ref
+	 * @param offset
+	 * @throws IOException
+	 */
+	private void readRef(final DataInputStream in, final int[] ref, final int offset) throws IOException {
+		ref[offset] = readVarInt(in);
+		if (ref[offset] != 0) {
+			if (ref[offset] > sourceNames.length) {
+				throw new IOException("bad model content: section " + ref[offset]);
+			}
+			ref[offset + 1] = readVarInt(in);
+		}
+	}
+
+	/**
+	 * @param file
+	 *            the section + 1, 0 for no object
+	 * @param index
+	 * @return
+	 * @throws IOException
+	 */
+	private ScriptObject resolve(final int file, final int index) throws IOException {
+		if (file == 0) {
+			return null;
+		}
+		if (objects[file - 1] == null) {
+			decode(file - 1);
+		}
+		final ScriptObject[] l = objects[file - 1];
+		if (index >= l.length || l[index] == null) {
+			throw new IOException("bad model content: object " + index + " of " + sourceNames[file - 1]);
+		}
+		return l[index];
+	}
+
+	/**
+	 * @param in
+	 * @param strings
+	 * @return
+	 * @throws IOException
+	 */
+	private static String readString(final DataInputStream in, final String[] strings) throws IOException {
+		final int idx = readVarInt(in);
+		if (idx == 0) {
+			return null;
+		}
+		if (idx > strings.length) {
+			throw new IOException("bad model content: name " + idx);
+		}
+		return strings[idx - 1];
+	}
+
+	/**
+	 * @param in
+	 * @param strings
+	 * @return
+	 * @throws IOException
+	 */
+	private static List<String> readStrings(final DataInputStream in, final String[] strings) throws IOException {
+		final int count = readVarInt(in);
+		final List<String> result = Common.newArrayList(count);
+		for (int i = 0; i < count; i++) {
+			result.add(readString(in, strings));
+		}
+		return result;
+	}
+}
@@ -60,7 +60,7 @@ public class Namespace {
 	 * @param name
 	 */
 	public void addName(final String name) {
-		names.add(name);
+		names.add((name == null) ? null : name.intern());
 	}
 
 	/**
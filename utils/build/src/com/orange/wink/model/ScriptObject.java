@@ -11,7 +11,7 @@
 package com.orange.wink.model;
 
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -69,25 +69,17 @@ public abstract class ScriptObject implements ScriptElement {
 	protected ScriptObject linkedParent;
 
 	/**
-	 * 
-	 */
-	private final Map<String, LiteralObject> literals;
-	/**
-	 * 
+	 * the literals, functions and properties, none until the first child
 	 */
-	private final Map<String, FunctionObject> functions;
-	/**
-	 * 
-	 */
-	private final Map<String, DefaultObject> properties;
+	private ChildTable children;
 	/**
 	 * 
 	 */
 	protected ScriptObject parentImpl;
 	/**
-	 * 
+	 * none until the first extension
 	 */
-	protected final List<ScriptObject> extensions;
+	protected List<ScriptObject> extensions;
 	/**
 	 * 
 	 */
@@ -98,10 +90,6 @@ public abstract class ScriptObject implements ScriptElement {
 	protected AstNode node;
 
 	public ScriptObject() {
-		literals = new HashMap<String, LiteralObject>(0);
-		functions = new HashMap<String, FunctionObject>(0);
-		properties = new HashMap<String, DefaultObject>(0);
-		extensions = Common.newArrayList(0);
 		namespace = new Namespace();
 		parent = null;
 		isVirtual = false;
@@ -295,6 +283,7 @@ public abstract class ScriptObject implements ScriptElement {
 	 */
 	public String getExtendKey(final ScriptObject ext) throws WinkParseException {
 		int idx = -1;
+		final List<ScriptObject> extensions = getExtensions();
 		for (int i = 0; i < extensions.size(); i++) {
 			if (extensions.get(i) == ext) {
 				idx = i;
@@ -307,10 +296,42 @@ public abstract class ScriptObject implements ScriptElement {
 		return ".extend." + (idx + 1);
 	}
 
+	/**
+	 * Retracts a component added by addComponent, with its extension link
+	 * 
+	 * @param key
+	 *            the key of the component in its table
+	 * @param so
+	 */
+	public void removeComponent(final String key, final ScriptObject so) {
+		if (so instanceof FunctionObject) {
+			getFunctions().remove(key);
+		} else if (so instanceof LiteralObject) {
+			getLiterals().remove(key);
+		} else if (so instanceof DefaultObject) {
+			getProperties().remove(key);
+		}
+
+		final ScriptObject pImpl = so.getParentImpl();
+		if (pImpl != null) {
+			final Iterator<ScriptObject> it = pImpl.getExtensions().iterator();
+			while (it.hasNext()) {
+				if (it.next() == so) {
+					it.remove();
+					break;
+				}
+			}
+			so.setParentImpl(null);
+		}
+	}
+
 	/**
 	 * @param fo
 	 */
 	public void addExtension(final ScriptObject fo) {
+		if (extensions == null) {
+			extensions = Common.newArrayList(1);
+		}
 		extensions.add(fo);
 		fo.setParentImpl(this);
 	}
@@ -321,15 +342,21 @@ public abstract class ScriptObject implements ScriptElement {
 	 * @throws WinkParseException
 	 */
 	public ScriptObject resolveByNamespace(final Namespace ns) throws WinkParseException {
-		ScriptObject cursor = getGlobalScope();
+		final GlobalObject scope = getGlobalScope();
+		scope.addResolvedNamespace(ns);
+		ScriptObject cursor = scope;
 		if (!ns.equals(cursor.getNamespace())) {
 			for (final String name : ns.getNames()) {
-				final Map<String, ScriptObject> sos = new HashMap<String, ScriptObject>();
-				sos.putAll(cursor.getLiterals());
-				sos.putAll(cursor.getFunctions());
-				sos.putAll(cursor.getProperties());
+				// a property hides a function, which hides a literal
+				ScriptObject child = cursor.getProperties().get(name);
+				if (child == null) {
+					child = cursor.getFunctions().get(name);
+				}
+				if (child == null) {
+					child = cursor.getLiterals().get(name);
+				}
 
-				if (!sos.containsKey(name)) {
+				if (child == null) {
 					final GlobalObject go = getGlobalScope();
 					if (go.resolveGlobalNamespace(ns.toString())) {
 						return resolveByNamespace(ns); // retry
@@ -337,7 +364,7 @@ public abstract class ScriptObject implements ScriptElement {
 						throw new WinkParseException("resolveByNamespace failed: " + ns.toString() + " is not accessible");
 					}
 				}
-				cursor = sos.get(name);
+				cursor = child;
 				final List<ScriptObject> exts = cursor.getExtensions();
 				if (exts.size() > 0) {
 					cursor = exts.get(exts.size() - 1);
@@ -556,25 +583,37 @@ public abstract class ScriptObject implements ScriptElement {
 		this.sourceName = sourceName;
 	}
 
+	/**
+	 * @param create
+	 *            true to create the table if none
+	 * @return
+	 */
+	ChildTable getChildTable(final boolean create) {
+		if (children == null && create) {
+			children = new ChildTable();
+		}
+		return children;
+	}
+
 	/**
 	 * @return
 	 */
 	public Map<String, LiteralObject> getLiterals() {
-		return literals;
+		return new ChildTable.View<LiteralObject>(this, ChildTable.LITERAL);
 	}
 
 	/**
 	 * @return
 	 */
 	public Map<String, FunctionObject> getFunctions() {
-		return functions;
+		return new ChildTable.View<FunctionObject>(this, ChildTable.FUNCTION);
 	}
 
 	/**
 	 * @return
 	 */
 	public Map<String, DefaultObject> getProperties() {
-		return properties;
+		return new ChildTable.View<DefaultObject>(this, ChildTable.PROPERTY);
 	}
 
 	/**
@@ -604,6 +643,9 @@ public abstract class ScriptObject implements ScriptElement {
 	 * @return the extensions
 	 */
 	public List<ScriptObject> getExtensions() {
+		if (extensions == null) {
+			return Collections.emptyList();
+		}
 		return extensions;
 	}
 
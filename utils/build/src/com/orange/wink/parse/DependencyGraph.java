@@ -0,0 +1,571 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+package com.orange.wink.parse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Parser;
+import org.mozilla.javascript.ScriptOrFnNode;
+import org.mozilla.javascript.Token;
+
+import com.orange.wink.Constants;
+import com.orange.wink.ast.AstBuilder;
+import com.orange.wink.ast.AstNode;
+import com.orange.wink.exception.WinkAstException;
+import com.orange.wink.exception.WinkParseException;
+import com.orange.wink.exception.WinkUnmanagedSyntaxException;
+import com.orange.wink.parse.objects.GetProp;
+import com.orange.wink.util.Common;
+import com.orange.wink.util.FileManager;
+
+/**
+ * Orders the files of a build by their load time dependencies: the modules
+ * required by an AMD define() call, and the namespaces accessed or extended
+ * by the code executed at load time. The code of the functions is only
+ * executed later, so it does not constrain the order.
+ * 
+ * The files of a dependency cycle keep their configured order. The files
+ * are also split in independent groups, which share no dependency.
+ * 
+ * @author Sylvain Lalande
+ * 
+ */
+public class DependencyGraph {
+	/**
+	 * 
+	 */
+	private static final String DEFINE = "define";
+	private static final String JS_EXTENSION = ".js";
+
+	/**
+	 * the files, in the configured order
+	 */
+	private final List<String> files;
+	/**
+	 * canonical path to file index
+	 */
+	private final Map<String, Integer> fileIndexes;
+	/**
+	 * namespace to the indexes of the files defining it
+	 */
+	private final Map<String, Set<Integer>> definers;
+	/**
+	 * per file, the namespaces accessed at load time
+	 */
+	private final List<List<List<String>>> references;
+	/**
+	 * per file, the indexes of the files it depends on
+	 */
+	private final List<Set<Integer>> dependencies;
+	/**
+	 * 
+	 */
+	private List<String> sortedFiles;
+	private List<List<String>> groups;
+	private int edgeCount;
+	private int cycleCount;
+
+	/**
+	 * @param files
+	 *            the files, in the configured order
+	 */
+	public DependencyGraph(final List<String> files) {
+		this.files = files;
+		fileIndexes = new HashMap<String, Integer>();
+		definers = new HashMap<String, Set<Integer>>();
+		references = Common.newArrayList(files.size());
+		dependencies = Common.newArrayList(files.size());
+	}
+
+	/**
+	 * Parses the files and links them
+	 * 
+	 * @throws WinkParseException
+	 */
+	public void build() throws WinkParseException {
+		try {
+			for (int i = 0; i < files.size(); i++) {
+				fileIndexes.put(new File(files.get(i)).getCanonicalPath(), Integer.valueOf(i));
+				references.add(Common.<List<String>> newArrayList(1));
+				dependencies.add(new TreeSet<Integer>());
+			}
+			for (int i = 0; i < files.size(); i++) {
+				final String filename = files.get(i);
+				final CompilerEnvirons compilerEnv = new CompilerEnvirons();
+				final Parser parser = new Parser(compilerEnv, compilerEnv.getErrorReporter());
+				final ScriptOrFnNode tree = parser.parse(FileManager.getFileContent(filename), new File(filename).getCanonicalPath(), 1);
+				scan(new AstBuilder().build(tree).getHead(), i, new HashMap<String, List<String>>());
+			}
+		} catch (final IOException e) {
+			throw new WinkParseException(e);
+		} catch (final WinkAstException e) {
+			throw new WinkParseException(e);
+		}
+
+		for (int i = 0; i < files.size(); i++) {
+			for (final List<String> names : references.get(i)) {
+				link(i, names);
+			}
+			edgeCount += dependencies.get(i).size();
+		}
+	}
+
+	/**
+	 * @param n
+	 * @param file
+	 * @param aliases
+	 *            the function parameters standing for a namespace
+	 * @throws IOException
+	 */
+	private void scan(final AstNode n, final int file, final Map<String, List<String>> aliases) throws IOException {
+		final int type = n.getType();
+		final List<AstNode> childs = n.getChilds();
+
+		if (type == Token.FUNCTION) {
+			// only executed when called
+			return;
+		} else if (type == Token.CALL && childs.size() > 0) {
+			final AstNode callee = childs.get(0);
+			if (callee.getType() == Token.NAME && callee.asString().equals(DEFINE)) {
+				scanDefine(n, file);
+				return;
+			} else if (callee.getType() == Token.FUNCTION) {
+				// function executed at load time, its parameters are aliases
+				// of the given arguments
+				final Map<String, List<String>> callAliases = new HashMap<String, List<String>>(aliases);
+				final List<String> params = callee.getParameters();
+				for (int i = 1; i < childs.size(); i++) {
+					final AstNode arg = childs.get(i);
+					final List<String> names = resolveNames(arg, aliases);
+					if (names != null && i - 1 < params.size()) {
+						callAliases.put(params.get(i - 1), names);
+					}
+					scan(arg, file, aliases);
+				}
+				scanBody(callee, file, callAliases);
+				return;
+			}
+		} else if ((type == Token.SETPROP || type == Token.SETELEM) && childs.size() == 3) {
+			final List<String> target = resolveNames(childs.get(0), aliases);
+			final AstNode prop = childs.get(1);
+			if (target != null && (type == Token.SETPROP || prop.getType() == Token.STRING)) {
+				// the target is extended, it must be defined before
+				references.get(file).add(target);
+				final List<String> names = Common.newArrayList(target.size() + 1);
+				names.addAll(target);
+				names.add(prop.asString());
+				define(names, childs.get(2), file);
+			} else {
+				scan(childs.get(0), file, aliases);
+				scan(prop, file, aliases);
+			}
+			scan(childs.get(2), file, aliases);
+			return;
+		} else if (type == Token.SETNAME && childs.size() == 2) {
+			final String name = childs.get(0).asString();
+			if (!aliases.containsKey(name) && !isLocal(n, name)) {
+				define(names(childs.get(0).asString()), childs.get(1), file);
+			}
+			scan(childs.get(1), file, aliases);
+			return;
+		} else if (type == Token.VAR && n.getScope().isScript()) {
+			for (final AstNode var : childs) {
+				if (var.getType() == Token.NAME && var.getChilds().size() == 1) {
+					define(names(var.asString()), var.getChilds().get(0), file);
+				}
+			}
+		} else if (type == Token.GETPROP || type == Token.NAME) {
+			final List<String> names = resolveNames(n, aliases);
+			if (names != null) {
+				if (aliases.containsKey(names.get(0)) || !isLocal(n, names.get(0))) {
+					references.get(file).add(names);
+				}
+				return;
+			}
+		}
+
+		for (final AstNode child : childs) {
+			scan(child, file, aliases);
+		}
+	}
+
+	/**
+	 * @param function
+	 * @param file
+	 * @param aliases
+	 * @throws IOException
+	 */
+	private void scanBody(final AstNode function, final int file, final Map<String, List<String>> aliases) throws IOException {
+		for (final AstNode child : function.getChilds()) {
+			scan(child, file, aliases);
+		}
+	}
+
+	/**
+	 * define([dependencies], function(wink) {...})
+	 * 
+	 * @param call
+	 * @param file
+	 * @throws IOException
+	 */
+	private void scanDefine(final AstNode call, final int file) throws IOException {
+		final File parent = new File(files.get(file)).getParentFile();
+		references.get(file).add(names(DEFINE));
+		final Map<String, List<String>> aliases = new HashMap<String, List<String>>();
+		final List<AstNode> childs = call.getChilds();
+		for (int i = 1; i < childs.size(); i++) {
+			final AstNode arg = childs.get(i);
+			if (arg.getType() == Token.ARRAYLIT) {
+				for (final AstNode dep : arg.getChilds()) {
+					if (dep.getType() != Token.STRING) {
+						continue;
+					}
+					String path = dep.asString();
+					if (!path.endsWith(JS_EXTENSION)) {
+						path += JS_EXTENSION;
+					}
+					final Integer depIndex = fileIndexes.get(new File(parent, path).getCanonicalPath());
+					if (depIndex != null && depIndex.intValue() != file) {
+						dependencies.get(file).add(depIndex);
+					}
+				}
+			} else if (arg.getType() == Token.FUNCTION) {
+				// the module parameters receive the wink namespace
+				for (final String param : arg.getParameters()) {
+					aliases.put(param, names(Constants.WINK_NAMESPACE));
+				}
+				scanBody(arg, file, aliases);
+			}
+		}
+	}
+
+	/**
+	 * @param n
+	 * @param name
+	 * @return true if the name is a variable or a parameter of an enclosing
+	 *         function
+	 */
+	private static boolean isLocal(final AstNode n, final String name) {
+		AstNode scope = n.getScope();
+		while (scope != null && !scope.isScript()) {
+			if (scope.getLocalVars().contains(name) || scope.getParameters().contains(name)) {
+				return true;
+			}
+			scope = scope.getParentScope();
+		}
+		return false;
+	}
+
+	/**
+	 * @param names
+	 *            the namespace assigned
+	 * @param value
+	 * @param file
+	 */
+	private void define(final List<String> names, final AstNode value, final int file) {
+		final String ns = join(names);
+		Set<Integer> nsDefiners = definers.get(ns);
+		if (nsDefiners == null) {
+			nsDefiners = new TreeSet<Integer>();
+			definers.put(ns, nsDefiners);
+		}
+		nsDefiners.add(Integer.valueOf(file));
+
+		if (value.getType() == Token.OBJECTLIT && value.getObjectIds() != null) {
+			final List<String> ids = value.getObjectIds();
+			final List<AstNode> childs = value.getChilds();
+			for (int i = 0; i < ids.size() && i < childs.size(); i++) {
+				final List<String> member = Common.newArrayList(names.size() + 1);
+				member.addAll(names);
+				member.add(ids.get(i));
+				define(member, childs.get(i), file);
+			}
+		}
+	}
+
+	/**
+	 * @param n
+	 * @param aliases
+	 * @return the names of the accessed namespace, null if not resolvable
+	 */
+	private static List<String> resolveNames(final AstNode n, final Map<String, List<String>> aliases) {
+		List<String> names;
+		if (n.getType() == Token.NAME) {
+			names = names(n.asString());
+		} else if (n.getType() == Token.GETPROP) {
+			try {
+				names = new GetProp(n).resolveNamespace().getNames();
+			} catch (final WinkUnmanagedSyntaxException e) {
+				return null;
+			}
+		} else {
+			return null;
+		}
+		final List<String> alias = aliases.get(names.get(0));
+		if (alias == null) {
+			return names;
+		}
+		final List<String> resolved = Common.newArrayList(alias.size() + names.size() - 1);
+		resolved.addAll(alias);
+		resolved.addAll(names.subList(1, names.size()));
+		return resolved;
+	}
+
+	/**
+	 * Adds a dependency to the files defining the deepest known namespace of
+	 * the given names, unless the file defines it itself
+	 * 
+	 * @param file
+	 * @param names
+	 */
+	private void link(final int file, final List<String> names) {
+		for (int i = names.size(); i > 0; i--) {
+			final Set<Integer> nsDefiners = definers.get(join(names.subList(0, i)));
+			if (nsDefiners == null) {
+				continue;
+			}
+			if (!nsDefiners.contains(Integer.valueOf(file))) {
+				dependencies.get(file).addAll(nsDefiners);
+			}
+			return;
+		}
+	}
+
+	/**
+	 * Sorts the files so that each one follows its dependencies, the
+	 * configured order being kept as much as possible
+	 * 
+	 * @return the sorted files
+	 */
+	public List<String> sort() {
+		final int size = files.size();
+		final int[] components = new Tarjan().run();
+		int componentCount = 0;
+		for (final int c : components) {
+			componentCount = Math.max(componentCount, c + 1);
+		}
+
+		// members, first file and dependencies of each component
+		final List<List<Integer>> members = Common.newArrayList(componentCount);
+		final int[] firstFiles = new int[componentCount];
+		final List<Set<Integer>> successors = Common.newArrayList(componentCount);
+		final int[] pending = new int[componentCount];
+		for (int c = 0; c < componentCount; c++) {
+			members.add(Common.<Integer> newArrayList(1));
+			successors.add(new TreeSet<Integer>());
+			firstFiles[c] = size;
+		}
+		for (int i = 0; i < size; i++) {
+			members.get(components[i]).add(Integer.valueOf(i));
+			firstFiles[components[i]] = Math.min(firstFiles[components[i]], i);
+		}
+		for (int i = 0; i < size; i++) {
+			for (final Integer dep : dependencies.get(i)) {
+				final int from = components[dep.intValue()];
+				final int to = components[i];
+				if (from != to && successors.get(from).add(Integer.valueOf(to))) {
+					pending[to]++;
+				}
+			}
+		}
+
+		final PriorityQueue<Integer> ready = new PriorityQueue<Integer>(Math.max(1, componentCount), new Comparator<Integer>() {
+			@Override
+			public int compare(final Integer c1, final Integer c2) {
+				return firstFiles[c1.intValue()] - firstFiles[c2.intValue()];
+			}
+		});
+		for (int c = 0; c < componentCount; c++) {
+			if (pending[c] == 0) {
+				ready.add(Integer.valueOf(c));
+			}
+		}
+
+		sortedFiles = Common.newArrayList(size);
+		cycleCount = 0;
+		while (!ready.isEmpty()) {
+			final int c = ready.poll().intValue();
+			final List<Integer> cfiles = members.get(c);
+			if (cfiles.size() > 1) {
+				cycleCount++;
+				final StringBuffer sb = new StringBuffer();
+				for (final Integer i : cfiles) {
+					sb.append((sb.length() == 0) ? "" : ", ").append(new File(files.get(i.intValue())).getName());
+				}
+				System.err.println("WARN - dependency cycle, configured order kept: " + sb);
+			}
+			for (final Integer i : cfiles) {
+				sortedFiles.add(files.get(i.intValue()));
+			}
+			for (final Integer next : successors.get(c)) {
+				if (--pending[next.intValue()] == 0) {
+					ready.add(next);
+				}
+			}
+		}
+
+		// independent groups: files linked by a dependency, in sorted order
+		final int[] roots = new int[size];
+		for (int i = 0; i < size; i++) {
+			roots[i] = i;
+		}
+		for (int i = 0; i < size; i++) {
+			for (final Integer dep : dependencies.get(i)) {
+				roots[findRoot(roots, i)] = findRoot(roots, dep.intValue());
+			}
+		}
+		final Map<Integer, List<String>> groupsByRoot = new HashMap<Integer, List<String>>();
+		groups = Common.newArrayList(1);
+		for (final String f : sortedFiles) {
+			final Integer root = Integer.valueOf(findRoot(roots, files.indexOf(f)));
+			List<String> group = groupsByRoot.get(root);
+			if (group == null) {
+				group = Common.newArrayList(1);
+				groupsByRoot.put(root, group);
+				groups.add(group);
+			}
+			group.add(f);
+		}
+		return sortedFiles;
+	}
+
+	/**
+	 * @param roots
+	 * @param i
+	 * @return
+	 */
+	private static int findRoot(final int[] roots, final int i) {
+		int r = i;
+		while (roots[r] != r) {
+			roots[r] = roots[roots[r]];
+			r = roots[r];
+		}
+		return r;
+	}
+
+	/**
+	 * @return the independent groups of files, each one in sorted order
+	 */
+	public List<List<String>> getGroups() {
+		return groups;
+	}
+
+	/**
+	 * @param index
+	 * @return the indexes of the files the given file depends on
+	 */
+	public Set<Integer> getDependencies(final int index) {
+		return dependencies.get(index);
+	}
+
+	/**
+	 * @return a summary of the graph
+	 */
+	public String getReport() {
+		final StringBuffer sb = new StringBuffer();
+		sb.append("dependencies: ");
+		sb.append(files.size()).append(" files, ").append(edgeCount).append(" dependencies, ");
+		sb.append(cycleCount).append(" cycles, ");
+		sb.append((groups == null) ? 0 : groups.size()).append(" independent groups");
+		return sb.toString();
+	}
+
+	/**
+	 * @param name
+	 * @return
+	 */
+	private static List<String> names(final String name) {
+		final List<String> names = Common.newArrayList(1);
+		names.add(name);
+		return names;
+	}
+
+	/**
+	 * @param names
+	 * @return
+	 */
+	private static String join(final List<String> names) {
+		final StringBuffer sb = new StringBuffer();
+		for (final String name : names) {
+			if (sb.length() > 0) {
+				sb.append(".");
+			}
+			sb.append(name);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Strongly connected components of the dependencies
+	 */
+	private class Tarjan {
+		private final int[] indexes = new int[files.size()];
+		private final int[] lowLinks = new int[files.size()];
+		private final boolean[] onStack = new boolean[files.size()];
+		private final int[] stack = new int[files.size()];
+		private final int[] components = new int[files.size()];
+		private int stackSize = 0;
+		private int index = 1;
+		private int componentCount = 0;
+
+		/**
+		 * @return the component of each file
+		 */
+		public int[] run() {
+			for (int i = 0; i < files.size(); i++) {
+				if (indexes[i] == 0) {
+					visit(i);
+				}
+			}
+			return components;
+		}
+
+		/**
+		 * @param v
+		 */
+		private void visit(final int v) {
+			indexes[v] = index;
+			lowLinks[v] = index;
+			index++;
+			stack[stackSize++] = v;
+			onStack[v] = true;
+
+			for (final Integer dep : dependencies.get(v)) {
+				final int w = dep.intValue();
+				if (indexes[w] == 0) {
+					visit(w);
+					lowLinks[v] = Math.min(lowLinks[v], lowLinks[w]);
+				} else if (onStack[w]) {
+					lowLinks[v] = Math.min(lowLinks[v], indexes[w]);
+				}
+			}
+
+			if (lowLinks[v] == indexes[v]) {
+				int w;
+				do {
+					w = stack[--stackSize];
+					onStack[w] = false;
+					components[w] = componentCount;
+				} while (w != v);
+				componentCount++;
+			}
+		}
+	}
+}
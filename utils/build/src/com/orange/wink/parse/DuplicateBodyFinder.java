@@ -0,0 +1,620 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+package com.orange.wink.parse;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.mozilla.javascript.Node;
+import org.mozilla.javascript.ScriptOrFnNode;
+import org.mozilla.javascript.Token;
+
+import com.orange.wink.Constants;
+import com.orange.wink.ast.AstNode;
+import com.orange.wink.exception.WinkAstException;
+import com.orange.wink.exception.WinkBuildException;
+import com.orange.wink.model.FunctionObject;
+import com.orange.wink.model.GlobalObject;
+import com.orange.wink.model.LiteralObject;
+import com.orange.wink.model.ScriptObject;
+import com.orange.wink.util.Common;
+import com.orange.wink.util.FileManager;
+import com.orange.wink.util.FileUtil;
+
+/**
+ * Finds the wink functions defined with the same body under different
+ * namespaces. The body is hashed from its syntax tree, so that the
+ * whitespaces, the comments and the names of the parameters and local
+ * variables are ignored; a function using the variables of an enclosing
+ * function is not compared, the same code may then read other values.
+ * 
+ * The later definitions of a body may be replaced by a reference to the
+ * first one, when both are plain functions (without members nor
+ * extensions) defined unconditionally at load time.
+ * 
+ * @author Sylvain Lalande
+ * 
+ */
+public class DuplicateBodyFinder {
+	/**
+	 * the start of a definition: its name, then the function
+	 */
+	private static final Pattern DEFINITION = Pattern.compile("([\\w$.]+|\"[^\"]*\"|'[^']*')\\s*[:=]\\s*function\\b");
+
+	/**
+	 * hash to the functions with this body, in load order
+	 */
+	private final Map<String, List<FunctionObject>> bodies;
+	/**
+	 * source file to its load order
+	 */
+	private final Map<String, Integer> fileOrder;
+	/**
+	 * 
+	 */
+	private int aliasedFunctions;
+	private int savedChars;
+
+	/**
+	 * 
+	 */
+	public DuplicateBodyFinder() {
+		bodies = new LinkedHashMap<String, List<FunctionObject>>();
+		fileOrder = new HashMap<String, Integer>();
+	}
+
+	/**
+	 * @param fileScopes
+	 *            the global object of each parsed file, in load order
+	 * @param sourceFiles
+	 *            the files whose functions are compared
+	 * @throws WinkBuildException
+	 */
+	public void find(final List<GlobalObject> fileScopes, final Collection<String> sourceFiles) throws WinkBuildException {
+		final Map<ScriptObject, Boolean> visited = new IdentityHashMap<ScriptObject, Boolean>();
+		final List<FunctionObject> functions = Common.newArrayList(1);
+		for (final GlobalObject scope : fileScopes) {
+			if (!fileOrder.containsKey(scope.getSourceName())) {
+				fileOrder.put(scope.getSourceName(), Integer.valueOf(fileOrder.size()));
+			}
+			collect(scope, visited, functions, sourceFiles);
+		}
+		Collections.sort(functions, new Comparator<FunctionObject>() {
+			@Override
+			public int compare(final FunctionObject f1, final FunctionObject f2) {
+				return comparePositions(f1, f2);
+			}
+		});
+
+		for (final FunctionObject f : functions) {
+			final String hash = hash(f.getNode());
+			if (hash == null) {
+				continue;
+			}
+			List<FunctionObject> same = bodies.get(hash);
+			if (same == null) {
+				same = Common.newArrayList(1);
+				bodies.put(hash, same);
+			}
+			same.add(f);
+		}
+	}
+
+	/**
+	 * @param so
+	 * @param visited
+	 * @param functions
+	 * @param sourceFiles
+	 */
+	private static void collect(final ScriptObject so, final Map<ScriptObject, Boolean> visited, final List<FunctionObject> functions, final Collection<String> sourceFiles) {
+		for (final FunctionObject f : so.getFunctions().values()) {
+			if (visited.put(f, Boolean.TRUE) == null) {
+				if (isComparable(f, sourceFiles)) {
+					functions.add(f);
+				}
+				collect(f, visited, functions, sourceFiles);
+			}
+		}
+		for (final LiteralObject l : so.getLiterals().values()) {
+			if (visited.put(l, Boolean.TRUE) == null) {
+				collect(l, visited, functions, sourceFiles);
+			}
+		}
+	}
+
+	/**
+	 * @param f
+	 * @param sourceFiles
+	 * @return
+	 */
+	private static boolean isComparable(final FunctionObject f, final Collection<String> sourceFiles) {
+		final List<String> names = f.getNamespace().getNames();
+		if (f.isVirtual() || !f.isSourceActiveInFile() || f.getNode() == null || !f.getNode().isFunction()) {
+			return false;
+		}
+		if (names.size() < 2 || !names.get(0).equals(Constants.WINK_NAMESPACE)) {
+			return false;
+		}
+		return sourceFiles.contains(f.getSourceName());
+	}
+
+	/**
+	 * @param f1
+	 * @param f2
+	 * @return
+	 */
+	private int comparePositions(final FunctionObject f1, final FunctionObject f2) {
+		final int file1 = fileOrder.get(f1.getSourceName()).intValue();
+		final int file2 = fileOrder.get(f2.getSourceName()).intValue();
+		if (file1 != file2) {
+			return (file1 < file2) ? -1 : 1;
+		}
+		if (f1.getLineStart() != f2.getLineStart()) {
+			return (f1.getLineStart() < f2.getLineStart()) ? -1 : 1;
+		}
+		return (f1.getCharStart() < f2.getCharStart()) ? -1 : ((f1.getCharStart() == f2.getCharStart()) ? 0 : 1);
+	}
+
+	/**
+	 * @param fn
+	 *            the function node
+	 * @return the hash of the normalized body, null if the function cannot be
+	 *         compared
+	 * @throws WinkBuildException
+	 */
+	private static String hash(final AstNode fn) throws WinkBuildException {
+		final StringBuffer sb = new StringBuffer();
+		final List<AstNode> scopes = Common.newArrayList(2);
+		scopes.add(fn);
+		sb.append(fn.getParameters().size()).append(',').append(fn.getLocalVars().size());
+		for (final AstNode child : fn.getChilds()) {
+			if (!normalize(child, fn, scopes, sb)) {
+				return null;
+			}
+		}
+		try {
+			return FileUtil.getContentHash(sb.toString().getBytes("UTF-8"));
+		} catch (final IOException e) {
+			throw new WinkBuildException(e);
+		}
+	}
+
+	/**
+	 * @param n
+	 * @param fn
+	 *            the compared function node
+	 * @param scopes
+	 *            the functions enclosing the node, from the compared one
+	 * @param sb
+	 * @return false if the function cannot be compared
+	 * @throws WinkBuildException
+	 */
+	private static boolean normalize(final AstNode n, final AstNode fn, final List<AstNode> scopes, final StringBuffer sb) throws WinkBuildException {
+		final int type = n.getType();
+		sb.append('(').append(type);
+
+		switch (type) {
+		case Token.NAME:
+		case Token.BINDNAME:
+		case Token.GETVAR:
+		case Token.TYPEOFNAME:
+			final String name = n.asString();
+			final String local = getLocal(name, scopes);
+			if (local != null) {
+				sb.append(' ').append(local);
+			} else if (isClosureName(name, fn)) {
+				return false;
+			} else {
+				sb.append(' ').append(name);
+			}
+			break;
+		case Token.STRING:
+			sb.append(' ').append(n.asString().length()).append(':').append(n.asString());
+			break;
+		case Token.NUMBER:
+			sb.append(' ').append(n.asString());
+			break;
+		case Token.OBJECTLIT:
+			sb.append(' ').append(n.getObjectIds());
+			break;
+		case Token.REGEXP:
+			try {
+				final ScriptOrFnNode script = n.getScope().getAsScriptOrFn();
+				final int index = n.getNode().getExistingIntProp(Node.REGEXP_PROP);
+				sb.append(' ').append(script.getRegexpString(index)).append('/').append(script.getRegexpFlags(index));
+			} catch (final WinkAstException e) {
+				throw new WinkBuildException(e);
+			}
+			break;
+		case Token.INC:
+		case Token.DEC:
+			sb.append(' ').append(n.getNode().getIntProp(Node.INCRDECR_PROP, 0));
+			break;
+		case Token.LABEL:
+			// the jumps are not compared
+			return false;
+		case Token.FUNCTION:
+			try {
+				sb.append(' ').append(n.getAsFunctionNode().getFunctionType());
+			} catch (final WinkAstException e) {
+				throw new WinkBuildException(e);
+			}
+			sb.append(',').append(n.getParameters().size()).append(',').append(n.getLocalVars().size());
+			scopes.add(n);
+			for (final AstNode child : n.getChilds()) {
+				if (!normalize(child, fn, scopes, sb)) {
+					return false;
+				}
+			}
+			scopes.remove(scopes.size() - 1);
+			sb.append(')');
+			return true;
+		default:
+			break;
+		}
+
+		for (final AstNode child : n.getChilds()) {
+			if (!normalize(child, fn, scopes, sb)) {
+				return false;
+			}
+		}
+		sb.append(')');
+		return true;
+	}
+
+	/**
+	 * @param name
+	 * @param scopes
+	 * @return the position of the parameter or local variable, null if not
+	 *         local
+	 */
+	private static String getLocal(final String name, final List<AstNode> scopes) {
+		for (int i = scopes.size() - 1; i >= 0; i--) {
+			final AstNode scope = scopes.get(i);
+			int index = scope.getParameters().indexOf(name);
+			if (index != -1) {
+				return "p" + i + "." + index;
+			}
+			index = scope.getLocalVars().indexOf(name);
+			if (index != -1) {
+				return "v" + i + "." + index;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param name
+	 * @param fn
+	 * @return true if the name is a variable of a function enclosing the
+	 *         compared one
+	 */
+	private static boolean isClosureName(final String name, final AstNode fn) {
+		AstNode scope = fn.getParentScope();
+		while (scope != null && !scope.isScript()) {
+			if (scope.getParameters().contains(name) || scope.getLocalVars().contains(name)) {
+				return true;
+			}
+			scope = scope.getParentScope();
+		}
+		return false;
+	}
+
+	/**
+	 * @return the functions of each body defined more than once
+	 */
+	public List<List<FunctionObject>> getDuplicates() {
+		final List<List<FunctionObject>> result = Common.newArrayList(1);
+		for (final List<FunctionObject> same : bodies.values()) {
+			if (same.size() > 1) {
+				result.add(same);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Replaces the later definitions of each body by a reference to the first
+	 * one
+	 * 
+	 * @throws WinkBuildException
+	 */
+	public void alias() throws WinkBuildException {
+		final Map<FunctionObject, FunctionObject> aliases = new LinkedHashMap<FunctionObject, FunctionObject>();
+		for (final List<FunctionObject> same : getDuplicates()) {
+			FunctionObject first = null;
+			for (final FunctionObject f : same) {
+				if (!isPlain(f) || !isLoadTime(f)) {
+					continue;
+				}
+				if (first == null) {
+					first = f;
+				} else if (isAfter(f.getNode(), first.getNode()) && isGlobalWink(f.getNode())) {
+					aliases.put(f, first);
+				}
+			}
+		}
+
+		// from the end of the files, so that the positions of the next
+		// definitions to replace do not move
+		final List<FunctionObject> toAlias = Common.newArrayList(aliases.size());
+		toAlias.addAll(aliases.keySet());
+		Collections.sort(toAlias, new Comparator<FunctionObject>() {
+			@Override
+			public int compare(final FunctionObject f1, final FunctionObject f2) {
+				return comparePositions(f2, f1);
+			}
+		});
+		for (final FunctionObject f : toAlias) {
+			replace(f, aliases.get(f).getNamespace().toString());
+		}
+	}
+
+	/**
+	 * @param f
+	 * @return true if the function has no members nor extensions
+	 */
+	private static boolean isPlain(final FunctionObject f) {
+		if (!f.isSourceActiveInFile() || f.getExtensions().size() > 0) {
+			return false;
+		}
+		return f.getFunctions().isEmpty() && f.getLiterals().isEmpty() && f.getProperties().isEmpty();
+	}
+
+	/**
+	 * @param f
+	 * @return true if the function is defined unconditionally when its file
+	 *         is loaded
+	 */
+	private static boolean isLoadTime(final FunctionObject f) {
+		// a member of a function is an instance member, unless it belongs to
+		// the prototype
+		ScriptObject child = f;
+		ScriptObject parent = f.getParent();
+		while (parent != null && !(parent instanceof GlobalObject)) {
+			if (parent instanceof FunctionObject && !(child instanceof LiteralObject && ((LiteralObject) child).isPrototype())) {
+				return false;
+			}
+			child = parent;
+			parent = parent.getParent();
+		}
+
+		AstNode n = f.getNode();
+		AstNode p = n.getParent();
+		while (p != null) {
+			switch (p.getType()) {
+			case Token.SCRIPT:
+			case Token.BLOCK:
+			case Token.EXPR_VOID:
+			case Token.EXPR_RESULT:
+			case Token.OBJECTLIT:
+			case Token.SETPROP:
+			case Token.SETNAME:
+			case Token.SETVAR:
+			case Token.BINDNAME:
+			case Token.VAR:
+			case Token.NAME:
+			case Token.CALL:
+			case Token.RETURN:
+				break;
+			case Token.GETPROP:
+				// (function() {}).call(this)
+				if (!n.isFunction() || p.getParent() == null || p.getParent().getType() != Token.CALL) {
+					return false;
+				}
+				break;
+			case Token.FUNCTION:
+				// only a function called when defined
+				if (!isCalled(p)) {
+					return false;
+				}
+				break;
+			default:
+				return false;
+			}
+			n = p;
+			p = p.getParent();
+		}
+		return true;
+	}
+
+	/**
+	 * @param n
+	 * @param first
+	 *            the first definition, preceding the node in load order
+	 * @return true if the node is evaluated once the statement of the first
+	 *         definition is complete
+	 */
+	private static boolean isAfter(final AstNode n, final AstNode first) {
+		AstNode statement = first;
+		while (statement != null && !isStatement(statement)) {
+			statement = statement.getParent();
+		}
+		for (AstNode p = n; p != null; p = p.getParent()) {
+			if (p == statement) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param n
+	 * @return
+	 */
+	private static boolean isStatement(final AstNode n) {
+		final int type = n.getType();
+		return type == Token.EXPR_VOID || type == Token.EXPR_RESULT || type == Token.VAR;
+	}
+
+	/**
+	 * @param n
+	 * @return true if the wink name is the global one where the node is
+	 *         defined, or a parameter given the global one
+	 */
+	private static boolean isGlobalWink(final AstNode n) {
+		AstNode scope = n.getParentScope();
+		while (scope != null && !scope.isScript()) {
+			final int index = scope.getParameters().indexOf(Constants.WINK_NAMESPACE);
+			if (index != -1) {
+				final AstNode call = scope.getParent();
+				if (call == null || call.getType() != Token.CALL || call.getChilds().get(0) != scope || call.getChilds().size() <= index + 1) {
+					return false;
+				}
+				final AstNode arg = call.getChilds().get(index + 1);
+				if (arg.getType() != Token.NAME || !arg.asString().equals(Constants.WINK_NAMESPACE)) {
+					return false;
+				}
+			} else if (scope.getLocalVars().contains(Constants.WINK_NAMESPACE)) {
+				return false;
+			}
+			scope = scope.getParentScope();
+		}
+		return true;
+	}
+
+	/**
+	 * @param fn
+	 * @return true if the function is called where it is defined
+	 */
+	private static boolean isCalled(final AstNode fn) {
+		final AstNode p = fn.getParent();
+		if (p == null) {
+			return false;
+		}
+		if (p.getType() == Token.CALL) {
+			return p.getChilds().get(0) == fn;
+		}
+		if (p.getType() == Token.GETPROP && p.getParent() != null && p.getParent().getType() == Token.CALL) {
+			final List<AstNode> childs = p.getChilds();
+			if (childs.size() == 2 && childs.get(0) == fn && childs.get(1).getType() == Token.STRING) {
+				final String method = childs.get(1).asString();
+				return method.equals("call") || method.equals("apply");
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param f
+	 * @param alias
+	 *            the namespace replacing the function
+	 * @throws WinkBuildException
+	 */
+	private void replace(final FunctionObject f, final String alias) throws WinkBuildException {
+		final String filename = f.getSourceName();
+		try {
+			final String source = FileManager.getFileObject(filename).getLinesAsString(f.getLineStart(), f.getLineEnd());
+			if (f.getCharStart() < 0 || f.getCharStart() >= source.length()) {
+				return;
+			}
+			final Matcher m = DEFINITION.matcher(source);
+			if (!m.find(f.getCharStart()) || m.start() != f.getCharStart()) {
+				return;
+			}
+			final String identifier = m.group(1).replace("\"", "").replace("'", "");
+			final String name = f.getNamespace().getLastName();
+			if (!identifier.equals(name) && !identifier.endsWith("." + name)) {
+				return;
+			}
+			final int start = m.end() - "function".length();
+			final int end = getBodyEnd(source, m.end());
+			if (end == -1) {
+				return;
+			}
+
+			FileManager.replaceInFile(filename, f.getLineStart(), f.getLineEnd(), start, end, alias);
+			f.setSourceActiveInFile(false);
+			aliasedFunctions++;
+			savedChars += end - start - alias.length();
+		} catch (final IOException e) {
+			throw new WinkBuildException(e);
+		}
+	}
+
+	/**
+	 * @param source
+	 * @param from
+	 *            the index following the function keyword
+	 * @return the index following the closing brace of the body, -1 if not
+	 *         found
+	 */
+	private static int getBodyEnd(final String source, final int from) {
+		final int bodyStart = source.indexOf('{', source.indexOf(')', from));
+		if (bodyStart == -1) {
+			return -1;
+		}
+		int depth = 0;
+		int i = bodyStart;
+		while (i < source.length()) {
+			final char c = source.charAt(i);
+			if (c == '"' || c == '\'') {
+				i++;
+				while (i < source.length() && source.charAt(i) != c) {
+					if (source.charAt(i) == '\\') {
+						i++;
+					}
+					i++;
+				}
+			} else if (c == '/' && i + 1 < source.length() && source.charAt(i + 1) == '/') {
+				i = source.indexOf('\n', i);
+				if (i == -1) {
+					return -1;
+				}
+			} else if (c == '/' && i + 1 < source.length() && source.charAt(i + 1) == '*') {
+				i = source.indexOf("*/", i + 2);
+				if (i == -1) {
+					return -1;
+				}
+				i++;
+			} else if (c == '{') {
+				depth++;
+			} else if (c == '}') {
+				depth--;
+				if (depth == 0) {
+					return i + 1;
+				}
+			}
+			i++;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the duplicate bodies report
+	 */
+	public String getReport() {
+		final List<List<FunctionObject>> duplicates = getDuplicates();
+		int functions = 0;
+		final StringBuffer details = new StringBuffer();
+		for (final List<FunctionObject> same : duplicates) {
+			functions += same.size();
+			details.append("\n\t");
+			for (int i = 0; i < same.size(); i++) {
+				details.append((i == 0) ? "" : ", ").append(same.get(i).getNamespace());
+			}
+		}
+		final StringBuffer sb = new StringBuffer();
+		sb.append("duplicate bodies: ").append(duplicates.size()).append(" bodies, ").append(functions).append(" functions, ");
+		sb.append(aliasedFunctions).append(" aliased functions, ").append(savedChars).append(" chars saved");
+		sb.append(details);
+		return sb.toString();
+	}
+}
@@ -0,0 +1,529 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+package com.orange.wink.parse;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.orange.wink.Constants;
+import com.orange.wink.exception.WinkBuildException;
+import com.orange.wink.model.DefaultObject;
+import com.orange.wink.model.FunctionObject;
+import com.orange.wink.model.GlobalObject;
+import com.orange.wink.model.LiteralObject;
+import com.orange.wink.model.ScriptObject;
+import com.orange.wink.util.Common;
+import com.orange.wink.util.FileManager;
+
+/**
+ * Renames the private members (prefixed by '_') declared under the wink
+ * namespaces to short names. A name is renamed everywhere it is used as a
+ * property in the source files (after a '.' or as an object literal key),
+ * whatever the object, so that the renaming stays consistent across the
+ * bundle.
+ * 
+ * A name is kept when it may be accessed by its string value (it appears in
+ * a string literal or a regular expression of the bundle or of its
+ * dependencies) or when the dependencies use it. The renamed names are
+ * shared by the builds of the same process, so that the chunks loaded
+ * together use the same names.
+ * 
+ * @author Sylvain Lalande
+ * 
+ */
+public class PrivateMemberMangler {
+	/**
+	 * 
+	 */
+	public static final String MAP_EXTENSION = ".mangle.json";
+	/**
+	 * the chars of the generated names, after the '_' prefix
+	 */
+	private static final String NAME_CHARS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789$";
+	/**
+	 * the keywords after which a '/' starts a regular expression
+	 */
+	private static final Set<String> REGEXP_KEYWORDS = new HashSet<String>();
+	static {
+		final String[] keywords = { "return", "typeof", "case", "in", "new", "delete", "void", "throw", "instanceof", "else", "do" };
+		for (final String k : keywords) {
+			REGEXP_KEYWORDS.add(k);
+		}
+	}
+
+	/**
+	 * private name to its new name, the same name when it is kept; shared by
+	 * the builds
+	 */
+	private final Map<String, String> names;
+	/**
+	 * private name to its new name, for the names used by this bundle
+	 */
+	private final Map<String, String> renamed;
+	/**
+	 * 
+	 */
+	private int references;
+	private int savedChars;
+	private int keptNames;
+
+	/**
+	 * @param names
+	 *            the names renamed by the previous builds, updated with the
+	 *            names of this build
+	 */
+	public PrivateMemberMangler(final Map<String, String> names) {
+		this.names = names;
+		renamed = new TreeMap<String, String>();
+	}
+
+	/**
+	 * @param fileScopes
+	 *            the global object of each parsed file
+	 * @param sourceFiles
+	 *            the files to rewrite, the other parsed files being
+	 *            dependencies
+	 * @throws WinkBuildException
+	 */
+	public void mangle(final List<GlobalObject> fileScopes, final Collection<String> sourceFiles) throws WinkBuildException {
+		final Set<String> declared = new HashSet<String>();
+		final Map<ScriptObject, Boolean> visited = new IdentityHashMap<ScriptObject, Boolean>();
+		final List<String> files = Common.newArrayList(fileScopes.size());
+		final List<String> dependencies = Common.newArrayList(fileScopes.size());
+		for (final GlobalObject scope : fileScopes) {
+			final String file = scope.getSourceName();
+			if (sourceFiles.contains(file)) {
+				if (!files.contains(file)) {
+					files.add(file);
+				}
+				collect(scope, visited, declared, sourceFiles);
+			} else if (!dependencies.contains(file)) {
+				dependencies.add(file);
+			}
+		}
+
+		final Map<String, String> contents = new HashMap<String, String>();
+		final Map<String, List<JsToken>> tokens = new HashMap<String, List<JsToken>>();
+		final Set<String> identifiers = new HashSet<String>();
+		final Set<String> dependencyIdentifiers = new HashSet<String>();
+		final StringBuffer literals = new StringBuffer();
+		final Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (final String file : files) {
+			final String content = getContent(file);
+			final List<JsToken> fileTokens = tokenize(content);
+			contents.put(file, content);
+			tokens.put(file, fileTokens);
+			for (int i = 0; i < fileTokens.size(); i++) {
+				final JsToken t = fileTokens.get(i);
+				if (t.type == JsToken.IDENTIFIER) {
+					final String name = t.getText(content);
+					identifiers.add(name);
+					if (isProperty(fileTokens, i, content)) {
+						final Integer count = counts.get(name);
+						counts.put(name, Integer.valueOf((count == null) ? 1 : count.intValue() + 1));
+					}
+				} else if (t.type == JsToken.LITERAL) {
+					literals.append(t.getText(content)).append('\n');
+				}
+			}
+		}
+		for (final String file : dependencies) {
+			final String content = getContent(file);
+			for (final JsToken t : tokenize(content)) {
+				if (t.type == JsToken.IDENTIFIER) {
+					dependencyIdentifiers.add(t.getText(content));
+				} else if (t.type == JsToken.LITERAL) {
+					literals.append(t.getText(content)).append('\n');
+				}
+			}
+		}
+		identifiers.addAll(dependencyIdentifiers);
+		final String literalsText = literals.toString();
+
+		for (final Map.Entry<String, String> e : names.entrySet()) {
+			final String name = e.getKey();
+			if (!name.equals(e.getValue()) && counts.containsKey(name)) {
+				if (containsWord(literalsText, name)) {
+					System.err.println("WARN - renamed private member used by a string: " + name);
+				}
+				renamed.put(name, e.getValue());
+			}
+		}
+
+		final List<String> candidates = Common.newArrayList(declared.size());
+		for (final String name : declared) {
+			if (names.containsKey(name) || !counts.containsKey(name)) {
+				continue;
+			}
+			if (dependencyIdentifiers.contains(name) || containsWord(literalsText, name)) {
+				names.put(name, name);
+				keptNames++;
+			} else {
+				candidates.add(name);
+			}
+		}
+		Collections.sort(candidates, new Comparator<String>() {
+			@Override
+			public int compare(final String n1, final String n2) {
+				final int c1 = counts.get(n1).intValue();
+				final int c2 = counts.get(n2).intValue();
+				return (c1 != c2) ? ((c1 > c2) ? -1 : 1) : n1.compareTo(n2);
+			}
+		});
+
+		final Set<String> used = new HashSet<String>(names.values());
+		used.addAll(identifiers);
+		int index = 0;
+		for (final String name : candidates) {
+			String shortName = getShortName(index++);
+			while (used.contains(shortName)) {
+				shortName = getShortName(index++);
+			}
+			if (shortName.length() >= name.length()) {
+				names.put(name, name);
+				keptNames++;
+				continue;
+			}
+			used.add(shortName);
+			names.put(name, shortName);
+			renamed.put(name, shortName);
+		}
+
+		if (renamed.size() == 0) {
+			return;
+		}
+		for (final String file : files) {
+			rewrite(file, contents.get(file), tokens.get(file));
+		}
+	}
+
+	/**
+	 * @param so
+	 * @param visited
+	 * @param declared
+	 * @param sourceFiles
+	 */
+	private static void collect(final ScriptObject so, final Map<ScriptObject, Boolean> visited, final Set<String> declared, final Collection<String> sourceFiles) {
+		for (final FunctionObject f : so.getFunctions().values()) {
+			if (visited.put(f, Boolean.TRUE) == null) {
+				declare(f, declared, sourceFiles);
+				collect(f, visited, declared, sourceFiles);
+			}
+		}
+		for (final LiteralObject l : so.getLiterals().values()) {
+			if (visited.put(l, Boolean.TRUE) == null) {
+				declare(l, declared, sourceFiles);
+				collect(l, visited, declared, sourceFiles);
+			}
+		}
+		for (final DefaultObject p : so.getProperties().values()) {
+			declare(p, declared, sourceFiles);
+		}
+	}
+
+	/**
+	 * @param so
+	 * @param declared
+	 * @param sourceFiles
+	 */
+	private static void declare(final ScriptObject so, final Set<String> declared, final Collection<String> sourceFiles) {
+		final List<String> nsNames = so.getNamespace().getNames();
+		if (nsNames.size() < 2 || !nsNames.get(0).equals(Constants.WINK_NAMESPACE)) {
+			return;
+		}
+		// the properties only know the scope they are declared in
+		String sourceName = so.getSourceName();
+		if (sourceName == null && so.getGlobalScope() != null) {
+			sourceName = so.getGlobalScope().getSourceName();
+		}
+		if (!sourceFiles.contains(sourceName)) {
+			return;
+		}
+		final String name = so.getNamespace().getLastName();
+		if (name.length() > 1 && name.charAt(0) == '_' && name.charAt(1) != '_') {
+			declared.add(name);
+		}
+	}
+
+	/**
+	 * @param index
+	 * @return the generated name at this index
+	 */
+	private static String getShortName(final int index) {
+		final StringBuffer sb = new StringBuffer();
+		int i = index;
+		do {
+			sb.insert(0, NAME_CHARS.charAt(i % NAME_CHARS.length()));
+			i = i / NAME_CHARS.length() - 1;
+		} while (i >= 0);
+		return sb.insert(0, '_').toString();
+	}
+
+	/**
+	 * @param text
+	 * @param name
+	 * @return true if the text contains the name as a whole word
+	 */
+	private static boolean containsWord(final String text, final String name) {
+		int idx = text.indexOf(name);
+		while (idx >= 0) {
+			final int end = idx + name.length();
+			if ((idx == 0 || !isIdentifierPart(text.charAt(idx - 1))) && (end == text.length() || !isIdentifierPart(text.charAt(end)))) {
+				return true;
+			}
+			idx = text.indexOf(name, idx + 1);
+		}
+		return false;
+	}
+
+	/**
+	 * @param file
+	 * @return
+	 * @throws WinkBuildException
+	 */
+	private static String getContent(final String file) throws WinkBuildException {
+		try {
+			return FileManager.getFileContent(file);
+		} catch (final IOException e) {
+			throw new WinkBuildException(e);
+		}
+	}
+
+	/**
+	 * @param file
+	 * @param content
+	 * @param fileTokens
+	 * @throws WinkBuildException
+	 */
+	private void rewrite(final String file, final String content, final List<JsToken> fileTokens) throws WinkBuildException {
+		final StringBuffer output = new StringBuffer(content.length());
+		int last = 0;
+		for (int i = 0; i < fileTokens.size(); i++) {
+			final JsToken t = fileTokens.get(i);
+			if (t.type != JsToken.IDENTIFIER) {
+				continue;
+			}
+			final String name = t.getText(content);
+			final String shortName = renamed.get(name);
+			if (shortName == null || !isProperty(fileTokens, i, content)) {
+				continue;
+			}
+			output.append(content.substring(last, t.start)).append(shortName);
+			last = t.end;
+			references++;
+			savedChars += name.length() - shortName.length();
+		}
+		if (last == 0) {
+			return;
+		}
+		output.append(content.substring(last));
+		try {
+			FileManager.writeIntoFile(output.toString(), file);
+		} catch (final IOException e) {
+			throw new WinkBuildException(e);
+		}
+	}
+
+	/**
+	 * @param fileTokens
+	 * @param i
+	 *            the index of an identifier
+	 * @param content
+	 * @return true if the identifier is a property name: after a '.' or as an
+	 *         object literal key
+	 */
+	private static boolean isProperty(final List<JsToken> fileTokens, final int i, final String content) {
+		final char previous = (i > 0 && fileTokens.get(i - 1).type == JsToken.PUNCTUATOR) ? content.charAt(fileTokens.get(i - 1).start) : 0;
+		if (previous == '.') {
+			return true;
+		}
+		if (previous != '{' && previous != ',') {
+			return false;
+		}
+		return (i + 1 < fileTokens.size() && fileTokens.get(i + 1).type == JsToken.PUNCTUATOR && content.charAt(fileTokens.get(i + 1).start) == ':');
+	}
+
+	/**
+	 * @param c
+	 * @return
+	 */
+	private static boolean isIdentifierPart(final char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+	}
+
+	/**
+	 * Splits the code into identifiers, literals (strings and regular
+	 * expressions), numbers and punctuators; the comments and the whitespaces
+	 * are skipped
+	 * 
+	 * @param content
+	 * @return
+	 */
+	private static List<JsToken> tokenize(final String content) {
+		final List<JsToken> result = Common.newArrayList(content.length() / 4);
+		final int length = content.length();
+		int i = 0;
+		while (i < length) {
+			final char c = content.charAt(i);
+			final char next = (i + 1 < length) ? content.charAt(i + 1) : 0;
+			final int start = i;
+			if (Character.isWhitespace(c)) {
+				i++;
+			} else if (c == '/' && next == '/') {
+				while (i < length && content.charAt(i) != '\n') {
+					i++;
+				}
+			} else if (c == '/' && next == '*') {
+				final int end = content.indexOf("*/", i + 2);
+				i = (end < 0) ? length : end + 2;
+			} else if (c == '"' || c == '\'') {
+				i++;
+				while (i < length && content.charAt(i) != c && content.charAt(i) != '\n') {
+					i += (content.charAt(i) == '\\') ? 2 : 1;
+				}
+				i = Math.min(i + 1, length);
+				result.add(new JsToken(JsToken.LITERAL, start, i));
+			} else if (c == '/' && isRegExpStart(result, content)) {
+				i++;
+				boolean inClass = false;
+				while (i < length && content.charAt(i) != '\n' && (inClass || content.charAt(i) != '/')) {
+					final char rc = content.charAt(i);
+					if (rc == '[') {
+						inClass = true;
+					} else if (rc == ']') {
+						inClass = false;
+					}
+					i += (rc == '\\') ? 2 : 1;
+				}
+				i = Math.min(i + 1, length);
+				while (i < length && isIdentifierPart(content.charAt(i))) {
+					i++;
+				}
+				result.add(new JsToken(JsToken.LITERAL, start, i));
+			} else if (Character.isDigit(c) || (c == '.' && Character.isDigit(next))) {
+				i++;
+				while (i < length) {
+					final char nc = content.charAt(i);
+					final char pc = content.charAt(i - 1);
+					if (isIdentifierPart(nc) || nc == '.' || ((nc == '+' || nc == '-') && (pc == 'e' || pc == 'E'))) {
+						i++;
+					} else {
+						break;
+					}
+				}
+				result.add(new JsToken(JsToken.NUMBER, start, i));
+			} else if (isIdentifierPart(c)) {
+				while (i < length && isIdentifierPart(content.charAt(i))) {
+					i++;
+				}
+				result.add(new JsToken(JsToken.IDENTIFIER, start, i));
+			} else {
+				i++;
+				result.add(new JsToken(JsToken.PUNCTUATOR, start, i));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param previousTokens
+	 * @param content
+	 * @return true if a '/' after these tokens starts a regular expression
+	 */
+	private static boolean isRegExpStart(final List<JsToken> previousTokens, final String content) {
+		if (previousTokens.size() == 0) {
+			return true;
+		}
+		final JsToken t = previousTokens.get(previousTokens.size() - 1);
+		if (t.type == JsToken.PUNCTUATOR) {
+			final char c = content.charAt(t.start);
+			return c != ')' && c != ']';
+		}
+		return t.type == JsToken.IDENTIFIER && REGEXP_KEYWORDS.contains(t.getText(content));
+	}
+
+	/**
+	 * @param profile
+	 * @param target
+	 * @return the rename map of this bundle, from the new names to the
+	 *         declared ones
+	 */
+	public String getMap(final String profile, final String target) {
+		final StringBuffer sb = new StringBuffer();
+		sb.append("{\n");
+		sb.append("\t\"profile\": \"").append(profile).append("\",\n");
+		sb.append("\t\"target\": \"").append(target).append("\",\n");
+		sb.append("\t\"names\": {");
+		int i = 0;
+		for (final Map.Entry<String, String> e : renamed.entrySet()) {
+			sb.append((i++ == 0) ? "\n" : ",\n");
+			sb.append("\t\t\"").append(e.getValue()).append("\": \"").append(e.getKey()).append("\"");
+		}
+		sb.append((i == 0) ? "}\n" : "\n\t}\n");
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	/**
+	 * @return
+	 */
+	public String getReport() {
+		return "private members: " + renamed.size() + " renamed names, " + references + " references, " + keptNames + " kept names, " + savedChars + " chars saved";
+	}
+
+	/**
+	 * A token of the source code
+	 */
+	private static class JsToken {
+		/**
+		 * 
+		 */
+		static final int IDENTIFIER = 0;
+		static final int LITERAL = 1;
+		static final int NUMBER = 2;
+		static final int PUNCTUATOR = 3;
+
+		/**
+		 * 
+		 */
+		final int type;
+		final int start;
+		final int end;
+
+		/**
+		 * @param type
+		 * @param start
+		 * @param end
+		 */
+		JsToken(final int type, final int start, final int end) {
+			this.type = type;
+			this.start = start;
+			this.end = end;
+		}
+
+		/**
+		 * @param content
+		 * @return
+		 */
+		String getText(final String content) {
+			return content.substring(start, end);
+		}
+	}
+}
@@ -0,0 +1,437 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+package com.orange.wink.parse;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.mozilla.javascript.Token;
+
+import com.orange.wink.Constants;
+import com.orange.wink.ast.AstNode;
+import com.orange.wink.exception.WinkBuildException;
+import com.orange.wink.exception.WinkUnmanagedSyntaxException;
+import com.orange.wink.model.FunctionObject;
+import com.orange.wink.model.GlobalObject;
+import com.orange.wink.model.LiteralObject;
+import com.orange.wink.model.ScriptObject;
+import com.orange.wink.parse.objects.GetProp;
+import com.orange.wink.util.Common;
+
+/**
+ * Removes the wink functions and literals which are not reachable from the
+ * code of a profile. The roots are the code executed at load time, the
+ * definitions of the entry files and the kept namespaces; the namespaces
+ * referenced by the reachable code are then followed through the model.
+ * 
+ * A referenced function is kept with all its members, since its prototype
+ * is used through instances which cannot be resolved. A literal used as a
+ * value is kept with all its members, a literal only crossed to reach one
+ * of its members is kept as a container. In a reachable method of a literal,
+ * "this" is resolved as the literal, so that the members it calls through
+ * "this" are kept.
+ * 
+ * @author Sylvain Lalande
+ * 
+ */
+public class TreeShaker {
+	/**
+	 * 
+	 */
+	private static final int UNREACHABLE = 0;
+	private static final int CONTAINER = 1;
+	private static final int FULL = 2;
+
+	/**
+	 * 
+	 */
+	private final WinkJsModel model;
+	/**
+	 * namespace to its definitions, extensions included
+	 */
+	private final Map<String, List<ScriptObject>> definitions;
+	/**
+	 * namespace to the namespaces of its direct members
+	 */
+	private final Map<String, List<String>> members;
+	/**
+	 * last name to the namespaces ending with it
+	 */
+	private final Map<String, List<String>> lastNames;
+	/**
+	 * definition node to its script object
+	 */
+	private final Map<AstNode, ScriptObject> definitionNodes;
+	/**
+	 * 
+	 */
+	private final Map<String, Integer> states;
+	/**
+	 * 
+	 */
+	private final LinkedList<ScriptObject> toScan;
+	/**
+	 * 
+	 */
+	private int removedFunctions;
+	private int removedLiterals;
+
+	/**
+	 * @param model
+	 */
+	public TreeShaker(final WinkJsModel model) {
+		this.model = model;
+		definitions = new HashMap<String, List<ScriptObject>>();
+		members = new HashMap<String, List<String>>();
+		lastNames = new HashMap<String, List<String>>();
+		definitionNodes = new IdentityHashMap<AstNode, ScriptObject>();
+		states = new HashMap<String, Integer>();
+		toScan = new LinkedList<ScriptObject>();
+	}
+
+	/**
+	 * @param fileScopes
+	 *            the global object of each parsed file
+	 * @param sourceFiles
+	 *            the files which may be modified
+	 * @param entryFiles
+	 *            the files whose definitions are all kept
+	 * @param keep
+	 *            the namespaces kept with their members
+	 * @throws WinkBuildException
+	 */
+	public void shake(final List<GlobalObject> fileScopes, final Collection<String> sourceFiles, final Collection<String> entryFiles, final Collection<String> keep) throws WinkBuildException {
+		for (final GlobalObject scope : fileScopes) {
+			index(scope);
+		}
+
+		for (final GlobalObject scope : fileScopes) {
+			scan(scope.getAst().getHead(), null);
+		}
+		for (final List<ScriptObject> defs : definitions.values()) {
+			for (final ScriptObject so : defs) {
+				if (entryFiles.contains(so.getSourceName())) {
+					reach(so.getNamespace().toString(), FULL);
+				}
+			}
+		}
+		for (final String ns : keep) {
+			if (definitions.containsKey(ns)) {
+				reach(ns, FULL);
+			} else {
+				System.err.println("WARN - tree shaking: kept namespace not found: " + ns);
+			}
+		}
+
+		while (!toScan.isEmpty()) {
+			final ScriptObject so = toScan.removeFirst();
+			scan(so.getNode(), so);
+		}
+
+		final List<ScriptObject> toRemove = Common.newArrayList(1);
+		for (final String ns : definitions.keySet()) {
+			if (getState(ns) != UNREACHABLE) {
+				continue;
+			}
+			for (final ScriptObject so : definitions.get(ns)) {
+				if (!so.isSourceActiveInFile() || !sourceFiles.contains(so.getSourceName())) {
+					continue;
+				}
+				toRemove.add(so);
+				if (so instanceof FunctionObject) {
+					removedFunctions++;
+				} else {
+					removedLiterals++;
+				}
+			}
+		}
+		for (final ScriptObject so : toRemove) {
+			model.removeFromFile(so);
+		}
+	}
+
+	/**
+	 * @param so
+	 */
+	private void index(final ScriptObject so) {
+		final Collection<FunctionObject> fns = so.getFunctions().values();
+		for (final FunctionObject f : fns) {
+			indexDefinition(f);
+			index(f);
+		}
+		final Collection<LiteralObject> lts = so.getLiterals().values();
+		for (final LiteralObject l : lts) {
+			indexDefinition(l);
+			index(l);
+		}
+	}
+
+	/**
+	 * @param so
+	 */
+	private void indexDefinition(final ScriptObject so) {
+		final List<String> names = so.getNamespace().getNames();
+		if (so.isVirtual() || so.getNode() == null || names.size() < 2 || !names.get(0).equals(Constants.WINK_NAMESPACE)) {
+			return;
+		}
+		if (definitionNodes.containsKey(so.getNode())) {
+			return;
+		}
+		definitionNodes.put(so.getNode(), so);
+
+		final String ns = so.getNamespace().toString();
+		List<ScriptObject> defs = definitions.get(ns);
+		if (defs == null) {
+			defs = Common.newArrayList(1);
+			definitions.put(ns, defs);
+
+			final String parentNs = ns.substring(0, ns.lastIndexOf('.'));
+			getList(members, parentNs).add(ns);
+			getList(lastNames, so.getNamespace().getLastName()).add(ns);
+		}
+		defs.add(so);
+	}
+
+	/**
+	 * @param map
+	 * @param key
+	 * @return
+	 */
+	private static List<String> getList(final Map<String, List<String>> map, final String key) {
+		List<String> list = map.get(key);
+		if (list == null) {
+			list = Common.newArrayList(1);
+			map.put(key, list);
+		}
+		return list;
+	}
+
+	/**
+	 * @param n
+	 * @param owner
+	 *            the definition being scanned, null for the load time code
+	 */
+	private void scan(final AstNode n, final ScriptObject owner) {
+		if ((owner == null || n != owner.getNode()) && definitionNodes.containsKey(n)) {
+			// scanned only once reachable
+			return;
+		}
+
+		final int type = n.getType();
+		if (type == Token.GETPROP) {
+			final List<String> names = resolveNames(n);
+			if (names != null) {
+				reference(names, FULL, owner);
+				return;
+			}
+		} else if (type == Token.SETPROP) {
+			final List<AstNode> childs = n.getChilds();
+			if (childs.size() == 3) {
+				if (definitionNodes.containsKey(childs.get(2))) {
+					return;
+				}
+				final AstNode target = childs.get(0);
+				final List<String> names = (target.getType() == Token.GETPROP) ? resolveNames(target) : null;
+				if (names != null) {
+					reference(names, CONTAINER, owner);
+				} else {
+					scan(target, owner);
+				}
+				scan(childs.get(2), owner);
+				return;
+			}
+		}
+		for (final AstNode child : n.getChilds()) {
+			scan(child, owner);
+		}
+	}
+
+	/**
+	 * @param n
+	 * @return the names of the accessed member, null if not resolvable
+	 */
+	private static List<String> resolveNames(final AstNode n) {
+		try {
+			return new GetProp(n).resolveNamespace().getNames();
+		} catch (final WinkUnmanagedSyntaxException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param names
+	 * @param state
+	 * @param owner
+	 *            the definition being scanned, null for the load time code
+	 */
+	private void reference(final List<String> names, final int state, final ScriptObject owner) {
+		final String first = names.get(0);
+		if (first.equals(Constants.THIS_TOKEN)) {
+			if (owner != null && names.size() > 1) {
+				referenceThis(names, state, owner);
+			}
+		} else if (first.equals(Constants.WINK_NAMESPACE)) {
+			// deepest defined namespace, the remaining names are its properties
+			for (int i = names.size(); i > 1; i--) {
+				final String ns = join(names, 0, i);
+				if (definitions.containsKey(ns)) {
+					reach(ns, state);
+					return;
+				}
+			}
+		} else if (names.size() > 1) {
+			// alias of a namespace (function parameter, local variable):
+			// every namespace ending with the accessed names is kept
+			for (int i = names.size(); i > 1; i--) {
+				final List<String> candidates = lastNames.get(names.get(i - 1));
+				if (candidates == null) {
+					continue;
+				}
+				final String suffix = "." + join(names, 1, i);
+				boolean found = false;
+				for (final String ns : candidates) {
+					if (ns.endsWith(suffix)) {
+						reach(ns, FULL);
+						found = true;
+					}
+				}
+				if (found) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Resolves "this" in a method of a literal as the literal: the deepest
+	 * defined member is reached, nothing if the member is not defined (a
+	 * property set at runtime)
+	 * 
+	 * @param names
+	 *            the names accessed through "this"
+	 * @param state
+	 * @param owner
+	 */
+	private void referenceThis(final List<String> names, final int state, final ScriptObject owner) {
+		final List<String> ownerNames = owner.getNamespace().getNames();
+		if (ownerNames.size() < 3) {
+			return;
+		}
+		final List<String> literalNames = ownerNames.subList(0, ownerNames.size() - 1);
+		final List<ScriptObject> literalDefs = definitions.get(join(literalNames, 0, literalNames.size()));
+		if (literalDefs == null || !(literalDefs.get(0) instanceof LiteralObject)) {
+			// "this" of a function is one of its instances, all its members
+			// are kept
+			return;
+		}
+		final List<String> resolved = Common.newArrayList(literalNames.size() + names.size());
+		resolved.addAll(literalNames);
+		resolved.addAll(names.subList(1, names.size()));
+		for (int i = resolved.size(); i > literalNames.size(); i--) {
+			final String ns = join(resolved, 0, i);
+			if (definitions.containsKey(ns)) {
+				reach(ns, state);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @param names
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	private static String join(final List<String> names, final int from, final int to) {
+		final StringBuffer sb = new StringBuffer();
+		for (int i = from; i < to; i++) {
+			if (i > from) {
+				sb.append(".");
+			}
+			sb.append(names.get(i));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @param ns
+	 * @param state
+	 */
+	private void reach(final String ns, final int state) {
+		int newState = state;
+		if (newState == CONTAINER && hasFunction(ns)) {
+			newState = FULL;
+		}
+		final int current = getState(ns);
+		if (current >= newState) {
+			return;
+		}
+		states.put(ns, newState);
+
+		if (current == UNREACHABLE) {
+			for (final ScriptObject so : definitions.get(ns)) {
+				if (so.isSourceActiveInFile()) {
+					toScan.add(so);
+				}
+			}
+			final int dotPos = ns.lastIndexOf('.');
+			final String parentNs = ns.substring(0, dotPos);
+			if (definitions.containsKey(parentNs)) {
+				reach(parentNs, CONTAINER);
+			}
+		}
+		if (newState == FULL) {
+			final List<String> nsMembers = members.get(ns);
+			if (nsMembers != null) {
+				for (final String member : nsMembers) {
+					reach(member, FULL);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param ns
+	 * @return
+	 */
+	private boolean hasFunction(final String ns) {
+		for (final ScriptObject so : definitions.get(ns)) {
+			if (so instanceof FunctionObject) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param ns
+	 * @return
+	 */
+	private int getState(final String ns) {
+		final Integer state = states.get(ns);
+		return (state == null) ? UNREACHABLE : state.intValue();
+	}
+
+	/**
+	 * @return a summary of the removed definitions
+	 */
+	public String getReport() {
+		final StringBuffer sb = new StringBuffer();
+		sb.append("tree shaking: ");
+		sb.append(states.size()).append("/").append(definitions.size()).append(" namespaces reachable, ");
+		sb.append(removedFunctions).append(" functions and ").append(removedLiterals).append(" literals removed");
+		return sb.toString();
+	}
+}
@@ -10,9 +10,13 @@
  */
 package com.orange.wink.parse;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.Scriptable;
@@ -23,6 +27,7 @@ import com.orange.wink.model.FunctionObject;
 import com.orange.wink.model.GlobalObject;
 import com.orange.wink.model.LiteralObject;
 import com.orange.wink.model.ScriptObject;
+import com.orange.wink.util.BuildReport;
 import com.orange.wink.util.Common;
 import com.orange.wink.util.FileManager;
 import com.orange.wink.util.WinkJsFile;
@@ -52,6 +57,14 @@ public class WinkJsModel extends ScriptableObject {
 	 * 
 	 */
 	private List<LiteralObject> literals;
+	/**
+	 * 
+	 */
+	private List<GlobalObject> fileScopes;
+	/**
+	 * 
+	 */
+	private List<String> sourceFiles;
 
 	/**
 	 * 
@@ -74,6 +87,22 @@ public class WinkJsModel extends ScriptableObject {
 		this.scope = scope;
 	}
 
+	/**
+	 * @param fileScopes
+	 *            the global object of each parsed file
+	 */
+	public void setFileScopes(final List<GlobalObject> fileScopes) {
+		this.fileScopes = fileScopes;
+	}
+
+	/**
+	 * @param sourceFiles
+	 *            the parsed files which are not dependencies
+	 */
+	public void setSourceFiles(final List<String> sourceFiles) {
+		this.sourceFiles = sourceFiles;
+	}
+
 	/**
 	 * @param cx
 	 *            the cx to set
@@ -220,6 +249,7 @@ public class WinkJsModel extends ScriptableObject {
 
 		final ScriptObject so = getScriptObjectByName(name);
 		final List<ScriptObject> toRemove = Common.newArrayList(1);
+		final BuildReport.Measure measure = BuildReport.begin("deleteDuplicate", getReportedFiles());
 
 		toRemove.add(so);
 
@@ -234,6 +264,119 @@ public class WinkJsModel extends ScriptableObject {
 		for (final ScriptObject tr : toRemove) {
 			removeFromFile(tr);
 		}
+		BuildReport.end(measure, getReportedFiles());
+	}
+
+	/**
+	 * @return the files measured in the build report
+	 */
+	private List<String> getReportedFiles() {
+		if (sourceFiles == null) {
+			return Common.newArrayList(0);
+		}
+		return sourceFiles;
+	}
+
+	/**
+	 * Removes from the source files the wink functions and literals not
+	 * reachable from the load time code, the entry files and the kept
+	 * namespaces
+	 * 
+	 * @param entries
+	 *            the entry files
+	 * @param keep
+	 *            the namespaces to keep
+	 * @return the tree shaking report
+	 * @throws WinkBuildException
+	 */
+	public String jsFunction_removeUnreferenced(final Scriptable entries, final Scriptable keep) throws WinkBuildException {
+		if (fileScopes == null || sourceFiles == null) {
+			throw new WinkBuildException("removeUnreferenced failed : model not initialized");
+		}
+		final BuildReport.Measure measure = BuildReport.begin("removeUnreferenced", sourceFiles);
+		final TreeShaker shaker = new TreeShaker(this);
+		shaker.shake(fileScopes, new HashSet<String>(sourceFiles), new HashSet<String>(toList(entries)), toList(keep));
+		BuildReport.end(measure, sourceFiles);
+		return shaker.getReport();
+	}
+
+	/**
+	 * Finds the wink functions of the source files defined with the same body
+	 * 
+	 * @param alias
+	 *            true to replace the later definitions of a body by a
+	 *            reference to the first one
+	 * @return the duplicate bodies report
+	 * @throws WinkBuildException
+	 */
+	public String jsFunction_findDuplicateBodies(final boolean alias) throws WinkBuildException {
+		if (fileScopes == null || sourceFiles == null) {
+			throw new WinkBuildException("findDuplicateBodies failed : model not initialized");
+		}
+		final BuildReport.Measure measure = BuildReport.begin("findDuplicateBodies", sourceFiles);
+		final DuplicateBodyFinder finder = new DuplicateBodyFinder();
+		finder.find(fileScopes, new HashSet<String>(sourceFiles));
+		if (alias) {
+			finder.alias();
+		}
+		BuildReport.end(measure, sourceFiles);
+		return finder.getReport();
+	}
+
+	/**
+	 * Renames the private members of the wink namespaces to short names in
+	 * the source files
+	 * 
+	 * @param names
+	 *            the names renamed by the previous builds, updated with the
+	 *            names of this build
+	 * @param profile
+	 * @param target
+	 * @param mapFile
+	 *            the file to write the rename map into
+	 * @return the mangling report
+	 * @throws WinkBuildException
+	 */
+	public String jsFunction_manglePrivateMembers(final Scriptable names, final String profile, final String target, final String mapFile) throws WinkBuildException {
+		if (fileScopes == null || sourceFiles == null) {
+			throw new WinkBuildException("manglePrivateMembers failed : model not initialized");
+		}
+		final Map<String, String> known = new HashMap<String, String>();
+		for (final Object id : names.getIds()) {
+			known.put(id.toString(), Context.toString(ScriptableObject.getProperty(names, id.toString())));
+		}
+		final BuildReport.Measure measure = BuildReport.begin("manglePrivateMembers", sourceFiles);
+		final PrivateMemberMangler mangler = new PrivateMemberMangler(known);
+		mangler.mangle(fileScopes, new HashSet<String>(sourceFiles));
+		BuildReport.end(measure, sourceFiles);
+		for (final Map.Entry<String, String> e : known.entrySet()) {
+			ScriptableObject.putProperty(names, e.getKey(), e.getValue());
+		}
+		try {
+			FileManager.writeIntoFile(mangler.getMap(profile, target), mapFile);
+		} catch (final IOException e) {
+			throw new WinkBuildException(e);
+		}
+		return mangler.getReport() + " (map: " + new File(mapFile).getName() + ")";
+	}
+
+	/**
+	 * @param array
+	 * @return
+	 */
+	private static List<String> toList(final Scriptable array) {
+		final List<String> list = Common.newArrayList(1);
+		if (array == null) {
+			return list;
+		}
+		final Object[] ids = array.getIds();
+		for (final Object id : ids) {
+			if (id instanceof Integer) {
+				list.add(Context.toString(array.get(((Integer) id).intValue(), array)));
+			}
+		}
+		Common.trimList(list);
+		return list;
 	}
 
 	/**
@@ -13,9 +13,16 @@ package com.orange.wink.parse;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 import org.mozilla.javascript.CompilerEnvirons;
 import org.mozilla.javascript.ErrorReporter;
@@ -30,6 +37,7 @@ import com.orange.wink.exception.WinkParseException;
 import com.orange.wink.model.FunctionObject;
 import com.orange.wink.model.GlobalObject;
 import com.orange.wink.model.LiteralObject;
+import com.orange.wink.model.ModelSerializer;
 import com.orange.wink.model.ScriptObject;
 import com.orange.wink.util.Common;
 import com.orange.wink.util.FileManager;
@@ -61,6 +69,10 @@ public class WinkParser {
 	 * 
 	 */
 	private GlobalObject globalScope;
+	/**
+	 * the global object of each parsed file, in the parsing order
+	 */
+	private final List<GlobalObject> fileScopes;
 
 	/**
 	 * 
@@ -70,6 +82,7 @@ public class WinkParser {
 		errorReporter = compilerEnv.getErrorReporter();
 		parser = new Parser(compilerEnv, errorReporter);
 		jsFiles = Common.newArrayList(1);
+		fileScopes = Common.newArrayList(1);
 	}
 
 	/**
@@ -93,6 +106,16 @@ public class WinkParser {
 	 * @throws WinkParseException
 	 */
 	private void parse(final String fileName) throws WinkAstException, WinkParseException {
+		addJsFile(fileName, parseFile(fileName));
+	}
+
+	/**
+	 * @param fileName
+	 * @return the global object of the file, not interpreted
+	 * @throws WinkAstException
+	 * @throws WinkParseException
+	 */
+	private GlobalObject parseFile(final String fileName) throws WinkAstException, WinkParseException {
 		ScriptOrFnNode tree;
 		Ast ast;
 		final AstBuilder astBuilder = new AstBuilder();
@@ -103,7 +126,252 @@ public class WinkParser {
 		} catch (final IOException e) {
 			throw new WinkParseException(e);
 		}
-		addJsFile(fileName, new GlobalObject(ast));
+		return new GlobalObject(ast);
+	}
+
+	/**
+	 * Updates the model after a change of a parsed file: the contributions of
+	 * the file are retracted and interpreted again, along with the
+	 * contributions of the files parsed after it which resolve or define one
+	 * of the namespaces it defines (see getDefinedNamespaces), before or after
+	 * the change. The other files are left as they are. A change of the first
+	 * file, which holds the children of all the global objects, parses all the
+	 * files again.
+	 * 
+	 * @param filename
+	 * @return the files interpreted again, in the parsing order
+	 * @throws WinkAstException
+	 * @throws WinkParseException
+	 */
+	public List<String> update(final String filename) throws WinkAstException, WinkParseException {
+		final int changed = indexOfFile(filename);
+		if (changed == -1) {
+			throw new WinkParseException("update() error: not a parsed file: " + filename);
+		}
+		final List<String> files = Common.newArrayList(fileScopes.size());
+		for (final GlobalObject scope : fileScopes) {
+			files.add(scope.getSourceName());
+		}
+		try {
+			FileManager.uncache(filename);
+		} catch (final IOException e) {
+			throw new WinkParseException(e);
+		}
+
+		if (changed == 0) {
+			globalScope = null;
+			fileScopes.clear();
+			jsFiles.clear();
+			parse(files);
+			return files;
+		}
+
+		final Set<Integer> affected = new TreeSet<Integer>();
+		affected.add(Integer.valueOf(changed));
+		final Set<String> namespaces = new HashSet<String>();
+		Map<GlobalObject, List<Component>> components = getComponents();
+		namespaces.addAll(getDefinedNamespaces(components.get(fileScopes.get(changed))));
+		addDependentFiles(changed, affected, namespaces, components);
+
+		do {
+			retract(affected, components);
+			for (final Integer i : affected) {
+				replaceJsFile(i.intValue(), files.get(i.intValue()), parseFile(files.get(i.intValue())));
+			}
+			components = getComponents();
+			for (final Integer i : affected) {
+				namespaces.addAll(getDefinedNamespaces(components.get(fileScopes.get(i.intValue()))));
+			}
+			// the new contributions may concern other files
+		} while (addDependentFiles(changed, affected, namespaces, components));
+
+		final Set<GlobalObject> scopes = Collections.newSetFromMap(new IdentityHashMap<GlobalObject, Boolean>());
+		final List<String> result = Common.newArrayList(affected.size());
+		for (final Integer i : affected) {
+			scopes.add(fileScopes.get(i.intValue()));
+			result.add(files.get(i.intValue()));
+		}
+		populateFunctionR(getGlobalScope(), scopes);
+		populateLiteralsR(getGlobalScope(), scopes);
+		return result;
+	}
+
+	/**
+	 * @param from
+	 *            the changed file
+	 * @param affected
+	 *            the files to interpret again
+	 * @param namespaces
+	 *            the namespaces defined by the files to interpret again
+	 * @param components
+	 * @return true if files were added to the files to interpret again
+	 */
+	private boolean addDependentFiles(final int from, final Set<Integer> affected, final Set<String> namespaces, final Map<GlobalObject, List<Component>> components) {
+		boolean added = false;
+		for (int i = from + 1; i < fileScopes.size(); i++) {
+			if (affected.contains(Integer.valueOf(i))) {
+				continue;
+			}
+			final GlobalObject scope = fileScopes.get(i);
+			final Set<String> defined = getDefinedNamespaces(components.get(scope));
+			if (!Collections.disjoint(scope.getResolvedNamespaces(), namespaces) || !Collections.disjoint(defined, namespaces)) {
+				affected.add(Integer.valueOf(i));
+				namespaces.addAll(defined);
+				added = true;
+			}
+		}
+		return added;
+	}
+
+	/**
+	 * Removes the contributions of the files from the model, the last ones
+	 * first
+	 * 
+	 * @param affected
+	 * @param components
+	 */
+	private void retract(final Set<Integer> affected, final Map<GlobalObject, List<Component>> components) {
+		final List<Integer> files = Common.newArrayList(affected.size());
+		files.addAll(affected);
+		for (int i = files.size() - 1; i >= 0; i--) {
+			final List<Component> l = components.get(fileScopes.get(files.get(i).intValue()));
+			for (int j = l.size() - 1; j >= 0; j--) {
+				final Component c = l.get(j);
+				c.table.removeComponent(c.key, c.object);
+			}
+		}
+	}
+
+	/**
+	 * @return the objects of the model, parents first, by file
+	 */
+	private Map<GlobalObject, List<Component>> getComponents() {
+		final Map<GlobalObject, List<Component>> result = new IdentityHashMap<GlobalObject, List<Component>>();
+		for (final GlobalObject scope : fileScopes) {
+			result.put(scope, Common.<Component> newArrayList(16));
+		}
+		if (globalScope != null) {
+			final Set<ScriptObject> visited = Collections.newSetFromMap(new IdentityHashMap<ScriptObject, Boolean>());
+			addComponents(globalScope, result, visited);
+		}
+		return result;
+	}
+
+	/**
+	 * @param table
+	 * @param components
+	 * @param visited
+	 */
+	private void addComponents(final ScriptObject table, final Map<GlobalObject, List<Component>> components, final Set<ScriptObject> visited) {
+		final List<ScriptObject> children = Common.newArrayList(8);
+		addComponents(table, table.getLiterals(), components, visited, children);
+		addComponents(table, table.getFunctions(), components, visited, children);
+		addComponents(table, table.getProperties(), components, visited, children);
+		for (final ScriptObject child : children) {
+			addComponents(child, components, visited);
+		}
+	}
+
+	/**
+	 * @param table
+	 * @param m
+	 * @param components
+	 * @param visited
+	 * @param children
+	 */
+	private void addComponents(final ScriptObject table, final Map<String, ? extends ScriptObject> m, final Map<GlobalObject, List<Component>> components, final Set<ScriptObject> visited, final List<ScriptObject> children) {
+		for (final Map.Entry<String, ? extends ScriptObject> e : m.entrySet()) {
+			final ScriptObject child = e.getValue();
+			if (!visited.add(child)) {
+				continue;
+			}
+			final List<Component> l = components.get(child.getGlobalScope());
+			if (l != null) {
+				l.add(new Component(table, e.getKey(), child));
+			}
+			children.add(child);
+		}
+	}
+
+	/**
+	 * @param l
+	 *            the objects of a file
+	 * @return
+	 */
+	private static Set<String> getDefinedNamespaces(final List<Component> l) {
+		final Set<String> result = new HashSet<String>();
+		for (final Component c : l) {
+			result.add(c.object.getNamespace().toString());
+		}
+		return result;
+	}
+
+	/**
+	 * @param filename
+	 * @return the namespaces of the objects defined by the file, its
+	 *         extensions included
+	 * @throws WinkParseException
+	 */
+	public Set<String> getDefinedNamespaces(final String filename) throws WinkParseException {
+		return getDefinedNamespaces(getComponents().get(getFileScope(filename)));
+	}
+
+	/**
+	 * @param filename
+	 * @return the namespaces of the objects of the other files which the file
+	 *         extends, or adds members to
+	 * @throws WinkParseException
+	 */
+	public Set<String> getExtendedNamespaces(final String filename) throws WinkParseException {
+		final GlobalObject scope = getFileScope(filename);
+		final Set<String> result = new HashSet<String>();
+		for (final Component c : getComponents().get(scope)) {
+			if (!(c.table instanceof GlobalObject) && c.table.getGlobalScope() != scope) {
+				result.add(c.table.getNamespace().toString());
+			}
+			final ScriptObject pImpl = c.object.getParentImpl();
+			if (pImpl != null && pImpl.getGlobalScope() != scope) {
+				result.add(pImpl.getNamespace().toString());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param filename
+	 * @return
+	 * @throws WinkParseException
+	 */
+	private GlobalObject getFileScope(final String filename) throws WinkParseException {
+		final int idx = indexOfFile(filename);
+		if (idx == -1) {
+			throw new WinkParseException("not a parsed file: " + filename);
+		}
+		return fileScopes.get(idx);
+	}
+
+	/**
+	 * @param filename
+	 * @return the index of the file in the parsing order, -1 if not parsed
+	 * @throws WinkParseException
+	 */
+	private int indexOfFile(final String filename) throws WinkParseException {
+		for (int i = 0; i < fileScopes.size(); i++) {
+			if (fileScopes.get(i).getSourceName().equals(filename)) {
+				return i;
+			}
+		}
+		try {
+			final String canonical = new File(filename).getCanonicalPath();
+			for (int i = 0; i < fileScopes.size(); i++) {
+				if (new File(fileScopes.get(i).getSourceName()).getCanonicalPath().equals(canonical)) {
+					return i;
+				}
+			}
+		} catch (final IOException e) {
+			throw new WinkParseException(e);
+		}
+		return -1;
 	}
 
 	/**
@@ -136,6 +404,7 @@ public class WinkParser {
 		if (globalScope == null) {
 			globalScope = scope;
 		}
+		fileScopes.add(scope);
 		if (Constants.optimDontKeepJsFile) {
 
 		} else {
@@ -146,6 +415,27 @@ public class WinkParser {
 		scope.interpret();
 	}
 
+	/**
+	 * @param index
+	 *            the index of the file in the parsing order
+	 * @param filename
+	 * @param scope
+	 *            the new global object of the file
+	 * @throws WinkParseException
+	 */
+	private void replaceJsFile(final int index, final String filename, final GlobalObject scope) throws WinkParseException {
+		scope.setParent(getGlobalScope());
+		fileScopes.set(index, scope);
+		for (int i = 0; i < jsFiles.size(); i++) {
+			if (jsFiles.get(i).getFilename().equals(filename)) {
+				jsFiles.set(i, new WinkJsFile(filename, scope));
+			}
+		}
+
+		scope.setSourceName(filename);
+		scope.interpret();
+	}
+
 	/**
 	 * @param filename
 	 * @return
@@ -169,15 +459,38 @@ public class WinkParser {
 		return globalScope;
 	}
 
+	/**
+	 * @return the global object of each parsed file
+	 */
+	public List<GlobalObject> getFileScopes() {
+		return fileScopes;
+	}
+
+	/**
+	 * Writes the model of the parsed files (see ModelSerializer)
+	 * 
+	 * @param os
+	 * @throws IOException
+	 */
+	public void writeModel(final OutputStream os) throws IOException {
+		ModelSerializer.write(fileScopes, os);
+	}
+
 	/**
 	 * @param scope
+	 * @param scopes
+	 *            the files of the functions to populate, null for all
 	 * @throws WinkAstException
 	 * @throws WinkParseException
 	 */
-	private void populateFunctionR(final ScriptObject scope) throws WinkAstException, WinkParseException {
+	private void populateFunctionR(final ScriptObject scope, final Set<GlobalObject> scopes) throws WinkAstException, WinkParseException {
 		final Collection<FunctionObject> fns = scope.getFunctions().values();
 
 		for (final FunctionObject f : fns) {
+			if (scopes != null && !scopes.contains(f.getGlobalScope())) {
+				populateFunctionR(f, scopes);
+				continue;
+			}
 			final String sourceName = f.getGlobalScope().getSourceName();
 			f.setSourceName(sourceName);
 
@@ -193,11 +506,11 @@ public class WinkParser {
 				throw new WinkParseException(e);
 			}
 
-			populateFunctionR(f);
+			populateFunctionR(f, scopes);
 		}
 		final Collection<LiteralObject> lts = scope.getLiterals().values();
 		for (final LiteralObject l : lts) {
-			populateFunctionR(l);
+			populateFunctionR(l, scopes);
 		}
 	}
 
@@ -206,18 +519,24 @@ public class WinkParser {
 	 * @throws WinkParseException
 	 */
 	private void populateFunctions() throws WinkAstException, WinkParseException {
-		populateFunctionR(getGlobalScope());
+		populateFunctionR(getGlobalScope(), null);
 	}
 
 	/**
 	 * @param scope
+	 * @param scopes
+	 *            the files of the literals to populate, null for all
 	 * @throws WinkAstException
 	 * @throws WinkParseException
 	 */
-	private void populateLiteralsR(final ScriptObject scope) throws WinkAstException, WinkParseException {
+	private void populateLiteralsR(final ScriptObject scope, final Set<GlobalObject> scopes) throws WinkAstException, WinkParseException {
 		final Collection<LiteralObject> lts = scope.getLiterals().values();
 
 		for (final LiteralObject lt : lts) {
+			if (scopes != null && !scopes.contains(lt.getGlobalScope())) {
+				populateLiteralsR(lt, scopes);
+				continue;
+			}
 			final String sourceName = lt.getGlobalScope().getSourceName();
 			lt.setSourceName(sourceName);
 
@@ -272,11 +591,11 @@ public class WinkParser {
 				}
 			}
 
-			populateLiteralsR(lt);
+			populateLiteralsR(lt, scopes);
 		}
 		final Collection<FunctionObject> fns = scope.getFunctions().values();
 		for (final FunctionObject f : fns) {
-			populateLiteralsR(f);
+			populateLiteralsR(f, scopes);
 		}
 	}
 
@@ -285,7 +604,7 @@ public class WinkParser {
 	 * @throws WinkParseException
 	 */
 	private void populateLiterals() throws WinkAstException, WinkParseException {
-		populateLiteralsR(getGlobalScope());
+		populateLiteralsR(getGlobalScope(), null);
 	}
 
 	/**
@@ -354,4 +673,27 @@ public class WinkParser {
 		// System.out.println("\n------------ SOURCES");
 		// printSource(scope);
 	}
+
+	/**
+	 * An object of the model, in the table of an other object
+	 */
+	private static final class Component {
+		/**
+		 * 
+		 */
+		private final ScriptObject table;
+		private final String key;
+		private final ScriptObject object;
+
+		/**
+		 * @param table
+		 * @param key
+		 * @param object
+		 */
+		Component(final ScriptObject table, final String key, final ScriptObject object) {
+			this.table = table;
+			this.key = key;
+			this.object = object;
+		}
+	}
 }
@@ -0,0 +1,451 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+package com.orange.wink.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the time and the memory allocated by each stage of a build, and
+ * the size of each module file before and after each stage. The stages are
+ * grouped in sections (one per profile and target) and the report is written
+ * as JSON, one entry per line, so that the reports of two builds can be
+ * diffed.
+ * 
+ * The allocated memory is the one of the calling thread, the parallel tasks
+ * of a stage are not counted.
+ * 
+ * The same measures are emitted as JFR events (see BuildStageEvent and
+ * BuildSectionEvent) when a flight recording is running.
+ * 
+ * @author Sylvain Lalande
+ * 
+ */
+public class BuildReport {
+	/**
+	 * 
+	 */
+	public static final int VERSION = 1;
+	/**
+	 * the section of the stages called outside a profile and target
+	 */
+	public static final String MAIN_SECTION = "main";
+	/**
+	 * 
+	 */
+	public static final String REPORT_SUFFIX = "-report.json";
+
+	/**
+	 * the report of the running build, null if not enabled
+	 */
+	private static BuildReport current = null;
+
+	/**
+	 * 
+	 */
+	private final String name;
+	private final String basePath;
+	private final long startTime;
+	private long endTime;
+	/**
+	 * 
+	 */
+	private final Map<String, Section> sections;
+	private Section section;
+	private BuildSectionEvent sectionEvent;
+	/**
+	 * working file to the module it is copied from
+	 */
+	private final Map<String, String> modules;
+
+	/**
+	 * @param name
+	 *            the name of the build
+	 * @param basePath
+	 *            the path the module names are relative to
+	 */
+	public BuildReport(final String name, final String basePath) {
+		this.name = name;
+		this.basePath = normalize(basePath);
+		startTime = System.nanoTime();
+		sections = new LinkedHashMap<String, Section>();
+		modules = new LinkedHashMap<String, String>();
+		setSection(MAIN_SECTION);
+	}
+
+	/**
+	 * @return the report of the running build, null if not enabled
+	 */
+	public static synchronized BuildReport getCurrent() {
+		return current;
+	}
+
+	/**
+	 * @param report
+	 *            the report of the running build, null to disable
+	 */
+	public static synchronized void setCurrent(final BuildReport report) {
+		current = report;
+	}
+
+	/**
+	 * @param stage
+	 * @param files
+	 *            the files processed by the stage
+	 * @return the measure to end, null if the report is not enabled
+	 */
+	public static Measure begin(final String stage, final List<String> files) {
+		final BuildReport report = getCurrent();
+		if (report == null) {
+			return null;
+		}
+		return report.beginStage(stage, files);
+	}
+
+	/**
+	 * @param measure
+	 *            the measure returned by begin, may be null
+	 * @param files
+	 *            the files processed by the stage
+	 */
+	public static void end(final Measure measure, final List<String> files) {
+		if (measure == null) {
+			return;
+		}
+		measure.report.endStage(measure, files);
+	}
+
+	/**
+	 * @param sectionName
+	 *            the section of the next stages
+	 */
+	public synchronized void setSection(final String sectionName) {
+		final long now = System.nanoTime();
+		if (section != null) {
+			section.time += now - section.startTime;
+			sectionEvent.end();
+			if (sectionEvent.shouldCommit()) {
+				sectionEvent.build = name;
+				sectionEvent.section = section.name;
+				sectionEvent.commit();
+			}
+		}
+		section = sections.get(sectionName);
+		if (section == null) {
+			section = new Section(sectionName);
+			sections.put(sectionName, section);
+		}
+		sectionEvent = new BuildSectionEvent();
+		sectionEvent.begin();
+		section.startTime = now;
+	}
+
+	/**
+	 * @param stage
+	 * @param files
+	 * @return
+	 */
+	private synchronized Measure beginStage(final String stage, final List<String> files) {
+		final Measure measure = new Measure(this, stage, section);
+		for (final String f : files) {
+			measure.sizes.put(f, Long.valueOf(new File(f).length()));
+		}
+		measure.allocated = getAllocatedBytes();
+		measure.event.begin();
+		measure.startTime = System.nanoTime();
+		return measure;
+	}
+
+	/**
+	 * @param measure
+	 * @param files
+	 */
+	private synchronized void endStage(final Measure measure, final List<String> files) {
+		final long time = System.nanoTime() - measure.startTime;
+		measure.event.end();
+		final long allocated = getAllocatedBytes();
+
+		final Section s = measure.section;
+		Stage stage = s.stages.get(measure.stage);
+		if (stage == null) {
+			stage = new Stage();
+			s.stages.put(measure.stage, stage);
+		}
+		stage.calls++;
+		stage.time += time;
+		final long stageAllocated = (allocated >= 0 && measure.allocated >= 0) ? allocated - measure.allocated : -1;
+		if (stageAllocated >= 0) {
+			stage.allocated += stageAllocated;
+		}
+
+		long sizeBefore = 0;
+		long sizeAfter = 0;
+		int fileCount = 0;
+		for (final String f : files) {
+			final File file = new File(f);
+			if (!file.isFile()) {
+				continue;
+			}
+			final Long before = measure.sizes.get(f);
+			fileCount++;
+			sizeBefore += (before == null) ? 0 : before.longValue();
+			sizeAfter += file.length();
+			final String module = getModule(f);
+			Map<String, long[]> moduleSizes = s.files.get(module);
+			if (moduleSizes == null) {
+				moduleSizes = new LinkedHashMap<String, long[]>();
+				s.files.put(module, moduleSizes);
+			}
+			long[] sizes = moduleSizes.get(measure.stage);
+			if (sizes == null) {
+				sizes = new long[] { (before == null) ? 0 : before.longValue(), 0 };
+				moduleSizes.put(measure.stage, sizes);
+			}
+			sizes[1] = file.length();
+		}
+
+		final BuildStageEvent event = measure.event;
+		if (event.shouldCommit()) {
+			event.section = s.name;
+			event.stage = measure.stage;
+			event.files = fileCount;
+			event.sizeBefore = sizeBefore;
+			event.sizeAfter = sizeAfter;
+			event.allocated = stageAllocated;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Records the sizes of a file processed outside the measured stages
+	 * 
+	 * @param stage
+	 * @param name
+	 *            the name of the file in the report
+	 * @param before
+	 * @param after
+	 */
+	public synchronized void addSizes(final String stage, final String name, final long before, final long after) {
+		Map<String, long[]> moduleSizes = section.files.get(name);
+		if (moduleSizes == null) {
+			moduleSizes = new LinkedHashMap<String, long[]>();
+			section.files.put(name, moduleSizes);
+		}
+		moduleSizes.put(stage, new long[] { before, after });
+	}
+
+	/**
+	 * Declares a working file as a copy of a module
+	 * 
+	 * @param file
+	 * @param source
+	 */
+	public synchronized void addCopy(final String file, final String source) {
+		modules.put(normalize(file), getModule(source));
+	}
+
+	/**
+	 * @param file
+	 * @return the module the file is copied from, or the file relative to the
+	 *         base path
+	 */
+	private String getModule(final String file) {
+		final String path = normalize(file);
+		final String module = modules.get(path);
+		if (module != null) {
+			return module;
+		}
+		if (basePath.length() > 0 && path.startsWith(basePath)) {
+			return path.substring(basePath.length());
+		}
+		return file.replace('\\', '/');
+	}
+
+	/**
+	 * @param path
+	 * @return
+	 */
+	private static String normalize(final String path) {
+		if (path == null || path.equals("")) {
+			return "";
+		}
+		try {
+			final String canonical = new File(path).getCanonicalPath().replace('\\', '/');
+			return new File(path).isDirectory() ? canonical + "/" : canonical;
+		} catch (final IOException e) {
+			return path.replace('\\', '/');
+		}
+	}
+
+	/**
+	 * @return the bytes allocated by the current thread, -1 if not supported
+	 */
+	private static long getAllocatedBytes() {
+		final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			final com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+			if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+				return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Ends the last section
+	 */
+	public synchronized void close() {
+		setSection(MAIN_SECTION);
+		endTime = System.nanoTime();
+	}
+
+	/**
+	 * @param file
+	 * @throws IOException
+	 */
+	public synchronized void write(final File file) throws IOException {
+		FileManager.writeIntoFile(toJson(), file.getPath());
+	}
+
+	/**
+	 * @return the report as JSON, one entry per line
+	 */
+	public synchronized String toJson() {
+		final StringBuffer sb = new StringBuffer();
+		sb.append("{\n");
+		sb.append("\t\"version\": ").append(VERSION).append(",\n");
+		sb.append("\t\"build\": \"").append(escape(name)).append("\",\n");
+		sb.append("\t\"time\": ").append(toMillis(endTime - startTime)).append(",\n");
+		sb.append("\t\"sections\": [");
+		boolean firstSection = true;
+		for (final Section s : sections.values()) {
+			if (s.stages.isEmpty()) {
+				continue;
+			}
+			sb.append(firstSection ? "\n" : ",\n");
+			firstSection = false;
+			sb.append("\t\t{\n");
+			sb.append("\t\t\t\"name\": \"").append(escape(s.name)).append("\",\n");
+			sb.append("\t\t\t\"time\": ").append(toMillis(s.time)).append(",\n");
+
+			sb.append("\t\t\t\"stages\": [");
+			boolean first = true;
+			for (final Map.Entry<String, Stage> e : s.stages.entrySet()) {
+				final Stage stage = e.getValue();
+				sb.append(first ? "\n" : ",\n");
+				first = false;
+				sb.append("\t\t\t\t{\"name\": \"").append(escape(e.getKey())).append("\", \"calls\": ").append(stage.calls);
+				sb.append(", \"time\": ").append(toMillis(stage.time)).append(", \"allocated\": ").append(stage.allocated).append("}");
+			}
+			sb.append(first ? "],\n" : "\n\t\t\t],\n");
+
+			sb.append("\t\t\t\"files\": [");
+			first = true;
+			for (final Map.Entry<String, Map<String, long[]>> e : s.files.entrySet()) {
+				sb.append(first ? "\n" : ",\n");
+				first = false;
+				sb.append("\t\t\t\t{\"name\": \"").append(escape(e.getKey())).append("\", \"sizes\": [");
+				boolean firstSize = true;
+				for (final Map.Entry<String, long[]> size : e.getValue().entrySet()) {
+					sb.append(firstSize ? "" : ", ");
+					firstSize = false;
+					sb.append("{\"stage\": \"").append(escape(size.getKey())).append("\", \"before\": ").append(size.getValue()[0]);
+					sb.append(", \"after\": ").append(size.getValue()[1]).append("}");
+				}
+				sb.append("]}");
+			}
+			sb.append(first ? "]\n" : "\n\t\t\t]\n");
+			sb.append("\t\t}");
+		}
+		sb.append(firstSection ? "]\n" : "\n\t]\n");
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	/**
+	 * @param nanos
+	 * @return
+	 */
+	private static long toMillis(final long nanos) {
+		return nanos / 1000000L;
+	}
+
+	/**
+	 * @param s
+	 * @return
+	 */
+	private static String escape(final String s) {
+		return s.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
+	/**
+	 * A stage being measured
+	 */
+	public static class Measure {
+		private final BuildReport report;
+		private final String stage;
+		private final Section section;
+		private final Map<String, Long> sizes;
+		private final BuildStageEvent event;
+		private long startTime;
+		private long allocated;
+
+		/**
+		 * @param report
+		 * @param stage
+		 * @param section
+		 */
+		private Measure(final BuildReport report, final String stage, final Section section) {
+			this.report = report;
+			this.stage = stage;
+			this.section = section;
+			sizes = new LinkedHashMap<String, Long>();
+			event = new BuildStageEvent();
+		}
+	}
+
+	/**
+	 * The stages of a profile and target
+	 */
+	private static class Section {
+		private final String name;
+		private long startTime;
+		private long time;
+		private final Map<String, Stage> stages;
+		/**
+		 * module to the sizes before and after each stage
+		 */
+		private final Map<String, Map<String, long[]>> files;
+
+		/**
+		 * @param name
+		 */
+		private Section(final String name) {
+			this.name = name;
+			stages = new LinkedHashMap<String, Stage>();
+			files = new LinkedHashMap<String, Map<String, long[]>>();
+		}
+	}
+
+	/**
+	 * The totals of a stage
+	 */
+	private static class Stage {
+		private int calls;
+		private long time;
+		private long allocated;
+	}
+}
@@ -0,0 +1,45 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+package com.orange.wink.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The JFR event of a span of a build section (a profile and target),
+ * committed when the build report leaves the section
+ * 
+ * @author Sylvain Lalande
+ * 
+ */
+@Name(BuildSectionEvent.NAME)
+@Label("Build Section")
+@Category({ "Wink", "Build" })
+@Description("A span of the stages of a profile and target")
+@StackTrace(false)
+public class BuildSectionEvent extends Event {
+	/**
+	 * 
+	 */
+	public static final String NAME = "com.orange.wink.BuildSection";
+
+	/**
+	 * 
+	 */
+	@Label("Build")
+	String build;
+	@Label("Section")
+	String section;
+}
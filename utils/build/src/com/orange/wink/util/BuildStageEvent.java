@@ -0,0 +1,58 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+package com.orange.wink.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The JFR event of a call of a build stage, committed with the measure of the
+ * build report
+ * 
+ * @author Sylvain Lalande
+ * 
+ */
+@Name(BuildStageEvent.NAME)
+@Label("Build Stage")
+@Category({ "Wink", "Build" })
+@Description("A call of a builder stage, with the sizes of the files it processed")
+@StackTrace(false)
+public class BuildStageEvent extends Event {
+	/**
+	 * 
+	 */
+	public static final String NAME = "com.orange.wink.BuildStage";
+
+	/**
+	 * 
+	 */
+	@Label("Section")
+	String section;
+	@Label("Stage")
+	String stage;
+	@Label("Files")
+	int files;
+	@Label("Size Before")
+	@DataAmount
+	long sizeBefore;
+	@Label("Size After")
+	@DataAmount
+	long sizeAfter;
+	@Label("Allocated")
+	@Description("The memory allocated by the calling thread, -1 if not supported")
+	@DataAmount
+	long allocated;
+}
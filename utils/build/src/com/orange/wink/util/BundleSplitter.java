@@ -0,0 +1,181 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+package com.orange.wink.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import com.orange.wink.exception.WinkBuildException;
+
+/**
+ * Splits a builded file into parts under a size budget. The parts are cut
+ * between the working files, so that a module is never split, and keep the
+ * builded order; a module larger than the budget makes a part alone.
+ * 
+ * The parts manifest lists the parts in load order: the loader requests them
+ * at once and executes them in this order.
+ * 
+ * @author Sylvain Lalande
+ * 
+ */
+public class BundleSplitter {
+	/**
+	 * 
+	 */
+	public static final String MANIFEST_EXTENSION = ".parts.json";
+	public static final String PART_PREFIX = ".part";
+	/**
+	 * 
+	 */
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+
+	/**
+	 * 
+	 */
+	private final String profile;
+	private final String target;
+	private final int maxSize;
+	/**
+	 * 
+	 */
+	private int oversizedModules;
+
+	/**
+	 * @param profile
+	 * @param target
+	 * @param maxSize
+	 *            the maximum size of a part, in bytes
+	 */
+	public BundleSplitter(final String profile, final String target, final int maxSize) {
+		this.profile = profile;
+		this.target = target;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @param files
+	 *            the concatenated working files, in builded order
+	 * @param sources
+	 *            the module of each working file
+	 * @param destFile
+	 *            the builded file
+	 * @param sourceMap
+	 *            true to write the source map of each part
+	 * @return the parts, the builded file itself when it fits the budget
+	 * @throws WinkBuildException
+	 */
+	public List<String> split(final List<String> files, final List<String> sources, final File destFile, final boolean sourceMap) throws WinkBuildException {
+		if (files.size() != sources.size()) {
+			throw new WinkBuildException("split error: files and sources count differ");
+		}
+		final List<List<Integer>> groups = Common.newArrayList(1);
+		final List<String> parts = Common.newArrayList(1);
+		long partSize = 0;
+		List<Integer> group = null;
+		try {
+			for (int i = 0; i < files.size(); i++) {
+				final long size = FileManager.getFileContent(files.get(i)).getBytes(CHARSET).length + FileManager.DEFAULT_LF.length();
+				if (size > maxSize) {
+					oversizedModules++;
+				}
+				if (group == null || partSize + size > maxSize) {
+					group = Common.newArrayList(1);
+					groups.add(group);
+					partSize = 0;
+				}
+				group.add(Integer.valueOf(i));
+				partSize += size;
+			}
+
+			final File dir = destFile.getParentFile();
+			final String name = destFile.getName();
+			final String baseName = name.endsWith(".js") ? name.substring(0, name.length() - 3) : name;
+			if (groups.size() <= 1) {
+				parts.add(name);
+			} else {
+				for (int i = 0; i < groups.size(); i++) {
+					final String partName = baseName + PART_PREFIX + (i + 1) + ".js";
+					final List<String> partFiles = Common.newArrayList(groups.get(i).size());
+					final List<String> partSources = Common.newArrayList(groups.get(i).size());
+					for (final Integer index : groups.get(i)) {
+						partFiles.add(files.get(index.intValue()));
+						partSources.add(sources.get(index.intValue()));
+					}
+					final File part = new File(dir, partName);
+					if (sourceMap) {
+						final String mapName = partName + SourceMap.MAP_EXTENSION;
+						FileManager.concatenateFiles(partFiles, part.getPath(), SourceMap.MAPPING_URL_COMMENT + mapName);
+						SourceMap.writeIndexMap(partFiles, partSources, new File(dir, mapName), partName);
+					} else {
+						FileManager.concatenateFiles(partFiles, part.getPath());
+					}
+					parts.add(partName);
+				}
+			}
+
+			writeManifest(dir, groups, sources, parts, new File(dir, baseName + MANIFEST_EXTENSION));
+		} catch (final IOException e) {
+			throw new WinkBuildException(e);
+		}
+		return parts;
+	}
+
+	/**
+	 * @param dir
+	 * @param groups
+	 * @param sources
+	 * @param parts
+	 * @param manifestFile
+	 * @throws IOException
+	 */
+	private void writeManifest(final File dir, final List<List<Integer>> groups, final List<String> sources, final List<String> parts, final File manifestFile) throws IOException {
+		long totalSize = 0;
+		final StringBuffer sb = new StringBuffer();
+		sb.append("{\n");
+		sb.append("\t\"profile\": \"").append(profile).append("\",\n");
+		sb.append("\t\"target\": \"").append(target).append("\",\n");
+		sb.append("\t\"maxSize\": ").append(maxSize).append(",\n");
+		sb.append("\t\"parts\": [");
+		for (int i = 0; i < parts.size(); i++) {
+			final byte[] content = FileUtil.readBytes(new File(dir, parts.get(i)));
+			sb.append((i == 0) ? "\n" : ",\n");
+			sb.append("\t\t{\"file\": \"").append(parts.get(i)).append("\", \"hash\": \"").append(FileUtil.getContentHash(content));
+			sb.append("\", \"size\": ").append(content.length).append(", \"modules\": [");
+			final List<Integer> group = (i < groups.size()) ? groups.get(i) : null;
+			if (group != null) {
+				for (int j = 0; j < group.size(); j++) {
+					sb.append((j == 0) ? "\"" : ", \"").append(sources.get(group.get(j).intValue()).replace('\\', '/')).append("\"");
+				}
+			}
+			sb.append("]}");
+			totalSize += content.length;
+		}
+		sb.append((parts.size() == 0) ? "],\n" : "\n\t],\n");
+		sb.append("\t\"size\": ").append(totalSize).append("\n");
+		sb.append("}\n");
+		FileManager.writeIntoFile(sb.toString(), manifestFile.getPath());
+	}
+
+	/**
+	 * @param parts
+	 * @return
+	 */
+	public String getReport(final List<String> parts) {
+		final StringBuffer sb = new StringBuffer();
+		sb.append("split: ").append(parts.size()).append((parts.size() > 1) ? " parts" : " part").append(" (max size ").append(maxSize).append(" bytes)");
+		if (oversizedModules > 0) {
+			sb.append(", ").append(oversizedModules).append(" modules over the budget");
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,671 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+package com.orange.wink.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.NativeArray;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Undefined;
+
+import com.orange.wink.exception.WinkBuildException;
+
+/**
+ * Resolves the modules configuration (modules.json) and the profiles
+ * configuration (profiles.json) into the files of a profile and a target.
+ * The modules, profiles and implementations are indexed by name, the sub
+ * modules of a module are resolved once, and the files of a list of modules
+ * are kept for each profile and target: the configuration is not searched
+ * again for each profile, target and category.
+ * 
+ * @author Sylvain Lalande
+ * 
+ */
+public class ConfResolver {
+	/**
+	 * 
+	 */
+	private final Scriptable profileConf;
+	/**
+	 * 
+	 */
+	private final Map<String, Module> modules;
+	private final Map<String, Scriptable> profiles;
+	private final Map<String, Implementation> implementations;
+	/**
+	 * module name to the leaf modules it resolves to
+	 */
+	private final Map<String, List<String>> subModules;
+	/**
+	 * profile name to its locales
+	 */
+	private final Map<String, List<String>> locales;
+	/**
+	 * target and module to its files, for a list of locales
+	 */
+	private final Map<String, List<String>> moduleFiles;
+	/**
+	 * profile, target and modules to their files
+	 */
+	private final Map<String, List<String>> resolutions;
+	/**
+	 * profile, target, locale and modules to their i18n files
+	 */
+	private final Map<String, List<String>> localeResolutions;
+	/**
+	 * true to resolve the i18n files apart from the implementations
+	 */
+	private final boolean splitLocales;
+	/**
+	 * 
+	 */
+	private int hits;
+	private int misses;
+
+	/**
+	 * @param moduleConf
+	 *            the evaluated modules configuration
+	 * @param profileConf
+	 *            the evaluated profiles configuration
+	 */
+	public ConfResolver(final Scriptable moduleConf, final Scriptable profileConf) {
+		this(moduleConf, profileConf, false);
+	}
+
+	/**
+	 * @param moduleConf
+	 *            the evaluated modules configuration
+	 * @param profileConf
+	 *            the evaluated profiles configuration
+	 * @param splitLocales
+	 *            true to leave the i18n files out of the files of the modules,
+	 *            they are resolved for each locale (see getLocaleJsFiles)
+	 */
+	public ConfResolver(final Scriptable moduleConf, final Scriptable profileConf, final boolean splitLocales) {
+		this.profileConf = profileConf;
+		this.splitLocales = splitLocales;
+		modules = new HashMap<String, Module>();
+		profiles = new HashMap<String, Scriptable>();
+		implementations = new HashMap<String, Implementation>();
+		subModules = new HashMap<String, List<String>>();
+		locales = new HashMap<String, List<String>>();
+		moduleFiles = new HashMap<String, List<String>>();
+		resolutions = new HashMap<String, List<String>>();
+		localeResolutions = new HashMap<String, List<String>>();
+
+		for (final Object o : getList(moduleConf, "modules")) {
+			if (o instanceof Scriptable) {
+				final Module m = new Module((Scriptable) o);
+				// the first declaration wins
+				if (m.name != null && !modules.containsKey(m.name)) {
+					modules.put(m.name, m);
+				}
+			}
+		}
+		for (final Object o : getList(profileConf, "profiles")) {
+			if (o instanceof Scriptable) {
+				final String name = getString((Scriptable) o, "name");
+				if (name != null && !profiles.containsKey(name)) {
+					profiles.put(name, (Scriptable) o);
+				}
+			}
+		}
+		for (final Object o : getList(profileConf, "implementations")) {
+			if (o instanceof Scriptable) {
+				final Implementation impl = new Implementation((Scriptable) o);
+				if (impl.module != null && !implementations.containsKey(impl.module)) {
+					implementations.put(impl.module, impl);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param name
+	 * @return the module configuration, null if not found
+	 */
+	public Scriptable getModule(final String name) {
+		final Module m = modules.get(name);
+		return (m == null) ? null : m.conf;
+	}
+
+	/**
+	 * @param name
+	 * @return the profile configuration, null if not found
+	 */
+	public Scriptable getProfile(final String name) {
+		return profiles.get(name);
+	}
+
+	/**
+	 * @param profile
+	 * @param modulesNames
+	 *            the modules of the profile, as configured
+	 * @param target
+	 * @return the files of the modules, without duplicates
+	 * @throws WinkBuildException
+	 */
+	public List<String> getModulesJsFiles(final String profile, final List<String> modulesNames, final String target) throws WinkBuildException {
+		if (modulesNames.size() == 0) {
+			return Common.newArrayList(0);
+		}
+
+		final StringBuffer key = new StringBuffer();
+		key.append(profile).append('|').append(target);
+		for (final String m : modulesNames) {
+			key.append('|').append(m);
+		}
+		List<String> result = resolutions.get(key.toString());
+		if (result != null) {
+			hits++;
+			return new ArrayList<String>(result);
+		}
+		misses++;
+
+		final List<String> modulesResolved = resolveSubModules(getProfiledModules(modulesNames, target));
+		if (modulesResolved.size() == 0) {
+			result = Common.newArrayList(0);
+		} else {
+			result = new ArrayList<String>(new LinkedHashSet<String>(getTargetedJsFiles(modulesResolved, profile, target)));
+		}
+		resolutions.put(key.toString(), result);
+		return new ArrayList<String>(result);
+	}
+
+	/**
+	 * @param profile
+	 * @param target
+	 * @return the files of the dependencies of the profile, without
+	 *         duplicates
+	 * @throws WinkBuildException
+	 */
+	public List<String> getDependenciesJsFiles(final String profile, final String target) throws WinkBuildException {
+		final Scriptable profileObj = profiles.get(profile);
+		if (profileObj == null) {
+			throw new WinkBuildException("bad profiles conf : cannot find profile named: " + profile);
+		}
+		final List<String> dependencies = getStrings(profileObj, "dependencies");
+		if (dependencies == null) {
+			return Common.newArrayList(0);
+		}
+		return getModulesJsFiles(profile, dependencies, target);
+	}
+
+	/**
+	 * @param modulesNames
+	 * @param target
+	 * @return the implementation of each module for the target
+	 * @throws WinkBuildException
+	 */
+	public List<String> getProfiledModules(final List<String> modulesNames, final String target) throws WinkBuildException {
+		final List<String> profiledModules = Common.newArrayList(modulesNames.size());
+		for (final String m : modulesNames) {
+			final Implementation impl = implementations.get(m);
+			if (impl == null) {
+				profiledModules.add(m);
+				continue;
+			}
+			if (impl.defaultImpl == null) {
+				throw new WinkBuildException("bad profiles conf : expected defaultImpl for implementations.subImpls item");
+			}
+			String currentImpl = impl.defaultImpl;
+			// the last matching target wins
+			for (final String[] subImpl : impl.subImpls) {
+				if (target.equals(subImpl[0])) {
+					currentImpl = subImpl[1];
+				}
+			}
+			profiledModules.add(currentImpl);
+		}
+		return profiledModules;
+	}
+
+	/**
+	 * @param modulesPf
+	 * @return the leaf modules, without duplicates
+	 * @throws WinkBuildException
+	 */
+	public List<String> resolveSubModules(final List<String> modulesPf) throws WinkBuildException {
+		final Set<String> modulesResolved = new LinkedHashSet<String>();
+		for (final String m : modulesPf) {
+			modulesResolved.addAll(getSubModules(m, new HashSet<String>()));
+		}
+		return new ArrayList<String>(modulesResolved);
+	}
+
+	/**
+	 * @param name
+	 * @param resolving
+	 *            the modules being resolved, to detect the cycles
+	 * @return
+	 * @throws WinkBuildException
+	 */
+	private List<String> getSubModules(final String name, final Set<String> resolving) throws WinkBuildException {
+		List<String> result = subModules.get(name);
+		if (result != null) {
+			return result;
+		}
+		final Module module = getExistingModule(name);
+		if (module.modules == null) {
+			result = Common.newArrayList(1);
+			result.add(name);
+		} else {
+			if (!resolving.add(name)) {
+				throw new WinkBuildException("bad modules conf : cyclic sub modules for module named: " + name);
+			}
+			final Set<String> leaves = new LinkedHashSet<String>();
+			for (final String sub : module.modules) {
+				leaves.addAll(getSubModules(sub, resolving));
+			}
+			resolving.remove(name);
+			result = new ArrayList<String>(leaves);
+		}
+		subModules.put(name, result);
+		return result;
+	}
+
+	/**
+	 * @param modulesResolved
+	 * @param profile
+	 * @param target
+	 * @return the implementation and the i18n files of each module, without
+	 *         the i18n files if the locales are split
+	 * @throws WinkBuildException
+	 */
+	public List<String> getTargetedJsFiles(final List<String> modulesResolved, final String profile, final String target) throws WinkBuildException {
+		List<String> profileLocales = getLocales(profile);
+		if (splitLocales) {
+			profileLocales = Common.newArrayList(0);
+		}
+		final StringBuffer localesKey = new StringBuffer();
+		for (final String l : profileLocales) {
+			localesKey.append('|').append(l);
+		}
+
+		final List<String> targetedFiles = Common.newArrayList(modulesResolved.size());
+		for (final String m : modulesResolved) {
+			final String key = target + '|' + m + localesKey;
+			List<String> files = moduleFiles.get(key);
+			if (files == null) {
+				files = getModuleJsFiles(getExistingModule(m), profileLocales, target);
+				moduleFiles.put(key, files);
+			}
+			targetedFiles.addAll(files);
+		}
+		return targetedFiles;
+	}
+
+	/**
+	 * @param module
+	 * @param moduleLocales
+	 * @param target
+	 * @return
+	 * @throws WinkBuildException
+	 */
+	private List<String> getModuleJsFiles(final Module module, final List<String> moduleLocales, final String target) throws WinkBuildException {
+		if (module.defaultImpl == null) {
+			throw new WinkBuildException("bad modules conf : expected defaultImpl for modules item");
+		}
+		final List<String> files = Common.newArrayList(2);
+		files.add(module.defaultImpl);
+
+		final SubImpl subImpl = module.getSubImpl(target);
+		if (subImpl != null) {
+			if (subImpl.excludeDefault) {
+				files.remove(files.size() - 1);
+			}
+			if (subImpl.impl != null) {
+				files.add(subImpl.impl);
+			}
+		}
+		files.addAll(getModuleI18nFiles(module, moduleLocales, target));
+		return files;
+	}
+
+	/**
+	 * @param module
+	 * @param moduleLocales
+	 * @param target
+	 * @return the i18n files of the module for the locales
+	 */
+	private static List<String> getModuleI18nFiles(final Module module, final List<String> moduleLocales, final String target) {
+		final SubImpl subImpl = module.getSubImpl(target);
+		List<String> i18nResources = getMatchedLocales(module.i18n, moduleLocales);
+		if (subImpl != null) {
+			if (subImpl.excludeDefault) {
+				i18nResources = Common.newArrayList(1);
+			}
+			i18nResources.addAll(getMatchedLocales(subImpl.i18n, moduleLocales));
+		}
+		return i18nResources;
+	}
+
+	/**
+	 * @param profile
+	 * @param modulesNames
+	 *            the modules of the profile, as configured
+	 * @param target
+	 * @param locale
+	 * @return the i18n files of the modules for the locale, without duplicates
+	 * @throws WinkBuildException
+	 */
+	public List<String> getLocaleJsFiles(final String profile, final List<String> modulesNames, final String target, final String locale) throws WinkBuildException {
+		final StringBuffer key = new StringBuffer();
+		key.append(profile).append('|').append(target).append('|').append(locale);
+		for (final String m : modulesNames) {
+			key.append('|').append(m);
+		}
+		List<String> result = localeResolutions.get(key.toString());
+		if (result != null) {
+			hits++;
+			return new ArrayList<String>(result);
+		}
+		misses++;
+
+		final List<String> localeList = Common.newArrayList(1);
+		localeList.add(locale);
+		final Set<String> files = new LinkedHashSet<String>();
+		for (final String m : resolveSubModules(getProfiledModules(modulesNames, target))) {
+			files.addAll(getModuleI18nFiles(getExistingModule(m), localeList, target));
+		}
+		result = new ArrayList<String>(files);
+		localeResolutions.put(key.toString(), result);
+		return new ArrayList<String>(result);
+	}
+
+	/**
+	 * @param modulesResolved
+	 * @param target
+	 * @return the css files of each module
+	 * @throws WinkBuildException
+	 */
+	public List<String> getTargetedCssFiles(final List<String> modulesResolved, final String target) throws WinkBuildException {
+		final List<String> targetedFiles = Common.newArrayList(modulesResolved.size());
+		for (final String m : modulesResolved) {
+			final Module module = getExistingModule(m);
+			final SubImpl subImpl = module.getSubImpl(target);
+			if ((subImpl == null || !subImpl.excludeDefault) && module.css != null) {
+				targetedFiles.addAll(module.css);
+			}
+			if (subImpl != null && subImpl.css != null) {
+				targetedFiles.addAll(subImpl.css);
+			}
+		}
+		return targetedFiles;
+	}
+
+	/**
+	 * @param profile
+	 * @return the locales of the profile, or the default ones
+	 * @throws WinkBuildException
+	 */
+	public List<String> getLocales(final String profile) throws WinkBuildException {
+		List<String> result = locales.get(profile);
+		if (result != null) {
+			return result;
+		}
+		final Scriptable profileObj = profiles.get(profile);
+		if (profileObj == null) {
+			throw new WinkBuildException("bad profiles conf : cannot find profile named: " + profile);
+		}
+
+		final Object build = get(profileConf, "build");
+		final List<String> defaultLocaleList = (build instanceof Scriptable) ? getStrings((Scriptable) build, "defaultLocaleList") : null;
+		if (defaultLocaleList == null || defaultLocaleList.size() == 0) {
+			throw new WinkBuildException("bad profiles conf : expected defaultLocaleList in build configuration");
+		}
+		result = getStrings(profileObj, "localeList");
+		if (result == null) {
+			result = defaultLocaleList;
+		} else if (result.size() == 0) {
+			throw new WinkBuildException("bad profiles conf : profile localeList size must be > 0");
+		}
+		locales.put(profile, result);
+		return result;
+	}
+
+	/**
+	 * @param i18n
+	 * @param matchedLocales
+	 * @return the i18n files of the locales
+	 */
+	private static List<String> getMatchedLocales(final List<Map<String, String>> i18n, final List<String> matchedLocales) {
+		final List<String> result = Common.newArrayList(1);
+		for (final Map<String, String> resources : i18n) {
+			for (final String l : matchedLocales) {
+				final String resource = resources.get(l);
+				if (resource != null) {
+					result.add(resource);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param name
+	 * @return
+	 * @throws WinkBuildException
+	 */
+	private Module getExistingModule(final String name) throws WinkBuildException {
+		final Module module = modules.get(name);
+		if (module == null) {
+			throw new WinkBuildException("bad modules conf : cannot find module named: " + name);
+		}
+		return module;
+	}
+
+	/**
+	 * @return the number of resolutions read from the cache and computed
+	 */
+	public String getReport() {
+		return "conf resolver: " + modules.size() + " modules, " + profiles.size() + " profiles, " + hits + " cached resolutions, " + misses
+				+ " computed resolutions";
+	}
+
+	/**
+	 * @param o
+	 * @param name
+	 * @return the value, null if undefined
+	 */
+	private static Object get(final Scriptable o, final String name) {
+		final Object value = ScriptableObject.getProperty(o, name);
+		if (value == Scriptable.NOT_FOUND || value instanceof Undefined) {
+			return null;
+		}
+		return value;
+	}
+
+	/**
+	 * @param o
+	 * @param name
+	 * @return
+	 */
+	private static String getString(final Scriptable o, final String name) {
+		final Object value = get(o, name);
+		return (value == null) ? null : Context.toString(value);
+	}
+
+	/**
+	 * @param o
+	 * @param name
+	 * @return the items of the array, empty if undefined
+	 */
+	private static List<Object> getList(final Scriptable o, final String name) {
+		final Object value = get(o, name);
+		final List<Object> result = Common.newArrayList(1);
+		if (value instanceof NativeArray) {
+			final NativeArray array = (NativeArray) value;
+			for (int i = 0; i < array.getLength(); i++) {
+				result.add(array.get(i, array));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param o
+	 * @param name
+	 * @return the strings of the array (or the string), null if undefined
+	 */
+	private static List<String> getStrings(final Scriptable o, final String name) {
+		final Object value = get(o, name);
+		if (value == null) {
+			return null;
+		}
+		final List<String> result = Common.newArrayList(1);
+		if (value instanceof NativeArray) {
+			for (final Object item : getList(o, name)) {
+				result.add(Context.toString(item));
+			}
+		} else {
+			result.add(Context.toString(value));
+		}
+		return result;
+	}
+
+	/**
+	 * @param o
+	 * @return the locales to the i18n files
+	 */
+	private static List<Map<String, String>> getI18n(final Scriptable o) {
+		final List<Map<String, String>> result = Common.newArrayList(1);
+		for (final Object item : getList(o, "i18n")) {
+			if (item instanceof Scriptable) {
+				final Scriptable resources = (Scriptable) item;
+				final Map<String, String> map = new HashMap<String, String>();
+				for (final Object id : resources.getIds()) {
+					final String l = id.toString();
+					final String resource = getString(resources, l);
+					if (resource != null) {
+						map.put(l, resource);
+					}
+				}
+				result.add(map);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param value
+	 * @return true if the value equals true in the scripts
+	 */
+	private static boolean isTrue(final Object value) {
+		if (value == null) {
+			return false;
+		}
+		if (value instanceof Boolean) {
+			return ((Boolean) value).booleanValue();
+		}
+		return Context.toNumber(value) == 1;
+	}
+
+	/**
+	 * A module of the modules configuration
+	 */
+	private static class Module {
+		private final Scriptable conf;
+		private final String name;
+		private final String defaultImpl;
+		private final List<String> modules;
+		private final List<String> css;
+		private final List<Map<String, String>> i18n;
+		private final List<SubImpl> subImpls;
+
+		/**
+		 * @param conf
+		 */
+		private Module(final Scriptable conf) {
+			this.conf = conf;
+			name = getString(conf, "name");
+			defaultImpl = getString(conf, "defaultImpl");
+			modules = getStrings(conf, "modules");
+			css = getStrings(conf, "css");
+			i18n = getI18n(conf);
+			subImpls = Common.newArrayList(1);
+			for (final Object o : getList(conf, "subImpls")) {
+				if (o instanceof Scriptable) {
+					subImpls.add(new SubImpl((Scriptable) o));
+				}
+			}
+		}
+
+		/**
+		 * @param target
+		 * @return the first implementation of the target, null if none
+		 */
+		private SubImpl getSubImpl(final String target) {
+			for (final SubImpl subImpl : subImpls) {
+				if (target.equals(subImpl.target)) {
+					return subImpl;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * The implementation of a module for a target
+	 */
+	private static class SubImpl {
+		private final String target;
+		private final String impl;
+		private final boolean excludeDefault;
+		private final List<String> css;
+		private final List<Map<String, String>> i18n;
+
+		/**
+		 * @param conf
+		 */
+		private SubImpl(final Scriptable conf) {
+			target = getString(conf, "target");
+			impl = getString(conf, "impl");
+			excludeDefault = isTrue(get(conf, "excludeDefault"));
+			css = getStrings(conf, "css");
+			i18n = getI18n(conf);
+		}
+	}
+
+	/**
+	 * The implementations of a module in the profiles configuration
+	 */
+	private static class Implementation {
+		private final String module;
+		private final String defaultImpl;
+		/**
+		 * target and module of each implementation
+		 */
+		private final List<String[]> subImpls;
+
+		/**
+		 * @param conf
+		 */
+		private Implementation(final Scriptable conf) {
+			module = getString(conf, "module");
+			defaultImpl = getString(conf, "defaultImpl");
+			subImpls = Common.newArrayList(1);
+			for (final Object o : getList(conf, "subImpls")) {
+				if (o instanceof Scriptable) {
+					subImpls.add(new String[] { getString((Scriptable) o, "target"), getString((Scriptable) o, "impl") });
+				}
+			}
+		}
+	}
+}
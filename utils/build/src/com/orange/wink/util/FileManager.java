@@ -21,9 +21,12 @@ import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.StringReader;
 import java.nio.charset.Charset;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.orange.wink.exception.WinkBuildException;
 
-import com.orange.wink.Constants;
 
 /**
  * @author Sylvain Lalande
@@ -39,9 +42,9 @@ public class FileManager {
 	 */
 	public static final String DEFAULT_LF = "\n";
 	/**
-	 * 
+	 * shared by the parallel build stages, iterations must synchronize on it
 	 */
-	private static List<FileObject> files = Common.newArrayList(1);
+	private static List<FileObject> files = Collections.synchronizedList(Common.<FileObject> newArrayList(1));
 
 	/**
 	 * @param filename
@@ -50,24 +53,47 @@ public class FileManager {
 	 */
 	public static FileObject getFileObject(final String filename) throws IOException {
 		final String filenamec = new File(filename).getCanonicalPath();
-		for (final FileObject fo : files) {
-			if (fo.getFilename().equals(filenamec)) {
-				return fo;
+		synchronized (files) {
+			for (final FileObject fo : files) {
+				if (fo.getFilename().equals(filenamec)) {
+					return fo;
+				}
 			}
 		}
 		return null;
 	}
 
+	/**
+	 * Forgets all the files, between the builds of a same process
+	 */
+	public static void clear() {
+		files.clear();
+		FileObject.clearCache();
+	}
+
+	/**
+	 * Forgets the cached content of a file written without the FileManager
+	 * 
+	 * @param filename
+	 * @throws IOException
+	 */
+	public static void uncache(final String filename) throws IOException {
+		FileObject.uncache(new File(filename).getCanonicalPath());
+	}
+
 	/**
 	 * @param filename
 	 */
 	private static void removeFileObject(final String filename) {
-		for (final FileObject fo : files) {
-			if (fo.getFilename().equals(filename)) {
-				files.remove(fo);
-				break;
+		synchronized (files) {
+			for (final FileObject fo : files) {
+				if (fo.getFilename().equals(filename)) {
+					files.remove(fo);
+					break;
+				}
 			}
 		}
+		FileObject.uncache(filename);
 	}
 
 	/**
@@ -85,16 +111,14 @@ public class FileManager {
 	private static StringBuffer getBufferedFileContent(final String filename) throws IOException {
 		FileObject fo = getFileObject(filename);
 		if (fo == null) {
-			fo = new FileObject(new File(filename).getCanonicalPath());
-			files.add(fo);
-			if (!Constants.fileInMemory) {
-				fo.setEncoding(FileUtil.getEncoding(fo.getFilename()));
-			}
-		}
-		if (Constants.fileInMemory) {
-			if (fo.getContent() == null) {
-				fo.setEncoding(FileUtil.getEncoding(fo.getFilename()));
-				fo.setContent(getBufferedFileContent(fo.getFilename(), fo.getEncoding()));
+			final FileObject created = new FileObject(new File(filename).getCanonicalPath());
+			created.setEncoding(FileUtil.getEncoding(created.getFilename()));
+			synchronized (files) {
+				fo = getFileObject(filename);
+				if (fo == null) {
+					fo = created;
+					files.add(fo);
+				}
 			}
 		}
 		return fo.getContent();
@@ -115,17 +139,59 @@ public class FileManager {
 		writeIntoFile(content, foutName);
 	}
 
+	/**
+	 * Copies the files concurrently (see TaskExecutor#getIoThreadCount)
+	 * 
+	 * @param fins
+	 * @param fouts
+	 *            the copy of each file
+	 * @return the canonical paths of the copies, in the order of the files
+	 * @throws WinkBuildException
+	 */
+	public static List<String> copyFiles(final List<File> fins, final List<File> fouts) throws WinkBuildException {
+		if (fins.size() != fouts.size()) {
+			throw new WinkBuildException("copyFiles() error: " + fins.size() + " files for " + fouts.size() + " copies");
+		}
+		final List<Callable<String>> tasks = Common.newArrayList(fins.size());
+		for (int i = 0; i < fins.size(); i++) {
+			final File fin = fins.get(i);
+			final File fout = fouts.get(i);
+			tasks.add(new Callable<String>() {
+				@Override
+				public String call() throws IOException {
+					copyFile(fin, fout);
+					return fout.getCanonicalPath();
+				}
+			});
+		}
+		return TaskExecutor.execute(tasks, TaskExecutor.getIoThreadCount());
+	}
+
 	/**
 	 * @param files
 	 * @param destFile
 	 */
 	public static void concatenateFiles(final List<String> files, final String destFile) throws IOException {
+		concatenateFiles(files, destFile, null);
+	}
+
+	/**
+	 * @param files
+	 * @param destFile
+	 * @param trailer
+	 *            a line appended after the files, null if none
+	 */
+	public static void concatenateFiles(final List<String> files, final String destFile, final String trailer) throws IOException {
 		// System.out.println("concatenateFiles: " + destFile);
 		final StringBuffer sb = new StringBuffer();
 		for (final String filename : files) {
 			sb.append(getFileContent(filename));
 			sb.append(DEFAULT_LF);
 		}
+		if (trailer != null) {
+			sb.append(trailer);
+			sb.append(DEFAULT_LF);
+		}
 		writeIntoFile(sb.toString(), destFile);
 	}
 
@@ -177,12 +243,14 @@ public class FileManager {
 		final FileObject foOut = new FileObject(filenamec);
 		files.add(foOut);
 		foOut.setEncoding(OUTPUT_ENCODING);
-		if (Constants.fileInMemory) {
-			foOut.setContent(new StringBuffer().append(content));
-		}
+		foOut.setContent(new StringBuffer().append(content));
 	}
 
 	/**
+	 * Blanks the given range, keeping the line structure of the file. When
+	 * known, the char positions (relative to the first line) limit the range
+	 * so that the code sharing the first and last lines is preserved.
+	 * 
 	 * @param filename
 	 * @param lineStart
 	 * @param lineEnd
@@ -200,10 +268,11 @@ public class FileManager {
 		output.append(fobj.getLinesAsString(1, (lineStart - 1)));
 
 		final String middle = fobj.getLinesAsString(lineStart, lineEnd);
+		final boolean charRange = (charStart >= 0 && charEnd > charStart && charEnd <= middle.length());
 		for (int i = 0; i < middle.length(); i++) {
 			final char c = middle.charAt(i);
 			final int ci = c;
-			if (ci < 33) {
+			if (ci < 33 || (charRange && (i < charStart || i >= charEnd))) {
 				output.append(c);
 			} else {
 				output.append(" ");
@@ -213,4 +282,36 @@ public class FileManager {
 
 		writeIntoFile(output.toString(), filename);
 	}
+
+	/**
+	 * Replaces the given range, keeping its line feeds so that the lines which
+	 * follow do not move
+	 * 
+	 * @param filename
+	 * @param lineStart
+	 * @param lineEnd
+	 * @param charStart
+	 *            the start of the range, relative to the first line
+	 * @param charEnd
+	 *            the end of the range, relative to the first line
+	 * @param replacement
+	 * @throws IOException
+	 */
+	public static void replaceInFile(final String filename, final int lineStart, final int lineEnd, final int charStart, final int charEnd, final String replacement) throws IOException {
+		final FileObject fobj = getFileObject(filename);
+		final StringBuffer output = new StringBuffer();
+		output.append(fobj.getLinesAsString(1, (lineStart - 1)));
+
+		final String middle = fobj.getLinesAsString(lineStart, lineEnd);
+		output.append(middle.substring(0, charStart)).append(replacement);
+		for (int i = charStart; i < charEnd; i++) {
+			if (middle.charAt(i) == '\n') {
+				output.append('\n');
+			}
+		}
+		output.append(middle.substring(charEnd));
+		output.append(fobj.getLinesAsString(lineEnd + 1));
+
+		writeIntoFile(output.toString(), filename);
+	}
 }
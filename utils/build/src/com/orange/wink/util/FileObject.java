@@ -14,19 +14,31 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import com.orange.wink.Constants;
 
 /**
+ * The content and the lines of a file are kept in a cache shared by all the
+ * files and bounded by a size in bytes (see "setCacheSize"): the least
+ * recently used files are evicted first, and read again when needed.
+ * 
  * @author Sylvain Lalande
  * 
  */
 public class FileObject {
+	/**
+	 * estimated size in bytes of a line, in addition to its chars
+	 */
+	private static final int LINE_OVERHEAD = 40;
+	/**
+	 * the decoded contents, by filename
+	 */
+	private static LruCache<String, CachedContent> cache = new LruCache<String, CachedContent>(Constants.fileCacheSize);
+
 	private final String filename;
 	private String encoding;
-	private StringBuffer content;
-	private List<String> lines;
 
 	/**
 	 * @param filename
@@ -45,23 +57,84 @@ public class FileObject {
 		if (encoding != null) {
 			sb.append(" ").append(encoding).append(" encoding");
 		}
-		if (content != null) {
-			sb.append(" ").append(content.length()).append(" octets");
-		}
 		return sb.toString();
 	}
 
 	/**
-	 * @return the lines
+	 * Replaces the cache, the files are read again
+	 * 
+	 * @param maxSize
+	 *            the maximum size of the cached contents, in bytes
 	 */
-	public List<String> getLines() throws IOException {
-		if (!Constants.fileInMemory) {
-			return readLines();
-		}
-		if (lines == null) {
-			throw new IllegalStateException("lines of " + filename + " not initialized");
+	public static void setCacheSize(final long maxSize) {
+		cache = new LruCache<String, CachedContent>(maxSize);
+	}
+
+	/**
+	 * Forgets all the cached contents
+	 */
+	public static void clearCache() {
+		cache.clear();
+	}
+
+	/**
+	 * Forgets the cached content of a file
+	 * 
+	 * @param filename
+	 */
+	static void uncache(final String filename) {
+		cache.remove(filename);
+	}
+
+	/**
+	 * @return the estimated size of the cached contents, in bytes
+	 */
+	public static long getCacheSize() {
+		return cache.getSize();
+	}
+
+	/**
+	 * @return
+	 */
+	public static long getCacheHits() {
+		return cache.getHits();
+	}
+
+	/**
+	 * @return
+	 */
+	public static long getCacheEvictions() {
+		return cache.getEvictions();
+	}
+
+	/**
+	 * @return
+	 */
+	public static String getCacheReport() {
+		return cache.getReport();
+	}
+
+	/**
+	 * @return the cached content, read if evicted
+	 * @throws IOException
+	 */
+	private CachedContent getCachedContent() throws IOException {
+		CachedContent cached = cache.get(filename);
+		if (cached == null) {
+			if (encoding == null) {
+				encoding = FileUtil.getEncoding(filename);
+			}
+			cached = new CachedContent(FileManager.getBufferedFileContent(filename, encoding));
+			cache.put(filename, cached, cached.size);
 		}
-		return lines;
+		return cached;
+	}
+
+	/**
+	 * @return the lines, read-only
+	 */
+	public List<String> getLines() throws IOException {
+		return getCachedContent().lines;
 	}
 
 	/**
@@ -125,13 +198,10 @@ public class FileObject {
 	}
 
 	/**
-	 * @return the content
+	 * @return a copy of the content
 	 */
 	public StringBuffer getContent() throws IOException {
-		if (!Constants.fileInMemory) {
-			return FileManager.getBufferedFileContent(filename, encoding);
-		}
-		return content;
+		return new StringBuffer(getCachedContent().content);
 	}
 
 	/**
@@ -140,8 +210,17 @@ public class FileObject {
 	 * @throws IOException
 	 */
 	public ArrayList<String> readLines() throws IOException {
+		return readLines(getContent());
+	}
+
+	/**
+	 * @param content
+	 * @return
+	 * @throws IOException
+	 */
+	private static ArrayList<String> readLines(final CharSequence content) throws IOException {
 		final ArrayList<String> lines = Common.newArrayList(20);
-		final BufferedReader br = new BufferedReader(new StringReader(getContent().toString()));
+		final BufferedReader br = new BufferedReader(new StringReader(content.toString()));
 		int ln = 0;
 		String line = null;
 		while ((line = br.readLine()) != null) {
@@ -155,22 +234,19 @@ public class FileObject {
 	}
 
 	/**
+	 * Caches the content, as it is read from the file: each line ends with a
+	 * line feed
+	 * 
 	 * @param content
 	 *            the content to set
 	 */
 	public void setContent(final StringBuffer content) throws IOException {
-		this.content = content;
-
-		lines = Common.newArrayList(20);
-		final BufferedReader br = new BufferedReader(new StringReader(content.toString()));
-		int ln = 0;
-		String line = null;
-		while ((line = br.readLine()) != null) {
-			lines.add(ln, line);
-			ln++;
+		final StringBuffer read = new StringBuffer(content.length() + 1);
+		for (final String line : readLines(content)) {
+			read.append(line).append(FileManager.DEFAULT_LF);
 		}
-		br.close();
-		Common.trimList(lines);
+		final CachedContent cached = new CachedContent(read);
+		cache.put(filename, cached, cached.size);
 	}
 
 	/**
@@ -187,4 +263,30 @@ public class FileObject {
 	public void setEncoding(final String encoding) {
 		this.encoding = encoding;
 	}
+
+	/**
+	 * 
+	 */
+	private static class CachedContent {
+		private final StringBuffer content;
+		private final List<String> lines;
+		/**
+		 * estimated size in bytes
+		 */
+		private final long size;
+
+		/**
+		 * @param content
+		 * @throws IOException
+		 */
+		CachedContent(final StringBuffer content) throws IOException {
+			this.content = content;
+			lines = Collections.unmodifiableList(readLines(content));
+			long s = 2L * content.length();
+			for (final String line : lines) {
+				s += 2L * line.length() + LINE_OVERHEAD;
+			}
+			size = s;
+		}
+	}
 }
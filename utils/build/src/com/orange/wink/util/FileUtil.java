@@ -11,12 +11,26 @@
 package com.orange.wink.util;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 import org.mozilla.intl.chardet.nsDetector;
 
+import com.orange.wink.exception.WinkBuildException;
+
 /**
  * @author Sylvain Lalande
  * 
@@ -69,33 +83,66 @@ public class FileUtil {
 		// System.out.println("deleteFile: " + dirname);
 		final File f = new File(dirname);
 		if (f.exists()) {
-			return deleteR(f);
+			return deleteTree(f);
 		}
 		return false;
 	}
 
 	/**
+	 * Deletes a file or a directory with its content: the files are deleted
+	 * concurrently (see TaskExecutor#getIoThreadCount), then the directories,
+	 * the deepest first
+	 * 
 	 * @param path
-	 * @return
+	 * @return true if all the files and directories are deleted
 	 */
-	private static boolean deleteR(final File path) {
-		if (path.exists()) {
-			final File[] files = path.listFiles();
-			for (int i = 0; i < files.length; i++) {
-				if (files[i].isDirectory()) {
-					deleteR(files[i]);
-				} else {
-					final boolean isFileDeleted = files[i].delete();
-					if (!isFileDeleted) {
-						return false;
-					}
+	public static boolean deleteTree(final File path) {
+		final List<File> files = Common.newArrayList(16);
+		final List<File> directories = Common.newArrayList(4);
+		listTree(path, files, directories);
+
+		final List<Callable<Boolean>> tasks = Common.newArrayList(files.size());
+		for (final File file : files) {
+			tasks.add(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					return Boolean.valueOf(file.delete());
 				}
+			});
+		}
+
+		boolean isDeleted = true;
+		try {
+			for (final Boolean isFileDeleted : TaskExecutor.execute(tasks, TaskExecutor.getIoThreadCount())) {
+				isDeleted &= isFileDeleted.booleanValue();
 			}
+		} catch (final WinkBuildException e) {
+			return false;
+		}
+		for (int i = directories.size() - 1; i >= 0; i--) {
+			isDeleted &= directories.get(i).delete();
 		}
-		final boolean isDeleted = path.delete();
 		return isDeleted;
 	}
 
+	/**
+	 * @param path
+	 * @param files
+	 * @param directories
+	 *            the parent directories first
+	 */
+	private static void listTree(final File path, final List<File> files, final List<File> directories) {
+		final File[] children = path.listFiles();
+		if (children == null) {
+			files.add(path);
+			return;
+		}
+		directories.add(path);
+		for (final File child : children) {
+			listTree(child, files, directories);
+		}
+	}
+
 	/**
 	 * @param filename
 	 * @return
@@ -142,4 +189,75 @@ public class FileUtil {
 			return prob[0];
 		}
 	}
+
+	/**
+	 * @param file
+	 * @return the content of the file
+	 * @throws IOException
+	 */
+	public static byte[] readBytes(final File file) throws IOException {
+		final InputStream in = new FileInputStream(file);
+		try {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+			final byte[] buf = new byte[8192];
+			int len;
+			while ((len = in.read(buf)) != -1) {
+				out.write(buf, 0, len);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes the content aside then moves it atomically, so that a concurrent
+	 * reader never sees a partial or missing file. A file already written with
+	 * the same content by a concurrent writer is a successful write.
+	 * 
+	 * @param content
+	 * @param file
+	 * @throws IOException
+	 */
+	public static void writeBytes(final byte[] content, final File file) throws IOException {
+		final File tmpFile = File.createTempFile("." + file.getName() + "-", ".tmp", file.getAbsoluteFile().getParentFile());
+		try {
+			final OutputStream out = new FileOutputStream(tmpFile);
+			try {
+				out.write(content);
+			} finally {
+				out.close();
+			}
+			try {
+				Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (final AtomicMoveNotSupportedException e) {
+				Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (final IOException e) {
+			if (!file.isFile() || file.length() != content.length || !Arrays.equals(readBytes(file), content)) {
+				throw new IOException("cannot write file: " + file.getPath(), e);
+			}
+		} finally {
+			tmpFile.delete();
+		}
+	}
+
+	/**
+	 * @param content
+	 * @return the hexadecimal SHA-1 hash of the content
+	 */
+	public static String getContentHash(final byte[] content) {
+		try {
+			final MessageDigest md = MessageDigest.getInstance("SHA-1");
+			final byte[] digest = md.digest(content);
+			final StringBuffer sb = new StringBuffer(digest.length * 2);
+			for (final byte b : digest) {
+				sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+				sb.append(Character.forDigit(b & 0xf, 16));
+			}
+			return sb.toString();
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
 }
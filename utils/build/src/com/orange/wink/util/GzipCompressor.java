@@ -0,0 +1,187 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+package com.orange.wink.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import com.orange.wink.exception.WinkBuildException;
+
+/**
+ * Writes a precompressed ".gz" sibling for each JS and CSS file of a build
+ * directory. The files are compressed in parallel at the maximum deflate
+ * level; the compressed contents are cached by content hash so that an
+ * unchanged file is never compressed twice.
+ * 
+ * @author Sylvain Lalande
+ * 
+ */
+public class GzipCompressor {
+	/**
+	 * 
+	 */
+	public static final String GZIP_EXTENSION = ".gz";
+	/**
+	 * the stage of the compressed sizes in the build report
+	 */
+	public static final String REPORT_STAGE = "gzip";
+	/**
+	 * 
+	 */
+	private static final String[] EXTENSIONS = { ".js", ".css" };
+
+	/**
+	 * the directory of the cached compressed contents, null if none
+	 */
+	private final File cacheDirectory;
+
+	/**
+	 * @param cacheDirectory
+	 *            the cache directory, null to always compress
+	 */
+	public GzipCompressor(final File cacheDirectory) {
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	/**
+	 * @param directory
+	 *            the build directory
+	 * @return a report giving the compressed size of each file
+	 * @throws WinkBuildException
+	 */
+	public String compressDirectory(final File directory) throws WinkBuildException {
+		if (!directory.isDirectory()) {
+			throw new WinkBuildException("bad build directory: " + directory.getPath());
+		}
+		if (cacheDirectory != null && !cacheDirectory.isDirectory() && !cacheDirectory.mkdirs()) {
+			throw new WinkBuildException("cannot create cache directory: " + cacheDirectory.getPath());
+		}
+
+		final File[] files = directory.listFiles();
+		Arrays.sort(files);
+		final List<Callable<String>> tasks = Common.newArrayList(files.length);
+		final List<File> compressed = Common.newArrayList(files.length);
+		for (final File file : files) {
+			if (!file.isFile() || !isCompressible(file.getName())) {
+				continue;
+			}
+			compressed.add(file);
+			tasks.add(new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					return compressFile(file);
+				}
+			});
+		}
+
+		final StringBuffer sb = new StringBuffer();
+		sb.append("precompress: ").append(tasks.size()).append(" files");
+		for (final String line : TaskExecutor.execute(tasks)) {
+			sb.append("\n  ").append(line);
+		}
+
+		final BuildReport report = BuildReport.getCurrent();
+		if (report != null) {
+			for (final File file : compressed) {
+				report.addSizes(REPORT_STAGE, file.getName(), file.length(), new File(file.getPath() + GZIP_EXTENSION).length());
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @param name
+	 * @return
+	 */
+	private static boolean isCompressible(final String name) {
+		for (final String ext : EXTENSIONS) {
+			if (name.endsWith(ext)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param file
+	 * @return the report line of the file
+	 * @throws IOException
+	 */
+	private String compressFile(final File file) throws IOException {
+		final byte[] content = FileUtil.readBytes(file);
+		final File gzFile = new File(file.getPath() + GZIP_EXTENSION);
+
+		byte[] compressed = null;
+		File cacheFile = null;
+		if (cacheDirectory != null) {
+			cacheFile = new File(cacheDirectory, FileUtil.getContentHash(content) + GZIP_EXTENSION);
+			if (cacheFile.isFile()) {
+				compressed = FileUtil.readBytes(cacheFile);
+			}
+		}
+
+		final boolean cached = (compressed != null);
+		if (!cached) {
+			compressed = compress(content);
+			if (cacheFile != null) {
+				FileUtil.writeBytes(compressed, cacheFile);
+			}
+		}
+		if (!cached || !gzFile.isFile() || gzFile.length() != compressed.length) {
+			FileUtil.writeBytes(compressed, gzFile);
+		}
+
+		final StringBuffer sb = new StringBuffer();
+		sb.append(gzFile.getName()).append(": ");
+		sb.append(content.length).append(" -> ").append(compressed.length).append(" bytes");
+		if (cached) {
+			sb.append(" (cached)");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @param content
+	 * @return the gzip compressed content
+	 * @throws IOException
+	 */
+	public static byte[] compress(final byte[] content) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 3 + 64);
+		final GZIPOutputStream out = new BestCompressionOutputStream(bytes);
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * gzip stream using the maximum deflate level
+	 */
+	private static class BestCompressionOutputStream extends GZIPOutputStream {
+		/**
+		 * @param out
+		 * @throws IOException
+		 */
+		public BestCompressionOutputStream(final OutputStream out) throws IOException {
+			super(out, 8192);
+			def.setLevel(Deflater.BEST_COMPRESSION);
+		}
+	}
+}
@@ -0,0 +1,101 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+package com.orange.wink.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.orange.wink.exception.WinkBuildException;
+
+/**
+ * Writes the manifest read by the development loader for a profile and a
+ * target: the module files in load order, with the content hash used to
+ * version their URLs and their size. The loader knows all the files at once,
+ * so it requests them in parallel instead of resolving the configuration
+ * and loading the files one after another.
+ * 
+ * @author Sylvain Lalande
+ * 
+ */
+public class LoaderManifest {
+	/**
+	 * 
+	 */
+	public static final String MANIFEST_EXTENSION = ".loader.json";
+
+	/**
+	 * 
+	 */
+	private final String profile;
+	private final String target;
+
+	/**
+	 * @param profile
+	 * @param target
+	 */
+	public LoaderManifest(final String profile, final String target) {
+		this.profile = profile;
+		this.target = target;
+	}
+
+	/**
+	 * @param rootPath
+	 *            the path the files are relative to
+	 * @param files
+	 *            the files in load order
+	 * @param manifestFile
+	 * @return the total size of the files
+	 * @throws WinkBuildException
+	 */
+	public long write(final String rootPath, final List<String> files, final File manifestFile) throws WinkBuildException {
+		final List<Callable<String[]>> tasks = Common.newArrayList(files.size());
+		for (final String f : files) {
+			tasks.add(new Callable<String[]>() {
+				@Override
+				public String[] call() throws Exception {
+					final File file = new File(rootPath, f);
+					if (!file.isFile()) {
+						throw new WinkBuildException("loader manifest: file not found: " + file.getPath());
+					}
+					final byte[] content = FileUtil.readBytes(file);
+					return new String[] { f, FileUtil.getContentHash(content), String.valueOf(content.length) };
+				}
+			});
+		}
+		final List<String[]> entries = TaskExecutor.execute(tasks);
+
+		long totalSize = 0;
+		final StringBuffer sb = new StringBuffer();
+		sb.append("{\n");
+		sb.append("\t\"profile\": \"").append(profile).append("\",\n");
+		sb.append("\t\"target\": \"").append(target).append("\",\n");
+		sb.append("\t\"files\": [");
+		for (int i = 0; i < entries.size(); i++) {
+			final String[] entry = entries.get(i);
+			sb.append((i == 0) ? "\n" : ",\n");
+			sb.append("\t\t{\"path\": \"").append(entry[0].replace('\\', '/')).append("\", \"hash\": \"").append(entry[1]);
+			sb.append("\", \"size\": ").append(entry[2]).append("}");
+			totalSize += Long.parseLong(entry[2]);
+		}
+		sb.append((entries.size() == 0) ? "],\n" : "\n\t],\n");
+		sb.append("\t\"size\": ").append(totalSize).append("\n");
+		sb.append("}\n");
+
+		try {
+			FileManager.writeIntoFile(sb.toString(), manifestFile.getPath());
+		} catch (final IOException e) {
+			throw new WinkBuildException(e);
+		}
+		return totalSize;
+	}
+}
@@ -0,0 +1,207 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+package com.orange.wink.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.orange.wink.exception.WinkBuildException;
+
+/**
+ * Writes the i18n resources of a profile and a target as one bundle per
+ * locale, next to the locale-neutral builded file, and the locales manifest
+ * read by the loader to request the bundle of the user locale only.
+ * 
+ * A bundle is named by its content: the profiles and targets sharing the same
+ * i18n files for a locale share the same bundle, written once per build. An
+ * i18n file is read once per build whatever the number of bundles it belongs
+ * to.
+ * 
+ * @author Sylvain Lalande
+ * 
+ */
+public class LocaleBundler {
+	/**
+	 * 
+	 */
+	public static final String MANIFEST_EXTENSION = ".locales.json";
+	/**
+	 * the placeholder of the locale in the name of the bundles
+	 */
+	public static final String LOCALE_PLACEHOLDER = "LOCALE";
+	/**
+	 * 
+	 */
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+	/**
+	 * i18n file path, date and size to its content
+	 */
+	private static final Map<String, String> fileContents = new ConcurrentHashMap<String, String>();
+	/**
+	 * bundle path to the content hash it was written with
+	 */
+	private static final Map<String, String> bundleHashes = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * 
+	 */
+	private final String profile;
+	private final String target;
+	/**
+	 * 
+	 */
+	private final AtomicInteger writtenCount = new AtomicInteger();
+	private final AtomicInteger sharedCount = new AtomicInteger();
+	private int emptyCount;
+
+	/**
+	 * @param profile
+	 * @param target
+	 */
+	public LocaleBundler(final String profile, final String target) {
+		this.profile = profile;
+		this.target = target;
+	}
+
+	/**
+	 * @param rootPath
+	 *            the path the i18n files are relative to
+	 * @param locales
+	 *            the locales of the profile, the first one being the default
+	 *            locale
+	 * @param files
+	 *            the i18n files of each locale, in load order
+	 * @param bundleFile
+	 *            the name of the bundles, the locale replacing the
+	 *            placeholder, completed with the content hash
+	 * @param manifestFile
+	 * @throws WinkBuildException
+	 */
+	public void write(final String rootPath, final List<String> locales, final List<List<String>> files, final File bundleFile, final File manifestFile) throws WinkBuildException {
+		if (locales.size() != files.size()) {
+			throw new WinkBuildException("locale bundles error: locales and files count differ");
+		}
+		if (locales.size() == 0) {
+			throw new WinkBuildException("locale bundles error: expected at least one locale");
+		}
+
+		final List<Callable<String[]>> tasks = Common.newArrayList(locales.size());
+		for (int i = 0; i < locales.size(); i++) {
+			final String locale = locales.get(i);
+			final List<String> localeFiles = files.get(i);
+			tasks.add(new Callable<String[]>() {
+				@Override
+				public String[] call() throws Exception {
+					return writeBundle(rootPath, locale, localeFiles, bundleFile);
+				}
+			});
+		}
+		final List<String[]> bundles = TaskExecutor.execute(tasks);
+
+		final StringBuffer sb = new StringBuffer();
+		sb.append("{\n");
+		sb.append("\t\"profile\": \"").append(profile).append("\",\n");
+		sb.append("\t\"target\": \"").append(target).append("\",\n");
+		sb.append("\t\"defaultLocale\": \"").append(locales.get(0)).append("\",\n");
+		sb.append("\t\"locales\": {");
+		for (int i = 0; i < locales.size(); i++) {
+			final String[] bundle = bundles.get(i);
+			sb.append((i == 0) ? "\n" : ",\n");
+			sb.append("\t\t\"").append(locales.get(i)).append("\": ");
+			if (bundle == null) {
+				emptyCount++;
+				sb.append("null");
+			} else {
+				sb.append("{\"file\": \"").append(bundle[0]).append("\", \"hash\": \"").append(bundle[1]);
+				sb.append("\", \"size\": ").append(bundle[2]).append("}");
+			}
+		}
+		sb.append("\n\t}\n");
+		sb.append("}\n");
+
+		try {
+			FileManager.writeIntoFile(sb.toString(), manifestFile.getPath());
+		} catch (final IOException e) {
+			throw new WinkBuildException(e);
+		}
+	}
+
+	/**
+	 * @param rootPath
+	 * @param locale
+	 * @param localeFiles
+	 * @param bundleFile
+	 * @return the name, the content hash and the size of the bundle, null if
+	 *         the locale has no i18n files
+	 * @throws IOException
+	 */
+	private String[] writeBundle(final String rootPath, final String locale, final List<String> localeFiles, final File bundleFile) throws IOException {
+		if (localeFiles.size() == 0) {
+			return null;
+		}
+		final StringBuffer sb = new StringBuffer();
+		for (final String f : localeFiles) {
+			sb.append(getFileContent(new File(rootPath, f)));
+			sb.append(FileManager.DEFAULT_LF);
+		}
+		final byte[] content = sb.toString().getBytes(CHARSET);
+		final String hash = FileUtil.getContentHash(content);
+
+		final String baseName = bundleFile.getName().replace(LOCALE_PLACEHOLDER, locale).replaceFirst("\\.js$", "");
+		final File bundle = new File(bundleFile.getParentFile(), baseName + "-" + hash.substring(0, 12) + ".js");
+		final String key = bundle.getCanonicalPath();
+		if (hash.equals(bundleHashes.get(key)) && bundle.isFile()) {
+			sharedCount.incrementAndGet();
+		} else {
+			FileUtil.writeBytes(content, bundle);
+			bundleHashes.put(key, hash);
+			writtenCount.incrementAndGet();
+		}
+		return new String[] { bundle.getName(), hash, String.valueOf(content.length) };
+	}
+
+	/**
+	 * @param file
+	 * @return the content of the i18n file
+	 * @throws IOException
+	 */
+	private static String getFileContent(final File file) throws IOException {
+		if (!file.isFile()) {
+			throw new IOException("locale bundles: file not found: " + file.getPath());
+		}
+		final String key = file.getCanonicalPath() + '|' + file.lastModified() + '|' + file.length();
+		String content = fileContents.get(key);
+		if (content == null) {
+			content = FileManager.getFileContent(file.getPath());
+			fileContents.put(key, content);
+		}
+		return content;
+	}
+
+	/**
+	 * @param manifestFile
+	 * @return a summary of the bundles written
+	 */
+	public String getReport(final File manifestFile) {
+		final StringBuffer sb = new StringBuffer();
+		sb.append("locale bundles: ").append(manifestFile.getName()).append(" (");
+		sb.append(writtenCount.get()).append(" written, ");
+		sb.append(sharedCount.get()).append(" shared, ");
+		sb.append(emptyCount).append(" empty)");
+		return sb.toString();
+	}
+}
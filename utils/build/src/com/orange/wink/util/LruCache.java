@@ -0,0 +1,136 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+package com.orange.wink.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache bounded by the total size of its values: the least recently used
+ * values are evicted first. The size of a value is given when it is put.
+ * 
+ * @author Sylvain Lalande
+ * 
+ */
+public class LruCache<K, V> {
+	/**
+	 * 
+	 */
+	private final long maxSize;
+	/**
+	 * in access order, the least recently used first
+	 */
+	private final LinkedHashMap<K, V> values;
+	private final Map<K, Long> sizes;
+	/**
+	 * 
+	 */
+	private long size;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * @param maxSize
+	 *            the maximum total size of the values
+	 */
+	public LruCache(final long maxSize) {
+		this.maxSize = maxSize;
+		values = new LinkedHashMap<K, V>(16, 0.75f, true);
+		sizes = new LinkedHashMap<K, Long>();
+	}
+
+	/**
+	 * @param key
+	 * @return the value, null if not cached
+	 */
+	public synchronized V get(final K key) {
+		final V value = values.get(key);
+		if (value == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return value;
+	}
+
+	/**
+	 * Caches the value, unless it is larger than the cache
+	 * 
+	 * @param key
+	 * @param value
+	 * @param valueSize
+	 */
+	public synchronized void put(final K key, final V value, final long valueSize) {
+		remove(key);
+		if (valueSize > maxSize) {
+			return;
+		}
+		values.put(key, value);
+		sizes.put(key, Long.valueOf(valueSize));
+		size += valueSize;
+
+		final Iterator<K> it = values.keySet().iterator();
+		while (size > maxSize && it.hasNext()) {
+			final K eldest = it.next();
+			it.remove();
+			size -= sizes.remove(eldest).longValue();
+			evictions++;
+		}
+	}
+
+	/**
+	 * @param key
+	 */
+	public synchronized void remove(final K key) {
+		if (values.remove(key) != null) {
+			size -= sizes.remove(key).longValue();
+		}
+	}
+
+	/**
+	 * 
+	 */
+	public synchronized void clear() {
+		values.clear();
+		sizes.clear();
+		size = 0;
+	}
+
+	/**
+	 * @return the total size of the cached values
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	/**
+	 * @return
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return
+	 */
+	public synchronized String getReport() {
+		return values.size() + " entries, " + size + "/" + maxSize + " bytes, " + hits + " hits, " + misses + " misses, " + evictions + " evictions";
+	}
+}
@@ -0,0 +1,485 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+package com.orange.wink.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Lossless PNG recompression: the image data is unfiltered, then filtered
+ * again with the row filters giving the smallest data, among the adaptive
+ * choice (minimum sum of absolute differences per row) and each filter for
+ * all the rows, deflated at the maximum level. The other chunks are kept,
+ * except the texts and the modification time. The pixels and the rendering
+ * chunks (palette, transparency, gamma, color profile) are unchanged.
+ * 
+ * Also encodes a BufferedImage (the sprite sheets, or a GIF image as an
+ * indexed PNG) the same way.
+ * 
+ * @author Sylvain Lalande
+ * 
+ */
+public class PngOptimizer {
+	/**
+	 * 
+	 */
+	private static final byte[] SIGNATURE = { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
+	/**
+	 * chunks not needed to render the image
+	 */
+	private static final List<String> DROPPED_CHUNKS = Arrays.asList("tEXt", "zTXt", "iTXt", "tIME");
+	/**
+	 * the adaptive choice, then each filter for all the rows
+	 */
+	private static final int ADAPTIVE = -1;
+	private static final int[] FILTER_CHOICES = { ADAPTIVE, 0, 1, 2, 3, 4 };
+	private static final int[] STRATEGIES = { Deflater.DEFAULT_STRATEGY, Deflater.FILTERED };
+
+	/**
+	 * @param png
+	 * @return the recompressed image, or the given one if it is not larger
+	 * @throws IOException
+	 *             if the image is not a valid PNG
+	 */
+	public static byte[] optimize(final byte[] png) throws IOException {
+		if (png.length < SIGNATURE.length + 12 || !Arrays.equals(Arrays.copyOf(png, SIGNATURE.length), SIGNATURE)) {
+			throw new IOException("not a PNG image");
+		}
+		final List<Chunk> chunks = Common.newArrayList(8);
+		final ByteArrayOutputStream idat = new ByteArrayOutputStream(png.length);
+		int pos = SIGNATURE.length;
+		while (pos + 12 <= png.length) {
+			final int length = readInt(png, pos);
+			if (length < 0 || pos + 12 + length > png.length) {
+				throw new IOException("bad PNG chunk length");
+			}
+			final Chunk chunk = new Chunk(new String(png, pos + 4, 4, "ISO-8859-1"), Arrays.copyOfRange(png, pos + 8, pos + 8 + length));
+			pos += 12 + length;
+			if (chunk.type.equals("IDAT")) {
+				if (idat.size() == 0) {
+					chunks.add(chunk);
+				}
+				idat.write(chunk.data);
+			} else if (!DROPPED_CHUNKS.contains(chunk.type)) {
+				chunks.add(chunk);
+			}
+			if (chunk.type.equals("IEND")) {
+				break;
+			}
+		}
+		if (chunks.isEmpty() || !chunks.get(0).type.equals("IHDR") || chunks.get(0).data.length != 13 || idat.size() == 0) {
+			throw new IOException("bad PNG structure");
+		}
+
+		final byte[] ihdr = chunks.get(0).data;
+		final int width = readInt(ihdr, 0);
+		final int height = readInt(ihdr, 4);
+		final int bitDepth = ihdr[8] & 0xff;
+		final int colorType = ihdr[9] & 0xff;
+		final int interlace = ihdr[12] & 0xff;
+		final int bitsPerPixel = getChannels(colorType) * bitDepth;
+		final int rowBytes = (int) (((long) width * bitsPerPixel + 7) / 8);
+		final byte[] filtered = inflate(idat.toByteArray());
+
+		byte[] data;
+		if (interlace == 0) {
+			if (filtered.length < (long) height * (rowBytes + 1)) {
+				throw new IOException("truncated PNG data");
+			}
+			final byte[] raw = unfilter(filtered, rowBytes, Math.max(1, bitsPerPixel / 8), height);
+			data = compress(raw, rowBytes, Math.max(1, bitsPerPixel / 8), height, colorType == 3 || bitDepth < 8);
+		} else {
+			// the filters of the interlaced passes are kept
+			data = deflate(filtered, Deflater.DEFAULT_STRATEGY);
+		}
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(png.length);
+		out.write(SIGNATURE);
+		for (final Chunk chunk : chunks) {
+			writeChunk(out, chunk.type, chunk.type.equals("IDAT") ? data : chunk.data);
+		}
+		if (!chunks.get(chunks.size() - 1).type.equals("IEND")) {
+			writeChunk(out, "IEND", new byte[0]);
+		}
+		return (out.size() < png.length) ? out.toByteArray() : png;
+	}
+
+	/**
+	 * @param image
+	 *            an indexed image, or any other image encoded in RGBA
+	 * @return the PNG image
+	 * @throws IOException
+	 */
+	public static byte[] encode(final BufferedImage image) throws IOException {
+		final int width = image.getWidth();
+		final int height = image.getHeight();
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(SIGNATURE);
+
+		if (image.getColorModel() instanceof IndexColorModel) {
+			final IndexColorModel icm = (IndexColorModel) image.getColorModel();
+			final int size = icm.getMapSize();
+			int bitDepth = 1;
+			while ((1 << bitDepth) < size) {
+				bitDepth *= 2;
+			}
+			final int rowBytes = (width * bitDepth + 7) / 8;
+			final byte[] raw = new byte[rowBytes * height];
+			final Raster raster = image.getRaster();
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					final int bit = x * bitDepth;
+					raw[y * rowBytes + bit / 8] |= raster.getSample(x, y, 0) << (8 - bitDepth - bit % 8);
+				}
+			}
+			final byte[] plte = new byte[size * 3];
+			int transparent = 0;
+			for (int i = 0; i < size; i++) {
+				plte[i * 3] = (byte) icm.getRed(i);
+				plte[i * 3 + 1] = (byte) icm.getGreen(i);
+				plte[i * 3 + 2] = (byte) icm.getBlue(i);
+				if (icm.getAlpha(i) != 255) {
+					transparent = i + 1;
+				}
+			}
+			writeChunk(out, "IHDR", getHeader(width, height, bitDepth, 3));
+			writeChunk(out, "PLTE", plte);
+			if (transparent > 0) {
+				final byte[] trns = new byte[transparent];
+				for (int i = 0; i < transparent; i++) {
+					trns[i] = (byte) icm.getAlpha(i);
+				}
+				writeChunk(out, "tRNS", trns);
+			}
+			writeChunk(out, "IDAT", compress(raw, rowBytes, 1, height, true));
+		} else {
+			final int rowBytes = width * 4;
+			final byte[] raw = new byte[rowBytes * height];
+			final int[] row = new int[width];
+			for (int y = 0; y < height; y++) {
+				image.getRGB(0, y, width, 1, row, 0, width);
+				for (int x = 0; x < width; x++) {
+					final int p = y * rowBytes + x * 4;
+					raw[p] = (byte) (row[x] >> 16);
+					raw[p + 1] = (byte) (row[x] >> 8);
+					raw[p + 2] = (byte) row[x];
+					raw[p + 3] = (byte) (row[x] >>> 24);
+				}
+			}
+			writeChunk(out, "IHDR", getHeader(width, height, 8, 6));
+			writeChunk(out, "IDAT", compress(raw, rowBytes, 4, height, false));
+		}
+		writeChunk(out, "IEND", new byte[0]);
+		return out.toByteArray();
+	}
+
+	/**
+	 * @param raw
+	 *            the rows, without filter bytes
+	 * @param rowBytes
+	 * @param bpp
+	 *            the bytes per complete pixel, 1 for less than a byte
+	 * @param height
+	 * @param unfiltered
+	 *            true if the rows are usually smaller without filter (palette
+	 *            or less than 8 bits): the adaptive choice is then skipped
+	 * @return the smallest compressed data
+	 */
+	private static byte[] compress(final byte[] raw, final int rowBytes, final int bpp, final int height, final boolean unfiltered) {
+		byte[] best = null;
+		for (final int choice : FILTER_CHOICES) {
+			if (unfiltered && choice == ADAPTIVE) {
+				continue;
+			}
+			final byte[] filtered = filter(raw, rowBytes, bpp, height, choice);
+			for (final int strategy : STRATEGIES) {
+				final byte[] data = deflate(filtered, strategy);
+				if (best == null || data.length < best.length) {
+					best = data;
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @param raw
+	 * @param rowBytes
+	 * @param bpp
+	 * @param height
+	 * @param choice
+	 *            a filter type, or ADAPTIVE
+	 * @return the rows, each one preceded by its filter type
+	 */
+	private static byte[] filter(final byte[] raw, final int rowBytes, final int bpp, final int height, final int choice) {
+		final byte[] filtered = new byte[(rowBytes + 1) * height];
+		final byte[] candidate = new byte[rowBytes];
+		for (int y = 0; y < height; y++) {
+			final int out = y * (rowBytes + 1);
+			if (choice != ADAPTIVE) {
+				filtered[out] = (byte) choice;
+				filterRow(raw, y, rowBytes, bpp, choice, filtered, out + 1);
+				continue;
+			}
+			long bestSum = Long.MAX_VALUE;
+			for (int type = 0; type < 5; type++) {
+				filterRow(raw, y, rowBytes, bpp, type, candidate, 0);
+				long sum = 0;
+				for (int i = 0; i < rowBytes && sum < bestSum; i++) {
+					sum += Math.abs(candidate[i]);
+				}
+				if (sum < bestSum) {
+					bestSum = sum;
+					filtered[out] = (byte) type;
+					System.arraycopy(candidate, 0, filtered, out + 1, rowBytes);
+				}
+			}
+		}
+		return filtered;
+	}
+
+	/**
+	 * @param raw
+	 * @param y
+	 * @param rowBytes
+	 * @param bpp
+	 * @param type
+	 * @param dest
+	 * @param destPos
+	 */
+	private static void filterRow(final byte[] raw, final int y, final int rowBytes, final int bpp, final int type, final byte[] dest, final int destPos) {
+		final int row = y * rowBytes;
+		final int prior = row - rowBytes;
+		for (int i = 0; i < rowBytes; i++) {
+			final int x = raw[row + i] & 0xff;
+			final int a = (i >= bpp) ? raw[row + i - bpp] & 0xff : 0;
+			final int b = (y > 0) ? raw[prior + i] & 0xff : 0;
+			final int c = (y > 0 && i >= bpp) ? raw[prior + i - bpp] & 0xff : 0;
+			dest[destPos + i] = (byte) (x - predict(type, a, b, c));
+		}
+	}
+
+	/**
+	 * @param filtered
+	 * @param rowBytes
+	 * @param bpp
+	 * @param height
+	 * @return the rows, without filter bytes
+	 * @throws IOException
+	 */
+	private static byte[] unfilter(final byte[] filtered, final int rowBytes, final int bpp, final int height) throws IOException {
+		final byte[] raw = new byte[rowBytes * height];
+		for (int y = 0; y < height; y++) {
+			final int type = filtered[y * (rowBytes + 1)];
+			if (type < 0 || type > 4) {
+				throw new IOException("bad PNG filter type: " + type);
+			}
+			final int in = y * (rowBytes + 1) + 1;
+			final int row = y * rowBytes;
+			final int prior = row - rowBytes;
+			for (int i = 0; i < rowBytes; i++) {
+				final int a = (i >= bpp) ? raw[row + i - bpp] & 0xff : 0;
+				final int b = (y > 0) ? raw[prior + i] & 0xff : 0;
+				final int c = (y > 0 && i >= bpp) ? raw[prior + i - bpp] & 0xff : 0;
+				raw[row + i] = (byte) (filtered[in + i] + predict(type, a, b, c));
+			}
+		}
+		return raw;
+	}
+
+	/**
+	 * @param type
+	 *            the filter type
+	 * @param a
+	 *            the byte on the left
+	 * @param b
+	 *            the byte above
+	 * @param c
+	 *            the byte above on the left
+	 * @return the prediction of the filter
+	 */
+	private static int predict(final int type, final int a, final int b, final int c) {
+		switch (type) {
+		case 1:
+			return a;
+		case 2:
+			return b;
+		case 3:
+			return (a + b) >>> 1;
+		case 4:
+			final int p = a + b - c;
+			final int pa = Math.abs(p - a);
+			final int pb = Math.abs(p - b);
+			final int pc = Math.abs(p - c);
+			if (pa <= pb && pa <= pc) {
+				return a;
+			}
+			return (pb <= pc) ? b : c;
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * @param data
+	 * @param strategy
+	 * @return the zlib stream of the data, at the maximum level
+	 */
+	private static byte[] deflate(final byte[] data, final int strategy) {
+		final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+		try {
+			deflater.setStrategy(strategy);
+			deflater.setInput(data);
+			deflater.finish();
+			final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+			final byte[] buf = new byte[8192];
+			while (!deflater.finished()) {
+				out.write(buf, 0, deflater.deflate(buf));
+			}
+			return out.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * @param data
+	 * @return
+	 * @throws IOException
+	 */
+	private static byte[] inflate(final byte[] data) throws IOException {
+		final Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(data);
+			final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+			final byte[] buf = new byte[8192];
+			while (!inflater.finished()) {
+				final int len = inflater.inflate(buf);
+				if (len == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new IOException("truncated PNG data");
+				}
+				out.write(buf, 0, len);
+			}
+			return out.toByteArray();
+		} catch (final DataFormatException e) {
+			throw new IOException(e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * @param colorType
+	 * @return
+	 * @throws IOException
+	 */
+	private static int getChannels(final int colorType) throws IOException {
+		switch (colorType) {
+		case 0:
+		case 3:
+			return 1;
+		case 2:
+			return 3;
+		case 4:
+			return 2;
+		case 6:
+			return 4;
+		default:
+			throw new IOException("bad PNG color type: " + colorType);
+		}
+	}
+
+	/**
+	 * @param width
+	 * @param height
+	 * @param bitDepth
+	 * @param colorType
+	 * @return
+	 */
+	private static byte[] getHeader(final int width, final int height, final int bitDepth, final int colorType) {
+		final byte[] ihdr = new byte[13];
+		writeInt(ihdr, 0, width);
+		writeInt(ihdr, 4, height);
+		ihdr[8] = (byte) bitDepth;
+		ihdr[9] = (byte) colorType;
+		return ihdr;
+	}
+
+	/**
+	 * @param out
+	 * @param type
+	 * @param data
+	 * @throws IOException
+	 */
+	private static void writeChunk(final ByteArrayOutputStream out, final String type, final byte[] data) throws IOException {
+		final byte[] typeBytes = type.getBytes("ISO-8859-1");
+		final CRC32 crc = new CRC32();
+		crc.update(typeBytes);
+		crc.update(data);
+		final DataOutputStream dos = new DataOutputStream(out);
+		dos.writeInt(data.length);
+		dos.write(typeBytes);
+		dos.write(data);
+		dos.writeInt((int) crc.getValue());
+		dos.flush();
+	}
+
+	/**
+	 * @param b
+	 * @param pos
+	 * @return
+	 */
+	private static int readInt(final byte[] b, final int pos) {
+		return ((b[pos] & 0xff) << 24) | ((b[pos + 1] & 0xff) << 16) | ((b[pos + 2] & 0xff) << 8) | (b[pos + 3] & 0xff);
+	}
+
+	/**
+	 * @param b
+	 * @param pos
+	 * @param value
+	 */
+	private static void writeInt(final byte[] b, final int pos, final int value) {
+		b[pos] = (byte) (value >>> 24);
+		b[pos + 1] = (byte) (value >>> 16);
+		b[pos + 2] = (byte) (value >>> 8);
+		b[pos + 3] = (byte) value;
+	}
+
+	/**
+	 * A chunk of a PNG image
+	 */
+	private static class Chunk {
+		/**
+		 * 
+		 */
+		private final String type;
+		private final byte[] data;
+
+		/**
+		 * @param type
+		 * @param data
+		 */
+		Chunk(final String type, final byte[] data) {
+			this.type = type;
+			this.data = data;
+		}
+	}
+}
@@ -0,0 +1,188 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+package com.orange.wink.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.GeneratedClassLoader;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.optimizer.ClassCompiler;
+
+import com.orange.wink.Constants;
+import com.orange.wink.exception.WinkBuildException;
+
+/**
+ * Compiles the build scripts. When the optimization level of the context
+ * allows it, the scripts are compiled to JVM classes which are cached on
+ * disk, keyed by the hash of the script, of its name, of the optimization
+ * level and of the Rhino version: an unchanged script is not compiled again
+ * by the next builds.
+ * 
+ * @author Sylvain Lalande
+ * 
+ */
+public class ScriptCache {
+	/**
+	 * 
+	 */
+	public static final String CACHE_EXTENSION = ".jsc";
+	/**
+	 * 
+	 */
+	private static final String CLASS_PREFIX = "com.orange.wink.gen.Script_";
+	private static final int FORMAT_VERSION = 1;
+
+	/**
+	 * @param cx
+	 * @param filename
+	 * @return the compiled script
+	 * @throws WinkBuildException
+	 */
+	public static Script getScript(final Context cx, final String filename) throws WinkBuildException {
+		final byte[] content;
+		try {
+			content = FileUtil.readBytes(new File(filename));
+		} catch (final IOException e) {
+			throw new WinkBuildException(e);
+		}
+		final String source = new String(content);
+
+		if (cx.getOptimizationLevel() < 0) {
+			return cx.compileString(source, filename, 1, null);
+		}
+
+		final String key = getKey(cx, filename, source);
+		File cacheFile = null;
+		if (Constants.scriptCachePath != null && !Constants.scriptCachePath.equals("")) {
+			final File cacheDirectory = new File(Constants.scriptCachePath);
+			if (!cacheDirectory.isDirectory() && !cacheDirectory.mkdirs()) {
+				throw new WinkBuildException("cannot create script cache directory: " + cacheDirectory.getPath());
+			}
+			cacheFile = new File(cacheDirectory, key + CACHE_EXTENSION);
+		}
+
+		if (cacheFile != null && cacheFile.isFile()) {
+			try {
+				return load(cx, read(cacheFile));
+			} catch (final IOException e) {
+				System.err.println("WARN - bad cached script, compiled again: " + cacheFile.getName());
+			} catch (final LinkageError e) {
+				System.err.println("WARN - bad cached script, compiled again: " + cacheFile.getName());
+			}
+		}
+
+		final CompilerEnvirons compilerEnv = new CompilerEnvirons();
+		compilerEnv.initFromContext(cx);
+		final ClassCompiler compiler = new ClassCompiler(compilerEnv);
+		final Object[] classFiles = compiler.compileToClassFiles(source, filename, 1, CLASS_PREFIX + key);
+
+		if (cacheFile != null) {
+			try {
+				FileUtil.writeBytes(write(classFiles), cacheFile);
+			} catch (final IOException e) {
+				throw new WinkBuildException(e);
+			}
+		}
+		return load(cx, classFiles);
+	}
+
+	/**
+	 * @param cx
+	 * @param filename
+	 * @param source
+	 * @return
+	 */
+	private static String getKey(final Context cx, final String filename, final String source) {
+		final StringBuffer sb = new StringBuffer();
+		sb.append(FORMAT_VERSION).append('|').append(cx.getImplementationVersion()).append('|');
+		sb.append(cx.getOptimizationLevel()).append('|').append(filename).append('|').append(source);
+		try {
+			return FileUtil.getContentHash(sb.toString().getBytes("UTF-8"));
+		} catch (final IOException e) {
+			return FileUtil.getContentHash(sb.toString().getBytes());
+		}
+	}
+
+	/**
+	 * @param cx
+	 * @param classFiles
+	 *            names and bytes of the classes, the script class first
+	 * @return
+	 * @throws WinkBuildException
+	 */
+	private static Script load(final Context cx, final Object[] classFiles) throws WinkBuildException {
+		final GeneratedClassLoader loader = cx.createClassLoader(cx.getApplicationClassLoader());
+		final List<Class<?>> classes = Common.newArrayList(classFiles.length / 2);
+		for (int i = 0; i < classFiles.length; i += 2) {
+			classes.add(loader.defineClass((String) classFiles[i], (byte[]) classFiles[i + 1]));
+		}
+		for (final Class<?> c : classes) {
+			loader.linkClass(c);
+		}
+		try {
+			return (Script) classes.get(0).getDeclaredConstructor().newInstance();
+		} catch (final ReflectiveOperationException e) {
+			throw new WinkBuildException(e);
+		}
+	}
+
+	/**
+	 * @param classFiles
+	 * @return
+	 * @throws IOException
+	 */
+	private static byte[] write(final Object[] classFiles) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(FORMAT_VERSION);
+		out.writeInt(classFiles.length / 2);
+		for (int i = 0; i < classFiles.length; i += 2) {
+			final byte[] classBytes = (byte[]) classFiles[i + 1];
+			out.writeUTF((String) classFiles[i]);
+			out.writeInt(classBytes.length);
+			out.write(classBytes);
+		}
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @param cacheFile
+	 * @return names and bytes of the classes
+	 * @throws IOException
+	 */
+	private static Object[] read(final File cacheFile) throws IOException {
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(FileUtil.readBytes(cacheFile)));
+		if (in.readInt() != FORMAT_VERSION) {
+			throw new IOException("bad script cache format: " + cacheFile.getName());
+		}
+		final int count = in.readInt();
+		if (count <= 0) {
+			throw new IOException("bad script cache content: " + cacheFile.getName());
+		}
+		final Object[] classFiles = new Object[count * 2];
+		for (int i = 0; i < count; i++) {
+			classFiles[i * 2] = in.readUTF();
+			final byte[] classBytes = new byte[in.readInt()];
+			in.readFully(classBytes);
+			classFiles[i * 2 + 1] = classBytes;
+		}
+		return classFiles;
+	}
+}
@@ -0,0 +1,391 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+package com.orange.wink.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Writes the v3 source maps of the builded files.
+ * 
+ * The build transformations keep the line structure of the working files,
+ * so the map of a builded file is an index map with one section per
+ * concatenated file, each line mapping to the same line of its module. The
+ * map of a minimized file, written by the minimizer against the builded
+ * file, is then composed with this index map to point to the modules.
+ * 
+ * @author Sylvain Lalande
+ * 
+ */
+public class SourceMap {
+	/**
+	 * 
+	 */
+	public static final String MAP_EXTENSION = ".map";
+	public static final String MAPPING_URL_COMMENT = "//# sourceMappingURL=";
+	/**
+	 * 
+	 */
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+	private static final String BASE64_DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+	private static final int VLQ_SHIFT = 5;
+	private static final int VLQ_CONTINUATION = 1 << VLQ_SHIFT;
+	private static final int VLQ_MASK = VLQ_CONTINUATION - 1;
+	/**
+	 * 
+	 */
+	private static final String STRING_EXPR = "\"(?:[^\"\\\\]|\\\\.)*\"";
+	private static final Pattern SECTION_PATTERN = Pattern.compile("\\{\"offset\": \\{\"line\": (\\d+), \"column\": 0\\}, \"map\": \\{\"version\": 3, \"sources\": \\[(" + STRING_EXPR + ")\\], \"names\": \\[\\], \"mappings\": \"([^\"]*)\"\\}\\}");
+	private static final Pattern SOURCES_PATTERN = Pattern.compile("\"sources\"\\s*:\\s*\\[\\s*(" + STRING_EXPR + ")");
+	private static final Pattern NAMES_PATTERN = Pattern.compile("\"names\"\\s*:\\s*\\[([^\\]]*)\\]");
+	private static final Pattern MAPPINGS_PATTERN = Pattern.compile("\"mappings\"\\s*:\\s*\"([^\"]*)\"");
+
+	/**
+	 * Writes the index map of a builded file, streaming one section per
+	 * concatenated file
+	 * 
+	 * @param files
+	 *            the concatenated working files
+	 * @param sources
+	 *            the module of each working file, as referenced in the map
+	 * @param mapFile
+	 * @param file
+	 *            the name of the builded file
+	 * @throws IOException
+	 */
+	public static void writeIndexMap(final List<String> files, final List<String> sources, final File mapFile, final String file) throws IOException {
+		final Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(mapFile), CHARSET));
+		try {
+			out.write("{\n\"version\": 3,\n\"file\": " + quote(file) + ",\n\"sections\": [");
+			int offset = 0;
+			for (int i = 0; i < files.size(); i++) {
+				final int lines = countLines(files.get(i));
+				out.write((i > 0) ? ",\n" : "\n");
+				out.write("{\"offset\": {\"line\": " + offset + ", \"column\": 0}, \"map\": {\"version\": 3, \"sources\": [" + quote(sources.get(i)) + "], \"names\": [], \"mappings\": \"");
+				for (int l = 0; l < lines; l++) {
+					out.write((l == 0) ? "AAAA" : ";AACA");
+				}
+				out.write("\"}}");
+				// the concatenation appends a line feed after each file
+				offset += lines + 1;
+			}
+			out.write("\n]\n}\n");
+		} finally {
+			out.close();
+		}
+		FileManager.uncache(mapFile.getPath());
+	}
+
+	/**
+	 * @param filename
+	 * @return
+	 * @throws IOException
+	 */
+	private static int countLines(final String filename) throws IOException {
+		final BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(filename), CHARSET));
+		try {
+			int lines = 0;
+			while (br.readLine() != null) {
+				lines++;
+			}
+			return lines;
+		} finally {
+			br.close();
+		}
+	}
+
+	/**
+	 * Composes the maps written by the minimizer in the given directory with
+	 * the index maps of their builded files. An index map whose builded file
+	 * has been deleted is then deleted.
+	 * 
+	 * @param directory
+	 * @return a summary of the composed maps
+	 * @throws IOException
+	 */
+	public static String composeDirectory(final File directory) throws IOException {
+		final File[] files = directory.listFiles();
+		Arrays.sort(files);
+		final List<File> indexMaps = Common.newArrayList(1);
+		int composed = 0;
+		for (final File f : files) {
+			if (!f.isFile() || !f.getName().endsWith(MAP_EXTENSION)) {
+				continue;
+			}
+			final File indexMap = compose(f);
+			if (indexMap != null) {
+				indexMaps.add(indexMap);
+				composed++;
+			}
+		}
+		for (final File indexMap : indexMaps) {
+			final String path = indexMap.getPath();
+			if (!new File(path.substring(0, path.length() - MAP_EXTENSION.length())).exists()) {
+				indexMap.delete();
+			}
+		}
+		return "source maps: " + composed + " composed";
+	}
+
+	/**
+	 * Replaces the given minimizer map by its composition with the index map
+	 * of its source, and references it in the minimized file
+	 * 
+	 * @param minMap
+	 * @return the index map used, null if the map is not a minimizer one
+	 * @throws IOException
+	 */
+	public static File compose(final File minMap) throws IOException {
+		final String content = new String(FileUtil.readBytes(minMap), CHARSET);
+		if (content.indexOf("\"sections\"") != -1) {
+			return null;
+		}
+		final Matcher sm = SOURCES_PATTERN.matcher(content);
+		final Matcher nm = NAMES_PATTERN.matcher(content);
+		final Matcher mm = MAPPINGS_PATTERN.matcher(content);
+		if (!sm.find() || !mm.find()) {
+			return null;
+		}
+		final String source = unquote(sm.group(1));
+		final File indexMap = new File(minMap.getParentFile(), new File(source).getName() + MAP_EXTENSION);
+		if (!indexMap.isFile() || indexMap.equals(minMap)) {
+			return null;
+		}
+		final String names = nm.find() ? nm.group(1).trim() : "";
+
+		// sections of the index map
+		final String index = new String(FileUtil.readBytes(indexMap), CHARSET);
+		final Matcher im = SECTION_PATTERN.matcher(index);
+		final Map<String, Integer> sourceIndexes = new LinkedHashMap<String, Integer>();
+		final List<int[]> sections = Common.newArrayList(1);
+		while (im.find()) {
+			final String mappings = im.group(3);
+			final int lines = (mappings.length() == 0) ? 0 : mappings.split(";", -1).length;
+			Integer sourceIndex = sourceIndexes.get(im.group(2));
+			if (sourceIndex == null) {
+				sourceIndex = Integer.valueOf(sourceIndexes.size());
+				sourceIndexes.put(im.group(2), sourceIndex);
+			}
+			sections.add(new int[] { Integer.parseInt(im.group(1)), lines, sourceIndex.intValue() });
+		}
+
+		final String minName = minMap.getName().substring(0, minMap.getName().length() - MAP_EXTENSION.length());
+		final File tmpMap = new File(minMap.getPath() + ".tmp");
+		final Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpMap), CHARSET));
+		try {
+			out.write("{\n\"version\": 3,\n\"file\": " + quote(minName) + ",\n\"sources\": [");
+			boolean first = true;
+			for (final String s : sourceIndexes.keySet()) {
+				out.write(first ? s : ", " + s);
+				first = false;
+			}
+			out.write("],\n\"names\": [" + names + "],\n\"mappings\": \"");
+			composeMappings(mm.group(1), sections, out);
+			out.write("\"\n}\n");
+		} finally {
+			out.close();
+		}
+		if (!minMap.delete() || !tmpMap.renameTo(minMap)) {
+			throw new IOException("cannot write source map: " + minMap.getPath());
+		}
+		FileManager.uncache(minMap.getPath());
+
+		final File minFile = new File(minMap.getParentFile(), minName);
+		if (minFile.isFile()) {
+			final Writer js = new OutputStreamWriter(new FileOutputStream(minFile, true), CHARSET);
+			try {
+				js.write(FileManager.DEFAULT_LF + MAPPING_URL_COMMENT + minMap.getName() + FileManager.DEFAULT_LF);
+			} finally {
+				js.close();
+			}
+			FileManager.uncache(minFile.getPath());
+		}
+		return indexMap;
+	}
+
+	/**
+	 * Rewrites the segments of the minimizer mappings, their source line in
+	 * the builded file becoming a line of a module
+	 * 
+	 * @param mappings
+	 * @param sections
+	 *            offset, line count and source index of each section
+	 * @param out
+	 * @throws IOException
+	 */
+	private static void composeMappings(final String mappings, final List<int[]> sections, final Writer out) throws IOException {
+		final int[] pos = new int[1];
+		// absolute values read
+		int srcLine = 0, srcCol = 0, name = 0, src = 0;
+		// last values written
+		int outSrc = 0, outLine = 0, outCol = 0, outName = 0;
+
+		int genCol = 0, outGenCol = 0;
+		boolean firstSegment = true;
+		final int length = mappings.length();
+		while (pos[0] < length) {
+			final char c = mappings.charAt(pos[0]);
+			if (c == ';') {
+				out.write(';');
+				pos[0]++;
+				genCol = 0;
+				outGenCol = 0;
+				firstSegment = true;
+				continue;
+			} else if (c == ',') {
+				pos[0]++;
+				continue;
+			}
+
+			genCol += decodeVlq(mappings, pos);
+			int fields = 1;
+			if (pos[0] < length && !isSeparator(mappings.charAt(pos[0]))) {
+				src += decodeVlq(mappings, pos);
+				srcLine += decodeVlq(mappings, pos);
+				srcCol += decodeVlq(mappings, pos);
+				fields = 4;
+				if (pos[0] < length && !isSeparator(mappings.charAt(pos[0]))) {
+					name += decodeVlq(mappings, pos);
+					fields = 5;
+				}
+			}
+
+			if (!firstSegment) {
+				out.write(',');
+			}
+			firstSegment = false;
+			encodeVlq(genCol - outGenCol, out);
+			outGenCol = genCol;
+
+			final int[] section = (fields > 1 && src == 0) ? findSection(sections, srcLine) : null;
+			if (section == null) {
+				continue;
+			}
+			final int line = srcLine - section[0];
+			encodeVlq(section[2] - outSrc, out);
+			encodeVlq(line - outLine, out);
+			encodeVlq(srcCol - outCol, out);
+			outSrc = section[2];
+			outLine = line;
+			outCol = srcCol;
+			if (fields == 5) {
+				encodeVlq(name - outName, out);
+				outName = name;
+			}
+		}
+	}
+
+	/**
+	 * @param sections
+	 * @param line
+	 * @return the section holding the given line of the builded file, null
+	 *         for the line feeds added between the files
+	 */
+	private static int[] findSection(final List<int[]> sections, final int line) {
+		int low = 0;
+		int high = sections.size() - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			final int[] section = sections.get(mid);
+			if (line < section[0]) {
+				high = mid - 1;
+			} else if (line >= section[0] + section[1]) {
+				low = mid + 1;
+			} else {
+				return section;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param c
+	 * @return
+	 */
+	private static boolean isSeparator(final char c) {
+		return c == ',' || c == ';';
+	}
+
+	/**
+	 * @param value
+	 * @param out
+	 * @throws IOException
+	 */
+	private static void encodeVlq(final int value, final Writer out) throws IOException {
+		int vlq = (value < 0) ? ((-value) << 1) + 1 : (value << 1);
+		do {
+			int digit = vlq & VLQ_MASK;
+			vlq >>>= VLQ_SHIFT;
+			if (vlq > 0) {
+				digit |= VLQ_CONTINUATION;
+			}
+			out.write(BASE64_DIGITS.charAt(digit));
+		} while (vlq > 0);
+	}
+
+	/**
+	 * @param s
+	 * @param pos
+	 *            the current position, updated
+	 * @return
+	 * @throws IOException
+	 */
+	private static int decodeVlq(final String s, final int[] pos) throws IOException {
+		int result = 0;
+		int shift = 0;
+		int digit;
+		do {
+			if (pos[0] >= s.length()) {
+				throw new IOException("bad source map mappings: truncated value");
+			}
+			digit = BASE64_DIGITS.indexOf(s.charAt(pos[0]++));
+			if (digit == -1) {
+				throw new IOException("bad source map mappings: " + s.charAt(pos[0] - 1));
+			}
+			result += (digit & VLQ_MASK) << shift;
+			shift += VLQ_SHIFT;
+		} while ((digit & VLQ_CONTINUATION) != 0);
+
+		final boolean negative = (result & 1) == 1;
+		result >>>= 1;
+		return negative ? -result : result;
+	}
+
+	/**
+	 * @param s
+	 * @return
+	 */
+	private static String quote(final String s) {
+		return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+
+	/**
+	 * @param s
+	 * @return
+	 */
+	private static String unquote(final String s) {
+		return s.substring(1, s.length() - 1).replace("\\\"", "\"").replace("\\/", "/").replace("\\\\", "\\");
+	}
+}
@@ -0,0 +1,119 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+package com.orange.wink.util;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.orange.wink.Constants;
+import com.orange.wink.exception.WinkBuildException;
+
+/**
+ * Runs a list of independent build tasks on a bounded thread pool
+ * 
+ * @author Sylvain Lalande
+ * 
+ */
+public class TaskExecutor {
+	/**
+	 * minimum count of threads of the tasks waiting for the file system
+	 */
+	private static final int IO_THREAD_COUNT = 16;
+
+	/**
+	 * @param <T>
+	 * @param tasks
+	 * @return the task results, in the order of the given tasks
+	 * @throws WinkBuildException
+	 */
+	public static <T> List<T> execute(final List<Callable<T>> tasks) throws WinkBuildException {
+		return execute(tasks, getThreadCount());
+	}
+
+	/**
+	 * @param <T>
+	 * @param tasks
+	 * @param threadCount
+	 *            the maximum count of threads
+	 * @return the task results, in the order of the given tasks
+	 * @throws WinkBuildException
+	 */
+	public static <T> List<T> execute(final List<Callable<T>> tasks, final int threadCount) throws WinkBuildException {
+		final List<T> results = Common.newArrayList(tasks.size());
+		if (tasks.size() == 0) {
+			return results;
+		}
+
+		final int poolSize = Math.max(1, Math.min(threadCount, tasks.size()));
+		if (poolSize == 1) {
+			for (final Callable<T> task : tasks) {
+				try {
+					results.add(task.call());
+				} catch (final WinkBuildException e) {
+					throw e;
+				} catch (final RuntimeException e) {
+					throw e;
+				} catch (final Exception e) {
+					throw new WinkBuildException(e);
+				}
+			}
+			return results;
+		}
+
+		final ExecutorService pool = Executors.newFixedThreadPool(poolSize);
+		try {
+			final List<Future<T>> futures = pool.invokeAll(tasks);
+			for (final Future<T> future : futures) {
+				results.add(future.get());
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new WinkBuildException(e);
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof WinkBuildException) {
+				throw (WinkBuildException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new WinkBuildException(cause);
+		} finally {
+			pool.shutdownNow();
+		}
+		return results;
+	}
+
+	/**
+	 * @return
+	 */
+	public static int getThreadCount() {
+		if (Constants.threadCount > 0) {
+			return Constants.threadCount;
+		}
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * @return the count of threads of the file operations, which wait more
+	 *         than they compute: at least IO_THREAD_COUNT, unless the count
+	 *         of threads is set
+	 */
+	public static int getIoThreadCount() {
+		if (Constants.threadCount > 0) {
+			return Constants.threadCount;
+		}
+		return Math.max(IO_THREAD_COUNT, Runtime.getRuntime().availableProcessors());
+	}
+}
@@ -0,0 +1,207 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+package com.orange.wink.util;
+
+import java.util.List;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.NativeArray;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+import com.orange.wink.exception.WinkBuildException;
+
+/**
+ * The configuration resolver, as seen by the build scripts
+ * 
+ * @author Sylvain Lalande
+ * 
+ */
+public class WinkJsConf extends ScriptableObject {
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+	/**
+	 * 
+	 */
+	private Context cx;
+	/**
+	 * 
+	 */
+	private ConfResolver resolver;
+
+	/**
+	 * 
+	 */
+	public WinkJsConf() {
+
+	}
+
+	/**
+	 * 
+	 */
+	public void jsConstructor() {
+
+	}
+
+	/**
+	 * @param cx
+	 *            the cx to set
+	 */
+	public void setCx(final Context cx) {
+		this.cx = cx;
+	}
+
+	/**
+	 * @param resolver
+	 *            the resolver to set
+	 */
+	public void setResolver(final ConfResolver resolver) {
+		this.resolver = resolver;
+	}
+
+	/**
+	 * @param name
+	 * @return the module configuration, null if not found
+	 */
+	public Object jsFunction_getModule(final String name) {
+		return resolver.getModule(name);
+	}
+
+	/**
+	 * @param name
+	 * @return the profile configuration, null if not found
+	 */
+	public Object jsFunction_getProfile(final String name) {
+		return resolver.getProfile(name);
+	}
+
+	/**
+	 * @param profile
+	 * @param modules
+	 * @param target
+	 * @return
+	 * @throws WinkBuildException
+	 */
+	public Object jsFunction_getModulesJsFiles(final String profile, final Object modules, final String target) throws WinkBuildException {
+		return toArray(resolver.getModulesJsFiles(profile, toList(modules), target));
+	}
+
+	/**
+	 * @param modules
+	 * @param target
+	 * @return
+	 * @throws WinkBuildException
+	 */
+	public Object jsFunction_getProfiledModules(final Object modules, final String target) throws WinkBuildException {
+		return toArray(resolver.getProfiledModules(toList(modules), target));
+	}
+
+	/**
+	 * @param modules
+	 * @return
+	 * @throws WinkBuildException
+	 */
+	public Object jsFunction_resolveSubModules(final Object modules) throws WinkBuildException {
+		return toArray(resolver.resolveSubModules(toList(modules)));
+	}
+
+	/**
+	 * @param modules
+	 * @param profile
+	 * @param target
+	 * @return
+	 * @throws WinkBuildException
+	 */
+	public Object jsFunction_getTargetedJsFiles(final Object modules, final String profile, final String target) throws WinkBuildException {
+		return toArray(resolver.getTargetedJsFiles(toList(modules), profile, target));
+	}
+
+	/**
+	 * @param profile
+	 * @param modules
+	 * @param target
+	 * @param locale
+	 * @return
+	 * @throws WinkBuildException
+	 */
+	public Object jsFunction_getLocaleJsFiles(final String profile, final Object modules, final String target, final String locale) throws WinkBuildException {
+		return toArray(resolver.getLocaleJsFiles(profile, toList(modules), target, locale));
+	}
+
+	/**
+	 * @param profile
+	 * @return
+	 * @throws WinkBuildException
+	 */
+	public Object jsFunction_getLocales(final String profile) throws WinkBuildException {
+		return toArray(resolver.getLocales(profile));
+	}
+
+	/**
+	 * @param modules
+	 * @param target
+	 * @return
+	 * @throws WinkBuildException
+	 */
+	public Object jsFunction_getTargetedCssFiles(final Object modules, final String target) throws WinkBuildException {
+		return toArray(resolver.getTargetedCssFiles(toList(modules), target));
+	}
+
+	/**
+	 * @return
+	 */
+	public String jsFunction_getReport() {
+		return resolver.getReport();
+	}
+
+	/**
+	 * @param modules
+	 * @return
+	 * @throws WinkBuildException
+	 */
+	private static List<String> toList(final Object modules) throws WinkBuildException {
+		if (!(modules instanceof NativeArray)) {
+			throw new WinkBuildException("conf resolver error: bad arguments");
+		}
+		final NativeArray array = (NativeArray) modules;
+		final List<String> result = Common.newArrayList((int) array.getLength());
+		for (int i = 0; i < array.getLength(); i++) {
+			result.add(Context.toString(array.get(i, array)));
+		}
+		return result;
+	}
+
+	/**
+	 * @param list
+	 * @return
+	 */
+	private Scriptable toArray(final List<String> list) {
+		return cx.newArray(this, list.toArray());
+	}
+
+	/**
+	 * @see org.mozilla.javascript.ScriptableObject#getClassName()
+	 */
+	@Override
+	public String getClassName() {
+		return "WinkJsConf";
+	}
+
+	/**
+	 * @see org.mozilla.javascript.ScriptableObject#getDefaultValue(java.lang.Class)
+	 */
+	@Override
+	public Object getDefaultValue(final Class<?> typeHint) {
+		return "[WinkJsConf Instance]";
+	}
+}
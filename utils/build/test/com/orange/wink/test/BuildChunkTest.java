@@ -0,0 +1,688 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+package com.orange.wink.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.NativeObject;
+import org.mozilla.javascript.ScriptableObject;
+
+import com.orange.wink.ComboServer;
+import com.orange.wink.Constants;
+import com.orange.wink.Main;
+import com.orange.wink.parse.PrivateMemberMangler;
+import com.orange.wink.util.BuildReport;
+import com.orange.wink.util.BuildSectionEvent;
+import com.orange.wink.util.BuildStageEvent;
+import com.orange.wink.util.BundleSplitter;
+import com.orange.wink.util.Common;
+import com.orange.wink.util.FileManager;
+import com.orange.wink.util.FileUtil;
+import com.orange.wink.util.LoaderManifest;
+import com.orange.wink.util.LocaleBundler;
+import com.orange.wink.util.SourceMap;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * @author Sylvain Lalande
+ * 
+ */
+public class BuildChunkTest extends BuildAbstractTest {
+	/**
+	 * @param args
+	 */
+	public static void main(final String[] args) throws Exception {
+		final String testPath = "../wink/utils/build/test/";
+		final String rootTmpPath = testPath + "tmp/";
+		final String tmpPath = rootTmpPath + "chunks";
+		final String rootBuildPath = testPath + "builded/";
+		final String buildPath = rootBuildPath + "chunks";
+
+		final String[] arguments = new String[] {
+		//
+				"-JS_PATH=../wink/utils/build/scripts",
+				//
+				"-JS_MAIN_FILE=build.js",
+				//
+				"-CONF_PATH=../wink/utils/build/test/conf",
+				//
+				"-MODULE_CONF_FILE=modules.json",
+				//
+				"-PROFILES_CONF_FILE=profiles_chunks.json",
+				//
+				"-WINK_PATH=" + testPath + "modules/",
+				//
+				"-TEMPORARY_PATH=" + tmpPath,
+				//
+				"-BUILD_DEST_PATH=" + buildPath,
+				// default, ie
+				"-TARGETS=",
+				// full, base
+				"-PROFILES=",
+				//
+				"-OPTION_CLEAN_TEMPORARY=false",
+				//
+				"-OPTION_DELETE_DUPLICATES=true",
+				//
+				"-OPTION_FILTER_FEATURE=true",
+				//
+				"-OPTION_FAIL_ON_UNMANAGED_SYNTAX=true",
+				//
+				"-OPTION_FAIL_ON_UNRESOLVED_NAMESPACE=true",
+				//
+				"-OPTION_SHARED_CHUNKS=true",
+				//
+				"-OPTION_SOURCE_MAP=true",
+				//
+				"-OPTION_BUILD_REPORT=true",
+				//
+				"-OPTION_LOADER_MANIFEST=true",
+				//
+				"-OPTION_REPORT_DUPLICATE_BODIES=true",
+				//
+				"-OPTION_MANGLE_PRIVATE_MEMBERS=true",
+				//
+				"-OPTION_SPLIT_BUILD_FILE=true",
+				//
+				"-OPTION_SPLIT_MAX_SIZE=2048",
+				//
+				"-OPTION_SPLIT_LOCALES=true" };
+
+		createDirectory(rootTmpPath);
+		createDirectory(rootBuildPath);
+
+		// the stages of the report are recorded as JFR events too
+		final File recordingFile = new File(rootTmpPath, "build.jfr");
+		final Recording recording = new Recording();
+		recording.enable(BuildStageEvent.NAME);
+		recording.enable(BuildSectionEvent.NAME);
+		recording.start();
+		try {
+			Main.main(arguments);
+		} finally {
+			recording.stop();
+			recording.dump(recordingFile.toPath());
+			recording.close();
+		}
+
+		checkChunks(buildPath, "default");
+		checkChunks(buildPath, "ie");
+		checkSourceMap(testPath + "modules/", buildPath, "wink-test-common-default.js", "removeClass");
+		checkSourceMap(testPath + "modules/", buildPath, "wink-test-full-ie.js", "savedContext2");
+		checkBuildReport(buildPath);
+		checkBuildEvents(recordingFile);
+		checkMangleMap(buildPath, "default");
+		checkMangleMap(buildPath, "ie");
+		checkParts(buildPath, "common", "default", new String[] { "module1.js", "module2.js" });
+		checkParts(buildPath, "full", "default", new String[] { "module4.js" });
+		checkLoaderManifest(testPath + "modules/", buildPath, "full", "default", new String[] { "module1.js", "module2.js", "module4.js" });
+		checkLoaderManifest(testPath + "modules/", buildPath, "base", "ie", new String[] { "module1.js", "module1_ie.js", "module2.js", "module2_ie.js" });
+		checkLocaleBundles(buildPath, "default");
+		checkLocaleBundles(buildPath, "ie");
+		checkComboServer(testPath, rootTmpPath + "combo");
+
+		printTestResults();
+	}
+
+	/**
+	 * @param buildPath
+	 * @param target
+	 * @throws IOException
+	 */
+	private static void checkChunks(final String buildPath, final String target) throws IOException {
+		out("------- CHECK CHUNKS ------- " + target);
+		final File common = new File(buildPath, "wink-test-common-" + target + ".js");
+		final File full = new File(buildPath, "wink-test-full-" + target + ".js");
+		final File base = new File(buildPath, "wink-test-base-" + target + ".js");
+		final File manifest = new File(buildPath, "wink-test-chunks-" + target + ".json");
+
+		assertTrue(common.isFile(), "Expected common chunk " + common.getName());
+		assertTrue(full.isFile(), "Expected delta chunk " + full.getName());
+		assertFalse(base.exists(), "Unexpected empty delta chunk " + base.getName());
+		assertTrue(manifest.isFile(), "Expected chunks manifest " + manifest.getName());
+		if (!common.isFile() || !full.isFile() || !manifest.isFile()) {
+			return;
+		}
+
+		final String commonContent = FileManager.getFileContent(common.getPath());
+		final String fullContent = FileManager.getFileContent(full.getPath());
+		assertTrue(commonContent.indexOf("wink.connect") != -1, "Expected module1 in common chunk - " + target);
+		assertTrue(commonContent.indexOf("removeClass") != -1, "Expected module2 in common chunk - " + target);
+		assertTrue(commonContent.indexOf("savedContext2") == -1, "Unexpected module4 in common chunk - " + target);
+		assertTrue(fullContent.indexOf("savedContext2") != -1, "Expected module4 in delta chunk - " + target);
+		assertTrue(fullContent.indexOf("wink.connect") == -1, "Unexpected module1 in delta chunk - " + target);
+
+		final String manifestContent = FileManager.getFileContent(manifest.getPath());
+		assertTrue(manifestContent.indexOf("\"full\": [ \"" + common.getName() + "\", \"" + full.getName() + "\" ]") != -1, "Expected common and delta chunks for full - " + target);
+		assertTrue(manifestContent.indexOf("\"base\": [ \"" + common.getName() + "\" ]") != -1, "Expected common chunk only for base - " + target);
+
+		assertTrue(execute(commonContent + fullContent, full.getName()), "Bad execution of common and delta chunks - " + target);
+	}
+
+	/**
+	 * 
+	 */
+	private static final Pattern SECTION_PATTERN = Pattern.compile("\\{\"offset\": \\{\"line\": (\\d+), \"column\": 0\\}, \"map\": \\{\"version\": 3, \"sources\": \\[\"([^\"]*)\"\\], \"names\": \\[\\], \"mappings\": \"([^\"]*)\"");
+	private static final String BASE64_DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+	/**
+	 * @param modulePath
+	 * @param buildPath
+	 * @param name
+	 *            the builded file
+	 * @param token
+	 *            a token of the builded file
+	 * @throws IOException
+	 */
+	private static void checkSourceMap(final String modulePath, final String buildPath, final String name, final String token) throws IOException {
+		out("------- CHECK SOURCE MAP ------- " + name);
+		final File builded = new File(buildPath, name);
+		final File map = new File(buildPath, name + SourceMap.MAP_EXTENSION);
+		assertTrue(map.isFile(), "Expected source map " + map.getName());
+		if (!map.isFile()) {
+			return;
+		}
+		final String content = FileManager.getFileContent(builded.getPath());
+		assertTrue(content.endsWith(SourceMap.MAPPING_URL_COMMENT + map.getName() + "\n"), "Expected source mapping URL in " + name);
+		final String[] lines = content.split("\n", -1);
+
+		int tokenLine = -1;
+		for (int i = 0; i < lines.length; i++) {
+			if (lines[i].indexOf(token) != -1) {
+				tokenLine = i;
+				break;
+			}
+		}
+		assertTrue(tokenLine != -1, "Expected " + token + " in " + name);
+
+		final List<int[]> sections = Common.newArrayList(1);
+		final List<String> sources = Common.newArrayList(1);
+		final Matcher m = SECTION_PATTERN.matcher(FileManager.getFileContent(map.getPath()));
+		int nextLine = 0;
+		int[] tokenSection = null;
+		while (m.find()) {
+			final int offset = Integer.parseInt(m.group(1));
+			final int count = (m.group(3).length() == 0) ? 0 : m.group(3).split(";").length;
+			assertTrue(offset == nextLine, "Bad section offset " + offset + " in " + map.getName());
+			nextLine = offset + count + 1;
+
+			final int[] section = new int[] { offset, count, sources.size() };
+			sources.add(m.group(2));
+			sections.add(section);
+			if (tokenLine >= offset && tokenLine < offset + count) {
+				tokenSection = section;
+			}
+		}
+		assertTrue(sections.size() > 0, "Expected sections in " + map.getName());
+		assertTrue(nextLine == lines.length - 2, "Expected all the lines mapped in " + map.getName());
+		assertTrue(tokenSection != null, "Expected " + token + " line mapped in " + map.getName());
+		if (tokenSection == null) {
+			return;
+		}
+
+		final String source = sources.get(tokenSection[2]);
+		final String[] sourceLines = FileManager.getFileContent(modulePath + source).split("\n", -1);
+		final int sourceLine = tokenLine - tokenSection[0];
+		assertTrue(sourceLines[sourceLine].equals(lines[tokenLine]), "Bad mapping of " + token + " to " + source + ":" + (sourceLine + 1));
+
+		// a minimizer map with a segment on the token line and one on a line
+		// feed added between the files
+		final File minFile = new File(buildPath, "min-" + name);
+		final File minMap = new File(buildPath, minFile.getName() + SourceMap.MAP_EXTENSION);
+		FileManager.writeIntoFile("var x;\n", minFile.getPath());
+		final String minMappings = "AA" + vlq(tokenLine) + "A,CA" + vlq(tokenSection[0] + tokenSection[1] - tokenLine) + "A";
+		writeMap(minMap, "{\"version\":3,\"file\":\"" + minFile.getName() + "\",\"lineCount\":1,\"mappings\":\"" + minMappings + "\",\"sources\":[\"" + builded.getAbsolutePath() + "\"],\"names\":[]}");
+
+		SourceMap.composeDirectory(new File(buildPath));
+		final String composed = FileManager.getFileContent(minMap.getPath());
+		final String expected = "\"mappings\": \"A" + vlq(sources.indexOf(source)) + vlq(sourceLine) + "A,C\"";
+		assertTrue(composed.indexOf("\"sources\": [\"" + sources.get(0) + "\"") != -1, "Expected composed map sources " + sources);
+		assertTrue(composed.indexOf(expected) != -1, "Expected composed mappings " + expected);
+		assertTrue(FileManager.getFileContent(minFile.getPath()).indexOf(SourceMap.MAPPING_URL_COMMENT + minMap.getName()) != -1, "Expected source mapping URL in " + minFile.getName());
+		assertTrue(map.isFile(), "Unexpected deletion of source map " + map.getName());
+	}
+
+	/**
+	 * @param buildPath
+	 * @param profile
+	 * @param target
+	 * @param expected
+	 *            modules expected in this order
+	 * @throws IOException
+	 */
+	private static void checkParts(final String buildPath, final String profile, final String target, final String[] expected) throws IOException {
+		out("------- CHECK PARTS ------- " + profile + "-" + target);
+		final String name = "wink-test-" + profile + "-" + target;
+		final File manifest = new File(buildPath, name + BundleSplitter.MANIFEST_EXTENSION);
+		assertTrue(manifest.isFile(), "Expected parts manifest " + manifest.getName());
+		if (!manifest.isFile()) {
+			return;
+		}
+		final String content = FileManager.getFileContent(manifest.getPath());
+		final Matcher m = Pattern.compile("\\{\"file\": \"([^\"]*)\", \"hash\": \"([0-9a-f]{40})\", \"size\": (\\d+), \"modules\": \\[([^\\]]*)\\]\\}").matcher(content);
+		final StringBuffer modules = new StringBuffer();
+		final StringBuffer parts = new StringBuffer();
+		int count = 0;
+		while (m.find()) {
+			count++;
+			final File part = new File(buildPath, m.group(1));
+			final byte[] bytes = FileUtil.readBytes(part);
+			assertTrue(m.group(2).equals(FileUtil.getContentHash(bytes)), "Bad content hash of " + m.group(1));
+			// the budget does not count the mapping url comment
+			assertTrue(m.group(4).indexOf(',') == -1 || Integer.parseInt(m.group(3)) <= 2048 + 64, "Part over the budget " + m.group(1));
+			modules.append(m.group(4)).append(", ");
+			parts.append(withoutMappingUrl(FileManager.getFileContent(part.getPath())));
+		}
+		final boolean split = count > 1;
+		assertTrue(split == !profile.equals("full"), "Unexpected parts count " + count + " in " + manifest.getName());
+		int last = -1;
+		for (final String module : expected) {
+			final int index = modules.indexOf("\"" + module + "\"");
+			assertTrue(index > last, "Expected " + module + " in load order in " + manifest.getName() + ": " + modules);
+			last = index;
+		}
+		if (split) {
+			final String builded = withoutMappingUrl(FileManager.getFileContent(new File(buildPath, name + ".js").getPath()));
+			assertTrue(parts.toString().equals(builded), "Expected the parts to make the builded file " + name);
+		}
+	}
+
+	/**
+	 * @param testPath
+	 * @param tmpPath
+	 * @throws Exception
+	 */
+	private static void checkComboServer(final String testPath, final String tmpPath) throws Exception {
+		out("------- CHECK COMBO SERVER -------");
+		// a copy of the modules, to edit a dependency
+		final File modulePath = new File(tmpPath, "modules");
+		modulePath.mkdirs();
+		for (final File f : getFiles(testPath + "modules")) {
+			if (f.isFile()) {
+				FileManager.copyFile(f, new File(modulePath, f.getName()));
+			}
+		}
+
+		final Map<String, String> arguments = new HashMap<String, String>();
+		arguments.put(Constants.JS_PATH, "../wink/utils/build/scripts");
+		arguments.put(Constants.CONF_PATH, "../wink/utils/build/test/conf");
+		arguments.put(Constants.MODULE_CONF_FILE, "modules.json");
+		arguments.put(Constants.PROFILES_CONF_FILE, "profiles_chunks.json");
+		arguments.put(Constants.WINK_PATH, modulePath.getPath() + "/");
+		arguments.put(Constants.TEMPORARY_PATH, tmpPath);
+		arguments.put(Constants.OPTION_DELETE_DUPLICATES, "true");
+		arguments.put(Constants.OPTION_FILTER_FEATURE, "true");
+		arguments.put(Constants.OPTION_FAIL_ON_UNMANAGED_SYNTAX, "true");
+
+		final ComboServer combo = new ComboServer(arguments);
+		final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext(ComboServer.COMBO_PATH, combo);
+		server.start();
+		try {
+			final String url = "http://localhost:" + server.getAddress().getPort() + ComboServer.COMBO_PATH;
+
+			HttpURLConnection c = (HttpURLConnection) new URL(url + "?profile=full&target=ie&modules=module1,module2").openConnection();
+			assertTrue(c.getResponseCode() == 200, "Expected combo build, status: " + c.getResponseCode());
+			final String etag = c.getHeaderField("ETag");
+			final String content = read(c);
+			assertTrue(etag != null && etag.matches("\"[0-9a-f]{40}\""), "Expected combo ETag: " + etag);
+			assertTrue(content.indexOf("removeClass") != -1 && content.indexOf("savedContext2") == -1, "Expected module2 and not module4 in the combo build");
+
+			c = (HttpURLConnection) new URL(url + "?profile=full&target=ie&modules=module1,module2").openConnection();
+			c.setRequestProperty("If-None-Match", etag);
+			assertTrue(c.getResponseCode() == 304, "Expected combo not modified, status: " + c.getResponseCode());
+
+			c = (HttpURLConnection) new URL(url + "?profile=full&target=ie&modules=module1%2Cmodule2").openConnection();
+			assertTrue(c.getResponseCode() == 200 && etag.equals(c.getHeaderField("ETag")), "Expected the same combo build");
+			assertTrue(read(c).equals(content), "Expected the cached combo build");
+			assertTrue(combo.getCache().getHits() == 1, "Expected a combo cache hit: " + combo.getCache().getReport());
+
+			c = (HttpURLConnection) new URL(url + "?profile=full&target=default&modules=module1").openConnection();
+			assertTrue(c.getResponseCode() == 200 && !etag.equals(c.getHeaderField("ETag")), "Expected another combo build");
+			read(c);
+
+			// the profile dependencies are built with the modules
+			final File dependency = new File(modulePath, "module2_external.js");
+			final byte[] dependencyContent = FileUtil.readBytes(dependency);
+			FileUtil.writeBytes((new String(dependencyContent, "ISO-8859-1") + "\n// edited\n").getBytes("ISO-8859-1"), dependency);
+			c = (HttpURLConnection) new URL(url + "?profile=full&target=ie&modules=module1,module2").openConnection();
+			c.setRequestProperty("If-None-Match", etag);
+			assertTrue(c.getResponseCode() == 200, "Expected combo build of the edited dependency, status: " + c.getResponseCode());
+			assertTrue(!etag.equals(c.getHeaderField("ETag")), "Expected a new combo ETag for the edited dependency");
+			read(c);
+
+			c = (HttpURLConnection) new URL(url + "?profile=full&modules=unknown").openConnection();
+			assertTrue(c.getResponseCode() == 400, "Expected unknown module error, status: " + c.getResponseCode());
+			c = (HttpURLConnection) new URL(url + "?profile=unknown&modules=module1").openConnection();
+			assertTrue(c.getResponseCode() == 400, "Expected unknown profile error, status: " + c.getResponseCode());
+
+			// a bad configuration is answered too
+			final File confPath = new File(tmpPath, "conf");
+			confPath.mkdirs();
+			FileManager.copyFile(new File(testPath, "conf/modules.json"), new File(confPath, "modules.json"));
+			FileManager.writeIntoFile("{ \"profiles\": [ }", new File(confPath, "profiles_chunks.json").getPath());
+			arguments.put(Constants.CONF_PATH, confPath.getPath());
+			c = (HttpURLConnection) new URL(url + "?profile=full&modules=module1").openConnection();
+			c.setReadTimeout(10000);
+			assertTrue(c.getResponseCode() == 500, "Expected bad configuration error, status: " + c.getResponseCode());
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	/**
+	 * @param c
+	 * @return
+	 * @throws IOException
+	 */
+	private static String read(final HttpURLConnection c) throws IOException {
+		final InputStream in = c.getInputStream();
+		try {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[4096];
+			int n;
+			while ((n = in.read(buffer)) != -1) {
+				bytes.write(buffer, 0, n);
+			}
+			return new String(bytes.toByteArray(), "UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @param content
+	 * @return
+	 */
+	private static String withoutMappingUrl(final String content) {
+		final int index = content.indexOf(SourceMap.MAPPING_URL_COMMENT);
+		return (index == -1) ? content : content.substring(0, index);
+	}
+
+	/**
+	 * @param buildPath
+	 * @param target
+	 * @throws IOException
+	 */
+	private static void checkMangleMap(final String buildPath, final String target) throws IOException {
+		out("------- CHECK MANGLE MAP ------- " + target);
+		final File map = new File(buildPath, "wink-test-common-" + target + PrivateMemberMangler.MAP_EXTENSION);
+		assertTrue(map.isFile(), "Expected rename map " + map.getName());
+		if (!map.isFile()) {
+			return;
+		}
+		final Matcher m = Pattern.compile("\"(_\\w+)\": \"_validateProperties\"").matcher(FileManager.getFileContent(map.getPath()));
+		assertTrue(m.find(), "Expected _validateProperties in " + map.getName());
+		if (!m.find(0)) {
+			return;
+		}
+		final String common = FileManager.getFileContent(new File(buildPath, "wink-test-common-" + target + ".js").getPath());
+		assertTrue(common.indexOf("_validateProperties") == -1, "Unexpected private name in common chunk - " + target);
+		assertTrue(common.indexOf(m.group(1) + ": function") != -1, "Expected renamed private member in common chunk - " + target);
+	}
+
+	/**
+	 * @param modulePath
+	 * @param buildPath
+	 * @param profile
+	 * @param target
+	 * @param expected
+	 *            modules expected in this order
+	 * @throws IOException
+	 */
+	private static void checkLoaderManifest(final String modulePath, final String buildPath, final String profile, final String target, final String[] expected) throws IOException {
+		out("------- CHECK LOADER MANIFEST ------- " + profile + "-" + target);
+		final File manifest = new File(buildPath, "wink-test-" + profile + "-" + target + LoaderManifest.MANIFEST_EXTENSION);
+		assertTrue(manifest.isFile(), "Expected loader manifest " + manifest.getName());
+		if (!manifest.isFile()) {
+			return;
+		}
+		final String content = FileManager.getFileContent(manifest.getPath());
+		assertTrue(content.indexOf("\"profile\": \"" + profile + "\"") != -1 && content.indexOf("\"target\": \"" + target + "\"") != -1, "Expected profile and target in " + manifest.getName());
+
+		final Matcher m = Pattern.compile("\\{\"path\": \"([^\"]*)\", \"hash\": \"([0-9a-f]{40})\", \"size\": (\\d+)\\}").matcher(content);
+		final List<String> paths = Common.newArrayList(1);
+		long totalSize = 0;
+		while (m.find()) {
+			paths.add(m.group(1));
+			final byte[] bytes = FileUtil.readBytes(new File(modulePath, m.group(1)));
+			assertTrue(m.group(2).equals(FileUtil.getContentHash(bytes)), "Bad content hash of " + m.group(1) + " in " + manifest.getName());
+			assertTrue(Long.parseLong(m.group(3)) == bytes.length, "Bad size of " + m.group(1) + " in " + manifest.getName());
+			totalSize += bytes.length;
+		}
+		int last = -1;
+		for (final String module : expected) {
+			final int index = paths.indexOf(module);
+			assertTrue(index > last, "Expected " + module + " in load order in " + manifest.getName() + ": " + paths);
+			last = index;
+		}
+		assertTrue(content.indexOf("\"size\": " + totalSize + "\n") != -1, "Expected total size " + totalSize + " in " + manifest.getName());
+	}
+
+	/**
+	 * 
+	 */
+	private static final Pattern LOCALE_PATTERN = Pattern.compile("\"([^\"]*)\": (?:null|\\{\"file\": \"([^\"]*)\", \"hash\": \"([0-9a-f]{40})\", \"size\": (\\d+)\\})");
+
+	/**
+	 * @param buildPath
+	 * @param target
+	 * @throws IOException
+	 */
+	private static void checkLocaleBundles(final String buildPath, final String target) throws IOException {
+		out("------- CHECK LOCALE BUNDLES ------- " + target);
+		final Map<String, String> full = readLocaleBundles(buildPath, "full", target, "fr_FR");
+		final Map<String, String> base = readLocaleBundles(buildPath, "base", target, "en_EN");
+		if (full == null || base == null) {
+			return;
+		}
+		assertTrue(full.keySet().toString().equals("[fr_FR, en_EN, es_ES]"), "Expected the locales of full in order - " + target + ": " + full.keySet());
+		assertTrue(base.keySet().toString().equals("[en_EN]"), "Expected the default locale for base - " + target + ": " + base.keySet());
+		assertTrue(full.get("en_EN") != null && full.get("en_EN").equals(base.get("en_EN")), "Expected the en_EN bundle shared by full and base - " + target);
+		assertTrue(full.get("en_EN").startsWith("wink-test-i18n-en_EN-"), "Bad name of the en_EN bundle - " + target + ": " + full.get("en_EN"));
+
+		final String fr = FileManager.getFileContent(new File(buildPath, full.get("fr_FR")).getPath());
+		final String en = FileManager.getFileContent(new File(buildPath, full.get("en_EN")).getPath());
+		assertTrue(fr.indexOf("i18nTraduction") != -1 && fr.indexOf("i18nTranslation") == -1, "Expected the fr_FR resources only in the fr_FR bundle - " + target);
+		assertTrue(en.indexOf("i18nTranslation") != -1 && en.indexOf("i18nTraduction") == -1, "Expected the en_EN resources only in the en_EN bundle - " + target);
+		if (target.equals("ie")) {
+			final String es = (full.get("es_ES") == null) ? "" : FileManager.getFileContent(new File(buildPath, full.get("es_ES")).getPath());
+			assertTrue(es.indexOf("i18nTraduccion") != -1, "Expected the es_ES resources of the ie implementation - " + target);
+		} else {
+			assertTrue(full.get("es_ES") == null, "Unexpected es_ES bundle - " + target);
+		}
+
+		final String common = FileManager.getFileContent(new File(buildPath, "wink-test-common-" + target + ".js").getPath());
+		final String delta = FileManager.getFileContent(new File(buildPath, "wink-test-full-" + target + ".js").getPath());
+		assertTrue((common + delta).indexOf("i18nTra") == -1, "Unexpected i18n resources in the locale-neutral chunks - " + target);
+		assertTrue(execute(common + delta + fr, full.get("fr_FR")), "Bad execution of the chunks and the fr_FR bundle - " + target);
+	}
+
+	/**
+	 * @param buildPath
+	 * @param profile
+	 * @param target
+	 * @param defaultLocale
+	 * @return the locale to its bundle, null if none
+	 * @throws IOException
+	 */
+	private static Map<String, String> readLocaleBundles(final String buildPath, final String profile, final String target, final String defaultLocale) throws IOException {
+		final File manifest = new File(buildPath, "wink-test-" + profile + "-" + target + LocaleBundler.MANIFEST_EXTENSION);
+		assertTrue(manifest.isFile(), "Expected locales manifest " + manifest.getName());
+		if (!manifest.isFile()) {
+			return null;
+		}
+		final String content = FileManager.getFileContent(manifest.getPath());
+		assertTrue(content.indexOf("\"defaultLocale\": \"" + defaultLocale + "\"") != -1, "Expected default locale " + defaultLocale + " in " + manifest.getName());
+
+		final Map<String, String> bundles = new LinkedHashMap<String, String>();
+		final Matcher m = LOCALE_PATTERN.matcher(content.substring(content.indexOf("\"locales\"")));
+		while (m.find()) {
+			bundles.put(m.group(1), m.group(2));
+			if (m.group(2) != null) {
+				final byte[] bytes = FileUtil.readBytes(new File(buildPath, m.group(2)));
+				assertTrue(m.group(3).equals(FileUtil.getContentHash(bytes)), "Bad content hash of " + m.group(2) + " in " + manifest.getName());
+				assertTrue(Long.parseLong(m.group(4)) == bytes.length, "Bad size of " + m.group(2) + " in " + manifest.getName());
+			}
+		}
+		return bundles;
+	}
+
+	/**
+	 * @param recordingFile
+	 * @throws IOException
+	 */
+	private static void checkBuildEvents(final File recordingFile) throws IOException {
+		out("------- CHECK BUILD EVENTS ------- " + recordingFile.getPath());
+		final Set<String> stages = new HashSet<String>();
+		final Set<String> sections = new HashSet<String>();
+		for (final RecordedEvent e : RecordingFile.readAllEvents(recordingFile.toPath())) {
+			final String eventName = e.getEventType().getName();
+			if (eventName.equals(BuildStageEvent.NAME)) {
+				stages.add(e.getString("section") + " " + e.getString("stage"));
+				if (e.getString("stage").equals("concatenateFiles")) {
+					assertTrue(e.getInt("files") > 0 && e.getLong("sizeAfter") > 0, "Expected the sizes of the concatenated files in the stage event");
+				}
+			} else if (eventName.equals(BuildSectionEvent.NAME)) {
+				assertTrue(e.getString("build").equals("build.js"), "Expected the build of the section event: " + e.getString("build"));
+				sections.add(e.getString("section"));
+			}
+		}
+		for (final String section : new String[] { "common/default", "full/default", "common/ie", "full/ie" }) {
+			assertTrue(sections.contains(section), "Expected the section event " + section);
+			for (final String stage : new String[] { "copyFiles", "parseFiles", "concatenateFiles" }) {
+				assertTrue(stages.contains(section + " " + stage), "Expected the stage event " + stage + " of " + section);
+			}
+		}
+	}
+
+	/**
+	 * @param buildPath
+	 * @throws IOException
+	 */
+	private static void checkBuildReport(final String buildPath) throws IOException {
+		out("------- CHECK BUILD REPORT ------- " + buildPath);
+		final File report = new File(buildPath, "build" + BuildReport.REPORT_SUFFIX);
+		assertTrue(report.isFile(), "Expected build report " + report.getName());
+		if (!report.isFile()) {
+			return;
+		}
+		final String content = FileManager.getFileContent(report.getPath());
+		assertTrue(content.indexOf("\"version\": " + BuildReport.VERSION) != -1, "Expected build report version");
+		final String[] sections = new String[] { "common/default", "full/default", "common/ie", "full/ie" };
+		for (final String section : sections) {
+			assertTrue(content.indexOf("\"name\": \"" + section + "\"") != -1, "Expected build report section " + section);
+		}
+		final String[] stages = new String[] { "copyFiles", "parseFiles", "deleteDuplicate", "concatenateFiles" };
+		for (final String stage : stages) {
+			assertTrue(Pattern.compile("\\{\"name\": \"" + stage + "\", \"calls\": [1-9]\\d*, \"time\": \\d+, \"allocated\": -?\\d+\\}").matcher(content).find(), "Expected build report stage " + stage);
+		}
+
+		// the module sizes are chained from a stage to the next one
+		final Matcher m = Pattern.compile("\\{\"name\": \"module1.js\", \"sizes\": \\[(.*)\\]\\}").matcher(content);
+		assertTrue(m.find(), "Expected module1.js sizes in build report");
+		if (!m.find(0)) {
+			return;
+		}
+		final Matcher sm = Pattern.compile("\"before\": (\\d+), \"after\": (\\d+)").matcher(m.group(1));
+		long previous = -1;
+		int count = 0;
+		boolean chained = true;
+		while (sm.find()) {
+			if (previous != -1 && Long.parseLong(sm.group(1)) != previous) {
+				chained = false;
+			}
+			previous = Long.parseLong(sm.group(2));
+			count++;
+		}
+		assertTrue(count > 1, "Expected module1.js sizes for several stages");
+		assertTrue(chained, "Expected module1.js sizes chained between stages: " + m.group(1));
+	}
+
+	/**
+	 * @param map
+	 * @param content
+	 * @throws IOException
+	 */
+	private static void writeMap(final File map, final String content) throws IOException {
+		final Writer w = new OutputStreamWriter(new FileOutputStream(map), "UTF-8");
+		try {
+			w.write(content);
+		} finally {
+			w.close();
+		}
+	}
+
+	/**
+	 * @param value
+	 * @return the base64 VLQ of the value
+	 */
+	private static String vlq(final int value) {
+		int v = (value < 0) ? ((-value) << 1) + 1 : (value << 1);
+		final StringBuffer sb = new StringBuffer();
+		do {
+			int digit = v & 31;
+			v >>>= 5;
+			if (v > 0) {
+				digit |= 32;
+			}
+			sb.append(BASE64_DIGITS.charAt(digit));
+		} while (v > 0);
+		return sb.toString();
+	}
+
+	/**
+	 * @param source
+	 * @param name
+	 * @return
+	 */
+	private static boolean execute(final String source, final String name) {
+		final Context cx = Context.enter();
+		try {
+			cx.setOptimizationLevel(-1);
+			final ScriptableObject scope = cx.initStandardObjects();
+			ScriptableObject.putProperty(scope, "window", new NativeObject());
+			final NativeObject htmlelement = new NativeObject();
+			ScriptableObject.putProperty(htmlelement, "prototype", new NativeObject());
+			ScriptableObject.putProperty(scope, "HTMLElement", htmlelement);
+			ScriptableObject.putProperty(scope, "external", new NativeObject());
+			cx.evaluateString(scope, source, name, 1, null);
+			return true;
+		} catch (final org.mozilla.javascript.EcmaError e) {
+			err(e.getMessage());
+			return false;
+		} finally {
+			Context.exit();
+		}
+	}
+}
@@ -10,12 +10,25 @@
  */
 package com.orange.wink.test;
 
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.imageio.ImageIO;
 
 import com.orange.wink.Main;
+import com.orange.wink.css.CssImageInliner;
+import com.orange.wink.css.CssImageOptimizer;
+import com.orange.wink.css.CssOptimizer;
+import com.orange.wink.css.CssSpriteBuilder;
+import com.orange.wink.css.CssUrlRewriter;
+import com.orange.wink.exception.WinkBuildException;
 import com.orange.wink.exception.WinkParseException;
 import com.orange.wink.util.FileManager;
+import com.orange.wink.util.FileUtil;
 
 /**
  * @author Sylvain Lalande
@@ -59,7 +72,13 @@ public class BuildCssTest extends BuildAbstractTest {
 				//
 				"-OPTION_FROM_WINK_PATH=true",
 				//
-				"-OPTION_RELATIVE_PATH=../../wink" };
+				"-OPTION_RELATIVE_PATH=../../wink",
+				//
+				"-OPTION_INLINE_IMAGES=true",
+				//
+				"-OPTION_INLINE_IMAGE_MAX_SIZE=1024",
+				//
+				"-OPTION_OPTIMIZE_CSS=true" };
 
 		createDirectory(rootTmpPath);
 		createDirectory(rootBuildPath);
@@ -68,6 +87,11 @@ public class BuildCssTest extends BuildAbstractTest {
 
 		checkBuildFiles(buildPath);
 		checkRewriteImageUrl(buildPath);
+		checkInlineImages(buildPath);
+		checkInlineEditedImage(rootTmpPath + "inline");
+		checkOptimizeCss();
+		checkSpriteImages(rootTmpPath + "sprite", rootBuildPath + "sprite");
+		checkOptimizeImages(rootTmpPath + "optimize", rootBuildPath + "optimize");
 
 		printTestResults();
 	}
@@ -109,8 +133,9 @@ public class BuildCssTest extends BuildAbstractTest {
 	 * @param buildPath
 	 * @throws WinkParseException
 	 * @throws IOException
+	 * @throws WinkBuildException
 	 */
-	private static void checkRewriteImageUrl(final String buildPath) throws WinkParseException, IOException {
+	private static void checkRewriteImageUrl(final String buildPath) throws WinkParseException, IOException, WinkBuildException {
 		final File[] files = getFiles(buildPath);
 		for (final File f : files) {
 			final String filePath = f.getCanonicalPath();
@@ -122,5 +147,275 @@ public class BuildCssTest extends BuildAbstractTest {
 			assertFalse(source.indexOf("background-image: url(../../wink/img/image.png)") == -1, "Expected good rewrite in " + filePath);
 			assertFalse(source.indexOf("background-image: url(http://www.google.fr)") == -1, "Expected no rewrite for absolute image link in " + filePath);
 		}
+
+		// the canonical paths are not kept from a build to the next one
+		final CssUrlRewriter rewriter = CssUrlRewriter.getInstance(buildPath);
+		assertTrue(CssUrlRewriter.getInstance(buildPath) == rewriter, "Expected the rewriter shared during a build");
+		CssUrlRewriter.clear();
+		assertTrue(CssUrlRewriter.getInstance(buildPath) != rewriter, "Expected a new rewriter after clear");
+	}
+
+	/**
+	 * @param buildPath
+	 * @throws IOException
+	 */
+	private static void checkInlineImages(final String buildPath) throws IOException {
+		final File[] files = getFiles(buildPath);
+		for (final File f : files) {
+			final String filePath = f.getCanonicalPath();
+			out("------- CHECK INLINE IMAGES ------- " + filePath);
+
+			final String source = FileManager.getFileContent(filePath);
+
+			assertTrue(source.indexOf("icon.png") == -1, "Unexpected icon.png link in " + filePath);
+			if (!filePath.contains("light") && !filePath.contains("ie")) {
+				assertFalse(source.indexOf("background-image: url(data:image/png;base64,iVBORw0KGgoAAAANSUhEUgAAAAEAAAAB") == -1, "Expected inlined icon.png in " + filePath);
+			}
+			assertFalse(source.indexOf("url(../../wink/img/image.png)") == -1, "Expected missing image kept external in " + filePath);
+		}
+	}
+
+	/**
+	 * @param tmpPath
+	 * @throws Exception
+	 */
+	private static void checkInlineEditedImage(final String tmpPath) throws Exception {
+		out("------- CHECK INLINE EDITED IMAGE -------");
+		final File imgDir = new File(tmpPath, "img");
+		imgDir.mkdirs();
+		final String css = ".dot {\n\tbackground-image: url(img/dot.png);\n}\n";
+		final String cssFile = new File(tmpPath, "source.css").getPath();
+		final String tmpFile = new File(tmpPath, "tmp.css").getPath();
+		FileManager.writeIntoFile(css, cssFile);
+
+		writeImage(new File(imgDir, "dot.png"), 2, 2, 0xffff0000);
+		FileManager.writeIntoFile(css, tmpFile);
+		new CssImageInliner(1024).inline(Arrays.asList(cssFile), Arrays.asList(tmpFile));
+		final String first = FileManager.getFileContent(tmpFile);
+		assertTrue(first.indexOf("url(data:image/png;base64,") != -1, "Expected the dot image inlined");
+
+		// the next build of the process reads the edited image again
+		CssImageInliner.clear();
+		writeImage(new File(imgDir, "dot.png"), 2, 2, 0xff0000ff);
+		FileManager.writeIntoFile(css, tmpFile);
+		new CssImageInliner(1024).inline(Arrays.asList(cssFile), Arrays.asList(tmpFile));
+		final String second = FileManager.getFileContent(tmpFile);
+		assertTrue(second.indexOf("url(data:image/png;base64,") != -1 && !second.equals(first), "Expected the edited dot image inlined");
+	}
+
+	/**
+	 * 
+	 */
+	private static void checkOptimizeCss() {
+		out("------- CHECK OPTIMIZE CSS -------");
+		final StringBuffer sb = new StringBuffer();
+		sb.append("@charset \"UTF-8\";\n");
+		sb.append("a { color: red; color: blue; }\n");
+		sb.append("a { margin: 0; }\n");
+		sb.append("h1 { margin: 0; }\nh2 { margin: 0; }\n");
+		sb.append(".box { display: block; display: -webkit-box; }\n");
+		sb.append(".strong { color: red !important; color: blue; }\n");
+		sb.append(".flex { display: -webkit-box; display: flex; }\n.fluid { width: 100px; width: 50vw; }\n");
+		sb.append(".sticky { position: -webkit-sticky; position: sticky; }\n.grid { display: block; display: grid; }\n");
+		sb.append(".half { width: 100px; width: 50%; }\n");
+		sb.append("::-moz-selection { color: red; }\n::selection { color: red; }\n");
+		sb.append(".icon { background: url(data:image/png;base64,AAA=) no-repeat; }\n");
+		sb.append("@media screen { .c { top: 0; } }\n@media  screen { .d { left: 0; } }\n");
+		sb.append(".e { top: 1px; }\n.f { top: 2px; }\n.e { top: 1px; }\n");
+		final String css = sb.toString();
+
+		final CssOptimizer optimizer = new CssOptimizer();
+		final String optimized = optimizer.optimize(css);
+		out(optimizer.getReport());
+
+		assertTrue(optimized.startsWith("@charset \"UTF-8\";"), "Expected the charset first");
+		assertFalse(optimized.indexOf("a {\n\tcolor: blue;\n\tmargin: 0;\n}") == -1, "Expected merged rules of the same selector, without the overridden color");
+		assertFalse(optimized.indexOf("h1, h2 {\n\tmargin: 0;\n}") == -1, "Expected merged rules of the same declarations");
+		assertFalse(optimized.indexOf("display: block;\n\tdisplay: -webkit-box;") == -1, "Expected the fallback of a vendor value kept");
+		assertFalse(optimized.indexOf("color: red !important;\n\tcolor: blue;") == -1, "Expected the important declaration kept");
+		assertFalse(optimized.indexOf("display: -webkit-box;\n\tdisplay: flex;") == -1, "Expected the vendor fallback of a newer keyword kept");
+		assertFalse(optimized.indexOf("width: 100px;\n\twidth: 50vw;") == -1, "Expected the fallback of a newer unit kept");
+		assertFalse(optimized.indexOf("position: -webkit-sticky;\n\tposition: sticky;") == -1, "Expected the vendor fallback of sticky kept");
+		assertFalse(optimized.indexOf("display: block;\n\tdisplay: grid;") == -1, "Expected the fallback of a newer keyword kept");
+		assertFalse(optimized.indexOf(".half {\n\twidth: 50%;\n}") == -1, "Expected the overridden plain value deleted");
+		assertTrue(optimized.indexOf("::-moz-selection, ::selection") == -1, "Unexpected merge of vendor selectors");
+		assertFalse(optimized.indexOf("url(data:image/png;base64,AAA=) no-repeat;") == -1, "Expected the data URI kept");
+		assertTrue(optimized.indexOf("@media screen {\n\t.c {\n\t\ttop: 0;\n\t}\n\t.d {") != -1 && optimized.indexOf("@media", optimized.indexOf("@media") + 1) == -1, "Expected merged media blocks");
+		assertTrue(optimized.indexOf(".e {") == optimized.lastIndexOf(".e {") && optimized.indexOf(".f {") < optimized.indexOf(".e {"), "Expected the first duplicate rule deleted");
+		assertTrue(optimized.length() < css.length(), "Expected a smaller stylesheet");
+		assertTrue(optimizer.optimize(optimized).equals(optimized), "Expected a stable optimization");
+	}
+
+	/**
+	 * @param tmpPath
+	 * @param buildPath
+	 * @throws Exception
+	 */
+	private static void checkSpriteImages(final String tmpPath, final String buildPath) throws Exception {
+		out("------- CHECK SPRITE IMAGES -------");
+		final File imgDir = new File(tmpPath, "_themes/t1/img");
+		final File cssDir = new File(tmpPath, "_themes/t1/css");
+		imgDir.mkdirs();
+		cssDir.mkdirs();
+		writeImage(new File(imgDir, "play.png"), 16, 16, 0xffff0000);
+		writeImage(new File(imgDir, "stop.png"), 8, 8, 0xff0000ff);
+		writeImage(new File(imgDir, "pause.png"), 8, 8, 0xff00ff00);
+
+		final StringBuffer sb = new StringBuffer();
+		sb.append(".icon.play {\n\tbackground: url(../img/play.png) no-repeat;\n\twidth: 16px;\n\theight: 16px;\n}\n");
+		sb.append(".icon.stop {\n\tbackground-image: url(../img/stop.png);\n\tbackground-repeat: no-repeat;\n\twidth: 8px;\n\theight: 8px\n}\n");
+		sb.append(".big {\n\tbackground: url(../img/play.png) no-repeat;\n\twidth: 32px;\n\theight: 32px;\n}\n");
+		sb.append(".pause {\n\tbackground: url(../img/pause.png) no-repeat;\n\twidth: 8px;\n\theight: 8px;\n}\n");
+		sb.append(".pause:hover {\n\tbackground-image: url(../img/stop.png);\n}\n");
+		final String cssFile = new File(cssDir, "t1.css").getPath();
+		final String tmpFile = new File(tmpPath, "t1.css").getPath();
+		FileManager.writeIntoFile(sb.toString(), cssFile);
+		FileManager.writeIntoFile(sb.toString(), tmpFile);
+
+		final CssSpriteBuilder builder = new CssSpriteBuilder(8192, buildPath + "/wink.css");
+		builder.build(Arrays.asList(cssFile), Arrays.asList(tmpFile));
+		out(builder.getReport());
+		final String css = FileManager.getFileContent(tmpFile);
+
+		final Matcher m = Pattern.compile("url\\((sprites/t1-[0-9a-f]+\\.png)\\)[^}]*background-position: (0|-\\d+px) (0|-\\d+px);").matcher(css);
+		assertTrue(m.find(), "Expected the play rule rewritten to the sprite");
+		final String spriteUrl = m.group(1);
+		final BufferedImage sprite = ImageIO.read(new File(buildPath, spriteUrl));
+		assertTrue(sprite != null, "Expected the sprite " + spriteUrl);
+		if (sprite != null) {
+			assertTrue(sprite.getRGB(getOffset(m.group(2)) + 15, getOffset(m.group(3)) + 15) == 0xffff0000, "Expected the play image in the sprite");
+			assertTrue(m.find() && sprite.getRGB(getOffset(m.group(2)) + 7, getOffset(m.group(3)) + 7) == 0xff0000ff, "Expected the stop image in the sprite");
+		}
+		assertTrue(css.indexOf("height: 8px;\n\tbackground-position:") != -1, "Expected the position after the last declaration");
+		assertTrue(css.indexOf("url(../img/play.png) no-repeat;\n\twidth: 32px;") != -1, "Expected the larger box kept");
+		assertTrue(css.indexOf("url(../img/pause.png)") != -1, "Expected the image of a conflicting rule kept");
+		assertTrue(CssUrlRewriter.isBuildedUrl(spriteUrl), "Expected the sprite URL known");
+
+		FileManager.writeIntoFile(sb.toString(), tmpFile);
+		new CssSpriteBuilder(8192, buildPath + "/wink.css").build(Arrays.asList(cssFile), Arrays.asList(tmpFile));
+		assertTrue(FileManager.getFileContent(tmpFile).equals(css), "Expected the same sprite for the same images");
+
+		// a rule of no class nor id may enlarge the box of any rule
+		final String[] elementRules = { "html, body {\n\tmargin: 0;\n\tpadding: 0;\n}\n", "span {\n\twidth: 20px;\n}\n", "div {\n\tbackground: url(../img/stop.png) no-repeat;\n}\n" };
+		for (final String rule : elementRules) {
+			FileManager.writeIntoFile(sb.toString() + rule, tmpFile);
+			final CssSpriteBuilder elementBuilder = new CssSpriteBuilder(8192, buildPath + "/wink.css");
+			elementBuilder.build(Arrays.asList(cssFile), Arrays.asList(tmpFile));
+			out(elementBuilder.getReport());
+			assertTrue(FileManager.getFileContent(tmpFile).equals(sb.toString() + rule), "Expected no rule rewritten with " + rule.substring(0, rule.indexOf('{')).trim());
+		}
+
+		// the next build of the process reads the edited image again
+		CssSpriteBuilder.clear();
+		writeImage(new File(imgDir, "stop.png"), 8, 8, 0xff00ffff);
+		FileManager.writeIntoFile(sb.toString(), tmpFile);
+		new CssSpriteBuilder(8192, buildPath + "/wink.css").build(Arrays.asList(cssFile), Arrays.asList(tmpFile));
+		final Matcher edited = Pattern.compile("url\\((sprites/t1-[0-9a-f]+\\.png)\\)[^}]*background-position: (0|-\\d+px) (0|-\\d+px);").matcher(FileManager.getFileContent(tmpFile));
+		final boolean found = edited.find();
+		assertTrue(found && !edited.group(1).equals(spriteUrl), "Expected a new sprite for the edited image");
+		if (!found) {
+			return;
+		}
+		final BufferedImage editedSprite = ImageIO.read(new File(buildPath, edited.group(1)));
+		assertTrue(edited.find() && editedSprite != null && editedSprite.getRGB(getOffset(edited.group(2)) + 7, getOffset(edited.group(3)) + 7) == 0xff00ffff, "Expected the edited stop image in the sprite");
+	}
+
+
+	/**
+	 * @param tmpPath
+	 * @param buildPath
+	 * @throws Exception
+	 */
+	private static void checkOptimizeImages(final String tmpPath, final String buildPath) throws Exception {
+		out("------- CHECK OPTIMIZE IMAGES -------");
+		final File imgDir = new File(tmpPath, "img");
+		imgDir.mkdirs();
+		final BufferedImage gradient = new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB);
+		for (int x = 0; x < 64; x++) {
+			for (int y = 0; y < 64; y++) {
+				gradient.setRGB(x, y, ((x * 4) << 24) | ((y * 4) << 16) | (x * 2 + y));
+			}
+		}
+		ImageIO.write(gradient, "png", new File(imgDir, "gradient.png"));
+		final BufferedImage indexed = new BufferedImage(32, 32, BufferedImage.TYPE_BYTE_INDEXED);
+		for (int x = 0; x < 32; x++) {
+			for (int y = 0; y < 32; y++) {
+				indexed.setRGB(x, y, ((x / 8 + y / 8) % 2 == 0) ? 0xffffffff : 0xff000000);
+			}
+		}
+		ImageIO.write(indexed, "gif", new File(imgDir, "checker.gif"));
+
+		final String css = ".a { background: url(img/gradient.png); }\n.b { background: url(\"img/checker.gif\") no-repeat; }\n.c { background: url(img/missing.png); }\n";
+		final String cssFile = new File(tmpPath, "source.css").getPath();
+		final String tmpFile = new File(tmpPath, "tmp.css").getPath();
+		FileManager.writeIntoFile(css, cssFile);
+		FileManager.writeIntoFile(css, tmpFile);
+
+		final CssImageOptimizer optimizer = new CssImageOptimizer(buildPath + "/wink.css");
+		optimizer.optimize(Arrays.asList(cssFile), Arrays.asList(tmpFile));
+		out(optimizer.getReport());
+		final String optimized = FileManager.getFileContent(tmpFile);
+
+		final Matcher m = Pattern.compile("url\\(\"?(images/[-\\w]+\\.png)\"?\\)").matcher(optimized);
+		for (final String source : new String[] { "gradient.png", "checker.gif" }) {
+			final String name = source.substring(0, source.indexOf('.'));
+			assertTrue(m.find() && m.group(1).startsWith("images/" + name + "-"), "Expected the URL of " + source + " rewritten");
+			final File copy = new File(buildPath, m.group(1));
+			assertTrue(copy.length() > 0 && copy.length() < new File(imgDir, source).length(), "Expected a smaller copy of " + source);
+			assertTrue(CssUrlRewriter.isBuildedUrl(m.group(1)), "Expected the copy URL known");
+			final BufferedImage expected = ImageIO.read(new File(imgDir, source));
+			final BufferedImage actual = ImageIO.read(copy);
+			boolean same = actual != null && actual.getWidth() == expected.getWidth() && actual.getHeight() == expected.getHeight();
+			for (int x = 0; same && x < expected.getWidth(); x++) {
+				for (int y = 0; same && y < expected.getHeight(); y++) {
+					same = expected.getRGB(x, y) == actual.getRGB(x, y);
+				}
+			}
+			assertTrue(same, "Expected the same pixels in the copy of " + source);
+		}
+		assertTrue(optimized.indexOf("url(img/missing.png)") != -1, "Expected a missing image kept");
+
+		FileManager.writeIntoFile(css, tmpFile);
+		final CssImageOptimizer cached = new CssImageOptimizer(buildPath + "/wink.css");
+		cached.optimize(Arrays.asList(cssFile), Arrays.asList(tmpFile));
+		assertTrue(cached.getReport().indexOf("2 optimized (2 cached)") != -1, "Expected the copies cached: " + cached.getReport());
+		assertTrue(FileManager.getFileContent(tmpFile).equals(optimized), "Expected the same copies");
+
+		// the copies deleted since the previous build are written again
+		FileUtil.deleteTree(new File(buildPath, CssImageOptimizer.IMAGE_DIRECTORY));
+		FileManager.writeIntoFile(css, tmpFile);
+		final CssImageOptimizer deleted = new CssImageOptimizer(buildPath + "/wink.css");
+		deleted.optimize(Arrays.asList(cssFile), Arrays.asList(tmpFile));
+		assertTrue(deleted.getReport().indexOf("2 optimized (0 cached)") != -1, "Expected the deleted copies written again: " + deleted.getReport());
+		assertTrue(FileManager.getFileContent(tmpFile).equals(optimized), "Expected the same copies");
+		final Matcher copies = Pattern.compile("url\\(\"?(images/[-\\w]+\\.png)\"?\\)").matcher(optimized);
+		while (copies.find()) {
+			assertTrue(new File(buildPath, copies.group(1)).isFile(), "Expected the copy written again " + copies.group(1));
+		}
+	}
+
+	/**
+	 * @param file
+	 * @param width
+	 * @param height
+	 * @param argb
+	 * @throws IOException
+	 */
+	private static void writeImage(final File file, final int width, final int height, final int argb) throws IOException {
+		final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				image.setRGB(x, y, argb);
+			}
+		}
+		ImageIO.write(image, "png", file);
+	}
+
+	/**
+	 * @param position
+	 * @return
+	 */
+	private static int getOffset(final String position) {
+		return position.equals("0") ? 0 : Integer.parseInt(position.substring(1, position.length() - 2));
 	}
 }
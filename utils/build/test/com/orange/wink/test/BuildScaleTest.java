@@ -0,0 +1,191 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+package com.orange.wink.test;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+import com.orange.wink.Main;
+import com.orange.wink.util.FileManager;
+import com.orange.wink.util.FileUtil;
+
+/**
+ * Builds synthetic module trees of growing sizes (see ModuleTreeGenerator)
+ * and reports the time and the peak heap of each build, to spot a
+ * superlinear behaviour of the builder.
+ * 
+ * The arguments are the module counts to build (eg. 1000 10000), 50 100 200
+ * 400 by default; the depth of the namespaces is given by the
+ * "scale.depth" system property (3 by default).
+ * 
+ * @author Sylvain Lalande
+ * 
+ */
+public class BuildScaleTest extends BuildAbstractTest {
+	/**
+	 * ratio of the time growth to the size growth over which a build is
+	 * reported as superlinear
+	 */
+	private static final double SUPERLINEAR_RATIO = 1.5;
+
+	/**
+	 * @param args
+	 */
+	public static void main(final String[] args) throws Exception {
+		final String rootTmpPath = "../wink/utils/build/test/tmp/";
+		final String rootBuildPath = "../wink/utils/build/test/builded/";
+		final int depth = Integer.getInteger("scale.depth", 3).intValue();
+
+		int[] sizes = new int[] { 50, 100, 200, 400 };
+		if (args.length > 0) {
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				sizes[i] = Integer.parseInt(args[i]);
+			}
+		}
+
+		createDirectory(rootTmpPath);
+		createDirectory(rootBuildPath);
+		createDirectory(rootBuildPath + "scale");
+
+		final StringBuffer report = new StringBuffer();
+		report.append("modules\tdepth\tchars\ttime (ms)\tpeak heap (KB)\ttime per module (ms)\n");
+		long previousTime = 0;
+		int previousSize = 0;
+		for (final int size : sizes) {
+			final String scalePath = rootTmpPath + "scale/" + size;
+			final String buildPath = rootBuildPath + "scale/" + size;
+			FileUtil.deleteFile(scalePath);
+			FileUtil.deleteFile(buildPath);
+
+			final ModuleTreeGenerator generator = new ModuleTreeGenerator(size, depth, 0.2, 0.1, 1024);
+			generator.generate(new File(scalePath, "modules"), new File(scalePath, "conf"));
+			FileManager.clear();
+
+			final String[] arguments = new String[] {
+			//
+					"-JS_PATH=../wink/utils/build/scripts",
+					//
+					"-JS_MAIN_FILE=build.js",
+					//
+					"-CONF_PATH=" + scalePath + "/conf",
+					//
+					"-MODULE_CONF_FILE=" + ModuleTreeGenerator.MODULES_CONF,
+					//
+					"-PROFILES_CONF_FILE=" + ModuleTreeGenerator.PROFILES_CONF,
+					//
+					"-WINK_PATH=" + scalePath + "/modules/",
+					//
+					"-TEMPORARY_PATH=" + scalePath + "/tmp",
+					//
+					"-BUILD_DEST_PATH=" + buildPath,
+					//
+					"-TARGETS=",
+					//
+					"-PROFILES=",
+					//
+					"-OPTION_CLEAN_TEMPORARY=true",
+					//
+					"-OPTION_DELETE_DUPLICATES=true",
+					//
+					"-OPTION_FAIL_ON_UNMANAGED_SYNTAX=true",
+					//
+					"-OPTION_FAIL_ON_UNRESOLVED_NAMESPACE=true",
+					// the time of each stage
+					"-OPTION_BUILD_REPORT=true" };
+
+			System.gc();
+			resetPeakHeap();
+			final long start = System.currentTimeMillis();
+			Main.main(arguments);
+			final long time = System.currentTimeMillis() - start;
+			final long peakHeap = getPeakHeap();
+			FileManager.clear();
+
+			checkBuildFile(buildPath, generator, size);
+
+			report.append(size).append('\t').append(depth).append('\t').append(generator.getSize()).append('\t').append(time).append('\t');
+			report.append(peakHeap / 1024).append('\t').append((double) time / size).append('\n');
+			if (previousSize > 0 && previousTime > 0) {
+				final double growth = ((double) time / previousTime) / ((double) size / previousSize);
+				if (growth > SUPERLINEAR_RATIO) {
+					report.append("WARN - superlinear build time from ").append(previousSize).append(" to ").append(size).append(" modules: x").append(growth).append(" per module\n");
+				}
+			}
+			previousTime = time;
+			previousSize = size;
+		}
+
+		out("------- SCALE REPORT -------\n" + report + "(the time of each stage is in the build report of each size, in " + rootBuildPath + "scale)");
+		printTestResults();
+	}
+
+	/**
+	 * @param buildPath
+	 * @param generator
+	 * @param size
+	 * @throws Exception
+	 */
+	private static void checkBuildFile(final String buildPath, final ModuleTreeGenerator generator, final int size) throws Exception {
+		final File buildFile = new File(buildPath, "wink-scale-" + ModuleTreeGenerator.PROFILE + "-default.js");
+		assertTrue(buildFile.isFile(), "Expected build file " + buildFile.getPath());
+		if (!buildFile.isFile()) {
+			return;
+		}
+		final String content = FileManager.getFileContent(buildFile.getPath());
+		FileManager.clear();
+		assertTrue(content.indexOf(generator.getNamespace(size - 1) + " = {") != -1, "Expected the last module in " + buildFile.getName());
+		if (generator.getDuplicates() > 0) {
+			// a redefined function is kept once: the first definition is deleted
+			final int definitions = count(content, "f0: function(a, b)");
+			assertTrue(definitions < size, "Expected deleted duplicates in " + buildFile.getName() + ": " + definitions + " definitions for " + size + " modules");
+		}
+	}
+
+	/**
+	 * @param content
+	 * @param token
+	 * @return
+	 */
+	private static int count(final String content, final String token) {
+		int count = 0;
+		for (int idx = content.indexOf(token); idx != -1; idx = content.indexOf(token, idx + token.length())) {
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * 
+	 */
+	private static void resetPeakHeap() {
+		for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	/**
+	 * @return the sum of the peak usages of the heap pools, in bytes
+	 */
+	private static long getPeakHeap() {
+		long peak = 0;
+		for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+}
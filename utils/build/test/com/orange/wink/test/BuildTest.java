@@ -10,21 +10,33 @@
  */
 package com.orange.wink.test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.NativeObject;
 import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
 import org.mozilla.javascript.ScriptableObject;
 
+import com.orange.wink.Constants;
 import com.orange.wink.Main;
 import com.orange.wink.exception.WinkAstException;
 import com.orange.wink.exception.WinkBuildException;
@@ -32,10 +44,22 @@ import com.orange.wink.exception.WinkParseException;
 import com.orange.wink.model.FunctionObject;
 import com.orange.wink.model.GlobalObject;
 import com.orange.wink.model.LiteralObject;
+import com.orange.wink.model.ModelSerializer;
 import com.orange.wink.model.Namespace;
 import com.orange.wink.model.ScriptObject;
+import com.orange.wink.parse.DependencyGraph;
+import com.orange.wink.parse.DuplicateBodyFinder;
+import com.orange.wink.parse.PrivateMemberMangler;
+import com.orange.wink.parse.TreeShaker;
+import com.orange.wink.parse.WinkJsModel;
 import com.orange.wink.parse.WinkParser;
+import com.orange.wink.util.BuildReport;
+import com.orange.wink.util.ConfResolver;
+import com.orange.wink.util.FileManager;
+import com.orange.wink.util.FileObject;
 import com.orange.wink.util.FileUtil;
+import com.orange.wink.util.GzipCompressor;
+import com.orange.wink.util.ScriptCache;
 import com.orange.wink.util.WinkJsFile;
 
 /**
@@ -53,8 +77,79 @@ public class BuildTest extends BuildAbstractTest {
 		final String rootBuildPath = testPath + "builded/";
 		final String buildPath = rootBuildPath + "js";
 		final String modulePath = testPath + "modules/";
+		final String scriptCachePath = rootTmpPath + "scriptcache";
 		externalFile = modulePath + "module2_external.js";
 
+		final String[] arguments = getArguments(modulePath, "profiles.json", tmpPath, buildPath, new String[0]);
+
+		createDirectory(rootTmpPath);
+		createDirectory(rootBuildPath);
+
+		checkEncoding(modulePath);
+		final File[] oldScripts = getFiles(scriptCachePath);
+		if (oldScripts != null) {
+			for (final File f : oldScripts) {
+				f.delete();
+			}
+		}
+		checkDependencyOrder(modulePath);
+		checkChildTable();
+		checkModelSerializer(modulePath, rootTmpPath + "model");
+		checkStaging(modulePath, rootTmpPath + "staging");
+		checkIncrementalUpdate(rootTmpPath + "update");
+		checkConfResolver(testPath + "conf/");
+		checkDuplicateBodies(modulePath, rootTmpPath + "bodies");
+		checkManglePrivateMembers(modulePath, rootTmpPath + "mangle");
+
+		Main.main(arguments);
+
+		checkBuildFiles(buildPath);
+		checkDetails(buildPath);
+		checkHas(buildPath);
+		executeAll(buildPath);
+
+		// tree shaking, in its own build
+		final String shakingPath = rootBuildPath + "shaking";
+		checkTreeShakingThis(rootTmpPath + "shakingthis");
+		Main.main(getArguments(modulePath, "profiles_shaking.json", rootTmpPath + "shaking", shakingPath, new String[] { "-OPTION_TREE_SHAKING=true" }));
+		checkTreeShaking(shakingPath);
+		executeAll(shakingPath);
+
+		// dependency sort, in its own build: the ordered test modules are left unchanged
+		final String sortedPath = rootBuildPath + "sorted";
+		Main.main(getArguments(modulePath, "profiles.json", rootTmpPath + "sorted", sortedPath, new String[] { "-OPTION_SORT_DEPENDENCIES=true" }));
+		checkBuildFiles(sortedPath);
+		executeAll(sortedPath);
+		checkSameBuildFiles(buildPath, sortedPath);
+
+		checkPrecompress(buildPath, rootTmpPath + "gzcache");
+		checkFileCache(modulePath, rootTmpPath + "filecache.js");
+
+		// compiled build scripts, in the last build as the optimization level is kept by the next ones
+		final String compiledPath = rootBuildPath + "compiled";
+		Main.main(getArguments(modulePath, "profiles.json", rootTmpPath + "compiled", compiledPath, new String[] { "-OPTION_OPTIMIZATION_LEVEL=9", "-SCRIPT_CACHE_PATH=" + scriptCachePath }));
+		checkBuildFiles(compiledPath);
+		checkSameBuildFiles(buildPath, compiledPath);
+		checkScriptCache(scriptCachePath);
+
+		printTestResults();
+	}
+
+	/**
+	 * 
+	 */
+	private static String externalFile = null;
+
+	/**
+	 * @param modulePath
+	 * @param profilesConfFile
+	 * @param tmpPath
+	 * @param buildPath
+	 * @param options
+	 *            the options added to the baseline ones
+	 * @return the arguments of a build of the test modules
+	 */
+	private static String[] getArguments(final String modulePath, final String profilesConfFile, final String tmpPath, final String buildPath, final String[] options) {
 		final String[] arguments = new String[] {
 		// 
 				"-JS_PATH=../wink/utils/build/scripts",
@@ -65,7 +160,7 @@ public class BuildTest extends BuildAbstractTest {
 				// 
 				"-MODULE_CONF_FILE=modules.json",
 				// 
-				"-PROFILES_CONF_FILE=profiles.json",
+				"-PROFILES_CONF_FILE=" + profilesConfFile,
 				// 
 				"-WINK_PATH=" + modulePath,
 				// 
@@ -97,25 +192,530 @@ public class BuildTest extends BuildAbstractTest {
 				//
 				"-OPTION_DELETE_LOGS=true" };
 
-		createDirectory(rootTmpPath);
-		createDirectory(rootBuildPath);
+		final String[] result = new String[arguments.length + options.length];
+		System.arraycopy(arguments, 0, result, 0, arguments.length);
+		System.arraycopy(options, 0, result, arguments.length, options.length);
+		return result;
+	}
 
-		checkEncoding(modulePath);
+	/**
+	 * @throws Exception
+	 */
+	private static void checkChildTable() throws Exception {
+		out("------- CHECK CHILD TABLE -------");
+		final LiteralObject lo = new LiteralObject();
+		assertTrue(lo.getLiterals().isEmpty() && lo.getFunctions().isEmpty() && lo.getExtensions().isEmpty(), "Expected no children");
+
+		// a few children are sorted by name
+		for (final String name : new String[] { "c", "a", "b" }) {
+			lo.addLiteral(name, new LiteralObject());
+		}
+		assertTrue(lo.getLiterals().keySet().toString().equals("[a, b, c]"), "Expected sorted children: " + lo.getLiterals().keySet());
+		assertTrue(lo.getFunctions().isEmpty() && lo.getProperties().isEmpty(), "Expected literals only");
+
+		// an extension is put under its extend key
+		final LiteralObject ext = new LiteralObject();
+		lo.addLiteral("a", ext);
+		assertTrue(lo.getLiterals().size() == 4 && lo.getLiterals().get("a.extend.1") == ext, "Expected extension key: " + lo.getLiterals().keySet());
+		assertTrue(lo.getLiterals().get("a").getExtensions().size() == 1, "Expected extension of a");
+
+		// many children upgrade the table
+		for (int i = 0; i < 20; i++) {
+			lo.addLiteral(new StringBuffer("n").append(i).toString(), new LiteralObject());
+		}
+		assertTrue(lo.getLiterals().size() == 24 && lo.getLiterals().containsKey("n19") && lo.getLiterals().containsKey("b"), "Expected all the children: " + lo.getLiterals().keySet());
+		final String interned = lo.getLiterals().keySet().iterator().next();
+		assertTrue(interned == interned.intern(), "Expected interned names");
+
+		final Iterator<String> it = lo.getLiterals().keySet().iterator();
+		while (it.hasNext()) {
+			if (it.next().startsWith("n")) {
+				it.remove();
+			}
+		}
+		assertTrue(lo.getLiterals().size() == 4 && lo.getLiterals().get("n0") == null, "Expected removed children: " + lo.getLiterals().keySet());
+	}
+
+	/**
+	 * @param modulePath
+	 * @param modelPath
+	 * @throws Exception
+	 */
+	private static void checkModelSerializer(final String modulePath, final String modelPath) throws Exception {
+		out("------- CHECK MODEL SERIALIZER ------- " + modelPath);
+		createDirectory(modelPath);
+		final File base = new File(modelPath, "base.js");
+		FileManager.writeIntoFile("wink.base = {\n\tf: function(a, b) {\n\t\tvar c = a;\n\t\treturn c + b;\n\t},\n\tp: 1\n};\nwink.base.f = function(x) {\n\treturn x;\n};\nwindow.location.hash = '';\n", base.getPath());
+		final File ext = new File(modelPath, "ext.js");
+		FileManager.writeIntoFile("wink.base.g = function(y) {\n\treturn y;\n};\nwink.base.f = function(z) {\n\treturn z;\n};\n", ext.getPath());
+
+		final List<String> files = new ArrayList<String>();
+		files.add(new File(modulePath + "module1.js").getPath());
+		files.add(base.getPath());
+		files.add(ext.getPath());
+		final WinkParser wp = new WinkParser();
+		wp.parse(files);
+		final String expected = wp.getGlobalScope().toStringRecursive(null, 0);
+
+		final File model = new File(modelPath, "model.bin");
+		final FileOutputStream os = new FileOutputStream(model);
+		wp.writeModel(os);
+		os.close();
+
+		InputStream is = new FileInputStream(model);
+		final ModelSerializer ms = ModelSerializer.read(is);
+		is.close();
+		assertTrue(ms.getFileCount() == 3 && ms.getDecodedCount() == 0, "Expected 3 files, none decoded: " + ms.getDecodedCount());
+		assertTrue(ms.isUnchanged(1), "Expected base.js unchanged");
 
+		// base.js depends on the global object of module1.js only
+		final GlobalObject baseScope = ms.getFileScope(1);
+		assertTrue(ms.getDecodedCount() == 2 && baseScope.getSourceName().equals(base.getPath()), "Expected 2 decoded files: " + ms.getDecodedCount());
+		final FunctionObject f = baseScope.resolveByNamespace(Namespace.build(Namespace.build(new Namespace(), "wink"), "base")).getFunctions().get("f");
+		assertTrue(f.getParameters().toString().equals("[a, b]") && f.getLocalVarNames().toString().equals("[c]"), "Expected parameters and local vars: " + f.getDescription());
+
+		final List<GlobalObject> scopes = ms.getFileScopes();
+		assertTrue(ms.getDecodedCount() == 3 && scopes.get(0).getAst() == null, "Expected all the files decoded");
+		final String loaded = scopes.get(0).toStringRecursive(null, 0);
+		assertTrue(loaded.equals(expected), "Expected the same model:\n" + expected + "\n---\n" + loaded);
+		assertTrue(f.getExtensions().size() == 2 && f.getExtensions().get(1).getSourceName().equals(ext.getPath()), "Expected the extensions of wink.base.f in order");
+
+		// an other version of the format is not read
+		final byte[] content = FileUtil.readBytes(model);
+		content[7]++;
+		FileUtil.writeBytes(content, model);
+		is = new FileInputStream(model);
+		try {
+			ModelSerializer.read(is);
+			assertTrue(false, "Expected a bad format version");
+		} catch (final IOException e) {
+			assertTrue(e.getMessage().indexOf("version") != -1, "Expected a bad format version: " + e.getMessage());
+		} finally {
+			is.close();
+		}
+		FileManager.writeIntoFile("wink.base.g = 2;\n", ext.getPath());
+		assertFalse(ms.isUnchanged(2), "Expected ext.js changed");
+	}
+
+	/**
+	 * @param modulePath
+	 * @param stagingPath
+	 * @throws Exception
+	 */
+	private static void checkStaging(final String modulePath, final String stagingPath) throws Exception {
+		out("------- CHECK STAGING ------- " + stagingPath);
+		createDirectory(stagingPath);
+		final String[] names = new String[] { "module1.js", "module2.js", "module3.js", "module4.js", "module1.css" };
+		final List<File> fins = new ArrayList<File>();
+		final List<File> fouts = new ArrayList<File>();
+		for (int i = 0; i < names.length; i++) {
+			fins.add(new File(modulePath + names[i]));
+			fouts.add(new File(stagingPath + "/sub" + (i % 2), i + "_" + names[i]));
+		}
+		createDirectory(stagingPath + "/sub0");
+		createDirectory(stagingPath + "/sub1");
+
+		final List<String> copies = FileManager.copyFiles(fins, fouts);
+		assertTrue(copies.size() == names.length, "Expected a copy of each file");
+		for (int i = 0; i < names.length; i++) {
+			assertTrue(copies.get(i).equals(fouts.get(i).getCanonicalPath()), "Expected the copies in the order of the files: " + copies.get(i));
+			assertTrue(FileManager.getFileContent(copies.get(i)).equals(FileManager.getFileContent(fins.get(i).getPath())), "Expected the content of " + names[i]);
+		}
+
+		assertTrue(FileUtil.deleteTree(new File(stagingPath)), "Expected the staging tree deleted");
+		assertFalse(new File(stagingPath).exists(), "Unexpected staging directory left");
+	}
+
+	/**
+	 * @param updatePath
+	 * @throws Exception
+	 */
+	private static void checkIncrementalUpdate(final String updatePath) throws Exception {
+		out("------- CHECK INCREMENTAL UPDATE ------- " + updatePath);
+		createDirectory(updatePath);
+		final String root = new File(updatePath, "root.js").getPath();
+		final String f1 = new File(updatePath, "f1.js").getPath();
+		final String f2 = new File(updatePath, "f2.js").getPath();
+		final String f3 = new File(updatePath, "f3.js").getPath();
+		final String f4 = new File(updatePath, "f4.js").getPath();
+		FileManager.writeIntoFile("if (typeof wink == 'undefined') {\n\twink = {};\n}\nwink.a = {};\nwink.b = {};\n", root);
+		FileManager.writeIntoFile("wink.a.x = function(p) {\n\treturn p;\n};\n", f1);
+		FileManager.writeIntoFile("wink.b.y = function(q) {\n\treturn q;\n};\n", f2);
+		FileManager.writeIntoFile("wink.a.x = function(r) {\n\treturn r;\n};\n", f3);
+		FileManager.writeIntoFile("wink.b.y.z = wink.b.y;\nwink.a.v.w = 1;\n", f4);
+
+		final List<String> files = Arrays.asList(new String[] { root, f1, f2, f3, f4 });
+		final WinkParser wp = new WinkParser();
+		// wink.a.v is defined by the change of f1.js only
+		final boolean failOnUnresolvedNamespace = Constants.failOnUnresolvedNamespace;
+		Constants.failOnUnresolvedNamespace = false;
+		try {
+			wp.parse(files);
+		} finally {
+			Constants.failOnUnresolvedNamespace = failOnUnresolvedNamespace;
+		}
+		assertTrue(wp.getDefinedNamespaces(f1).contains("wink.a.x") && wp.getDefinedNamespaces(f3).contains("wink.a.x"), "Expected wink.a.x defined by f1.js and f3.js: " + wp.getDefinedNamespaces(f1));
+		assertTrue(wp.getExtendedNamespaces(f3).equals(new HashSet<String>(Arrays.asList(new String[] { "wink.a", "wink.a.x" }))), "Expected wink.a and wink.a.x extended by f3.js: " + wp.getExtendedNamespaces(f3));
+
+		// f3.js extends the function of f1.js, f4.js resolves wink.a.v: both interpreted again
+		FileManager.writeIntoFile("wink.a.x = function(p, s) {\n\treturn p + s;\n};\nwink.a.v = {};\n", f1);
+		List<String> updated = wp.update(f1);
+		assertTrue(updated.equals(Arrays.asList(new String[] { f1, f3, f4 })), "Expected f1.js, f3.js and f4.js interpreted again: " + updated);
+		checkUpdatedModel(wp, files);
+		final FunctionObject x = wp.getGlobalScope().getLiterals().get("wink").getLiterals().get("a").getFunctions().get("x");
+		assertTrue(x.getParameters().size() == 2 && x.getExtensions().size() == 1, "Expected the new wink.a.x, extended by f3.js");
+
+		// f2.js is resolved by f4.js only
+		FileManager.writeIntoFile("wink.b.y = function(q, t) {\n\treturn q;\n};\n", f2);
+		updated = wp.update(f2);
+		assertTrue(updated.equals(Arrays.asList(new String[] { f2, f4 })), "Expected f2.js and f4.js interpreted again: " + updated);
+		checkUpdatedModel(wp, files);
+
+		updated = wp.update(root);
+		assertTrue(updated.equals(files), "Expected all the files parsed again: " + updated);
+		checkUpdatedModel(wp, files);
+	}
+
+	/**
+	 * @param wp
+	 *            an updated parser
+	 * @param files
+	 * @throws Exception
+	 */
+	private static void checkUpdatedModel(final WinkParser wp, final List<String> files) throws Exception {
+		final WinkParser fresh = new WinkParser();
+		fresh.parse(files);
+		final String expected = fresh.getGlobalScope().toStringRecursive(null, 0);
+		final String model = wp.getGlobalScope().toStringRecursive(null, 0);
+		assertTrue(model.equals(expected), "Expected the model of a full parsing:\n" + expected + "\n---\n" + model);
+	}
+
+	/**
+	 * @param modulePath
+	 * @param tmpFile
+	 * @throws Exception
+	 */
+	private static void checkFileCache(final String modulePath, final String tmpFile) throws Exception {
+		out("------- CHECK FILE CACHE -------");
+		final String module1 = modulePath + "module1.js";
+		final String module2 = modulePath + "module2.js";
+		FileObject.setCacheSize(Long.MAX_VALUE);
+		FileManager.getFileContent(module1);
+		final long size1 = FileObject.getCacheSize();
+		FileManager.getFileContent(module2);
+		final long size2 = FileObject.getCacheSize() - size1;
+		FileManager.clear();
+
+		// room for one of the modules only
+		FileObject.setCacheSize(Math.max(size1, size2) + Math.min(size1, size2) / 2);
+		try {
+			final String content1 = FileManager.getFileContent(module1);
+			final List<String> lines1 = FileManager.getFileObject(module1).getLines();
+			assertTrue(FileObject.getCacheHits() == 1, "Expected a file cache hit: " + FileObject.getCacheReport());
+			FileManager.getFileObject(module1).getContent().setLength(0);
+			assertTrue(FileManager.getFileContent(module1).equals(content1), "Expected the cached content unchanged by its readers");
+			FileManager.getFileContent(module2);
+			assertTrue(FileObject.getCacheEvictions() == 1, "Expected a file cache eviction: " + FileObject.getCacheReport());
+			assertTrue(FileManager.getFileContent(module1).equals(content1), "Expected the evicted file to be read again");
+			assertTrue(FileManager.getFileObject(module1).getLines().equals(lines1), "Expected the lines of the evicted file");
+			assertTrue(FileObject.getCacheEvictions() == 2, "Expected a file cache eviction: " + FileObject.getCacheReport());
+
+			// written contents are cached as they are read from the file
+			FileManager.writeIntoFile("a\r\nb", tmpFile);
+			assertTrue(FileManager.getFileContent(tmpFile).equals("a\nb\n"), "Expected the written content as read");
+			FileManager.uncache(tmpFile);
+			assertTrue(FileManager.getFileContent(tmpFile).equals("a\nb\n"), "Expected the written content read again");
+			assertTrue(FileManager.getFileObject(tmpFile).getLines().size() == 2, "Expected the lines of the written content");
+		} finally {
+			FileObject.setCacheSize(Constants.fileCacheSize);
+			FileManager.clear();
+		}
+	}
+
+	/**
+	 * @param expectedPath
+	 * @param buildPath
+	 * @throws IOException
+	 */
+	private static void checkSameBuildFiles(final String expectedPath, final String buildPath) throws IOException {
+		out("------- CHECK SAME BUILD FILES ------- " + buildPath);
+		for (final File expected : getFiles(expectedPath)) {
+			if (!expected.getName().endsWith(".js")) {
+				continue;
+			}
+			final File f = new File(buildPath, expected.getName());
+			assertTrue(f.isFile() && Arrays.equals(FileUtil.readBytes(expected), FileUtil.readBytes(f)), "Expected the same build file " + f.getPath());
+		}
+	}
+
+	/**
+	 * @param buildPath
+	 * @param cachePath
+	 * @throws Exception
+	 */
+	private static void checkPrecompress(final String buildPath, final String cachePath) throws Exception {
+		out("------- CHECK PRECOMPRESS ------- " + buildPath);
+		final String[] arguments = new String[] { "-JS_PATH=../wink/utils/build/scripts", "-JS_MAIN_FILE=precompress.js", "-TEMPORARY_PATH=" + cachePath, "-BUILD_DEST_PATH=" + buildPath, "-OPTION_BUILD_REPORT=true" };
 		Main.main(arguments);
+		final File report = new File(buildPath, "precompress" + BuildReport.REPORT_SUFFIX);
+		assertTrue(report.isFile(), "Expected precompress report " + report.getName());
+		final String reportContent = report.isFile() ? FileManager.getFileContent(report.getPath()) : "";
 
-		checkBuildFiles(buildPath);
-		checkDetails(buildPath);
-		checkHas(buildPath);
-		executeAll(buildPath);
+		final File[] files = getFiles(buildPath);
+		int jsCount = 0;
+		File firstGz = null;
+		for (final File f : files) {
+			if (!f.getName().endsWith(".js")) {
+				continue;
+			}
+			jsCount++;
+			final File gz = new File(f.getPath() + GzipCompressor.GZIP_EXTENSION);
+			assertTrue(gz.isFile(), "Expected precompressed file " + gz.getName());
+			if (!gz.isFile()) {
+				continue;
+			}
+			assertTrue(Arrays.equals(FileUtil.readBytes(f), gunzip(gz)), "Bad precompressed content " + gz.getName());
+			assertTrue(gz.length() < f.length(), "Expected smaller precompressed file " + gz.getName());
+			final String sizes = "{\"name\": \"" + f.getName() + "\", \"sizes\": [{\"stage\": \"" + GzipCompressor.REPORT_STAGE + "\", \"before\": " + f.length() + ", \"after\": " + gz.length() + "}]}";
+			assertTrue(reportContent.indexOf(sizes) != -1, "Expected compressed sizes in precompress report " + f.getName());
+			if (firstGz == null) {
+				firstGz = gz;
+			}
+		}
+		assertTrue(jsCount > 0, "Expected builded JS files to precompress");
 
-		printTestResults();
+		final File[] cached = new File(cachePath).listFiles();
+		assertTrue(cached != null && cached.length > 0 && cached.length <= jsCount, "Expected one cached content per distinct builded file");
+		if (firstGz == null || cached == null) {
+			return;
+		}
+
+		final long[] cacheDates = new long[cached.length];
+		for (int i = 0; i < cached.length; i++) {
+			cacheDates[i] = cached[i].lastModified();
+		}
+		firstGz.delete();
+		Main.main(arguments);
+
+		assertTrue(firstGz.isFile(), "Expected precompressed file restored from cache " + firstGz.getName());
+		final File[] cachedAgain = new File(cachePath).listFiles();
+		assertTrue(cachedAgain.length == cached.length, "Unexpected new cached content");
+		for (int i = 0; i < cached.length; i++) {
+			assertTrue(cached[i].lastModified() == cacheDates[i], "Unexpected compression of unchanged content " + cached[i].getName());
+		}
 	}
 
 	/**
-	 * 
+	 * @param modulePath
+	 * @throws WinkBuildException
 	 */
-	private static String externalFile = null;
+	private static void checkDependencyOrder(final String modulePath) throws WinkBuildException {
+		out("------- CHECK DEPENDENCY ORDER ------- " + modulePath);
+		final List<String> ordered = new ArrayList<String>();
+		ordered.add(modulePath + "module1.js");
+		ordered.add(modulePath + "module1_i18n_en.js");
+		ordered.add(modulePath + "module2.js");
+		ordered.add(modulePath + "module3.js");
+		ordered.add(modulePath + "module4.js");
+
+		final DependencyGraph graph = new DependencyGraph(ordered);
+		graph.build();
+		assertTrue(graph.sort().equals(ordered), "Unexpected reordering of ordered files: " + graph.getReport());
+		assertTrue(graph.getDependencies(2).contains(Integer.valueOf(0)), "Expected module2 depending on module1");
+		assertTrue(graph.getDependencies(1).contains(Integer.valueOf(0)), "Expected module1_i18n_en depending on module1");
+
+		final List<String> reversed = new ArrayList<String>(ordered);
+		Collections.reverse(reversed);
+		final DependencyGraph reversedGraph = new DependencyGraph(reversed);
+		reversedGraph.build();
+		final List<String> sorted = reversedGraph.sort();
+		out(reversedGraph.getReport());
+		assertTrue(sorted.size() == ordered.size(), "Expected all the files sorted");
+		assertTrue(sorted.get(0).equals(ordered.get(0)), "Expected module1 first: " + sorted);
+		assertTrue(sorted.indexOf(ordered.get(0)) < sorted.indexOf(ordered.get(1)), "Expected module1 before module1_i18n_en");
+		assertTrue(reversedGraph.getGroups().size() == 1, "Expected a single group of files depending on wink: " + reversedGraph.getGroups());
+	}
+
+	/**
+	 * @param confPath
+	 * @throws Exception
+	 */
+	private static void checkConfResolver(final String confPath) throws Exception {
+		out("------- CHECK CONF RESOLVER ------- " + confPath);
+		final Context cx = Context.enter();
+		try {
+			final ScriptableObject scope = cx.initStandardObjects();
+			final String modules = new String(FileUtil.readBytes(new File(confPath + "modules.json")));
+			final String profiles = new String(FileUtil.readBytes(new File(confPath + "profiles.json")));
+			final Scriptable moduleConf = (Scriptable) cx.evaluateString(scope, "(" + modules + ")", "modules.json", 1, null);
+			final Scriptable profileConf = (Scriptable) cx.evaluateString(scope, "(" + profiles + ")", "profiles.json", 1, null);
+			final ConfResolver resolver = new ConfResolver(moduleConf, profileConf);
+
+			final List<String> defaultModules = Arrays.asList("module1", "module2", "my_special_module", "module4");
+			final List<String> ieFiles = resolver.getModulesJsFiles("default", defaultModules, "ie");
+			assertTrue(ieFiles.equals(Arrays.asList("module1.js", "module1_ie.js", "module1_i18n_en.js", "module2.js", "module2_ie.js", "module3.js",
+					"module3_ie.js", "module4_ie.js")), "Unexpected ie files: " + ieFiles);
+			final List<String> androidFiles = resolver.getModulesJsFiles("default", defaultModules, "android-1.5");
+			assertTrue(androidFiles.equals(Arrays.asList("module1.js", "module1_i18n_en.js", "module2.js", "module3_bis.js", "module4.js")),
+					"Unexpected android-1.5 files: " + androidFiles);
+			final List<String> lightFiles = resolver.getModulesJsFiles("light", Arrays.asList("module1"), "ie");
+			assertTrue(lightFiles.equals(Arrays.asList("module1.js", "module1_ie.js", "module1_i18n_fr.js", "module1_i18n_es.js")),
+					"Unexpected light files: " + lightFiles);
+
+			final List<String> cssFiles = resolver.getTargetedCssFiles(resolver.resolveSubModules(Arrays.asList("module1", "module4")), "ie");
+			assertTrue(cssFiles.equals(Arrays.asList("module1.css", "module4_ie.css")), "Unexpected ie css files: " + cssFiles);
+
+			ieFiles.clear();
+			assertTrue(resolver.getModulesJsFiles("default", defaultModules, "ie").size() == 8, "Expected the cached files unchanged");
+			assertTrue(resolver.getReport().indexOf(" 1 cached resolutions") != -1, "Expected a cached resolution: " + resolver.getReport());
+
+			boolean failed = false;
+			try {
+				resolver.resolveSubModules(Arrays.asList("unknown"));
+			} catch (final WinkBuildException e) {
+				failed = true;
+			}
+			assertTrue(failed, "Expected an error for an unknown module");
+		} finally {
+			Context.exit();
+		}
+	}
+
+	/**
+	 * @param modulePath
+	 * @param bodiesPath
+	 * @throws Exception
+	 */
+	private static void checkDuplicateBodies(final String modulePath, final String bodiesPath) throws Exception {
+		out("------- CHECK DUPLICATE BODIES ------- " + modulePath);
+		createDirectory(bodiesPath);
+		final File copy = new File(bodiesPath, "module1.js");
+		FileUtil.writeBytes(FileUtil.readBytes(new File(modulePath + "module1.js")), copy);
+		FileManager.getFileContent(copy.getPath());
+
+		final List<String> files = new ArrayList<String>();
+		files.add(copy.getPath());
+		final WinkParser wp = new WinkParser();
+		wp.parse(files);
+		final DuplicateBodyFinder finder = new DuplicateBodyFinder();
+		finder.find(wp.getFileScopes(), files);
+		assertTrue(finder.getDuplicates().size() == 2, "Expected the empty functions with and without parameter: " + finder.getReport());
+		assertTrue(finder.getDuplicates().get(1).size() == 8, "Expected the empty functions of wink.ui.other: " + finder.getReport());
+
+		finder.alias();
+		out(finder.getReport());
+		final String content = FileManager.getFileContent(copy.getPath());
+		assertTrue(content.indexOf("wink.ui.other.f7 = wink.ui.other.f1") != -1, "Expected wink.ui.other.f7 aliased");
+		assertTrue(content.indexOf("w.d = wink.c") != -1, "Expected wink.d aliased in its closure");
+		assertTrue(content.indexOf("f2: function") != -1, "Unexpected alias to the literal being defined");
+		assertTrue(content.indexOf("w.a = function") != -1, "Unexpected alias to a function defined by a define() callback");
+		executeJs(copy.getPath());
+	}
+
+	/**
+	 * @param modulePath
+	 * @param manglePath
+	 * @throws Exception
+	 */
+	private static void checkManglePrivateMembers(final String modulePath, final String manglePath) throws Exception {
+		out("------- CHECK MANGLE PRIVATE MEMBERS ------- " + modulePath);
+		createDirectory(manglePath);
+		final File dependency = new File(manglePath, "module1.js");
+		FileUtil.writeBytes(FileUtil.readBytes(new File(modulePath + "module1.js")), dependency);
+		final File copy = new File(manglePath, "module3.js");
+		FileUtil.writeBytes(FileUtil.readBytes(new File(modulePath + "module3.js")), copy);
+		final File counter = new File(manglePath, "counter.js");
+		FileManager.writeIntoFile("if (typeof wink == 'undefined') {\n\twink = {};\n}\nwink.counter = {\n\t_count: 0,\n\t_label: 'c',\n\t_next: function(a) {\n\t\treturn a ? this._count++ : wink.counter[\"_label\"];\n\t}\n};\nwink.counter._next(true);\n",
+				counter.getPath());
+		FileManager.getFileContent(dependency.getPath());
+		FileManager.getFileContent(copy.getPath());
+
+		final List<String> files = new ArrayList<String>();
+		files.add(copy.getPath());
+		files.add(counter.getPath());
+		final List<String> parsed = new ArrayList<String>(files);
+		parsed.add(0, dependency.getPath());
+		final WinkParser wp = new WinkParser();
+		wp.parse(parsed);
+		final Map<String, String> names = new HashMap<String, String>();
+		final PrivateMemberMangler mangler = new PrivateMemberMangler(names);
+		mangler.mangle(wp.getFileScopes(), files);
+		out(mangler.getReport());
+
+		final String content = FileManager.getFileContent(copy.getPath());
+		final String counterContent = FileManager.getFileContent(counter.getPath());
+		assertTrue(names.get("_count") != null && !names.get("_count").equals("_count"), "Expected _count renamed: " + names);
+		assertTrue(counterContent.indexOf("this." + names.get("_count") + "++") != -1 && counterContent.indexOf("\t" + names.get("_count") + ": 0") != -1, "Expected _count renamed everywhere");
+		assertTrue(counterContent.indexOf("wink.counter." + names.get("_next") + "(true)") != -1, "Expected _next renamed");
+		assertTrue(counterContent.indexOf("_label: 'c'") != -1 && "_label".equals(names.get("_label")), "Expected _label kept, read by a string");
+		assertTrue(content.indexOf("_LEFT_POSITION") == -1 && content.indexOf(names.get("_LEFT_POSITION") + ": 'left'") != -1, "Expected _LEFT_POSITION renamed");
+		assertTrue(content.indexOf("this._itemsNode") != -1, "Unexpected rename of the undeclared _itemsNode");
+		assertTrue(mangler.getMap("p", "t").indexOf("\"" + names.get("_count") + "\": \"_count\"") != -1, "Expected _count in rename map");
+		executeJs(counter.getPath());
+
+		final File later = new File(manglePath, "later.js");
+		FileManager.writeIntoFile("wink.later = {\n\t_first: 1\n};\nwink.counter._count = wink.later._first;\n", later.getPath());
+		files.clear();
+		files.add(later.getPath());
+		parsed.add(later.getPath());
+		final WinkParser laterParser = new WinkParser();
+		laterParser.parse(parsed);
+		new PrivateMemberMangler(names).mangle(laterParser.getFileScopes(), files);
+		final String laterContent = FileManager.getFileContent(later.getPath());
+		assertTrue(laterContent.indexOf("wink.counter." + names.get("_count") + " = ") != -1, "Expected the name of the previous build reused");
+		assertFalse(names.get("_first").equals(names.get("_count")) || names.get("_first").equals(names.get("_next")), "Expected a new name for _first: " + names);
+	}
+
+	/**
+	 * @param scriptCachePath
+	 * @throws Exception
+	 */
+	private static void checkScriptCache(final String scriptCachePath) throws Exception {
+		out("------- CHECK SCRIPT CACHE ------- " + scriptCachePath);
+		final File[] cached = getFiles(scriptCachePath);
+		// build.js and wink_build_utils.js
+		assertTrue(cached != null && cached.length == 2, "Expected the compiled build scripts in cache");
+		if (cached == null) {
+			return;
+		}
+		final Map<String, Long> cacheDates = new HashMap<String, Long>();
+		for (final File f : cached) {
+			assertTrue(f.getName().endsWith(ScriptCache.CACHE_EXTENSION), "Unexpected file in script cache " + f.getName());
+			cacheDates.put(f.getName(), Long.valueOf(f.lastModified()));
+		}
+
+		// only the new script is compiled, wink_build_utils.js is read from the cache
+		final String[] arguments = new String[] { "-JS_PATH=../wink/utils/build/scripts", "-JS_MAIN_FILE=precompress.js", "-BUILD_DEST_PATH=" + scriptCachePath, "-OPTION_OPTIMIZATION_LEVEL=9", "-SCRIPT_CACHE_PATH=" + scriptCachePath };
+		Main.main(arguments);
+		final File[] cachedAgain = getFiles(scriptCachePath);
+		assertTrue(cachedAgain.length == cached.length + 1, "Expected precompress.js added to the script cache");
+		for (final File f : cachedAgain) {
+			final Long date = cacheDates.get(f.getName());
+			if (date != null) {
+				assertTrue(f.lastModified() == date.longValue(), "Unexpected compilation of unchanged script " + f.getName());
+			}
+		}
+	}
+
+	/**
+	 * @param gz
+	 * @return
+	 * @throws IOException
+	 */
+	private static byte[] gunzip(final File gz) throws IOException {
+		final InputStream in = new GZIPInputStream(new FileInputStream(gz));
+		try {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] buf = new byte[8192];
+			int len;
+			while ((len = in.read(buf)) != -1) {
+				out.write(buf, 0, len);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
 
 	/**
 	 * @param modulePath
@@ -407,6 +1007,77 @@ public class BuildTest extends BuildAbstractTest {
 		}
 	}
 
+	/**
+	 * @param buildPath
+	 * @throws WinkBuildException
+	 * @throws IOException
+	 */
+	private static void checkTreeShaking(final String buildPath) throws WinkBuildException, IOException {
+		final File[] files = getFiles(buildPath);
+		for (final File f : files) {
+			final String path = f.getPath();
+			out("------- CHECK TREE SHAKING ------- " + path);
+
+			final List<FunctionObject> functions = new ArrayList<FunctionObject>();
+			final List<LiteralObject> literals = new ArrayList<LiteralObject>();
+			parseFile(path, new String[] { externalFile }, functions, literals);
+
+			final List<String> names = new ArrayList<String>();
+			for (final FunctionObject fo : functions) {
+				names.add(fo.getNamespace().toString());
+			}
+			for (final LiteralObject lo : literals) {
+				names.add(lo.getNamespace().toString());
+			}
+
+			final boolean isLight = path.contains("light");
+			assertTrue(names.contains("wink.connect"), "Expected kept 'wink.connect' in " + path);
+			assertTrue(names.contains("wink.ui.other.f7"), "Expected kept 'wink.ui.other.f7' in " + path);
+			if (isLight) {
+				assertFalse(names.contains("wink.byId"), "Unexpected unreferenced 'wink.byId' in " + path);
+				assertFalse(names.contains("wink.c"), "Unexpected unreferenced 'wink.c' in " + path);
+				assertFalse(names.contains("wink.ui.other2"), "Unexpected unreferenced 'wink.ui.other2' in " + path);
+				assertFalse(names.contains("wink.ui.form"), "Unexpected unreferenced 'wink.ui.form' in " + path);
+			} else {
+				assertTrue(names.contains("wink.byId"), "Expected 'wink.byId' in " + path);
+				assertTrue(names.contains("wink.ui.other2"), "Expected 'wink.ui.other2' in " + path);
+			}
+		}
+	}
+
+	/**
+	 * A literal reached as a container keeps the members its methods call
+	 * through "this"
+	 * 
+	 * @param shakingPath
+	 * @throws Exception
+	 */
+	private static void checkTreeShakingThis(final String shakingPath) throws Exception {
+		out("------- CHECK TREE SHAKING THIS ------- " + shakingPath);
+		createDirectory(shakingPath);
+		final File ux = new File(shakingPath, "ux.js");
+		FileManager.writeIntoFile("if (typeof wink == 'undefined') {\n\twink = {};\n}\nwink.ux = {};\nwink.ux.obj = {\n\ta: function() {\n\t\treturn this.b();\n\t},\n\tb: function() {\n\t\treturn this.c;\n\t},\n\tc: 1,\n\td: function() {\n\t\treturn 2;\n\t}\n};\nwink.ux.obj.a();\n",
+				ux.getPath());
+
+		final List<String> files = new ArrayList<String>();
+		files.add(ux.getPath());
+		final WinkParser wp = new WinkParser();
+		wp.parse(files);
+		final WinkJsModel model = new WinkJsModel();
+		model.setFileScopes(wp.getFileScopes());
+		model.setSourceFiles(files);
+		final TreeShaker shaker = new TreeShaker(model);
+		shaker.shake(wp.getFileScopes(), files, new ArrayList<String>(), new ArrayList<String>());
+		out(shaker.getReport());
+
+		final String content = FileManager.getFileContent(ux.getPath());
+		assertTrue(content.indexOf("b: function") != -1, "Expected wink.ux.obj.b kept, called through this");
+		assertTrue(content.indexOf("c: 1") != -1, "Expected the property wink.ux.obj.c kept");
+		assertTrue(content.indexOf("d: function") == -1, "Unexpected unreferenced wink.ux.obj.d");
+		assertTrue(shaker.getReport().indexOf("1 functions") != -1, "Expected only wink.ux.obj.d removed: " + shaker.getReport());
+		executeJs(ux.getPath());
+	}
+
 	/**
 	 * @param buildPath
 	 * @throws WinkBuildException
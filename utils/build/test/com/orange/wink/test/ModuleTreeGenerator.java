@@ -0,0 +1,262 @@
+/*--------------------------------------------------------
+ * Copyright (c) 2011, The Dojo Foundation
+ * This software is distributed under the "Simplified BSD license",
+ * the text of which is available at http://www.winktoolkit.org/licence.txt
+ * or see the "license.txt" file for more details.
+ *--------------------------------------------------------*/
+
+/**
+ * 
+ */
+package com.orange.wink.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.orange.wink.util.Common;
+import com.orange.wink.util.FileManager;
+
+/**
+ * Generates a synthetic wink style module tree, with its modules and profiles
+ * configurations, to measure the builder on large trees.
+ * 
+ * Each module declares a literal namespace under the wink namespace, at the
+ * given depth (wink.g1.g0.m42), whose parent namespaces are declared by the
+ * root module. A part of the modules extend the namespace of an earlier
+ * module with a new function, and a part of them redefine a function of an
+ * earlier module: a duplicate deleted by the builder.
+ * 
+ * The tree is the same for the same parameters.
+ * 
+ * @author Sylvain Lalande
+ * 
+ */
+public class ModuleTreeGenerator {
+	/**
+	 * 
+	 */
+	public static final String ROOT_MODULE = "root";
+	public static final String PROFILE = "full";
+	public static final String MODULES_CONF = "modules.json";
+	public static final String PROFILES_CONF = "profiles.json";
+	/**
+	 * count of child namespaces of a parent namespace
+	 */
+	private static final int FANOUT = 4;
+
+	/**
+	 * 
+	 */
+	private final int moduleCount;
+	private final int namespaceDepth;
+	private final double extensionRatio;
+	private final double duplicateRatio;
+	private final int fileSize;
+	/**
+	 * 
+	 */
+	private int extensions;
+	private int duplicates;
+	private long size;
+
+	/**
+	 * @param moduleCount
+	 *            the count of modules, without the root module
+	 * @param namespaceDepth
+	 *            the depth of the module namespaces under the wink namespace,
+	 *            1 or more
+	 * @param extensionRatio
+	 *            the part of the modules extending an earlier module
+	 * @param duplicateRatio
+	 *            the part of the modules redefining a function of an earlier
+	 *            module
+	 * @param fileSize
+	 *            the approximate size of a module file, in chars
+	 */
+	public ModuleTreeGenerator(final int moduleCount, final int namespaceDepth, final double extensionRatio, final double duplicateRatio, final int fileSize) {
+		this.moduleCount = moduleCount;
+		this.namespaceDepth = Math.max(1, namespaceDepth);
+		this.extensionRatio = extensionRatio;
+		this.duplicateRatio = duplicateRatio;
+		this.fileSize = fileSize;
+	}
+
+	/**
+	 * Writes the modules in "modulesDir" and the configurations in "confDir"
+	 * 
+	 * @param modulesDir
+	 * @param confDir
+	 * @throws IOException
+	 */
+	public void generate(final File modulesDir, final File confDir) throws IOException {
+		if (!modulesDir.isDirectory() && !modulesDir.mkdirs()) {
+			throw new IOException("cannot create directory: " + modulesDir.getPath());
+		}
+		if (!confDir.isDirectory() && !confDir.mkdirs()) {
+			throw new IOException("cannot create directory: " + confDir.getPath());
+		}
+		final Random random = new Random(moduleCount * 31L + namespaceDepth);
+		final Set<String> parents = new LinkedHashSet<String>();
+		final List<String> modules = Common.newArrayList(moduleCount + 1);
+		extensions = 0;
+		duplicates = 0;
+		size = 0;
+
+		for (int i = 0; i < moduleCount; i++) {
+			final String namespace = getNamespace(i);
+			for (int idx = namespace.indexOf('.', 5); idx != -1; idx = namespace.indexOf('.', idx + 1)) {
+				parents.add(namespace.substring(0, idx));
+			}
+
+			final StringBuffer sb = new StringBuffer();
+			sb.append(namespace).append(" = {\n");
+			int f = 0;
+			do {
+				sb.append((f == 0) ? "" : ",\n");
+				sb.append("\tf").append(f).append(": function(a, b) {\n");
+				appendBody(sb, random, "\t\t", i + f);
+				sb.append("\t}");
+				f++;
+			} while (sb.length() < fileSize);
+			sb.append("\n};\n");
+
+			if (i > 0 && random.nextDouble() < extensionRatio) {
+				final int j = random.nextInt(i);
+				sb.append("\n").append(getNamespace(j)).append(".x").append(i).append(" = function(a, b) {\n");
+				appendBody(sb, random, "\t", i);
+				sb.append("};\n");
+				extensions++;
+			}
+			if (i > 0 && random.nextDouble() < duplicateRatio) {
+				final int j = random.nextInt(i);
+				sb.append("\n").append(getNamespace(j)).append(".f0 = function(a, b) {\n");
+				appendBody(sb, random, "\t", -i);
+				sb.append("};\n");
+				duplicates++;
+			}
+
+			final String name = getModuleName(i);
+			write(sb.toString(), new File(modulesDir, name + ".js"));
+			modules.add(name);
+		}
+
+		final StringBuffer root = new StringBuffer();
+		root.append("if (typeof wink == 'undefined') {\n\twink = {};\n}\n");
+		for (final String parent : parents) {
+			root.append(parent).append(" = {};\n");
+		}
+		write(root.toString(), new File(modulesDir, ROOT_MODULE + ".js"));
+		modules.add(0, ROOT_MODULE);
+
+		writeConf(modules, confDir);
+	}
+
+	/**
+	 * @param sb
+	 * @param random
+	 * @param indent
+	 * @param seed
+	 *            makes the body unique
+	 */
+	private void appendBody(final StringBuffer sb, final Random random, final String indent, final int seed) {
+		sb.append(indent).append("var r = ").append(seed).append(";\n");
+		final int lines = 2 + random.nextInt(6);
+		for (int l = 0; l < lines; l++) {
+			sb.append(indent).append("r = (r * ").append(31 + random.nextInt(1000)).append(" + a.length + b) % 65521;\n");
+		}
+		sb.append(indent).append("return r;\n");
+	}
+
+	/**
+	 * @param modules
+	 * @param confDir
+	 * @throws IOException
+	 */
+	private void writeConf(final List<String> modules, final File confDir) throws IOException {
+		final StringBuffer sb = new StringBuffer();
+		sb.append("{\n\t\"modules\": [");
+		for (int i = 0; i < modules.size(); i++) {
+			sb.append((i == 0) ? "\n" : ",\n");
+			sb.append("\t\t{ \"name\": \"").append(modules.get(i)).append("\", \"defaultImpl\": \"").append(modules.get(i)).append(".js\" }");
+		}
+		sb.append("\n\t]\n}\n");
+		FileManager.writeIntoFile(sb.toString(), new File(confDir, MODULES_CONF).getPath());
+
+		sb.setLength(0);
+		sb.append("{\n");
+		sb.append("\t\"build\": {\n");
+		sb.append("\t\t\"jsFile\": \"wink-VERSION-PROFILE-TARGET.js\",\n");
+		sb.append("\t\t\"cssFile\": \"wink-VERSION-PROFILE-TARGET.css\",\n");
+		sb.append("\t\t\"version\": \"scale\",\n");
+		sb.append("\t\t\"defaultLocaleList\": [ \"en_EN\" ]\n");
+		sb.append("\t},\n");
+		sb.append("\t\"profiles\": [\n");
+		sb.append("\t\t{\n\t\t\t\"name\": \"").append(PROFILE).append("\",\n\t\t\t\"modules\": [ ");
+		for (int i = 0; i < modules.size(); i++) {
+			sb.append((i == 0) ? "\"" : ", \"").append(modules.get(i)).append("\"");
+		}
+		sb.append(" ]\n\t\t}\n");
+		sb.append("\t]\n");
+		sb.append("}\n");
+		FileManager.writeIntoFile(sb.toString(), new File(confDir, PROFILES_CONF).getPath());
+	}
+
+	/**
+	 * @param content
+	 * @param file
+	 * @throws IOException
+	 */
+	private void write(final String content, final File file) throws IOException {
+		FileManager.writeIntoFile(content, file.getPath());
+		size += content.length();
+	}
+
+	/**
+	 * @param index
+	 * @return the namespace of the module: the parent namespaces are given by
+	 *         the digits of its index in base FANOUT
+	 */
+	public String getNamespace(final int index) {
+		final StringBuffer sb = new StringBuffer("wink");
+		int rest = index;
+		for (int d = 1; d < namespaceDepth; d++) {
+			sb.append(".g").append(rest % FANOUT);
+			rest /= FANOUT;
+		}
+		sb.append(".").append(getModuleName(index));
+		return sb.toString();
+	}
+
+	/**
+	 * @param index
+	 * @return
+	 */
+	public static String getModuleName(final int index) {
+		return "m" + index;
+	}
+
+	/**
+	 * @return the count of modules extending an earlier module
+	 */
+	public int getExtensions() {
+		return extensions;
+	}
+
+	/**
+	 * @return the count of functions redefined
+	 */
+	public int getDuplicates() {
+		return duplicates;
+	}
+
+	/**
+	 * @return the total size of the module files, in chars
+	 */
+	public long getSize() {
+		return size;
+	}
+}
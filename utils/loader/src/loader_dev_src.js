@@ -15,6 +15,8 @@ var winkloader = (function() {
 		profileConf: null,
 		moduleFile: null,
 		profileFile: null,
+		manifestPath: null,
+		version: "",
 		profile: "default",
 		target: null,
 		callback: null
@@ -23,10 +25,14 @@ var winkloader = (function() {
 	var _winkloader = {
 		conf: _conf,
 		/*
-		 * @param params { moduleConf, profileConf, profile, target }
+		 * @param params { moduleConf, profileConf, profile, target } or { manifestPath, version, profile, target }
 		 */
 		load: function(params) {
 			_init(params);
+			if (_conf.manifestPath != null) {
+				_loadManifest();
+				return;
+			}
 			_getRequirements();
 			var modules = _getProfiledModules(_conf.profile, _conf.target);
 			var modulesResolved = _resolveSubModules(modules);
@@ -47,9 +53,17 @@ var winkloader = (function() {
 	var _init = function(params) {
 		var mc = params.moduleConf;
 		var pc = params.profileConf;
-		if (!mc || !pc) {
+		var mp = params.manifestPath;
+		if ((!mc || !pc) && !mp) {
 			throw new Error("missing parameter");
 		}
+		if (mp) {
+			_conf.manifestPath = mp;
+		}
+		var vs = params.version;
+		if (vs) {
+			_conf.version = vs;
+		}
 		
 		var wp = params.winkPath;
 		if (wp) {
@@ -88,6 +102,26 @@ var winkloader = (function() {
 			_conf.profileConf = _evalJson(_conf.profileFile);
 		}
 	};
+	/*
+	 * Loads the files listed by the loader manifest of the builder : all the
+	 * files are requested at once and executed in the manifest order
+	 */
+	var _loadManifest = function() {
+		if (_conf.target == null) {
+			_conf.target = _winkloader.detectTarget();
+		}
+		var fnt = [ "wink", _conf.version, _conf.profile, _conf.target ];
+		var manifest = _evalJson(_conf.manifestPath + fnt.join("-") + ".loader.json");
+		
+		var files = [];
+		var i, l = manifest.files.length;
+		for (i = 0; i < l; i++) {
+			var f = manifest.files[i];
+			// the content hash changes the url of a modified file only
+			files.push(_conf.winkPath + f.path + "?v=" + f.hash);
+		}
+		_queueManager.loadAll(files, _conf.callback);
+	};
 	/*
 	 * @param profile
 	 * @param target
@@ -326,6 +360,25 @@ var winkloader = (function() {
 				_errorCount = 0;
 				_next();
 			},
+			/*
+			 * requests all the files at once, the scripts are executed in
+			 * the given order
+			 */
+			loadAll: function(files, callback) {
+				_files = files;
+				_callback = callback;
+				_index = files.length - 1;
+				_errorCount = 0;
+				_pending = files.length;
+				if (_pending == 0) {
+					_next();
+					return;
+				}
+				var i, l = files.length;
+				for (i = 0; i < l; i++) {
+					_addScript(_head, files[i], _done, _doneWithError);
+				}
+			},
 			/*
 			 * 
 			 */
@@ -345,6 +398,18 @@ var winkloader = (function() {
 		var _index = null;
 		var _callback = null;
 		var _errorCount = null;
+		var _pending = null;
+		
+		var _done = function() {
+			_pending--;
+			if (_pending == 0) {
+				_next();
+			}
+		};
+		var _doneWithError = function() {
+			_errorCount++;
+			_done();
+		};
 		
 		var _next = function() {
 			_index++;
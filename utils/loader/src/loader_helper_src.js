@@ -42,6 +42,8 @@ winkloader.detectTarget = function() {
 var _addScript = function(parent, url, callback, errorCallback) {
 	var s = document.createElement('script');
 	s.type = 'text/javascript';
+	// the scripts added at once are executed in the order they are added
+	s.async = false;
 	
 	if (s.addEventListener) {
 		var loadCb = function(e) {
@@ -15,16 +15,22 @@ var winkloader = (function() {
 		profile: "default",
 		target: null,
 		ismin: true,
+		split: false,
+		locale: null,
 		callback: null
 	};
 	
 	var _winkloader = {
 		conf: _conf,
 		/*
-		 * @param params { moduleConf, profileConf, profile, target }
+		 * @param params { buildPath, version, profile, target, ismin, split, locale, callback }
 		 */
 		load: function(params) {
 			_init(params);
+			if (_conf.split) {
+				_loadParts();
+				return;
+			}
 			_getRequirements();
 			
 		},
@@ -65,6 +71,14 @@ var winkloader = (function() {
 		if (im === false) {
 			_conf.ismin = im;
 		}
+		var sp = params.split;
+		if (sp === true) {
+			_conf.split = sp;
+		}
+		var lc = params.locale;
+		if (lc) {
+			_conf.locale = lc;
+		}
 
 		_head = document.getElementsByTagName('head')[0];
 	};
@@ -95,16 +109,107 @@ var winkloader = (function() {
 		var url = _conf.buildPath + filename;
 		
 		var handler = {
-			ok: function() {
-				if (_conf.callback != null) {
-					_conf.callback();
-				}
-			},
+			ok: _done,
 			ko: function() {
 				throw new Error("Cannot load url: '" + url + "'");
 			}
 		};
 		_addScript(_head, url, handler.ok, handler.ko);
 	};
+	/*
+	 * Loads the parts of a split builded file : the parts manifest is read
+	 * first, then all the parts are requested at once and executed in the
+	 * manifest order
+	 */
+	var _loadParts = function() {
+		if (_conf.target == null) {
+			_conf.target = _winkloader.detectTarget();
+		}
+		var fnt = [ "wink", _conf.version, _conf.profile, _conf.target ];
+		var manifestUrl = _conf.buildPath + fnt.join("-") + ".parts.json";
+		var manifest;
+		eval("manifest = " + _getUrlContent(manifestUrl));
+		
+		var parts = manifest.parts;
+		var pending = parts.length;
+		var done = function() {
+			pending--;
+			if (pending == 0) {
+				_done();
+			}
+		};
+		var i, l = parts.length;
+		for (i = 0; i < l; i++) {
+			var file = parts[i].file;
+			if (_conf.ismin) {
+				file = file.replace(/\.js$/, ".min.js");
+			}
+			// the content hash changes the url of a modified part only
+			var url = _conf.buildPath + file + "?v=" + parts[i].hash;
+			_addScript(_head, url, done, (function(u) {
+				return function() {
+					throw new Error("Cannot load url: '" + u + "'");
+				};
+			})(url));
+		}
+	};
+	/*
+	 * Invoked when the builded file is loaded
+	 */
+	var _done = function() {
+		if (_conf.locale != null) {
+			_loadLocale();
+		} else if (_conf.callback != null) {
+			_conf.callback();
+		}
+	};
+	/*
+	 * Loads the i18n bundle of the locale built apart from the builded file
+	 * (see "build.js.options.splitLocales") : the locales manifest gives the
+	 * bundle of each locale, the default locale being used for an unknown
+	 * locale
+	 */
+	var _loadLocale = function() {
+		var fnt = [ "wink", _conf.version, _conf.profile, _conf.target ];
+		var manifestUrl = _conf.buildPath + fnt.join("-") + ".locales.json";
+		var manifest;
+		eval("manifest = " + _getUrlContent(manifestUrl));
+		
+		var bundle = manifest.locales[_conf.locale];
+		if (typeof bundle == "undefined") {
+			bundle = manifest.locales[manifest.defaultLocale];
+		}
+		var callback = function() {
+			if (_conf.callback != null) {
+				_conf.callback();
+			}
+		};
+		// a locale without i18n resources has no bundle
+		if (bundle == null) {
+			callback();
+			return;
+		}
+		var file = bundle.file;
+		if (_conf.ismin) {
+			file = file.replace(/\.js$/, ".min.js");
+		}
+		var url = _conf.buildPath + file + "?v=" + bundle.hash;
+		_addScript(_head, url, callback, function() {
+			throw new Error("Cannot load url: '" + url + "'");
+		});
+	};
+	/*
+	 * @param url
+	 * @return
+	 */
+	var _getUrlContent = function(url) {
+		var xhr = new XMLHttpRequest();
+		xhr.open("GET", url, false);
+		xhr.send(null);
+		if ((xhr.status >= 200 && xhr.status < 400) || xhr.status == 0) {
+			return xhr.responseText;
+		}
+		throw new Error("Cannot load url: '" + url + "'");
+	};
 	return _winkloader;
 })();
\ No newline at end of file